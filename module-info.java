@@ -2,8 +2,13 @@ module courier.management.system {
     requires javafx.controls;
     requires javafx.fxml;
     requires java.desktop;
+    requires java.sql;
+    requires jdk.httpserver;
     
     exports com.courier.ui;
     exports com.courier.model;
     exports com.courier.service;
+    exports com.courier.storage;
+    exports com.courier.repository;
+    exports com.courier.api;
 }
@@ -0,0 +1,274 @@
+package com.courier.bench;
+
+import com.courier.api.ApiServer;
+import com.courier.model.Admin;
+import com.courier.model.User;
+import com.courier.repository.Repositories;
+import com.courier.service.AdminService;
+import com.courier.service.FileManager;
+import com.courier.service.OrderService;
+import com.courier.service.UserService;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Many HTTP clients against an ApiServer on localhost, over a fresh data directory:
+ * quotes, public tracking, order placement, history, single orders and versioned admin
+ * status updates. Prints throughput and latency per endpoint, plus how many requests
+ * the connection limit turned away with 503. Any other unexpected status fails the run.
+ *
+ *   java -cp bin:bench-bin com.courier.bench.ApiLoadTest [clients] [seconds] [maxConcurrent] [--keep]
+ *   java -cp bin:bench-bin com.courier.bench.ApiLoadTest 200 10 64
+ */
+public class ApiLoadTest {
+    private static final String ADMIN = "admin";
+    private static final String ADMIN_PIN = "4242";
+    private static final String[] PROVINCES = {"Punjab", "Sindh", "KPK", "Balochistan"};
+    private static final String[] STATUSES = {"SHIPPED", "DELIVERED", "IN_PROCESS"};
+    private static final Pattern TRACKING_ID = Pattern.compile("\"trackingId\":\"([^\"]+)\"");
+    private static final Pattern VERSION = Pattern.compile("\"version\":(\\d+)");
+
+    private enum Endpoint { QUOTE, TRACK, PLACE, HISTORY, ORDER, ADMIN_STATUS }
+
+    public static void main(String[] args) throws Exception {
+        List<String> options = new ArrayList<>(Arrays.asList(args));
+        boolean keep = options.remove("--keep");
+        int clients = options.size() > 0 ? Integer.parseInt(options.get(0)) : 100;
+        int seconds = options.size() > 1 ? Integer.parseInt(options.get(1)) : 10;
+        int maxConcurrent = options.size() > 2 ? Integer.parseInt(options.get(2)) : 64;
+
+        Path root = Files.createTempDirectory("courier-api-");
+        // Before FileManager loads, which reads it once
+        System.setProperty("courier.home", root.resolve("CourierMS").toString());
+        boolean ok;
+        try {
+            ok = run(clients, seconds, maxConcurrent);
+        } finally {
+            if (keep) {
+                System.out.println("Data kept at " + root);
+            } else {
+                deleteRecursively(root);
+            }
+        }
+        System.out.println(ok ? "OK" : "FAILED");
+        System.exit(ok ? 0 : 1);
+    }
+
+    private static boolean run(int clients, int seconds, int maxConcurrent) throws Exception {
+        Repositories repositories = FileManager.getRepositories();
+        OrderService orderService = new OrderService(repositories);
+        UserService userService = new UserService(repositories.getUsers());
+        AdminService adminService = new AdminService(repositories.getAdmin(), repositories.getFinance(),
+            repositories.getRollups(), repositories.getOrders());
+        repositories.getAdmin().save(new Admin(ADMIN, ADMIN_PIN));
+        for (int c = 0; c < clients; c++) {
+            userService.createUser(new User("Client " + c, "client" + c, "0300" + (1000000 + c),
+                "Street " + c, "Lahore", PROVINCES[c % PROVINCES.length], "1234"));
+        }
+
+        ApiServer api = ApiServer.start(new InetSocketAddress("127.0.0.1", 0), maxConcurrent, orderService,
+            userService, adminService);
+        String base = "http://127.0.0.1:" + api.getPort();
+        HttpClient http = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(10)).build();
+        System.out.printf("%d clients for %d s against %s, at most %d requests at once%n", clients, seconds, base,
+            maxConcurrent);
+
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        Stats[] stats = new Stats[clients];
+        Thread[] threads = new Thread[clients];
+        long start = System.nanoTime();
+        for (int c = 0; c < clients; c++) {
+            int client = c;
+            stats[c] = new Stats();
+            threads[c] = new Thread(() -> runClient(http, base, client, deadline, stats[client]), "client-" + c);
+            threads[c].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        api.stop(1);
+
+        System.out.printf("%-14s %10s %10s %8s %8s %10s %10s%n", "Endpoint", "requests", "req/s", "503", "errors",
+            "mean ms", "p99 ms");
+        long errors = 0;
+        long total = 0;
+        long busy = 0;
+        for (Endpoint endpoint : Endpoint.values()) {
+            long[] all = Arrays.stream(stats).flatMapToLong(s -> Arrays.stream(s.latencies(endpoint))).sorted()
+                .toArray();
+            long endpointBusy = Arrays.stream(stats).mapToLong(s -> s.busy[endpoint.ordinal()]).sum();
+            long endpointErrors = Arrays.stream(stats).mapToLong(s -> s.errors[endpoint.ordinal()]).sum();
+            double mean = Arrays.stream(all).average().orElse(0) / 1e6;
+            double p99 = all.length > 0 ? all[(int) Math.min(all.length - 1, all.length * 0.99)] / 1e6 : 0;
+            System.out.printf("%-14s %10d %10.1f %8d %8d %10.2f %10.2f%n", endpoint.name().toLowerCase(),
+                all.length, all.length / elapsed, endpointBusy, endpointErrors, mean, p99);
+            total += all.length;
+            busy += endpointBusy;
+            errors += endpointErrors;
+        }
+        System.out.printf("%-14s %10d %10.1f %8d %8d%n", "total", total, total / elapsed, busy, errors);
+        System.out.printf("server turned away %d exchanges%n", api.getRejectedCount());
+        for (Stats s : stats) {
+            if (s.firstError != null) {
+                System.out.println("first error: " + s.firstError);
+                break;
+            }
+        }
+        return errors == 0;
+    }
+
+    private static void runClient(HttpClient http, String base, int client, long deadline, Stats stats) {
+        Random random = new Random(client);
+        String user = basic("client" + client, "1234");
+        String admin = basic(ADMIN, ADMIN_PIN);
+        List<String> placed = new ArrayList<>();
+        while (System.nanoTime() < deadline) {
+            int roll = random.nextInt(100);
+            String trackingId = placed.isEmpty() ? null : placed.get(random.nextInt(placed.size()));
+            Endpoint endpoint;
+            HttpRequest.Builder request;
+            if (roll < 25 || (trackingId == null && roll >= 45)) {
+                endpoint = Endpoint.QUOTE;
+                request = HttpRequest.newBuilder(URI.create(base + "/api/quote?weight="
+                    + (1 + random.nextInt(190)) / 10.0 + "&from=Punjab&to=" + PROVINCES[random.nextInt(4)])).GET();
+            } else if (roll < 45) {
+                endpoint = Endpoint.PLACE;
+                String body = "{\"receiverName\":\"Receiver " + random.nextInt(1000) + "\","
+                    + "\"receiverContact\":\"0321" + (1000000 + random.nextInt(8999999)) + "\","
+                    + "\"receiverAddress\":\"House " + random.nextInt(500) + "\",\"receiverCity\":\"Karachi\","
+                    + "\"receiverProvince\":\"" + PROVINCES[random.nextInt(4)] + "\","
+                    + "\"weight\":" + (1 + random.nextInt(190)) / 10.0 + "}";
+                request = HttpRequest.newBuilder(URI.create(base + "/api/orders")).header("Authorization", user)
+                    .header("Content-Type", "application/json").POST(HttpRequest.BodyPublishers.ofString(body));
+            } else if (roll < 70) {
+                endpoint = Endpoint.TRACK;
+                request = HttpRequest.newBuilder(URI.create(base + "/api/track/" + trackingId)).GET();
+            } else if (roll < 80) {
+                endpoint = Endpoint.HISTORY;
+                request = HttpRequest.newBuilder(URI.create(base + "/api/orders")).header("Authorization", user)
+                    .GET();
+            } else if (roll < 90) {
+                endpoint = Endpoint.ORDER;
+                request = HttpRequest.newBuilder(URI.create(base + "/api/orders/" + trackingId))
+                    .header("Authorization", user).GET();
+            } else {
+                endpoint = Endpoint.ADMIN_STATUS;
+                long version = readVersion(http, base + "/api/admin/orders/" + trackingId, admin);
+                if (version < 0) {
+                    continue;
+                }
+                String body = "{\"status\":\"" + STATUSES[random.nextInt(STATUSES.length)] + "\",\"version\":"
+                    + version + "}";
+                request = HttpRequest.newBuilder(URI.create(base + "/api/admin/orders/" + trackingId + "/status"))
+                    .header("Authorization", admin).PUT(HttpRequest.BodyPublishers.ofString(body));
+            }
+
+            long start = System.nanoTime();
+            try {
+                HttpResponse<String> response = http.send(request.timeout(Duration.ofSeconds(30)).build(),
+                    HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+                long latency = System.nanoTime() - start;
+                int status = response.statusCode();
+                if (status == 503) {
+                    stats.busy[endpoint.ordinal()]++;
+                    continue;
+                }
+                stats.record(endpoint, latency);
+                // A version conflict is the expected answer when two admins race on one order
+                boolean expected = endpoint == Endpoint.PLACE ? status == 201
+                    : endpoint == Endpoint.ADMIN_STATUS ? status == 200 || status == 409 : status == 200;
+                if (!expected) {
+                    stats.error(endpoint, status + " " + response.body());
+                } else if (endpoint == Endpoint.PLACE) {
+                    Matcher matcher = TRACKING_ID.matcher(response.body());
+                    if (matcher.find()) {
+                        placed.add(matcher.group(1));
+                    }
+                }
+            } catch (IOException e) {
+                stats.error(endpoint, e.toString());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    // The version to update from, as an admin tool would read it first; -1 when that read was turned away
+    private static long readVersion(HttpClient http, String url, String admin) {
+        try {
+            HttpResponse<String> response = http.send(HttpRequest.newBuilder(URI.create(url))
+                .header("Authorization", admin).GET().build(), HttpResponse.BodyHandlers.ofString());
+            Matcher matcher = VERSION.matcher(response.body());
+            return response.statusCode() == 200 && matcher.find() ? Long.parseLong(matcher.group(1)) : -1;
+        } catch (IOException e) {
+            return -1;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return -1;
+        }
+    }
+
+    private static String basic(String username, String pin) {
+        return "Basic " + Base64.getEncoder().encodeToString((username + ":" + pin).getBytes(StandardCharsets.UTF_8));
+    }
+
+    // One client's numbers; only its own thread writes them
+    private static class Stats {
+        private final long[][] latencies = new long[Endpoint.values().length][64];
+        private final int[] counts = new int[Endpoint.values().length];
+        private final long[] busy = new long[Endpoint.values().length];
+        private final long[] errors = new long[Endpoint.values().length];
+        private String firstError;
+
+        void record(Endpoint endpoint, long nanos) {
+            int e = endpoint.ordinal();
+            if (counts[e] == latencies[e].length) {
+                latencies[e] = Arrays.copyOf(latencies[e], counts[e] * 2);
+            }
+            latencies[e][counts[e]++] = nanos;
+        }
+
+        void error(Endpoint endpoint, String detail) {
+            errors[endpoint.ordinal()]++;
+            if (firstError == null) {
+                firstError = endpoint + ": " + detail;
+            }
+        }
+
+        long[] latencies(Endpoint endpoint) {
+            return Arrays.copyOf(latencies[endpoint.ordinal()], counts[endpoint.ordinal()]);
+        }
+    }
+
+    private static void deleteRecursively(Path root) throws IOException {
+        try (Stream<Path> paths = Files.walk(root)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> {
+                try {
+                    Files.delete(path);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package com.courier.bench;
+
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Minimal benchmark harness: time-boxed warmup and measurement, throughput, and the
+ * allocation and GC numbers a JMH gc profiler would report. Allocation is read from
+ * the benchmark thread only, so work handed to other threads is not counted.
+ */
+public final class Bench {
+    private static final long DEFAULT_WARMUP_MILLIS = Long.getLong("bench.warmupMillis", 2000);
+    private static final long DEFAULT_MEASURE_MILLIS = Long.getLong("bench.measureMillis", 5000);
+    private static final long MAX_BATCH_NANOS = 10_000_000;
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    // Written by benchmarks so the JIT cannot drop their results
+    public static long sink;
+
+    private Bench() {}
+
+    public static Result measure(String name, Op op) throws Exception {
+        return measure(name, DEFAULT_WARMUP_MILLIS, DEFAULT_MEASURE_MILLIS, op);
+    }
+
+    public static Result measure(String name, long warmupMillis, long measureMillis, Op op) throws Exception {
+        int[] counter = new int[1];
+        runFor(warmupMillis * 1_000_000, op, counter);
+
+        long threadId = Thread.currentThread().getId();
+        long gcCountBefore = gcCount();
+        long gcMillisBefore = gcMillis();
+        long allocatedBefore = THREADS.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        long ops = runFor(measureMillis * 1_000_000, op, counter);
+        long elapsed = System.nanoTime() - start;
+        long allocated = THREADS.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+        return new Result(name, ops, elapsed, allocated, gcCount() - gcCountBefore, gcMillis() - gcMillisBefore);
+    }
+
+    // Runs batches until the budget is spent; batches grow so fast ops do not pay for a clock read each
+    private static long runFor(long budgetNanos, Op op, int[] counter) throws Exception {
+        long deadline = System.nanoTime() + budgetNanos;
+        long ops = 0;
+        int batch = 1;
+        while (true) {
+            long batchStart = System.nanoTime();
+            for (int i = 0; i < batch; i++) {
+                op.run(counter[0]++);
+            }
+            ops += batch;
+            long now = System.nanoTime();
+            if (now >= deadline) {
+                return ops;
+            }
+            if (now - batchStart < MAX_BATCH_NANOS && batch < (1 << 20)) {
+                batch <<= 1;
+            }
+        }
+    }
+
+    public static void printHeader() {
+        System.out.printf("%-34s %14s %12s %12s %10s %6s %8s%n",
+            "Benchmark", "ops/s", "ns/op", "B/op", "MB/s", "gc", "gc ms");
+    }
+
+    public static void print(Result result) {
+        System.out.printf("%-34s %14.1f %12.1f %12.1f %10.1f %6d %8d%n",
+            result.getName(), result.getOpsPerSecond(), result.getNanosPerOp(), result.getBytesPerOp(),
+            result.getAllocationMbPerSecond(), result.getGcCount(), result.getGcMillis());
+    }
+
+    // Starts this classpath in a fresh JVM, forwarding -X/-D options so heap and storage settings carry over
+    public static int fork(Class<?> mainClass, List<String> jvmOptions, List<String> args) throws Exception {
+        return start(mainClass, jvmOptions, args).waitFor();
+    }
+
+    // Like fork, without waiting, so several JVMs can run side by side
+    public static Process start(Class<?> mainClass, List<String> jvmOptions, List<String> args) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(System.getProperty("java.home") + "/bin/java");
+        for (String option : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+            if (option.startsWith("-X") || option.startsWith("-D")) {
+                command.add(option);
+            }
+        }
+        command.addAll(jvmOptions);
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(mainClass.getName());
+        command.addAll(args);
+        return new ProcessBuilder(command).inheritIO().start();
+    }
+
+    private static long gcCount() {
+        long total = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(0, gc.getCollectionCount());
+        }
+        return total;
+    }
+
+    private static long gcMillis() {
+        long total = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(0, gc.getCollectionTime());
+        }
+        return total;
+    }
+
+    public interface Op {
+        void run(int i) throws Exception;
+    }
+
+    public static class Result {
+        private final String name;
+        private final long ops;
+        private final long nanos;
+        private final long allocatedBytes;
+        private final long gcCount;
+        private final long gcMillis;
+
+        Result(String name, long ops, long nanos, long allocatedBytes, long gcCount, long gcMillis) {
+            this.name = name;
+            this.ops = ops;
+            this.nanos = nanos;
+            this.allocatedBytes = allocatedBytes;
+            this.gcCount = gcCount;
+            this.gcMillis = gcMillis;
+        }
+
+        public String getName() { return name; }
+        public long getOps() { return ops; }
+        public long getGcCount() { return gcCount; }
+        public long getGcMillis() { return gcMillis; }
+
+        public double getOpsPerSecond() {
+            return ops * 1e9 / nanos;
+        }
+
+        public double getNanosPerOp() {
+            return (double) nanos / ops;
+        }
+
+        public double getBytesPerOp() {
+            return (double) allocatedBytes / ops;
+        }
+
+        public double getAllocationMbPerSecond() {
+            return allocatedBytes / 1048576.0 / (nanos / 1e9);
+        }
+    }
+}
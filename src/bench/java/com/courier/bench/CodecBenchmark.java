@@ -0,0 +1,103 @@
+package com.courier.bench;
+
+import com.courier.model.Order;
+import com.courier.model.RecordCodec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+/**
+ * Compares the String.split based order codec the model used to have with RecordCodec.
+ * Each case runs in its own JVM so its loop is compiled against a single call target.
+ *
+ *   java -cp bin:bench-bin com.courier.bench.CodecBenchmark [case]
+ */
+public class CodecBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0) {
+            runCase(args[0]);
+            return;
+        }
+        Bench.printHeader();
+        for (String name : CASES) {
+            Bench.fork(CodecBenchmark.class, Collections.emptyList(), Collections.singletonList(name));
+        }
+    }
+
+    private static final String[] CASES = {
+        "parse-legacy", "parse-codec", "parse-codec-bytes", "format-legacy", "format-codec", "format-codec-reused"
+    };
+
+    private static void runCase(String name) throws Exception {
+        Order[] orders = sampleOrders(1024);
+        String[] lines = new String[orders.length];
+        ByteBuffer[] buffers = new ByteBuffer[orders.length];
+        for (int i = 0; i < orders.length; i++) {
+            lines[i] = LegacyCodec.format(orders[i]);
+            buffers[i] = ByteBuffer.wrap(lines[i].getBytes(StandardCharsets.UTF_8));
+        }
+        StringBuilder reused = new StringBuilder(256);
+        switch (name) {
+            case "parse-legacy":
+                print(name, i -> Bench.sink += LegacyCodec.parse(lines[i & 1023], "bench").getTrackingId().length());
+                break;
+            case "parse-codec":
+                print(name, i -> Bench.sink += RecordCodec.parseOrder(lines[i & 1023], "bench").getTrackingId().length());
+                break;
+            case "parse-codec-bytes":
+                print(name, i -> Bench.sink += RecordCodec.parseOrder(buffers[i & 1023], "bench").getTrackingId().length());
+                break;
+            case "format-legacy":
+                print(name, i -> Bench.sink += LegacyCodec.format(orders[i & 1023]).length());
+                break;
+            case "format-codec":
+                print(name, i -> Bench.sink += RecordCodec.formatOrder(orders[i & 1023]).length());
+                break;
+            case "format-codec-reused":
+                print(name, i -> {
+                    reused.setLength(0);
+                    RecordCodec.writeOrder(orders[i & 1023], reused);
+                    Bench.sink += reused.length();
+                });
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown case: " + name);
+        }
+    }
+
+    private static void print(String name, Bench.Op op) throws Exception {
+        Bench.print(Bench.measure(name, op));
+    }
+
+    private static Order[] sampleOrders(int count) {
+        String[] cities = {"Lahore", "Karachi", "Islamabad", "Multan", "Peshawar", "Quetta"};
+        Order.OrderStatus[] statuses = Order.OrderStatus.values();
+        Order[] orders = new Order[count];
+        for (int i = 0; i < count; i++) {
+            orders[i] = new Order(String.valueOf(100000000000L + i * 7919L), "Sender " + i, "0300" + (1000000 + i),
+                cities[i % cities.length], "Receiver " + i, "0321" + (2000000 + i), "House " + i + " Street " + (i % 40),
+                cities[(i + 3) % cities.length], 250 + (i % 37) * 50.5, statuses[i % statuses.length], "bench");
+        }
+        return orders;
+    }
+
+    // The codec Order used before RecordCodec, kept here as the baseline
+    private static final class LegacyCodec {
+        static String format(Order o) {
+            return o.getTrackingId() + "," + o.getSenderName() + "," + o.getSenderContact() + "," + o.getSenderCity() + "," +
+                   o.getReceiverName() + "," + o.getReceiverContact() + "," + o.getReceiverAddress() + "," + o.getReceiverCity() + "," +
+                   o.getRate() + "," + o.getStatus().getDisplayName();
+        }
+
+        static Order parse(String data, String username) {
+            String[] parts = data.split(",");
+            if (parts.length >= 10) {
+                return new Order(parts[0], parts[1], parts[2], parts[3], parts[4],
+                               parts[5], parts[6], parts[7], Double.parseDouble(parts[8]),
+                               Order.OrderStatus.fromString(parts[9]), username);
+            }
+            return null;
+        }
+    }
+}
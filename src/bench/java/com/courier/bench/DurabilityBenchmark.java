@@ -0,0 +1,172 @@
+package com.courier.bench;
+
+import com.courier.model.Order;
+import com.courier.repository.FileOrderRepository;
+import com.courier.repository.LedgerFinanceRepository;
+import com.courier.repository.LogOrderRepository;
+import com.courier.repository.MappedOrderRepository;
+import com.courier.repository.OrderRepository;
+import com.courier.service.OrderService;
+import com.courier.service.SnowflakeIdGenerator;
+import com.courier.storage.Durability;
+import com.courier.storage.FinanceLedger;
+import com.courier.storage.MappedOrderStore;
+import com.courier.storage.OrderLog;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Order intake (an order write plus a ledger append) under each durability mode, with
+ * one writer and with many. Every run starts from an empty directory, so the numbers
+ * show what forcing costs rather than how large the store is.
+ *
+ *   java -cp bin:bench-bin com.courier.bench.DurabilityBenchmark [storages] [threads] [windows]
+ *   java -cp bin:bench-bin com.courier.bench.DurabilityBenchmark files,log,mapped 1,16 0,1000
+ */
+public class DurabilityBenchmark {
+    private static final long WARMUP_MILLIS = Long.getLong("bench.warmupMillis", 1000);
+    private static final long MEASURE_MILLIS = Long.getLong("bench.measureMillis", 5000);
+    private static final String[] CITIES = {"Lahore", "Karachi", "Islamabad", "Multan", "Peshawar"};
+
+    public static void main(String[] args) throws Exception {
+        String[] storages = (args.length > 0 ? args[0] : "files,log,mapped").split(",");
+        int[] threadCounts = Arrays.stream((args.length > 1 ? args[1] : "1,16").split(","))
+            .mapToInt(Integer::parseInt).toArray();
+        long[] windows = Arrays.stream((args.length > 2 ? args[2] : "0,1000").split(","))
+            .mapToLong(Long::parseLong).toArray();
+
+        System.out.printf("%-34s %8s %12s %12s %12s%n", "Benchmark", "threads", "orders/s", "mean us", "p99 us");
+        for (String storage : storages) {
+            for (int threads : threadCounts) {
+                run(storage, "none", Durability.Mode.NONE, 0, threads);
+                run(storage, "fsync", Durability.Mode.FSYNC, 0, threads);
+                for (long window : windows) {
+                    run(storage, "group(" + window + "us)", Durability.Mode.GROUP_COMMIT, window, threads);
+                }
+            }
+        }
+    }
+
+    private static void run(String storage, String mode, Durability.Mode durabilityMode, long windowMicros,
+                            int threads) throws Exception {
+        Path dir = Files.createTempDirectory("courier-durability-");
+        Durability durability = Durability.open(durabilityMode, windowMicros);
+        List<Closeable> resources = new ArrayList<>();
+        try {
+            FinanceLedger ledger = FinanceLedger.open(dir.resolve("ledger.dat"), durability);
+            resources.add(ledger);
+            OrderRepository orders = openOrders(storage, dir, durability, resources);
+            OrderService service = new OrderService(orders, new LedgerFinanceRepository(ledger),
+                new SnowflakeIdGenerator(0));
+
+            placeFor(service, threads, WARMUP_MILLIS, null);
+            long[][] latencies = new long[threads][];
+            long start = System.nanoTime();
+            long placed = placeFor(service, threads, MEASURE_MILLIS, latencies);
+            double seconds = (System.nanoTime() - start) / 1e9;
+
+            long[] all = Arrays.stream(latencies).flatMapToLong(Arrays::stream).sorted().toArray();
+            double mean = Arrays.stream(all).average().orElse(0) / 1000;
+            double p99 = all.length > 0 ? all[(int) Math.min(all.length - 1, all.length * 0.99)] / 1000.0 : 0;
+            System.out.printf("%-34s %8d %12.1f %12.1f %12.1f%n", storage + "." + mode, threads, placed / seconds,
+                mean, p99);
+        } finally {
+            durability.close();
+            for (Closeable resource : resources) {
+                resource.close();
+            }
+            deleteRecursively(dir);
+        }
+    }
+
+    private static OrderRepository openOrders(String storage, Path dir, Durability durability,
+                                              List<Closeable> resources) throws IOException {
+        switch (storage) {
+            case "log": {
+                OrderLog log = OrderLog.open(dir.resolve("orderlog"), durability);
+                resources.add(log);
+                return new LogOrderRepository(log);
+            }
+            case "mapped": {
+                MappedOrderStore store = MappedOrderStore.open(dir.resolve("orderstore").resolve("orders.dat"),
+                    durability);
+                resources.add(store);
+                return new MappedOrderRepository(store);
+            }
+            default:
+                return FileOrderRepository.open(dir.resolve("orders"), null, null, durability);
+        }
+    }
+
+    // Orders placed by all threads until the time is up; each thread records its latencies if asked
+    private static long placeFor(OrderService service, int threads, long millis, long[][] latencies)
+            throws InterruptedException {
+        long deadline = System.nanoTime() + millis * 1_000_000;
+        AtomicLong placed = new AtomicLong();
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            int worker = t;
+            workers[t] = new Thread(() -> {
+                Random random = new Random(worker);
+                long[] samples = new long[1024];
+                int count = 0;
+                while (System.nanoTime() < deadline) {
+                    long start = System.nanoTime();
+                    if (service.placeOrder(newOrder(random, worker)) == null) {
+                        throw new IllegalStateException("placeOrder failed");
+                    }
+                    if (count == samples.length) {
+                        samples = Arrays.copyOf(samples, count * 2);
+                    }
+                    samples[count++] = System.nanoTime() - start;
+                }
+                placed.addAndGet(count);
+                if (latencies != null) {
+                    latencies[worker] = Arrays.copyOf(samples, count);
+                }
+            });
+            workers[t].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        return placed.get();
+    }
+
+    private static Order newOrder(Random random, int worker) {
+        Order order = new Order();
+        order.setUsername("user" + (worker * 100 + random.nextInt(100)));
+        order.setSenderName("Sender " + random.nextInt(10000));
+        order.setSenderContact("0300" + (1000000 + random.nextInt(8999999)));
+        order.setSenderCity(CITIES[random.nextInt(CITIES.length)]);
+        order.setSenderProvince("Punjab");
+        order.setReceiverName("Receiver " + random.nextInt(10000));
+        order.setReceiverContact("0321" + (1000000 + random.nextInt(8999999)));
+        order.setReceiverAddress("Street " + random.nextInt(500));
+        order.setReceiverCity(CITIES[random.nextInt(CITIES.length)]);
+        order.setRate(250 + random.nextInt(40) * 50);
+        order.setStatus(Order.OrderStatus.IN_PROCESS);
+        return order;
+    }
+
+    private static void deleteRecursively(Path root) throws IOException {
+        try (Stream<Path> paths = Files.walk(root)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> {
+                try {
+                    Files.delete(path);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            });
+        }
+    }
+}
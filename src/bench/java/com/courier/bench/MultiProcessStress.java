@@ -0,0 +1,247 @@
+package com.courier.bench;
+
+import com.courier.model.Order;
+import com.courier.repository.Repositories;
+import com.courier.service.AdminService;
+import com.courier.service.FileManager;
+import com.courier.service.OrderService;
+import com.courier.storage.FinanceRollups;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Several JVMs placing, updating and cancelling orders in one files-mode CourierMS home
+ * at once. Workers update each other's orders with versioned status changes, several
+ * threads each. This JVM opens the home first, so it keeps the rollups and indexes and
+ * must learn every worker's change from the change feed. Afterwards it checks that no
+ * tracking ID was handed out twice, that the ledger billed every placed order once,
+ * that each order's version counts exactly the updates its workers won, and that the
+ * rollups and status index agree with a scan.
+ *
+ *   java -cp bin:bench-bin com.courier.bench.MultiProcessStress [workers] [seconds] [--keep]
+ */
+public class MultiProcessStress {
+    private static final int THREADS_PER_WORKER = 4;
+    private static final Order.OrderStatus[] STATUSES = {
+        Order.OrderStatus.IN_PROCESS, Order.OrderStatus.SHIPPED, Order.OrderStatus.DELIVERED};
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 4 && args[0].equals("--worker")) {
+            runWorker(Integer.parseInt(args[1]), Integer.parseInt(args[2]), Paths.get(args[3]));
+            return;
+        }
+        List<String> options = new ArrayList<>(Arrays.asList(args));
+        boolean keep = options.remove("--keep");
+        int workers = options.size() > 0 ? Integer.parseInt(options.get(0)) : 4;
+        int seconds = options.size() > 1 ? Integer.parseInt(options.get(1)) : 10;
+
+        Path root = Files.createTempDirectory("courier-stress-");
+        Path home = root.resolve("CourierMS");
+        // Before FileManager loads, which reads both once
+        System.setProperty("courier.home", home.toString());
+        System.setProperty("courier.storage", "files");
+        boolean ok;
+        try {
+            ok = run(root, workers, seconds);
+        } finally {
+            if (keep) {
+                System.out.println("Data kept at " + root);
+            } else {
+                deleteRecursively(root);
+            }
+        }
+        System.out.println(ok ? "OK" : "FAILED");
+        System.exit(ok ? 0 : 1);
+    }
+
+    private static boolean run(Path root, int workers, int seconds) throws Exception {
+        Repositories repositories = FileManager.getRepositories();
+        OrderService orderService = new OrderService(repositories);
+        AdminService adminService = new AdminService(repositories.getAdmin(), repositories.getFinance(),
+            repositories.getRollups(), repositories.getOrders());
+
+        List<Process> processes = new ArrayList<>();
+        for (int worker = 0; worker < workers; worker++) {
+            processes.add(Bench.start(MultiProcessStress.class,
+                Arrays.asList("-Dcourier.home=" + FileManager.getBaseDir(), "-Dcourier.storage=files"),
+                Arrays.asList("--worker", Integer.toString(worker), Integer.toString(seconds),
+                    root.resolve("worker-" + worker + ".txt").toString())));
+        }
+        boolean ok = true;
+        for (int worker = 0; worker < workers; worker++) {
+            int exit = processes.get(worker).waitFor();
+            if (exit != 0) {
+                System.out.printf("worker %d exited with %d%n", worker, exit);
+                ok = false;
+            }
+        }
+
+        // What the workers say they did
+        List<String> placed = new ArrayList<>();
+        Set<String> cancelled = new HashSet<>();
+        Map<String, Integer> wins = new HashMap<>();
+        for (int worker = 0; worker < workers; worker++) {
+            Path results = root.resolve("worker-" + worker + ".txt");
+            if (!Files.exists(results)) {
+                continue;
+            }
+            for (String line : Files.readAllLines(results)) {
+                String trackingId = line.substring(2);
+                switch (line.charAt(0)) {
+                    case 'P': placed.add(trackingId); break;
+                    case 'C': cancelled.add(trackingId); break;
+                    case 'W': wins.merge(trackingId, 1, Integer::sum); break;
+                    default: break;
+                }
+            }
+        }
+        System.out.printf("%,d placed, %,d cancelled, %,d status updates won%n", placed.size(), cancelled.size(),
+            wins.values().stream().mapToInt(Integer::intValue).sum());
+
+        ok &= check("tracking IDs unique", new HashSet<>(placed).size(), placed.size());
+        ok &= check("ledger records", repositories.getFinance().getCount(), placed.size());
+        ok &= check("live orders", orderService.getOrderCount(), placed.size() - cancelled.size());
+
+        Map<Order.OrderStatus, Integer> byStatus = new EnumMap<>(Order.OrderStatus.class);
+        AtomicInteger versionMismatches = new AtomicInteger();
+        AtomicInteger scanned = new AtomicInteger();
+        Map<String, Order> live = new ConcurrentHashMap<>();
+        orderService.forEachOrder(order -> {
+            scanned.incrementAndGet();
+            live.put(order.getTrackingId(), order);
+            if (order.getVersion() != wins.getOrDefault(order.getTrackingId(), 0)) {
+                versionMismatches.incrementAndGet();
+            }
+        });
+        for (Order order : live.values()) {
+            byStatus.merge(order.getStatus(), 1, Integer::sum);
+        }
+        ok &= check("orders readable", scanned.get(), placed.size() - cancelled.size());
+        ok &= check("versions not matching wins", versionMismatches.get(), 0);
+
+        // Kept current from the change feed alone
+        Map<String, FinanceRollups.Bucket> rollup = adminService.getFinanceRollup(FinanceRollups.Dimension.STATUS);
+        for (Order.OrderStatus status : Order.OrderStatus.values()) {
+            int expected = byStatus.getOrDefault(status, 0);
+            FinanceRollups.Bucket bucket = rollup.get(status.getDisplayName());
+            ok &= check("rollup " + status.getDisplayName(), bucket != null ? bucket.getCount() : 0, expected);
+            int indexed = 0;
+            for (Order order : orderService.findByStatus(status).nextPage(Integer.MAX_VALUE)) {
+                indexed += order.getStatus() == status ? 1 : 0;
+            }
+            ok &= check("status index " + status.getDisplayName(), indexed, expected);
+        }
+        ok &= check("rollup total", adminService.getFinanceSummary().getCount(), placed.size());
+        return ok;
+    }
+
+    private static void runWorker(int worker, int seconds, Path results) throws Exception {
+        Repositories repositories = FileManager.getRepositories();
+        OrderService orderService = new OrderService(repositories);
+        String username = "worker" + worker;
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        List<String> lines = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger conflicts = new AtomicInteger();
+
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < THREADS_PER_WORKER; t++) {
+            Random random = new Random(worker * 31L + t);
+            threads.add(new Thread(() -> {
+                List<String> own = new ArrayList<>();
+                List<String> everyone = new ArrayList<>();
+                for (int i = 0; System.nanoTime() < deadline; i++) {
+                    if (i % 64 == 0) {
+                        // Includes what the other workers placed, once the feed has been read
+                        everyone = orderService.getAllTrackingIds();
+                    }
+                    int roll = random.nextInt(100);
+                    if (roll < 15 || everyone.isEmpty()) {
+                        String trackingId = orderService.placeOrder(newOrder(username, random));
+                        if (trackingId != null) {
+                            own.add(trackingId);
+                            lines.add("P " + trackingId);
+                        }
+                    } else if (roll < 17 && !own.isEmpty()) {
+                        String trackingId = own.remove(random.nextInt(own.size()));
+                        if (orderService.cancelOrder(trackingId)) {
+                            lines.add("C " + trackingId);
+                        }
+                    } else {
+                        String trackingId = everyone.get(random.nextInt(Math.min(everyone.size(), 200)));
+                        Order order = orderService.findOrder(trackingId);
+                        if (order == null) {
+                            continue; // cancelled
+                        }
+                        Order.OrderStatus next = STATUSES[random.nextInt(STATUSES.length)];
+                        OrderService.UpdateResult result =
+                            orderService.updateOrderStatus(trackingId, order.getVersion(), next);
+                        if (result == OrderService.UpdateResult.UPDATED) {
+                            lines.add("W " + trackingId);
+                        } else if (result == OrderService.UpdateResult.CONFLICT) {
+                            conflicts.incrementAndGet();
+                        }
+                    }
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Files.write(results, lines);
+        System.out.printf("worker %d: %,d operations recorded, %,d version conflicts%n", worker, lines.size(),
+            conflicts.get());
+    }
+
+    private static boolean check(String what, long actual, long expected) {
+        boolean ok = actual == expected;
+        System.out.printf("%-28s %10d %s%n", what, actual, ok ? "ok" : "expected " + expected);
+        return ok;
+    }
+
+    private static Order newOrder(String username, Random random) {
+        Order order = new Order();
+        order.setUsername(username);
+        order.setSenderName("Sender " + random.nextInt(10000));
+        order.setSenderContact("0300" + (1000000 + random.nextInt(8999999)));
+        order.setSenderCity("Lahore");
+        order.setSenderProvince("Punjab");
+        order.setReceiverName("Receiver " + random.nextInt(10000));
+        order.setReceiverContact("0321" + (1000000 + random.nextInt(8999999)));
+        order.setReceiverAddress("Street " + random.nextInt(500));
+        order.setReceiverCity("Karachi");
+        order.setRate(250 + random.nextInt(40) * 50);
+        order.setStatus(Order.OrderStatus.IN_PROCESS);
+        return order;
+    }
+
+    private static void deleteRecursively(Path root) throws IOException {
+        try (Stream<Path> paths = Files.walk(root)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> {
+                try {
+                    Files.delete(path);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.courier.bench;
+
+import com.courier.model.Order;
+import com.courier.repository.FileOrderRepository;
+import com.courier.repository.MappedOrderRepository;
+import com.courier.repository.OrderRepository;
+import com.courier.storage.MappedOrderStore;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Text layout (one file per order) against the memory-mapped slot store, each in its
+ * own JVM so neither layout's code shapes the other's JIT profile.
+ *
+ *   java -cp bin:bench-bin com.courier.bench.OrderStoreBenchmark [orders]
+ */
+public class OrderStoreBenchmark {
+    private static final String[] LAYOUTS = {"files", "mapped"};
+    private static final String[] CITIES = {"Lahore", "Karachi", "Islamabad", "Multan", "Peshawar", "Quetta", "Faisalabad"};
+    private static final int USERS = 1000;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 3 && args[0].equals("--run")) {
+            run(args[1], Integer.parseInt(args[2]));
+            return;
+        }
+        String size = args.length > 0 ? args[0] : "100000";
+        for (String layout : LAYOUTS) {
+            Bench.fork(OrderStoreBenchmark.class, Collections.emptyList(), Arrays.asList("--run", layout, size));
+        }
+    }
+
+    private static void run(String layout, int size) throws Exception {
+        Path dir = Files.createTempDirectory("courier-store-" + layout + "-");
+        try {
+            long start = System.nanoTime();
+            List<String> ids = new ArrayList<>(size);
+            try (Store store = open(layout, dir)) {
+                Random random = new Random(42);
+                for (int i = 0; i < size; i++) {
+                    Order order = newOrder(random, i);
+                    store.orders.insert(order);
+                    ids.add(order.getTrackingId());
+                }
+            }
+            double generated = (System.nanoTime() - start) / 1e9;
+
+            start = System.nanoTime();
+            try (Store store = open(layout, dir)) {
+                System.out.printf("%n== %s layout, %,d orders (written in %.1f s, reopened in %.2f s)%n",
+                    layout, size, generated, (System.nanoTime() - start) / 1e9);
+
+                OrderRepository orders = store.orders;
+                Collections.shuffle(ids, new Random(7));
+                String[] shuffled = ids.toArray(new String[0]);
+                Order.OrderStatus[] statuses = Order.OrderStatus.values();
+                Random random = new Random(99);
+                int[] next = {size};
+
+                Bench.printHeader();
+                Bench.print(Bench.measure(layout + ".findByTrackingId", i ->
+                    Bench.sink += orders.findByTrackingId(shuffled[i % shuffled.length]).getReceiverCity().length()));
+                Bench.print(Bench.measure(layout + ".updateStatus", i ->
+                    Bench.sink += orders.updateStatus(shuffled[i % shuffled.length], statuses[i % statuses.length], System.currentTimeMillis()) ? 1 : 0));
+                Bench.print(Bench.measure(layout + ".forEach(1k)", i -> {
+                    long[] seen = new long[1];
+                    int limit = Math.min(1000, size);
+                    try {
+                        orders.forEach(order -> {
+                            if (++seen[0] == limit) {
+                                throw new StopScan();
+                            }
+                        });
+                    } catch (StopScan e) {
+                        // Bounded so large datasets still measure in the time box
+                    }
+                    Bench.sink += seen[0];
+                }));
+                Bench.print(Bench.measure(layout + ".insert", i -> orders.insert(newOrder(random, next[0]++))));
+            }
+        } finally {
+            deleteRecursively(dir);
+        }
+    }
+
+    private static Store open(String layout, Path dir) throws IOException {
+        if (layout.equals("mapped")) {
+            MappedOrderStore store = MappedOrderStore.open(dir.resolve("orders.dat"));
+            return new Store(new MappedOrderRepository(store), store);
+        }
+        return new Store(FileOrderRepository.open(dir), null);
+    }
+
+    private static Order newOrder(Random random, int i) {
+        return new Order(String.valueOf(1_000_000_000_000L + i),
+            "Sender " + random.nextInt(10000), "0300" + (1000000 + random.nextInt(8999999)),
+            CITIES[random.nextInt(CITIES.length)], "Receiver " + random.nextInt(10000),
+            "0321" + (1000000 + random.nextInt(8999999)),
+            "Street " + random.nextInt(500) + ", Sector " + (char) ('A' + random.nextInt(26)),
+            CITIES[random.nextInt(CITIES.length)], 250 + random.nextInt(40) * 50,
+            Order.OrderStatus.IN_PROCESS, "user" + (i % USERS));
+    }
+
+    private static void deleteRecursively(Path root) throws IOException {
+        try (Stream<Path> paths = Files.walk(root)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> {
+                try {
+                    Files.delete(path);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            });
+        }
+    }
+
+    private static class Store implements Closeable {
+        private final OrderRepository orders;
+        private final Closeable resource;
+
+        Store(OrderRepository orders, Closeable resource) {
+            this.orders = orders;
+            this.resource = resource;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (resource != null) {
+                resource.close();
+            }
+        }
+    }
+
+    private static class StopScan extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        StopScan() {
+            super(null, null, false, false);
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.courier.bench;
+
+import com.courier.model.Order;
+import com.courier.storage.Durability;
+import com.courier.storage.FinanceLedger;
+import com.courier.storage.OrderLog;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Reopens stores after the damage a crash can leave behind, written into the files by
+ * hand, and checks what recovery makes of it.
+ *
+ *   java -cp bin:bench-bin com.courier.bench.RecoveryCheck
+ */
+public class RecoveryCheck {
+    private static final long SEGMENT_SIZE = 16 * 1024;
+    private static final int ORDERS = 500;
+
+    public static void main(String[] args) throws Exception {
+        Path root = Files.createTempDirectory("courier-recovery-");
+        boolean ok;
+        try {
+            ok = ledgerHeaderLost(root.resolve("ledger"));
+            ok &= orderLogTornTail(root.resolve("torn"));
+            ok &= orderLogCorruptSegment(root.resolve("corrupt"));
+        } finally {
+            deleteRecursively(root);
+        }
+        System.out.println(ok ? "OK" : "FAILED");
+        System.exit(ok ? 0 : 1);
+    }
+
+    // A record written past the header count, as when a crash came between the record and
+    // the header: reopening keeps it and counts it in the total
+    private static boolean ledgerHeaderLost(Path dir) throws IOException {
+        Path file = dir.resolve("ledger.dat");
+        try (FinanceLedger ledger = FinanceLedger.open(file)) {
+            ledger.append("1001", 250);
+            ledger.append("1002", 300);
+        }
+        ByteBuffer record = ByteBuffer.allocate(32);
+        record.put("1003".getBytes(StandardCharsets.UTF_8));
+        record.position(24);
+        record.putDouble(450);
+        record.flip();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(record, channel.size());
+        }
+        boolean ok = true;
+        try (FinanceLedger ledger = FinanceLedger.open(file)) {
+            ok &= check("ledger count after lost header", ledger.getCount(), 3);
+            ok &= check("ledger total after lost header", (long) ledger.getTotal(), 1000);
+            ok &= check("ledger records after lost header", ledger.readAll().size(), 3);
+        }
+        return ok;
+    }
+
+    // Half a record at the end of the active segment, as when a crash cut an append short:
+    // reopening drops it and keeps every order before it
+    private static boolean orderLogTornTail(Path dir) throws IOException {
+        try (OrderLog log = OrderLog.open(dir, SEGMENT_SIZE, Durability.NONE)) {
+            for (int i = 0; i < ORDERS; i++) {
+                log.appendPlace(newOrder(i));
+            }
+        }
+        List<Path> segments = segments(dir);
+        Path last = segments.get(segments.size() - 1);
+        try (FileChannel channel = FileChannel.open(last, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[] {0, 0, 1, 0, 7}), channel.size());
+        }
+        try (OrderLog log = OrderLog.open(dir, SEGMENT_SIZE, Durability.NONE)) {
+            return check("order log orders after torn tail", log.size(), ORDERS);
+        }
+    }
+
+    // A flipped byte in a segment that was already rolled over: the records after it are
+    // not a torn tail, so the open must fail rather than drop them and compact them away
+    private static boolean orderLogCorruptSegment(Path dir) throws IOException {
+        try (OrderLog log = OrderLog.open(dir, SEGMENT_SIZE, Durability.NONE)) {
+            for (int i = 0; i < ORDERS; i++) {
+                log.appendPlace(newOrder(i));
+            }
+        }
+        List<Path> segments = segments(dir);
+        if (!check("order log segments", segments.size() > 1 ? 1 : 0, 1)) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(segments.get(0), StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            ByteBuffer one = ByteBuffer.allocate(1);
+            long position = channel.size() / 2;
+            channel.read(one, position);
+            one.put(0, (byte) (one.get(0) ^ 0xFF));
+            one.rewind();
+            channel.write(one, position);
+        }
+        boolean refused = false;
+        try {
+            OrderLog.open(dir, SEGMENT_SIZE, Durability.NONE).close();
+        } catch (IOException e) {
+            refused = true;
+        }
+        return check("order log open refused on corruption", refused ? 1 : 0, 1);
+    }
+
+    private static List<Path> segments(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(path -> path.getFileName().toString().endsWith(".log")).sorted()
+                .collect(Collectors.toList());
+        }
+    }
+
+    private static Order newOrder(int i) {
+        Order order = new Order(Long.toString(1000000 + i), "Sender " + i, "03001234567", "Lahore",
+            "Receiver " + i, "03211234567", "Street " + i, "Karachi", 250, Order.OrderStatus.IN_PROCESS, "user" + i);
+        order.setSenderProvince("Punjab");
+        return order;
+    }
+
+    private static boolean check(String what, long actual, long expected) {
+        boolean ok = actual == expected;
+        System.out.printf("%-36s %10d %s%n", what, actual, ok ? "ok" : "expected " + expected);
+        return ok;
+    }
+
+    private static void deleteRecursively(Path root) throws IOException {
+        try (Stream<Path> paths = Files.walk(root)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> {
+                try {
+                    Files.delete(path);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            });
+        }
+    }
+}
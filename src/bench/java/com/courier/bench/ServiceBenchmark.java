@@ -0,0 +1,196 @@
+package com.courier.bench;
+
+import com.courier.model.Order;
+import com.courier.model.User;
+import com.courier.repository.Repositories;
+import com.courier.service.AdminService;
+import com.courier.service.FileManager;
+import com.courier.service.OrderService;
+import com.courier.service.UserCache;
+import com.courier.service.UserService;
+import com.courier.storage.OrderColumns;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Service layer hot paths against synthetic datasets. Each dataset size runs in its own
+ * JVM with a temporary CourierMS home, so FileManager starts cold against exactly that
+ * data. The storage mode follows -Dcourier.storage as in the application.
+ *
+ *   java -cp bin:bench-bin com.courier.bench.ServiceBenchmark [sizes] [--keep]
+ *   java -Dcourier.storage=log -cp bin:bench-bin com.courier.bench.ServiceBenchmark 1000,100000,1000000
+ */
+public class ServiceBenchmark {
+    private static final String PIN = "1234";
+    private static final int ORDERS_PER_USER = 100;
+    private static final String[] CITIES = {"Lahore", "Karachi", "Islamabad", "Multan", "Peshawar", "Quetta", "Faisalabad"};
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 2 && args[0].equals("--run")) {
+            runDataset(Integer.parseInt(args[1]));
+            return;
+        }
+        List<String> options = new ArrayList<>(Arrays.asList(args));
+        boolean keep = options.remove("--keep");
+        String sizes = options.isEmpty() ? "1000,100000,1000000" : options.get(0);
+
+        for (String size : sizes.split(",")) {
+            Path home = Files.createTempDirectory("courier-bench-" + size.trim() + "-");
+            try {
+                Bench.fork(ServiceBenchmark.class,
+                    Collections.singletonList("-Dcourier.home=" + home.resolve("CourierMS")),
+                    Arrays.asList("--run", size.trim()));
+            } finally {
+                if (keep) {
+                    System.out.println("Dataset kept at " + home);
+                } else {
+                    deleteRecursively(home);
+                }
+            }
+        }
+    }
+
+    private static void runDataset(int size) throws Exception {
+        Repositories repositories = FileManager.getRepositories();
+        UserService userService = new UserService(repositories.getUsers());
+        OrderService orderService = new OrderService(repositories);
+        AdminService adminService = new AdminService(repositories.getAdmin(), repositories.getFinance(),
+            repositories.getRollups(), repositories.getOrders());
+
+        long start = System.nanoTime();
+        generate(size, userService, orderService);
+        System.out.printf("%n== %,d orders, storage=%s, home=%s (generated in %.1f s)%n", size,
+            FileManager.getStorageMode().name().toLowerCase(), FileManager.getBaseDir(),
+            (System.nanoTime() - start) / 1e9);
+
+        Random random = new Random(7);
+        List<String> trackingIds = orderService.getAllTrackingIds();
+        Collections.shuffle(trackingIds, random);
+        String[] ids = trackingIds.toArray(new String[0]);
+        String[] owners = new String[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            owners[i] = orderService.getOrderOwner(ids[i]);
+        }
+        List<String> usernameList = userService.getAllUsernames();
+        Collections.shuffle(usernameList, random);
+        String[] usernames = usernameList.toArray(new String[0]);
+        UserService uncachedUsers = new UserService(repositories.getUsers(), new UserCache(0, 0, TimeUnit.SECONDS));
+        Order.OrderStatus[] statuses = Order.OrderStatus.values();
+
+        Bench.printHeader();
+        Bench.print(Bench.measure("OrderService.getOrder", i -> {
+            int k = i % ids.length;
+            Bench.sink += orderService.getOrder(owners[k], ids[k]).getTrackingId().length();
+        }));
+        Bench.print(Bench.measure("OrderService.getUserOrders", i ->
+            Bench.sink += orderService.getUserOrders(usernames[i % usernames.length]).size()));
+        Bench.print(Bench.measure("OrderService.updateOrderStatus", i ->
+            Bench.sink += orderService.updateOrderStatus(ids[i % ids.length], statuses[(i / ids.length) % statuses.length]) ? 1 : 0));
+        Bench.print(Bench.measure("OrderService.updateOrderStatus(version)", i -> {
+            Order order = orderService.findOrder(ids[i % ids.length]);
+            Order.OrderStatus next = statuses[(order.getStatus().ordinal() + 1) % statuses.length];
+            Bench.sink += orderService.updateOrderStatus(order.getTrackingId(), order.getVersion(), next).ordinal();
+        }));
+        // 256 updates to different orders per op, spread over the common pool; only orders sharing a lock stripe wait
+        Bench.print(Bench.measure("OrderService.updateOrderStatus(parallel x256)", i ->
+            Bench.sink += IntStream.range(0, 256).parallel().filter(k -> orderService.updateOrderStatus(
+                ids[(i * 256 + k) % ids.length], statuses[((i * 256 + k) / ids.length) % statuses.length])).count()));
+        String[] contacts = new String[Math.min(ids.length, 1024)];
+        for (int i = 0; i < contacts.length; i++) {
+            contacts[i] = orderService.findOrder(ids[i]).getReceiverContact();
+        }
+        // Same queries without the indexes, i.e. a scan over every order
+        OrderService unindexed = new OrderService(repositories.getOrders(), repositories.getFinance());
+        Bench.print(Bench.measure("OrderService.findByReceiverCity(page)", i ->
+            Bench.sink += orderService.findByReceiverCity(CITIES[i % CITIES.length]).nextPage(50).size()));
+        Bench.print(Bench.measure("OrderService.findByReceiverCity(scan)", i ->
+            Bench.sink += unindexed.findByReceiverCity(CITIES[i % CITIES.length]).nextPage(50).size()));
+        Bench.print(Bench.measure("OrderService.findByStatus(page)", i ->
+            Bench.sink += orderService.findByStatus(statuses[i % statuses.length]).nextPage(50).size()));
+        Bench.print(Bench.measure("OrderService.findByContact", i ->
+            Bench.sink += orderService.findByContact(contacts[i % contacts.length]).nextPage(50).size()));
+        Bench.print(Bench.measure("OrderService.findByContact(scan)", i ->
+            Bench.sink += unindexed.findByContact(contacts[i % contacts.length]).nextPage(50).size()));
+        String[] queries = {"receiver 123", "street 42 sector", "lahore 99", "sender 7"};
+        Bench.print(Bench.measure("OrderService.searchOrders", i ->
+            Bench.sink += orderService.searchOrders(queries[i % queries.length], 50).size()));
+        Bench.print(Bench.measure("OrderService.searchOrders(scan)", i ->
+            Bench.sink += unindexed.searchOrders(queries[i % queries.length], 50).size()));
+        Bench.print(Bench.measure("AdminService.getFinanceRecords", i ->
+            Bench.sink += adminService.getFinanceRecords().size()));
+        Bench.print(Bench.measure("AdminService.getFinanceSummary", i ->
+            Bench.sink += adminService.getFinanceSummary().getCount()));
+        Bench.print(Bench.measure("AdminService.getOrderSnapshot", i ->
+            Bench.sink += adminService.getOrderSnapshot().size()));
+        OrderColumns snapshot = adminService.getOrderSnapshot();
+        Instant now = Instant.now();
+        Bench.print(Bench.measure("AdminService.getFinanceReport(snapshot)", i ->
+            Bench.sink += adminService.getFinanceReport(snapshot, now.minus(30, ChronoUnit.DAYS), now).getCount()));
+        Bench.print(Bench.measure("AdminService.getTotalRevenue", i ->
+            Bench.sink += (long) adminService.getTotalRevenue()));
+        Bench.print(Bench.measure("UserService.authenticateUser", i ->
+            Bench.sink += userService.authenticateUser(usernames[i % usernames.length], PIN) != null ? 1 : 0));
+        Bench.print(Bench.measure("UserService.authenticateUser(nocache)", i ->
+            Bench.sink += uncachedUsers.authenticateUser(usernames[i % usernames.length], PIN) != null ? 1 : 0));
+        // Last, because it grows the dataset
+        Bench.print(Bench.measure("OrderService.placeOrder", i ->
+            Bench.sink += orderService.placeOrder(newOrder(random, usernames[i % usernames.length])).length()));
+    }
+
+    private static void generate(int size, UserService userService, OrderService orderService) {
+        int userCount = Math.max(10, size / ORDERS_PER_USER);
+        String[] usernames = new String[userCount];
+        for (int u = 0; u < userCount; u++) {
+            usernames[u] = "user" + u;
+            String city = CITIES[u % CITIES.length];
+            userService.createUser(new User("Customer " + u, usernames[u], "0300" + (1000000 + u),
+                "House " + u + ", Block " + (u % 26), city, "Punjab", PIN));
+        }
+        Random random = new Random(42);
+        for (int i = 0; i < size; i++) {
+            if (orderService.placeOrder(newOrder(random, usernames[i % userCount])) == null) {
+                throw new IllegalStateException("Dataset generation failed at order " + i);
+            }
+        }
+    }
+
+    private static Order newOrder(Random random, String username) {
+        Order order = new Order();
+        order.setUsername(username);
+        order.setSenderName("Sender " + random.nextInt(10000));
+        order.setSenderContact("0300" + (1000000 + random.nextInt(8999999)));
+        order.setSenderCity(CITIES[random.nextInt(CITIES.length)]);
+        order.setSenderProvince("Punjab");
+        order.setReceiverName("Receiver " + random.nextInt(10000));
+        order.setReceiverContact("0321" + (1000000 + random.nextInt(8999999)));
+        order.setReceiverAddress("Street " + random.nextInt(500) + ", Sector " + (char) ('A' + random.nextInt(26)));
+        order.setReceiverCity(CITIES[random.nextInt(CITIES.length)]);
+        order.setRate(250 + random.nextInt(40) * 50);
+        order.setStatus(Order.OrderStatus.IN_PROCESS);
+        return order;
+    }
+
+    private static void deleteRecursively(Path root) throws IOException {
+        try (Stream<Path> paths = Files.walk(root)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> {
+                try {
+                    Files.delete(path);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.courier.bench;
+
+import com.courier.service.Tariff;
+import com.courier.service.TariffEngine;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Quotes from the old if/else ladder against the tariff table: the standard tariff, a
+ * larger one with province and city routes and surcharges, and a batch of parcels. B/op
+ * shows whether the quote path allocates. Before the runs it checks that the standard
+ * tariff charges what the ladder did at every weight from 0 to 25 kg in 10 g steps.
+ *
+ *   java -cp bin:bench-bin com.courier.bench.TariffBenchmark [case]
+ */
+public class TariffBenchmark {
+    private static final String[] CASES = {"ladder", "standard", "routed", "routed-batch-1024"};
+    private static final String[] PROVINCES = {"Punjab", "Sindh", "KPK", "Balochistan", "Islamabad", "AJK"};
+    private static final String[] CITIES = {"Lahore", "Karachi", "Peshawar", "Quetta", "Islamabad", "Muzaffarabad",
+        "Multan", "Gwadar"};
+    private static final String[] ROUTED = {
+        "[weights]",
+        "0.5, 1, 2, 3, 5, 7, 10, 15, 20, 25, 30, 40",
+        "[zones]",
+        "city, 200, 250, 350, 450, 650, 850, 1100, 1500, 1900, 2300, 2700, 3400, 60",
+        "local, 300, 350, 550, 700, 1000, 1300, 1800, 2300, 2800, 3300, 3800, 4800, 80",
+        "national, 400, 450, 700, 900, 1200, 1600, 2000, 2500, 3000, 3600, 4200, 5200, 100",
+        "remote, 600, 700, 1000, 1300, 1700, 2200, 2800, 3500, 4200, 5000, 5800, 7200, 150",
+        "[defaults]",
+        "same-province = local",
+        "other = national",
+        "[province routes]",
+        "Punjab, Islamabad, local",
+        "Balochistan, Sindh, national",
+        "Punjab, AJK, remote",
+        "[city routes]",
+        "Lahore, Lahore, city",
+        "Karachi, Karachi, city",
+        "Islamabad, Islamabad, city",
+        "Lahore, Gwadar, remote",
+        "[surcharges]",
+        "fuel, percent, 7.5",
+        "remote area, flat, 150, to-city, Gwadar",
+        "heavy, flat, 200, over-kg, 25",
+    };
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0) {
+            runCase(args[0]);
+            return;
+        }
+        Tariff standard = Tariff.standard();
+        int checked = 0;
+        int mismatches = 0;
+        for (int grams = 0; grams <= 25_000; grams += 10) {
+            double weight = grams / 1000.0;
+            for (boolean same : new boolean[] {true, false}) {
+                checked++;
+                if (standard.quote("Punjab", "Lahore", same ? "Punjab" : "Sindh", "Karachi", weight)
+                        != ladder(weight, same)) {
+                    mismatches++;
+                }
+            }
+        }
+        System.out.printf("standard tariff against the old ladder: %d quotes, %d mismatches%n", checked, mismatches);
+
+        Bench.printHeader();
+        for (String name : CASES) {
+            Bench.fork(TariffBenchmark.class, Collections.emptyList(), Collections.singletonList(name));
+        }
+    }
+
+    private static void runCase(String name) throws Exception {
+        double[] weights = new double[1024];
+        String[] fromProvinces = new String[1024];
+        String[] fromCities = new String[1024];
+        String[] toProvinces = new String[1024];
+        String[] toCities = new String[1024];
+        List<TariffEngine.Parcel> parcels = new ArrayList<>();
+        for (int i = 0; i < weights.length; i++) {
+            weights[i] = 0.1 + (i * 37 % 300) / 10.0;
+            fromProvinces[i] = PROVINCES[i % PROVINCES.length];
+            toProvinces[i] = PROVINCES[i * 7 % PROVINCES.length];
+            fromCities[i] = CITIES[i % CITIES.length];
+            toCities[i] = CITIES[i * 5 % CITIES.length];
+            parcels.add(new TariffEngine.Parcel(fromProvinces[i], fromCities[i], toProvinces[i], toCities[i],
+                weights[i]));
+        }
+        Tariff standard = Tariff.standard();
+        Tariff routed = Tariff.parse(Arrays.asList(ROUTED), "routed");
+        Path file = Files.createTempFile("tariff-", ".txt");
+        Files.write(file, Arrays.asList(ROUTED));
+        TariffEngine engine = TariffEngine.open(file, 0);
+        Files.delete(file);
+        switch (name) {
+            case "ladder":
+                print(name, i -> Bench.sink += (long) ladder(weights[i & 1023],
+                    fromProvinces[i & 1023].equalsIgnoreCase(toProvinces[i & 1023])));
+                break;
+            case "standard":
+                print(name, i -> Bench.sink += (long) standard.quote(fromProvinces[i & 1023], fromCities[i & 1023],
+                    toProvinces[i & 1023], toCities[i & 1023], weights[i & 1023]));
+                break;
+            case "routed":
+                print(name, i -> Bench.sink += (long) routed.quote(fromProvinces[i & 1023], fromCities[i & 1023],
+                    toProvinces[i & 1023], toCities[i & 1023], weights[i & 1023]));
+                break;
+            case "routed-batch-1024":
+                // One op prices all 1024 parcels
+                print(name, i -> Bench.sink += (long) engine.quote(parcels)[i & 1023]);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown case " + name);
+        }
+    }
+
+    private static void print(String name, Bench.Op op) throws Exception {
+        Bench.print(Bench.measure(name, op));
+    }
+
+    // OrderService.calculateRate as it was before the tariff table
+    private static double ladder(double weight, boolean sameProvince) {
+        double rate = 0;
+        if (sameProvince) {
+            if (weight > 0.0 && weight <= 1.0) rate = 300;
+            else if (weight > 1.0 && weight <= 3.0) rate = 700;
+            else if (weight > 3.0 && weight <= 6.0) rate = 1200;
+            else if (weight > 6.0 && weight <= 10.0) rate = 1800;
+            else if (weight > 10.0 && weight <= 20.0) rate = 2800;
+        } else {
+            if (weight > 0.0 && weight <= 1.0) rate = 400;
+            else if (weight > 1.0 && weight <= 3.0) rate = 900;
+            else if (weight > 3.0 && weight <= 6.0) rate = 1400;
+            else if (weight > 6.0 && weight <= 10.0) rate = 2000;
+            else if (weight > 10.0 && weight <= 20.0) rate = 3000;
+        }
+        return rate;
+    }
+}
@@ -0,0 +1,576 @@
+package com.courier.api;
+
+import com.courier.model.Order;
+import com.courier.model.User;
+import com.courier.repository.Repositories;
+import com.courier.service.AdminService;
+import com.courier.service.FileManager;
+import com.courier.service.OrderService;
+import com.courier.service.ServiceExecutors;
+import com.courier.service.TariffEngine;
+import com.courier.service.UserService;
+import com.sun.net.httpserver.BasicAuthenticator;
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpContext;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Headless JSON API over the services the Swing UI uses, for the call-centre tools and
+ * the website. Customers and the admin sign in with HTTP Basic auth, username and PIN;
+ * quotes and public tracking need no sign-in.
+ *
+ *   GET  /api/quote?weight=2.5&from=Punjab&to=Sindh   rate for a parcel; fromCity and toCity optional
+ *   POST /api/quote                                   {"parcels": [{...}, ...]} rates for many parcels
+ *   GET  /api/track/{trackingId}                      status and cities only
+ *   POST /api/orders                                  place an order (customer)
+ *   GET  /api/orders                                  the customer's order history
+ *   GET  /api/orders/{trackingId}                     one of the customer's orders
+ *   GET  /api/admin/orders/{trackingId}               any order (admin)
+ *   PUT  /api/admin/orders/{trackingId}/status        {"status": "SHIPPED", "version": 3} (admin)
+ *
+ * Requests run on virtual threads where the JDK has them (21+), otherwise on a pool of
+ * maxConcurrent threads. At most maxConcurrent run at once; the rest are answered 503
+ * with Retry-After instead of queueing without bound.
+ *
+ *   java -Dcourier.api.port=8080 -Dcourier.api.maxConcurrent=64 -cp bin com.courier.api.ApiServer
+ */
+public class ApiServer {
+    private static final int MAX_BODY_BYTES = 16 * 1024;
+    // Connections waiting to be accepted; the permits, not the backlog, limit the work in flight
+    private static final int BACKLOG = 1024;
+    private static final int MAX_PARCELS = 1000;
+    private static final String[] ORDER_FIELDS = {
+        "receiverName", "receiverContact", "receiverAddress", "receiverCity", "receiverProvince"};
+
+    private interface Route {
+        Response handle(HttpExchange exchange) throws IOException;
+    }
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Semaphore permits;
+    private final OrderService orderService;
+    private final UserService userService;
+    private final AdminService adminService;
+    // Set while an exchange over the limit runs on the dispatcher thread, just long enough to answer 503
+    private final ThreadLocal<Boolean> rejecting = ThreadLocal.withInitial(() -> false);
+    private final AtomicLong rejected = new AtomicLong();
+
+    private ApiServer(HttpServer server, ExecutorService executor, int maxConcurrent, OrderService orderService,
+                      UserService userService, AdminService adminService) {
+        this.server = server;
+        this.executor = executor;
+        this.permits = new Semaphore(maxConcurrent);
+        this.orderService = orderService;
+        this.userService = userService;
+        this.adminService = adminService;
+    }
+
+    // Port 0 picks a free one; getPort tells which
+    public static ApiServer start(InetSocketAddress address, int maxConcurrent, OrderService orderService,
+                                  UserService userService, AdminService adminService) throws IOException {
+        limitConnections(Integer.getInteger("courier.api.maxConnections", 1000));
+        HttpServer server = HttpServer.create(address, BACKLOG);
+        ExecutorService executor = ServiceExecutors.newServiceExecutor("api", maxConcurrent);
+        ApiServer api = new ApiServer(server, executor, maxConcurrent, orderService, userService, adminService);
+        server.setExecutor(task -> {
+            // The permit covers the whole exchange, from reading the request to the last byte out
+            if (!api.permits.tryAcquire()) {
+                api.reject(task);
+                return;
+            }
+            try {
+                executor.execute(() -> {
+                    try {
+                        task.run();
+                    } finally {
+                        api.permits.release();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                api.permits.release();
+                api.reject(task);
+            }
+        });
+
+        api.createContext("/api/quote", api::quote);
+        api.createContext("/api/track/", api::track);
+        HttpContext orders = api.createContext("/api/orders", api::orders);
+        orders.setAuthenticator(new BasicAuthenticator("customer") {
+            @Override
+            public boolean checkCredentials(String username, String pin) {
+                return userService.authenticateUser(username, pin) != null;
+            }
+        });
+        HttpContext admin = api.createContext("/api/admin/orders/", api::adminOrders);
+        admin.setAuthenticator(new BasicAuthenticator("admin") {
+            @Override
+            public boolean checkCredentials(String username, String pin) {
+                return adminService.authenticateAdmin(username, pin) != null;
+            }
+        });
+        server.start();
+        return api;
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    // Exchanges answered 503 because the server was at its limit
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    // Lets requests in flight finish for up to the delay, then closes every connection
+    public void stop(int delaySeconds) {
+        server.stop(delaySeconds);
+        executor.shutdown();
+        try {
+            executor.awaitTermination(delaySeconds, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Open connections, idle keep-alives included. The JDK's server reads these once, when the
+    // first server is created: it refuses connections over the limit (Java 18 on), and closes
+    // idle ones beyond its idle cap, which clients do not retry for a POST. Explicit settings win
+    private static void limitConnections(int maxConnections) {
+        if (System.getProperty("jdk.httpserver.maxConnections") == null) {
+            System.setProperty("jdk.httpserver.maxConnections", Integer.toString(maxConnections));
+        }
+        if (System.getProperty("sun.net.httpserver.maxIdleConnections") == null) {
+            System.setProperty("sun.net.httpserver.maxIdleConnections", Integer.toString(maxConnections));
+        }
+    }
+
+    private void reject(Runnable task) {
+        rejected.incrementAndGet();
+        rejecting.set(true);
+        try {
+            task.run();
+        } finally {
+            rejecting.remove();
+        }
+    }
+
+    // Context filters run ahead of the authenticator, so a rejected exchange is answered
+    // without checking a PIN on the dispatcher thread
+    private HttpContext createContext(String path, Route route) {
+        HttpContext context = server.createContext(path, handler(route));
+        context.getFilters().add(new Filter() {
+            @Override
+            public void doFilter(HttpExchange exchange, Chain chain) throws IOException {
+                if (!rejecting.get()) {
+                    chain.doFilter(exchange);
+                    return;
+                }
+                try (exchange) {
+                    exchange.getResponseHeaders().set("Retry-After", "1");
+                    send(exchange, error(503, "Server busy, retry shortly"));
+                }
+            }
+
+            @Override
+            public String description() {
+                return "Answers 503 while the server is at its limit";
+            }
+        });
+        return context;
+    }
+
+    private HttpHandler handler(Route route) {
+        return exchange -> {
+            try (exchange) {
+                Response response;
+                try {
+                    response = route.handle(exchange);
+                } catch (IllegalArgumentException e) {
+                    response = error(400, e.getMessage());
+                } catch (RuntimeException e) {
+                    e.printStackTrace();
+                    response = error(500, "Internal error");
+                }
+                send(exchange, response);
+            }
+        };
+    }
+
+    private Response quote(HttpExchange exchange) throws IOException {
+        if (exchange.getRequestMethod().equals("POST")) {
+            return quoteBatch(readBody(exchange));
+        }
+        if (!exchange.getRequestMethod().equals("GET")) {
+            return methodNotAllowed("GET, POST");
+        }
+        Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+        double weight = parseWeight(query.get("weight"));
+        String from = require(query, "from");
+        String to = require(query, "to");
+        double rate = orderService.calculateRate(from, query.get("fromCity"), to, query.get("toCity"), weight);
+        if (rate <= 0) {
+            return noRate(weight);
+        }
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("weight", weight);
+        body.put("from", from);
+        body.put("to", to);
+        body.put("rate", rate);
+        return new Response(200, body);
+    }
+
+    // Every parcel priced from one tariff version; null for a parcel the tariff has no rate for
+    private Response quoteBatch(Map<String, Object> request) {
+        Object value = request.get("parcels");
+        if (!(value instanceof List) || ((List<?>) value).size() > MAX_PARCELS) {
+            throw new IllegalArgumentException("parcels must be a list of at most " + MAX_PARCELS);
+        }
+        List<TariffEngine.Parcel> parcels = new ArrayList<>();
+        for (Object element : (List<?>) value) {
+            if (!(element instanceof Map)) {
+                throw new IllegalArgumentException("Each parcel must be an object");
+            }
+            Map<?, ?> parcel = (Map<?, ?>) element;
+            if (!(parcel.get("weight") instanceof Number)) {
+                throw new IllegalArgumentException("Each parcel needs a weight");
+            }
+            parcels.add(new TariffEngine.Parcel(text(parcel, "from"), text(parcel, "fromCity"), text(parcel, "to"),
+                text(parcel, "toCity"), checkWeight(((Number) parcel.get("weight")).doubleValue())));
+        }
+        List<Object> rates = new ArrayList<>();
+        for (double rate : orderService.quote(parcels)) {
+            rates.add(rate > 0 ? rate : null);
+        }
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("rates", rates);
+        return new Response(200, body);
+    }
+
+    private Response noRate(double weight) {
+        double maxWeight = orderService.getTariff().getTariff().getMaxWeight();
+        return error(422, "No rate for a parcel of " + weight + " kg"
+            + (Double.isInfinite(maxWeight) ? "" : "; parcels up to " + maxWeight + " kg"));
+    }
+
+    // Public, so only what a receipt shows: no names, contacts or addresses
+    private Response track(HttpExchange exchange) {
+        if (!exchange.getRequestMethod().equals("GET")) {
+            return methodNotAllowed("GET");
+        }
+        String trackingId = exchange.getRequestURI().getPath().substring("/api/track/".length());
+        Order order = trackingId.isEmpty() || trackingId.contains("/") ? null : orderService.findOrder(trackingId);
+        if (order == null) {
+            return error(404, "No order " + trackingId);
+        }
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("trackingId", order.getTrackingId());
+        body.put("status", order.getStatus().name());
+        body.put("statusName", order.getStatus().getDisplayName());
+        body.put("statusChangedAt", timestamp(order.getStatusChangedAt()));
+        body.put("senderCity", order.getSenderCity());
+        body.put("receiverCity", order.getReceiverCity());
+        return new Response(200, body);
+    }
+
+    private Response orders(HttpExchange exchange) throws IOException {
+        String username = exchange.getPrincipal().getUsername();
+        String path = exchange.getRequestURI().getPath();
+        String method = exchange.getRequestMethod();
+        if (path.equals("/api/orders") || path.equals("/api/orders/")) {
+            if (method.equals("GET")) {
+                List<Object> history = new ArrayList<>();
+                for (Order order : orderService.getUserOrders(username)) {
+                    history.add(orderJson(order));
+                }
+                return new Response(200, history);
+            }
+            if (method.equals("POST")) {
+                return placeOrder(username, readBody(exchange));
+            }
+            return methodNotAllowed("GET, POST");
+        }
+        String trackingId = path.substring("/api/orders/".length());
+        if (!method.equals("GET")) {
+            return methodNotAllowed("GET");
+        }
+        Order order = trackingId.contains("/") ? null : orderService.getOrder(username, trackingId);
+        return order != null ? new Response(200, orderJson(order)) : error(404, "No order " + trackingId);
+    }
+
+    // The same checks and rate as the Place Order form; the sender is the signed-in customer
+    private Response placeOrder(String username, Map<String, Object> request) {
+        User user = userService.getUserByUsername(username);
+        if (user == null) {
+            return error(404, "No user " + username);
+        }
+        Map<String, String> fields = new HashMap<>();
+        for (String name : ORDER_FIELDS) {
+            Object value = request.get(name);
+            if (!(value instanceof String) || ((String) value).trim().isEmpty()) {
+                throw new IllegalArgumentException("Missing " + name);
+            }
+            fields.put(name, ((String) value).trim());
+        }
+        Object weightValue = request.get("weight");
+        if (!(weightValue instanceof Number)) {
+            throw new IllegalArgumentException("Missing weight");
+        }
+        double weight = checkWeight(((Number) weightValue).doubleValue());
+        double rate = orderService.calculateRate(user.getProvince(), user.getCity(), fields.get("receiverProvince"),
+            fields.get("receiverCity"), weight);
+        if (rate <= 0) {
+            return noRate(weight);
+        }
+
+        Order order = new Order();
+        order.setSenderName(user.getFullName());
+        order.setSenderContact(user.getContactNumber());
+        order.setSenderCity(user.getCity());
+        order.setSenderProvince(user.getProvince());
+        order.setReceiverName(fields.get("receiverName"));
+        order.setReceiverContact(fields.get("receiverContact"));
+        order.setReceiverAddress(fields.get("receiverAddress"));
+        order.setReceiverCity(fields.get("receiverCity"));
+        order.setRate(rate);
+        order.setStatus(Order.OrderStatus.IN_PROCESS);
+        order.setUsername(username);
+        String trackingId = orderService.placeOrder(order);
+        if (trackingId == null) {
+            return error(500, "Failed to place order");
+        }
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("trackingId", trackingId);
+        body.put("rate", rate);
+        Response response = new Response(201, body);
+        response.location = "/api/orders/" + trackingId;
+        return response;
+    }
+
+    private Response adminOrders(HttpExchange exchange) throws IOException {
+        String[] parts = exchange.getRequestURI().getPath().substring("/api/admin/orders/".length()).split("/");
+        String trackingId = parts[0];
+        String method = exchange.getRequestMethod();
+        if (parts.length == 1 && !trackingId.isEmpty()) {
+            if (!method.equals("GET")) {
+                return methodNotAllowed("GET");
+            }
+            Order order = orderService.findOrder(trackingId);
+            return order != null ? new Response(200, orderJson(order)) : error(404, "No order " + trackingId);
+        }
+        if (parts.length != 2 || !parts[1].equals("status")) {
+            return error(404, "Not found");
+        }
+        if (!method.equals("PUT") && !method.equals("POST")) {
+            return methodNotAllowed("PUT, POST");
+        }
+        Map<String, Object> request = readBody(exchange);
+        Order.OrderStatus status = parseStatus(request.get("status"));
+        Object version = request.get("version");
+        OrderService.UpdateResult result;
+        if (version instanceof Number) {
+            if (((Number) version).longValue() < 0) {
+                throw new IllegalArgumentException("version must not be negative");
+            }
+            result = orderService.updateOrderStatus(trackingId, ((Number) version).longValue(), status);
+        } else if (version == null) {
+            // No version: last writer wins, like the old update dialog
+            result = orderService.updateOrderStatus(trackingId, status) ? OrderService.UpdateResult.UPDATED
+                : orderService.findOrder(trackingId) == null ? OrderService.UpdateResult.NOT_FOUND
+                : OrderService.UpdateResult.FAILED;
+        } else {
+            throw new IllegalArgumentException("version must be a number");
+        }
+
+        switch (result) {
+            case UPDATED:
+            case CONFLICT: {
+                Order order = orderService.findOrder(trackingId);
+                if (order == null) {
+                    return error(404, "No order " + trackingId);
+                }
+                // A conflict returns the order as it is now, so the caller can decide again
+                return new Response(result == OrderService.UpdateResult.UPDATED ? 200 : 409, orderJson(order));
+            }
+            case NOT_FOUND:
+                return error(404, "No order " + trackingId);
+            default:
+                return error(500, "Failed to update order " + trackingId);
+        }
+    }
+
+    private static Map<String, Object> orderJson(Order order) {
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("trackingId", order.getTrackingId());
+        json.put("username", order.getUsername());
+        json.put("status", order.getStatus().name());
+        json.put("statusName", order.getStatus().getDisplayName());
+        json.put("version", order.getVersion());
+        json.put("rate", order.getRate());
+        json.put("senderName", order.getSenderName());
+        json.put("senderContact", order.getSenderContact());
+        json.put("senderCity", order.getSenderCity());
+        json.put("senderProvince", order.getSenderProvince());
+        json.put("receiverName", order.getReceiverName());
+        json.put("receiverContact", order.getReceiverContact());
+        json.put("receiverAddress", order.getReceiverAddress());
+        json.put("receiverCity", order.getReceiverCity());
+        json.put("createdAt", timestamp(order.getCreatedAt()));
+        json.put("updatedAt", timestamp(order.getUpdatedAt()));
+        json.put("statusChangedAt", timestamp(order.getStatusChangedAt()));
+        return json;
+    }
+
+    // ISO-8601, or null on orders written before timestamps were recorded
+    private static String timestamp(long epochMillis) {
+        return epochMillis > 0 ? Instant.ofEpochMilli(epochMillis).toString() : null;
+    }
+
+    // Accepts the enum name or the display name, in any case
+    private static Order.OrderStatus parseStatus(Object value) {
+        if (value instanceof String) {
+            for (Order.OrderStatus status : Order.OrderStatus.values()) {
+                if (status.name().equalsIgnoreCase((String) value)
+                        || status.getDisplayName().equalsIgnoreCase((String) value)) {
+                    return status;
+                }
+            }
+        }
+        throw new IllegalArgumentException("status must be one of IN_PROCESS, SHIPPED, DELIVERED");
+    }
+
+    private static double parseWeight(String value) {
+        if (value == null) {
+            throw new IllegalArgumentException("Missing weight");
+        }
+        try {
+            return checkWeight(Double.parseDouble(value));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("weight must be a number");
+        }
+    }
+
+    // The upper bound is the tariff's, checked by the quote
+    private static double checkWeight(double weight) {
+        if (!(weight > 0) || Double.isInfinite(weight)) {
+            throw new IllegalArgumentException("Weight must be more than 0 kg");
+        }
+        return weight;
+    }
+
+    private static String text(Map<?, ?> object, String name) {
+        Object value = object.get(name);
+        return value instanceof String ? ((String) value).trim() : null;
+    }
+
+    private static String require(Map<String, String> query, String name) {
+        String value = query.get(name);
+        if (value == null || value.trim().isEmpty()) {
+            throw new IllegalArgumentException("Missing " + name);
+        }
+        return value.trim();
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> query = new HashMap<>();
+        if (rawQuery == null) {
+            return query;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int eq = pair.indexOf('=');
+            String name = URLDecoder.decode(eq >= 0 ? pair.substring(0, eq) : pair, StandardCharsets.UTF_8);
+            String value = eq >= 0 ? URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8) : "";
+            query.putIfAbsent(name, value);
+        }
+        return query;
+    }
+
+    private static Map<String, Object> readBody(HttpExchange exchange) throws IOException {
+        byte[] body;
+        try (InputStream in = exchange.getRequestBody()) {
+            body = in.readNBytes(MAX_BODY_BYTES + 1);
+        }
+        if (body.length > MAX_BODY_BYTES) {
+            throw new IllegalArgumentException("Request body over " + MAX_BODY_BYTES + " bytes");
+        }
+        return Json.parseObject(new String(body, StandardCharsets.UTF_8));
+    }
+
+    private static Response methodNotAllowed(String allowed) {
+        Response response = error(405, "Method not allowed");
+        response.allow = allowed;
+        return response;
+    }
+
+    private static Response error(int status, String message) {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("error", message);
+        return new Response(status, body);
+    }
+
+    private static void send(HttpExchange exchange, Response response) throws IOException {
+        byte[] bytes = Json.write(response.body).getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        if (response.location != null) {
+            exchange.getResponseHeaders().set("Location", response.location);
+        }
+        if (response.allow != null) {
+            exchange.getResponseHeaders().set("Allow", response.allow);
+        }
+        exchange.sendResponseHeaders(response.status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static class Response {
+        private final int status;
+        private final Object body;
+        private String location;
+        private String allow;
+
+        Response(int status, Object body) {
+            this.status = status;
+            this.body = body;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        String host = System.getProperty("courier.api.host", "127.0.0.1");
+        int port = Integer.getInteger("courier.api.port", 8080);
+        int maxConcurrent = Integer.getInteger("courier.api.maxConcurrent", 64);
+
+        Repositories repositories = FileManager.getRepositories();
+        OrderService orderService = new OrderService(repositories);
+        UserService userService = new UserService(repositories.getUsers());
+        AdminService adminService = new AdminService(repositories.getAdmin(), repositories.getFinance(),
+            repositories.getRollups(), repositories.getOrders());
+
+        ApiServer api = start(new InetSocketAddress(host, port), maxConcurrent, orderService, userService,
+            adminService);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> api.stop(2)));
+        System.out.printf(Locale.ROOT, "Courier API listening on http://%s:%d (%s, at most %d requests at once)%n",
+            host, api.getPort(), ServiceExecutors.hasVirtualThreads() ? "virtual threads" : maxConcurrent
+                + " pool threads", maxConcurrent);
+    }
+}
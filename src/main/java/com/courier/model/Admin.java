@@ -19,14 +19,10 @@ public class Admin {
 
     @Override
     public String toString() {
-        return username + "," + pin;
+        return RecordCodec.formatAdmin(this);
     }
 
     public static Admin fromString(String data) {
-        String[] parts = data.split(",");
-        if (parts.length >= 2) {
-            return new Admin(parts[0], parts[1]);
-        }
-        return null;
+        return RecordCodec.parseAdmin(data);
     }
 }
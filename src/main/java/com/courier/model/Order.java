@@ -12,6 +12,14 @@ public class Order {
     private double rate;
     private OrderStatus status;
     private String username;
+    // Epoch milliseconds; 0 on orders written before timestamps were recorded
+    private long createdAt;
+    private long updatedAt;
+    private long statusChangedAt;
+    // Province of the placing user; null on orders placed before it was recorded
+    private String senderProvince;
+    // Bumped by every status change; 0 on orders never changed or written before it was recorded
+    private long version;
 
     public enum OrderStatus {
         IN_PROCESS("In process"),
@@ -90,20 +98,35 @@ public class Order {
     public String getUsername() { return username; }
     public void setUsername(String username) { this.username = username; }
 
+    public long getCreatedAt() { return createdAt; }
+    public void setCreatedAt(long createdAt) { this.createdAt = createdAt; }
+
+    public long getUpdatedAt() { return updatedAt; }
+    public void setUpdatedAt(long updatedAt) { this.updatedAt = updatedAt; }
+
+    public long getStatusChangedAt() { return statusChangedAt; }
+    public void setStatusChangedAt(long statusChangedAt) { this.statusChangedAt = statusChangedAt; }
+
+    public String getSenderProvince() { return senderProvince; }
+    public void setSenderProvince(String senderProvince) { this.senderProvince = senderProvince; }
+
+    public long getVersion() { return version; }
+    public void setVersion(long version) { this.version = version; }
+
+    // Records a status change the way every store applies it: status, both change times and the version
+    public void changeStatus(OrderStatus status, long changedAt) {
+        this.status = status;
+        this.statusChangedAt = changedAt;
+        this.updatedAt = changedAt;
+        this.version++;
+    }
+
     @Override
     public String toString() {
-        return trackingId + "," + senderName + "," + senderContact + "," + senderCity + "," +
-               receiverName + "," + receiverContact + "," + receiverAddress + "," + receiverCity + "," +
-               rate + "," + status.getDisplayName();
+        return RecordCodec.formatOrder(this);
     }
 
     public static Order fromString(String data, String username) {
-        String[] parts = data.split(",");
-        if (parts.length >= 10) {
-            return new Order(parts[0], parts[1], parts[2], parts[3], parts[4], 
-                           parts[5], parts[6], parts[7], Double.parseDouble(parts[8]), 
-                           OrderStatus.fromString(parts[9]), username);
-        }
-        return null;
+        return RecordCodec.parseOrder(data, username);
     }
 }
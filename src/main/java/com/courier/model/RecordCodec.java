@@ -0,0 +1,383 @@
+package com.courier.model;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Comma-separated record format shared by the account, order and admin files.
+ * Separators, backslashes and line breaks inside a field are backslash-escaped, so
+ * an address may contain commas. Records written before escaping existed parse the
+ * same way they always did. Order timestamps, the sender province and the version are
+ * optional trailing fields, so older readers skip them and older records read with
+ * timestamps of 0, no province and version 0.
+ */
+public final class RecordCodec {
+    public static final char SEPARATOR = ',';
+    private static final char ESCAPE = '\\';
+
+    // Exact powers of ten; m / 10^k is correctly rounded while m < 2^53 and k <= 22
+    private static final double[] POW10 = new double[23];
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+    private static final ThreadLocal<StringBuilder> SCRATCH = ThreadLocal.withInitial(() -> new StringBuilder(256));
+
+    static {
+        POW10[0] = 1;
+        for (int i = 1; i < POW10.length; i++) {
+            POW10[i] = POW10[i - 1] * 10;
+        }
+    }
+
+    private RecordCodec() {}
+
+    // Orders
+
+    public static String formatOrder(Order order) {
+        StringBuilder out = scratch();
+        writeOrder(order, out);
+        return out.toString();
+    }
+
+    public static void writeOrder(Order order, StringBuilder out) {
+        writeField(out, order.getTrackingId());
+        out.append(SEPARATOR);
+        writeField(out, order.getSenderName());
+        out.append(SEPARATOR);
+        writeField(out, order.getSenderContact());
+        out.append(SEPARATOR);
+        writeField(out, order.getSenderCity());
+        out.append(SEPARATOR);
+        writeField(out, order.getReceiverName());
+        out.append(SEPARATOR);
+        writeField(out, order.getReceiverContact());
+        out.append(SEPARATOR);
+        writeField(out, order.getReceiverAddress());
+        out.append(SEPARATOR);
+        writeField(out, order.getReceiverCity());
+        out.append(SEPARATOR);
+        out.append(order.getRate());
+        out.append(SEPARATOR);
+        out.append(order.getStatus().getDisplayName());
+        if (order.getCreatedAt() != 0 || order.getUpdatedAt() != 0 || order.getStatusChangedAt() != 0
+                || order.getSenderProvince() != null || order.getVersion() != 0) {
+            out.append(SEPARATOR).append(order.getCreatedAt());
+            out.append(SEPARATOR).append(order.getUpdatedAt());
+            out.append(SEPARATOR).append(order.getStatusChangedAt());
+        }
+        if (order.getSenderProvince() != null || order.getVersion() != 0) {
+            // A version needs the province's place held; an empty province reads back as none
+            out.append(SEPARATOR);
+            writeField(out, order.getSenderProvince() != null ? order.getSenderProvince() : "");
+        }
+        if (order.getVersion() != 0) {
+            out.append(SEPARATOR).append(order.getVersion());
+        }
+    }
+
+    public static Order parseOrder(CharSequence data, String username) {
+        FieldReader in = new FieldReader(data);
+        Order order = new Order();
+        order.setTrackingId(in.nextString());
+        order.setSenderName(in.nextString());
+        order.setSenderContact(in.nextString());
+        order.setSenderCity(in.nextString());
+        order.setReceiverName(in.nextString());
+        order.setReceiverContact(in.nextString());
+        order.setReceiverAddress(in.nextString());
+        order.setReceiverCity(in.nextString());
+        order.setRate(in.nextDouble());
+        order.setStatus(in.nextStatus());
+        order.setUsername(username);
+        order.setCreatedAt(in.nextOptionalLong());
+        order.setUpdatedAt(in.nextOptionalLong());
+        order.setStatusChangedAt(in.nextOptionalLong());
+        String province = in.nextOptionalString();
+        order.setSenderProvince(province == null || province.isEmpty() ? null : province);
+        order.setVersion(in.nextOptionalLong());
+        return in.isComplete() ? order : null;
+    }
+
+    public static Order parseOrder(ByteBuffer utf8, String username) {
+        if (utf8.hasArray()) {
+            // One compact copy; String's UTF-8 decoder has an ASCII fast path
+            return parseOrder(new String(utf8.array(), utf8.arrayOffset() + utf8.position(), utf8.remaining(),
+                    StandardCharsets.UTF_8), username);
+        }
+        return parseOrder(StandardCharsets.UTF_8.decode(utf8.duplicate()), username);
+    }
+
+    // Users
+
+    public static String formatUser(User user) {
+        StringBuilder out = scratch();
+        writeUser(user, out);
+        return out.toString();
+    }
+
+    public static void writeUser(User user, StringBuilder out) {
+        writeField(out, user.getFullName());
+        out.append(SEPARATOR);
+        writeField(out, user.getUsername());
+        out.append(SEPARATOR);
+        writeField(out, user.getContactNumber());
+        out.append(SEPARATOR);
+        writeField(out, user.getAddress());
+        out.append(SEPARATOR);
+        writeField(out, user.getCity());
+        out.append(SEPARATOR);
+        writeField(out, user.getProvince());
+        out.append(SEPARATOR);
+        writeField(out, user.getPin());
+    }
+
+    public static User parseUser(CharSequence data) {
+        FieldReader in = new FieldReader(data);
+        User user = new User();
+        user.setFullName(in.nextString());
+        user.setUsername(in.nextString());
+        user.setContactNumber(in.nextString());
+        user.setAddress(in.nextString());
+        user.setCity(in.nextString());
+        user.setProvince(in.nextString());
+        user.setPin(in.nextString());
+        return in.isComplete() ? user : null;
+    }
+
+    // Admin
+
+    public static String formatAdmin(Admin admin) {
+        StringBuilder out = scratch();
+        writeField(out, admin.getUsername());
+        out.append(SEPARATOR);
+        writeField(out, admin.getPin());
+        return out.toString();
+    }
+
+    public static Admin parseAdmin(CharSequence data) {
+        FieldReader in = new FieldReader(data);
+        Admin admin = new Admin(in.nextString(), in.nextString());
+        return in.isComplete() ? admin : null;
+    }
+
+    public static void writeField(StringBuilder out, String value) {
+        if (value == null) {
+            out.append((String) null);
+            return;
+        }
+        int length = value.length();
+        int i = 0;
+        while (i < length && !needsEscape(value.charAt(i))) {
+            i++;
+        }
+        if (i == length) {
+            out.append(value);
+            return;
+        }
+        int start = 0;
+        for (; i < length; i++) {
+            char c = value.charAt(i);
+            if (needsEscape(c)) {
+                out.append(value, start, i).append(ESCAPE);
+                out.append(c == '\n' ? 'n' : c == '\r' ? 'r' : c);
+                start = i + 1;
+            }
+        }
+        out.append(value, start, length);
+    }
+
+    private static boolean needsEscape(char c) {
+        return c <= ESCAPE && (c == SEPARATOR || c == ESCAPE || c == '\n' || c == '\r');
+    }
+
+    private static StringBuilder scratch() {
+        StringBuilder out = SCRATCH.get();
+        out.setLength(0);
+        return out;
+    }
+
+    /**
+     * Single-pass cursor over one record. Each call consumes the next field; trailing
+     * line breaks are ignored and fields beyond the ones a record type reads are skipped.
+     */
+    private static final class FieldReader {
+        private final CharSequence data;
+        private final String text;
+        private final int end;
+        private final boolean anyEscape;
+        private int pos;
+        private int fieldStart;
+        private int fieldEnd;
+        private boolean fieldEscaped;
+        private boolean missingField;
+
+        FieldReader(CharSequence data) {
+            this.data = data;
+            int length = data.length();
+            while (length > 0 && (data.charAt(length - 1) == '\n' || data.charAt(length - 1) == '\r')) {
+                length--;
+            }
+            this.end = length;
+            this.text = data instanceof String ? (String) data : null;
+            this.anyEscape = text != null ? text.indexOf(ESCAPE) >= 0 : true;
+        }
+
+        // False when the record ran out before every requested field was read
+        boolean isComplete() {
+            return !missingField;
+        }
+
+        String nextString() {
+            advance();
+            if (!fieldEscaped) {
+                return slice(fieldStart, fieldEnd);
+            }
+            StringBuilder out = scratch();
+            for (int i = fieldStart; i < fieldEnd; i++) {
+                char c = data.charAt(i);
+                if (c == ESCAPE && i + 1 < fieldEnd) {
+                    c = data.charAt(++i);
+                    if (c == 'n') {
+                        c = '\n';
+                    } else if (c == 'r') {
+                        c = '\r';
+                    } else if (c != SEPARATOR && c != ESCAPE) {
+                        out.append(ESCAPE); // not an escape this codec writes, keep it verbatim
+                    }
+                }
+                out.append(c);
+            }
+            return out.toString();
+        }
+
+        double nextDouble() {
+            advance();
+            if (missingField) {
+                return 0;
+            }
+            int i = fieldStart;
+            boolean negative = i < fieldEnd && data.charAt(i) == '-';
+            if (negative) {
+                i++;
+            }
+            long mantissa = 0;
+            int digits = 0;
+            int fractionDigits = -1;
+            for (; i < fieldEnd; i++) {
+                char c = data.charAt(i);
+                if (c >= '0' && c <= '9') {
+                    mantissa = mantissa * 10 + (c - '0');
+                    digits++;
+                    if (fractionDigits >= 0) {
+                        fractionDigits++;
+                    }
+                    if (mantissa >= MAX_EXACT_MANTISSA) {
+                        break;
+                    }
+                } else if (c == '.' && fractionDigits < 0) {
+                    fractionDigits = 0;
+                } else {
+                    break;
+                }
+            }
+            if (i < fieldEnd || digits == 0 || fractionDigits >= POW10.length) {
+                // Exponents, NaN, very long mantissas and bad input take the JDK path
+                return Double.parseDouble(slice(fieldStart, fieldEnd).trim());
+            }
+            double value = fractionDigits > 0 ? mantissa / POW10[fractionDigits] : mantissa;
+            return negative ? -value : value;
+        }
+
+        // Trailing fields added after a record type first shipped; absent reads as null
+        String nextOptionalString() {
+            return pos > end ? null : nextString();
+        }
+
+        // Trailing fields added after a record type first shipped; absent or malformed reads as 0
+        long nextOptionalLong() {
+            if (pos > end) {
+                return 0;
+            }
+            advance();
+            long value = 0;
+            int i = fieldStart;
+            boolean negative = i < fieldEnd && data.charAt(i) == '-';
+            if (negative) {
+                i++;
+            }
+            if (i == fieldEnd || fieldEnd - i > 18) {
+                return 0;
+            }
+            for (; i < fieldEnd; i++) {
+                char c = data.charAt(i);
+                if (c < '0' || c > '9') {
+                    return 0;
+                }
+                value = value * 10 + (c - '0');
+            }
+            return negative ? -value : value;
+        }
+
+        Order.OrderStatus nextStatus() {
+            advance();
+            int length = fieldEnd - fieldStart;
+            for (Order.OrderStatus status : Order.OrderStatus.values()) {
+                String name = status.getDisplayName();
+                if (name.length() == length && regionEquals(name)) {
+                    return status;
+                }
+            }
+            return Order.OrderStatus.IN_PROCESS;
+        }
+
+        private boolean regionEquals(String name) {
+            for (int i = 0; i < name.length(); i++) {
+                if (data.charAt(fieldStart + i) != name.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void advance() {
+            if (pos > end) {
+                missingField = true;
+            }
+            fieldStart = Math.min(pos, end);
+            fieldEscaped = false;
+            if (!anyEscape) {
+                // Common case: no escapes anywhere, so the separator search is a plain indexOf
+                int next = text.indexOf(SEPARATOR, fieldStart);
+                fieldEnd = next < 0 || next > end ? end : next;
+                pos = fieldEnd + 1;
+                return;
+            }
+            int i = fieldStart;
+            while (i < end) {
+                char c = data.charAt(i);
+                if (c == ESCAPE) {
+                    fieldEscaped = true;
+                    i += 2;
+                    continue;
+                }
+                if (c == SEPARATOR) {
+                    break;
+                }
+                i++;
+            }
+            fieldEnd = Math.min(i, end);
+            pos = fieldEnd + 1;
+        }
+
+        private String slice(int from, int to) {
+            if (text != null) {
+                return text.substring(from, to);
+            }
+            if (data instanceof CharBuffer && ((CharBuffer) data).hasArray()) {
+                CharBuffer buffer = (CharBuffer) data;
+                return new String(buffer.array(), buffer.arrayOffset() + buffer.position() + from, to - from);
+            }
+            return data.subSequence(from, to).toString();
+        }
+    }
+}
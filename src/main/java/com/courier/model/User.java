@@ -46,15 +46,10 @@ public class User {
 
     @Override
     public String toString() {
-        return fullName + "," + username + "," + contactNumber + "," + 
-               address + "," + city + "," + province + "," + pin;
+        return RecordCodec.formatUser(this);
     }
 
     public static User fromString(String data) {
-        String[] parts = data.split(",");
-        if (parts.length >= 7) {
-            return new User(parts[0], parts[1], parts[2], parts[3], parts[4], parts[5], parts[6]);
-        }
-        return null;
+        return RecordCodec.parseUser(data);
     }
 }
@@ -0,0 +1,10 @@
+package com.courier.repository;
+
+import com.courier.model.Admin;
+import java.io.IOException;
+
+public interface AdminRepository {
+    Admin find() throws IOException;
+
+    void save(Admin admin) throws IOException;
+}
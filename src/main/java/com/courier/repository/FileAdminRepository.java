@@ -0,0 +1,29 @@
+package com.courier.repository;
+
+import com.courier.model.Admin;
+import com.courier.storage.AtomicFiles;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+// admin/admin.txt holding the single admin account
+public class FileAdminRepository implements AdminRepository {
+    private final Path adminFile;
+
+    public FileAdminRepository(Path adminFile) {
+        this.adminFile = adminFile;
+    }
+
+    @Override
+    public Admin find() throws IOException {
+        if (!Files.exists(adminFile)) {
+            return null;
+        }
+        return Admin.fromString(new String(Files.readAllBytes(adminFile)));
+    }
+
+    @Override
+    public void save(Admin admin) throws IOException {
+        AtomicFiles.write(adminFile, admin.toString().getBytes());
+    }
+}
@@ -0,0 +1,293 @@
+package com.courier.repository;
+
+import com.courier.model.Order;
+import com.courier.storage.AtomicFiles;
+import com.courier.storage.DirectoryLayout;
+import com.courier.storage.Durability;
+import com.courier.storage.FileLocks;
+import com.courier.storage.OrderChangeFeed;
+import com.courier.storage.OrderIndex;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * One text file per order under a per-user directory, placed by the root's
+ * DirectoryLayout, with an in-memory index built by scanning the tree once.
+ *
+ * <p>Several processes may share the tree. Files are always replaced whole, so a read
+ * never sees half an order; a status change or cancel holds the order's shard lock
+ * from reading the file to writing it; and every change goes to the OrderChangeFeed,
+ * from which the other processes bring their indexes up to date before answering.
+ */
+public class FileOrderRepository implements OrderRepository {
+    private static final String LOCK_PREFIX = "orders";
+
+    private final Path ordersDir;
+    private final DirectoryLayout layout;
+    private final OrderIndex index;
+    private final FileLocks locks;
+    private final OrderChangeFeed feed;
+    private final Durability durability;
+    private volatile OrderChangeFeed.Handler changeListener;
+
+    public FileOrderRepository(Path ordersDir, DirectoryLayout layout, OrderIndex index) {
+        this(ordersDir, layout, index, null, null, Durability.NONE);
+    }
+
+    // Locks and feed are both null when no other process uses the tree
+    public FileOrderRepository(Path ordersDir, DirectoryLayout layout, OrderIndex index, FileLocks locks,
+                               OrderChangeFeed feed, Durability durability) {
+        this.ordersDir = ordersDir;
+        this.layout = layout;
+        this.index = index;
+        this.locks = locks;
+        this.feed = feed;
+        this.durability = durability;
+    }
+
+    public static FileOrderRepository open(Path ordersDir) throws IOException {
+        return open(ordersDir, null, null, Durability.NONE);
+    }
+
+    // Open the feed first: changes made while the tree is scanned are then replayed, not lost
+    public static FileOrderRepository open(Path ordersDir, FileLocks locks, OrderChangeFeed feed,
+                                           Durability durability) throws IOException {
+        DirectoryLayout layout = DirectoryLayout.detect(ordersDir);
+        return new FileOrderRepository(ordersDir, layout, OrderIndex.buildFromDirectory(ordersDir, layout),
+            locks, feed, durability);
+    }
+
+    // Called with each change another process made, after the index has taken it in
+    public void setChangeListener(OrderChangeFeed.Handler changeListener) {
+        this.changeListener = changeListener;
+    }
+
+    @Override
+    public void insert(Order order) throws IOException {
+        Path file = layout.orderFile(ordersDir, order.getUsername(), order.getTrackingId());
+        createDirectories(file.getParent());
+        AtomicFiles.write(file, order.toString().getBytes(), durability);
+        index.put(order.getTrackingId(), order.getUsername(), file, 0, order.getStatus());
+        if (feed != null) {
+            feed.append(OrderChangeFeed.PLACED, order, null);
+        }
+    }
+
+    @Override
+    public Order findByTrackingId(String trackingId) throws IOException {
+        OrderIndex.Entry entry = entry(trackingId);
+        return entry != null ? read(entry) : null;
+    }
+
+    @Override
+    public String findOwner(String trackingId) {
+        String owner = index.getUsername(trackingId);
+        if (owner == null && feed != null) {
+            catchUp();
+            owner = index.getUsername(trackingId);
+        }
+        return owner;
+    }
+
+    @Override
+    public List<String> findTrackingIdsByUsername(String username) {
+        catchUp();
+        return index.getTrackingIds(username);
+    }
+
+    @Override
+    public boolean updateStatus(String trackingId, Order.OrderStatus status, long changedAt) throws IOException {
+        return changeStatus(trackingId, -1, status, changedAt);
+    }
+
+    // The version is checked against the file under the shard lock, so this also catches other processes
+    @Override
+    public boolean updateStatusIfVersion(String trackingId, long expectedVersion, Order.OrderStatus status,
+                                         long changedAt) throws IOException {
+        return changeStatus(trackingId, expectedVersion, status, changedAt);
+    }
+
+    @Override
+    @SuppressWarnings("try")
+    public boolean delete(String trackingId) throws IOException {
+        if (feed == null) {
+            OrderIndex.Entry entry = index.remove(trackingId);
+            if (entry == null || !Files.deleteIfExists(entry.getFile())) {
+                return false;
+            }
+            durability.forceDirectory(entry.getFile().getParent());
+            return true;
+        }
+        OrderIndex.Entry entry = entry(trackingId);
+        if (entry == null) {
+            return false;
+        }
+        try (FileLocks.Handle lock = lockOrder(trackingId)) {
+            refresh();
+            Order order = read(entry);
+            index.remove(trackingId);
+            if (order == null || !Files.deleteIfExists(entry.getFile())) {
+                return false; // cancelled by another process first
+            }
+            durability.forceDirectory(entry.getFile().getParent());
+            feed.append(OrderChangeFeed.CANCELLED, order, null);
+            return true;
+        }
+    }
+
+    @Override
+    public boolean exists(String trackingId) {
+        if (!index.contains(trackingId) && feed != null) {
+            catchUp();
+        }
+        return index.contains(trackingId);
+    }
+
+    @Override
+    public List<String> findTrackingIdsNewestFirst(String after, int limit) {
+        catchUp();
+        return index.trackingIdsAfter(after, limit);
+    }
+
+    @Override
+    public Set<String> trackingIds() {
+        catchUp();
+        return index.trackingIds();
+    }
+
+    @Override
+    public int count() {
+        catchUp();
+        return index.size();
+    }
+
+    @Override
+    public void refresh() throws IOException {
+        if (feed != null) {
+            feed.catchUp(this::apply);
+        }
+    }
+
+    // Files are read in parallel, so the consumer must be thread-safe
+    @Override
+    public void forEach(Consumer<? super Order> consumer) {
+        catchUp();
+        index.entries().parallelStream().forEach(e -> {
+            OrderIndex.Entry entry = e.getValue();
+            try {
+                Order order = Order.fromString(new String(Files.readAllBytes(entry.getFile())), entry.getUsername());
+                if (order != null) {
+                    consumer.accept(order);
+                }
+            } catch (NoSuchFileException ex) {
+                // Cancelled while the scan was running
+            } catch (IOException ex) {
+                ex.printStackTrace();
+            }
+        });
+    }
+
+    @SuppressWarnings("try")
+    private boolean changeStatus(String trackingId, long expectedVersion, Order.OrderStatus status,
+                                 long changedAt) throws IOException {
+        OrderIndex.Entry entry = entry(trackingId);
+        if (entry == null) {
+            return false;
+        }
+        try (FileLocks.Handle lock = lockOrder(trackingId)) {
+            // Earlier changes to this order are in the feed by now; applying them first keeps
+            // the index from going back to an older status afterwards
+            refresh();
+            Order order = read(entry);
+            if (order == null || expectedVersion >= 0 && order.getVersion() != expectedVersion) {
+                return false;
+            }
+            Order.OrderStatus from = order.getStatus();
+            order.changeStatus(status, changedAt);
+            AtomicFiles.write(entry.getFile(), order.toString().getBytes(), durability);
+            index.updateStatus(trackingId, status, changedAt);
+            if (feed != null) {
+                feed.append(OrderChangeFeed.STATUS_CHANGED, order, from);
+            }
+            return true;
+        }
+    }
+
+    // A new directory's entry in its parent must reach the disk too, or a crash can lose
+    // the order along with the directory it was written to
+    private void createDirectories(Path directory) throws IOException {
+        if (Files.isDirectory(directory)) {
+            return;
+        }
+        Path existing = directory.getParent();
+        while (!Files.isDirectory(existing)) {
+            existing = existing.getParent();
+        }
+        Files.createDirectories(directory);
+        for (Path created = directory; !created.equals(existing); created = created.getParent()) {
+            durability.forceDirectory(created.getParent());
+        }
+    }
+
+    private OrderIndex.Entry entry(String trackingId) throws IOException {
+        OrderIndex.Entry entry = index.get(trackingId);
+        if (entry == null && feed != null) {
+            // Possibly placed by another process since the last catch-up
+            refresh();
+            entry = index.get(trackingId);
+        }
+        return entry;
+    }
+
+    // Null, and so nothing to release, when the tree is not shared
+    private FileLocks.Handle lockOrder(String trackingId) throws IOException {
+        return locks != null ? locks.exclusive(FileLocks.shard(LOCK_PREFIX, trackingId)) : null;
+    }
+
+    private Order read(OrderIndex.Entry entry) throws IOException {
+        try {
+            return Order.fromString(new String(Files.readAllBytes(entry.getFile())), entry.getUsername());
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    private void apply(OrderChangeFeed.Change change) throws IOException {
+        Order order = change.getOrder();
+        String trackingId = order.getTrackingId();
+        if (change.getType() == OrderChangeFeed.CANCELLED) {
+            index.remove(trackingId);
+        } else if (change.getType() == OrderChangeFeed.PLACED || !index.contains(trackingId)) {
+            index.put(trackingId, order.getUsername(),
+                layout.orderFile(ordersDir, order.getUsername(), trackingId), 0, order.getStatus());
+        } else {
+            index.updateStatus(trackingId, order.getStatus(), order.getStatusChangedAt());
+        }
+        OrderChangeFeed.Handler listener = changeListener;
+        if (listener != null) {
+            listener.handle(change);
+        }
+    }
+
+    // For lookups that cannot throw; a failed catch-up leaves the index as it was
+    private void catchUp() {
+        try {
+            refresh();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    public DirectoryLayout getLayout() {
+        return layout;
+    }
+
+    public OrderIndex getIndex() {
+        return index;
+    }
+}
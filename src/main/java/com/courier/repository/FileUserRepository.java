@@ -0,0 +1,97 @@
+package com.courier.repository;
+
+import com.courier.model.User;
+import com.courier.storage.AtomicFiles;
+import com.courier.storage.DirectoryLayout;
+import com.courier.storage.Durability;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+// One record per account file, placed by the root's DirectoryLayout and always replaced whole
+public class FileUserRepository implements UserRepository {
+    private final Path accountsDir;
+    private final DirectoryLayout layout;
+    private final Durability durability;
+
+    public FileUserRepository(Path accountsDir, DirectoryLayout layout) {
+        this(accountsDir, layout, Durability.NONE);
+    }
+
+    public FileUserRepository(Path accountsDir, DirectoryLayout layout, Durability durability) {
+        this.accountsDir = accountsDir;
+        this.layout = layout;
+        this.durability = durability;
+    }
+
+    public static FileUserRepository open(Path accountsDir) throws IOException {
+        return open(accountsDir, Durability.NONE);
+    }
+
+    public static FileUserRepository open(Path accountsDir, Durability durability) throws IOException {
+        return new FileUserRepository(accountsDir, DirectoryLayout.detect(accountsDir), durability);
+    }
+
+    @Override
+    public boolean insert(User user) throws IOException {
+        Path file = fileFor(user.getUsername());
+        Files.createDirectories(file.getParent());
+        return AtomicFiles.create(file, user.toString().getBytes(), durability);
+    }
+
+    @Override
+    public void update(User user) throws IOException {
+        AtomicFiles.write(fileFor(user.getUsername()), user.toString().getBytes(), durability);
+    }
+
+    @Override
+    public boolean delete(String username) throws IOException {
+        return Files.deleteIfExists(fileFor(username));
+    }
+
+    @Override
+    public User findByUsername(String username) throws IOException {
+        try {
+            return User.fromString(new String(Files.readAllBytes(fileFor(username))));
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public List<String> usernames() throws IOException {
+        List<String> usernames = new ArrayList<>();
+        for (Path file : layout.accountFiles(accountsDir)) {
+            usernames.add(DirectoryLayout.keyOf(file));
+        }
+        return usernames;
+    }
+
+    // Walks the accounts without reading them, keeping only the page
+    @Override
+    public List<String> usernames(String after, int limit) throws IOException {
+        PriorityQueue<String> page = new PriorityQueue<>(Comparator.reverseOrder());
+        layout.forEachAccountFile(accountsDir, file -> {
+            String username = DirectoryLayout.keyOf(file);
+            if (after == null || username.compareTo(after) > 0) {
+                page.add(username);
+                if (page.size() > limit) {
+                    page.poll();
+                }
+            }
+        });
+        List<String> usernames = new ArrayList<>(page);
+        Collections.sort(usernames);
+        return usernames;
+    }
+
+    private Path fileFor(String username) {
+        return layout.accountFile(accountsDir, username);
+    }
+}
@@ -0,0 +1,17 @@
+package com.courier.repository;
+
+import java.io.IOException;
+
+public interface FinanceRepository {
+    void append(String trackingId, double rate) throws IOException;
+
+    double getTotal() throws IOException;
+
+    long getCount() throws IOException;
+
+    void forEach(RecordVisitor visitor) throws IOException;
+
+    interface RecordVisitor {
+        void visit(String trackingId, double rate);
+    }
+}
@@ -0,0 +1,39 @@
+package com.courier.repository;
+
+import com.courier.model.Admin;
+import java.io.IOException;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+
+public class JdbcAdminRepository implements AdminRepository {
+    private final JdbcDatabase database;
+
+    public JdbcAdminRepository(JdbcDatabase database) {
+        this.database = database;
+    }
+
+    @Override
+    public Admin find() throws IOException {
+        return database.query(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement("SELECT username, pin FROM admin WHERE id = 1");
+                 ResultSet rs = statement.executeQuery()) {
+                return rs.next() ? new Admin(rs.getString(1), rs.getString(2)) : null;
+            }
+        });
+    }
+
+    @Override
+    public void save(Admin admin) throws IOException {
+        database.inTransaction(connection -> {
+            try (PreparedStatement delete = connection.prepareStatement("DELETE FROM admin WHERE id = 1");
+                 PreparedStatement insert = connection.prepareStatement(
+                     "INSERT INTO admin (id, username, pin) VALUES (1, ?, ?)")) {
+                delete.executeUpdate();
+                insert.setString(1, admin.getUsername());
+                insert.setString(2, admin.getPin());
+                insert.executeUpdate();
+            }
+            return null;
+        });
+    }
+}
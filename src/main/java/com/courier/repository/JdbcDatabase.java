@@ -0,0 +1,258 @@
+package com.courier.repository;
+
+import com.courier.model.Admin;
+import com.courier.model.Order;
+import com.courier.model.User;
+import java.io.Closeable;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Single embedded database file (SQLite or H2, whichever driver is on the classpath)
+ * holding orders, accounts, the admin account and the finance ledger. One connection
+ * is shared and every repository synchronizes on this object, which matches the
+ * single-writer model of both engines.
+ */
+public class JdbcDatabase implements Closeable {
+    private static final int SCHEMA_VERSION = 4;
+    static final int BATCH_SIZE = 1000;
+
+    private static final String[] SCHEMA = {
+        "CREATE TABLE IF NOT EXISTS orders ("
+            + "tracking_id VARCHAR(32) NOT NULL PRIMARY KEY, "
+            + "username VARCHAR(64) NOT NULL, "
+            + "sender_name VARCHAR(255), "
+            + "sender_contact VARCHAR(32), "
+            + "sender_city VARCHAR(128), "
+            + "receiver_name VARCHAR(255), "
+            + "receiver_contact VARCHAR(32), "
+            + "receiver_address VARCHAR(512), "
+            + "receiver_city VARCHAR(128), "
+            + "rate DOUBLE NOT NULL, "
+            + "status VARCHAR(16) NOT NULL, "
+            + "created_at BIGINT NOT NULL DEFAULT 0, "
+            + "updated_at BIGINT NOT NULL DEFAULT 0, "
+            + "status_changed_at BIGINT NOT NULL DEFAULT 0, "
+            + "sender_province VARCHAR(128), "
+            + "version BIGINT NOT NULL DEFAULT 0)",
+        "CREATE INDEX IF NOT EXISTS idx_orders_username ON orders (username)",
+        "CREATE INDEX IF NOT EXISTS idx_orders_created_at ON orders (created_at)",
+        "CREATE INDEX IF NOT EXISTS idx_orders_status_changed_at ON orders (status, status_changed_at)",
+        "CREATE INDEX IF NOT EXISTS idx_orders_status ON orders (status)",
+        "CREATE INDEX IF NOT EXISTS idx_orders_receiver_city ON orders (receiver_city)",
+        "CREATE TABLE IF NOT EXISTS users ("
+            + "username VARCHAR(64) NOT NULL PRIMARY KEY, "
+            + "full_name VARCHAR(255), "
+            + "contact_number VARCHAR(32), "
+            + "address VARCHAR(512), "
+            + "city VARCHAR(128), "
+            + "province VARCHAR(128), "
+            + "pin VARCHAR(64) NOT NULL)",
+        "CREATE TABLE IF NOT EXISTS admin ("
+            + "id INTEGER NOT NULL PRIMARY KEY, "
+            + "username VARCHAR(64) NOT NULL, "
+            + "pin VARCHAR(64) NOT NULL)",
+        // seq keeps ledger order without relying on engine-specific auto-increment syntax
+        "CREATE TABLE IF NOT EXISTS finance ("
+            + "seq BIGINT NOT NULL PRIMARY KEY, "
+            + "tracking_id VARCHAR(32) NOT NULL, "
+            + "rate DOUBLE NOT NULL)",
+        "CREATE INDEX IF NOT EXISTS idx_finance_tracking_id ON finance (tracking_id)",
+        // Running count and total, updated in the same transaction as each finance insert
+        "CREATE TABLE IF NOT EXISTS finance_summary ("
+            + "id INTEGER NOT NULL PRIMARY KEY, "
+            + "record_count BIGINT NOT NULL, "
+            + "total DOUBLE NOT NULL)"
+    };
+
+    // Upgrades a version 1 database, which predates order timestamps
+    private static final String[] UPGRADE_TO_2 = {
+        "ALTER TABLE orders ADD COLUMN created_at BIGINT NOT NULL DEFAULT 0",
+        "ALTER TABLE orders ADD COLUMN updated_at BIGINT NOT NULL DEFAULT 0",
+        "ALTER TABLE orders ADD COLUMN status_changed_at BIGINT NOT NULL DEFAULT 0",
+        "CREATE INDEX IF NOT EXISTS idx_orders_created_at ON orders (created_at)",
+        "CREATE INDEX IF NOT EXISTS idx_orders_status_changed_at ON orders (status, status_changed_at)"
+    };
+
+    // Upgrades a version 2 database, which predates the sender province column
+    private static final String[] UPGRADE_TO_3 = {
+        "ALTER TABLE orders ADD COLUMN sender_province VARCHAR(128)"
+    };
+
+    // Upgrades a version 3 database, which predates order versions
+    private static final String[] UPGRADE_TO_4 = {
+        "ALTER TABLE orders ADD COLUMN version BIGINT NOT NULL DEFAULT 0"
+    };
+
+    private final Connection connection;
+    private boolean created;
+
+    private JdbcDatabase(Connection connection) {
+        this.connection = connection;
+    }
+
+    public static JdbcDatabase open(String url) throws IOException {
+        Connection connection;
+        try {
+            connection = DriverManager.getConnection(url);
+        } catch (SQLException e) {
+            throw new IOException("Cannot open " + url + " (is the SQLite or H2 driver on the classpath?)", e);
+        }
+        JdbcDatabase database = new JdbcDatabase(connection);
+        try {
+            database.createSchema();
+        } catch (SQLException e) {
+            database.close();
+            throw new IOException("Cannot create schema in " + url, e);
+        }
+        return database;
+    }
+
+    // True when this open created the schema, i.e. the database file was new
+    public boolean isCreated() {
+        return created;
+    }
+
+    Connection getConnection() {
+        return connection;
+    }
+
+    synchronized <T> T inTransaction(SqlWork<T> work) throws IOException {
+        try {
+            connection.setAutoCommit(false);
+            try {
+                T result = work.run(connection);
+                connection.commit();
+                return result;
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            throw new IOException(e);
+        }
+    }
+
+    synchronized <T> T query(SqlWork<T> work) throws IOException {
+        try {
+            return work.run(connection);
+        } catch (SQLException e) {
+            throw new IOException(e);
+        }
+    }
+
+    // Copies another backend in with batched inserts, e.g. the text files on first start
+    public void importFrom(Repositories source) throws IOException {
+        List<User> users = new ArrayList<>();
+        for (String username : source.getUsers().usernames()) {
+            User user = source.getUsers().findByUsername(username);
+            if (user != null) {
+                users.add(user);
+            }
+        }
+        JdbcUserRepository userRepository = new JdbcUserRepository(this);
+        userRepository.insertAll(users);
+
+        Admin admin = source.getAdmin().find();
+        if (admin != null) {
+            new JdbcAdminRepository(this).save(admin);
+        }
+
+        List<Order> orders = new ArrayList<>(BATCH_SIZE);
+        JdbcOrderRepository orderRepository = new JdbcOrderRepository(this);
+        IOException[] failure = new IOException[1];
+        source.getOrders().forEach(order -> {
+            synchronized (orders) {
+                orders.add(order);
+                if (orders.size() >= BATCH_SIZE && failure[0] == null) {
+                    try {
+                        orderRepository.insertAll(orders);
+                    } catch (IOException e) {
+                        failure[0] = e;
+                    }
+                    orders.clear();
+                }
+            }
+        });
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+        orderRepository.insertAll(orders);
+
+        List<String> trackingIds = new ArrayList<>();
+        List<Double> rates = new ArrayList<>();
+        source.getFinance().forEach((trackingId, rate) -> {
+            trackingIds.add(trackingId);
+            rates.add(rate);
+        });
+        new JdbcFinanceRepository(this).appendAll(trackingIds, rates);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private void createSchema() throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("CREATE TABLE IF NOT EXISTS courier_schema (version INTEGER NOT NULL)");
+            int version = 0;
+            try (ResultSet rs = statement.executeQuery("SELECT MAX(version) FROM courier_schema")) {
+                if (rs.next()) {
+                    version = rs.getInt(1);
+                }
+            }
+            if (version >= SCHEMA_VERSION) {
+                return;
+            }
+            connection.setAutoCommit(false);
+            try {
+                if (version == 0) {
+                    for (String ddl : SCHEMA) {
+                        statement.executeUpdate(ddl);
+                    }
+                    statement.executeUpdate("INSERT INTO finance_summary (id, record_count, total) VALUES (1, 0, 0)");
+                    try (PreparedStatement admin = connection.prepareStatement(
+                            "INSERT INTO admin (id, username, pin) VALUES (1, ?, ?)")) {
+                        admin.setString(1, "admin");
+                        admin.setString(2, "admin123");
+                        admin.executeUpdate();
+                    }
+                } else {
+                    // Each step brings the schema up one version
+                    String[][] upgrades = {UPGRADE_TO_2, UPGRADE_TO_3, UPGRADE_TO_4};
+                    for (int step = version - 1; step < upgrades.length; step++) {
+                        for (String ddl : upgrades[step]) {
+                            statement.executeUpdate(ddl);
+                        }
+                    }
+                }
+                statement.executeUpdate("INSERT INTO courier_schema (version) VALUES (" + SCHEMA_VERSION + ")");
+                connection.commit();
+                created = version == 0;
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        }
+    }
+
+    interface SqlWork<T> {
+        T run(Connection connection) throws SQLException;
+    }
+}
@@ -0,0 +1,118 @@
+package com.courier.repository;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Finance rows plus a one-row summary kept in step inside the same transaction, so
+ * the revenue total is a primary-key read rather than a SUM over the table.
+ */
+public class JdbcFinanceRepository implements FinanceRepository {
+    private final JdbcDatabase database;
+
+    public JdbcFinanceRepository(JdbcDatabase database) {
+        this.database = database;
+    }
+
+    @Override
+    public void append(String trackingId, double rate) throws IOException {
+        appendAll(Collections.singletonList(trackingId), Collections.singletonList(rate));
+    }
+
+    public void appendAll(List<String> trackingIds, List<Double> rates) throws IOException {
+        if (trackingIds.isEmpty()) {
+            return;
+        }
+        database.inTransaction(connection -> {
+            long count = readLong(connection, "SELECT record_count FROM finance_summary WHERE id = 1");
+            double added = 0;
+            try (PreparedStatement statement = connection.prepareStatement(
+                    "INSERT INTO finance (seq, tracking_id, rate) VALUES (?, ?, ?)")) {
+                int pending = 0;
+                for (int i = 0; i < trackingIds.size(); i++) {
+                    statement.setLong(1, ++count);
+                    statement.setString(2, trackingIds.get(i));
+                    statement.setDouble(3, rates.get(i));
+                    statement.addBatch();
+                    added += rates.get(i);
+                    if (++pending == JdbcDatabase.BATCH_SIZE) {
+                        statement.executeBatch();
+                        pending = 0;
+                    }
+                }
+                if (pending > 0) {
+                    statement.executeBatch();
+                }
+            }
+            try (PreparedStatement summary = connection.prepareStatement(
+                    "UPDATE finance_summary SET record_count = ?, total = total + ? WHERE id = 1")) {
+                summary.setLong(1, count);
+                summary.setDouble(2, added);
+                summary.executeUpdate();
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public double getTotal() throws IOException {
+        return database.query(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement("SELECT total FROM finance_summary WHERE id = 1");
+                 ResultSet rs = statement.executeQuery()) {
+                return rs.next() ? rs.getDouble(1) : 0;
+            }
+        });
+    }
+
+    @Override
+    public long getCount() throws IOException {
+        return database.query(connection -> readLong(connection, "SELECT record_count FROM finance_summary WHERE id = 1"));
+    }
+
+    // A batch per query, visited after the query returns, so other work on the shared
+    // connection is not held up for the whole scan
+    @Override
+    public void forEach(RecordVisitor visitor) throws IOException {
+        long end = getCount();
+        long after = 0;
+        List<String> trackingIds = new ArrayList<>(JdbcDatabase.BATCH_SIZE);
+        double[] rates = new double[JdbcDatabase.BATCH_SIZE];
+        while (after < end) {
+            long from = after;
+            trackingIds.clear();
+            after = database.query(connection -> {
+                long last = from;
+                try (PreparedStatement statement = connection.prepareStatement(
+                        "SELECT seq, tracking_id, rate FROM finance WHERE seq > ? AND seq <= ? ORDER BY seq LIMIT ?")) {
+                    statement.setLong(1, from);
+                    statement.setLong(2, end);
+                    statement.setInt(3, JdbcDatabase.BATCH_SIZE);
+                    try (ResultSet rs = statement.executeQuery()) {
+                        while (rs.next()) {
+                            last = rs.getLong(1);
+                            rates[trackingIds.size()] = rs.getDouble(3);
+                            trackingIds.add(rs.getString(2));
+                        }
+                    }
+                }
+                return trackingIds.isEmpty() ? end : last;
+            });
+            for (int i = 0; i < trackingIds.size(); i++) {
+                visitor.visit(trackingIds.get(i), rates[i]);
+            }
+        }
+    }
+
+    private static long readLong(Connection connection, String sql) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(sql);
+             ResultSet rs = statement.executeQuery()) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+}
@@ -0,0 +1,302 @@
+package com.courier.repository;
+
+import com.courier.model.Order;
+import java.io.IOException;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+public class JdbcOrderRepository implements OrderRepository {
+    private static final String COLUMNS = "tracking_id, username, sender_name, sender_contact, sender_city, "
+        + "receiver_name, receiver_contact, receiver_address, receiver_city, rate, status, "
+        + "created_at, updated_at, status_changed_at, sender_province, version";
+    private static final String INSERT = "INSERT INTO orders (" + COLUMNS + ") "
+        + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String UPDATE_STATUS = "UPDATE orders SET status = ?, updated_at = ?, "
+        + "status_changed_at = ?, version = version + 1 WHERE tracking_id = ?";
+
+    private final JdbcDatabase database;
+
+    public JdbcOrderRepository(JdbcDatabase database) {
+        this.database = database;
+    }
+
+    @Override
+    public void insert(Order order) throws IOException {
+        database.query(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(INSERT)) {
+                bind(statement, order);
+                return statement.executeUpdate();
+            }
+        });
+    }
+
+    public void insertAll(Collection<Order> orders) throws IOException {
+        if (orders.isEmpty()) {
+            return;
+        }
+        database.inTransaction(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(INSERT)) {
+                int pending = 0;
+                for (Order order : orders) {
+                    bind(statement, order);
+                    statement.addBatch();
+                    if (++pending == JdbcDatabase.BATCH_SIZE) {
+                        statement.executeBatch();
+                        pending = 0;
+                    }
+                }
+                if (pending > 0) {
+                    statement.executeBatch();
+                }
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public Order findByTrackingId(String trackingId) throws IOException {
+        return database.query(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(
+                    "SELECT " + COLUMNS + " FROM orders WHERE tracking_id = ?")) {
+                statement.setString(1, trackingId);
+                try (ResultSet rs = statement.executeQuery()) {
+                    return rs.next() ? read(rs) : null;
+                }
+            }
+        });
+    }
+
+    @Override
+    public String findOwner(String trackingId) {
+        try {
+            return database.query(connection -> {
+                try (PreparedStatement statement = connection.prepareStatement(
+                        "SELECT username FROM orders WHERE tracking_id = ?")) {
+                    statement.setString(1, trackingId);
+                    try (ResultSet rs = statement.executeQuery()) {
+                        return rs.next() ? rs.getString(1) : null;
+                    }
+                }
+            });
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    @Override
+    public List<String> findTrackingIdsByUsername(String username) {
+        return queryIds("SELECT tracking_id FROM orders WHERE username = ?", username);
+    }
+
+    @Override
+    public List<String> findTrackingIdsNewestFirst() {
+        // Time-ordered IDs sort by length then value; legacy 5-digit IDs end up last
+        return queryIds("SELECT tracking_id FROM orders ORDER BY LENGTH(tracking_id) DESC, tracking_id DESC", null);
+    }
+
+    @Override
+    public List<String> findTrackingIdsNewestFirst(String after, int limit) {
+        try {
+            return database.query(connection -> {
+                String where = after == null ? ""
+                    : "WHERE LENGTH(tracking_id) < ? OR (LENGTH(tracking_id) = ? AND tracking_id < ?) ";
+                try (PreparedStatement statement = connection.prepareStatement("SELECT tracking_id FROM orders "
+                        + where + "ORDER BY LENGTH(tracking_id) DESC, tracking_id DESC LIMIT ?")) {
+                    int parameter = 1;
+                    if (after != null) {
+                        statement.setInt(parameter++, after.length());
+                        statement.setInt(parameter++, after.length());
+                        statement.setString(parameter++, after);
+                    }
+                    statement.setInt(parameter, limit);
+                    List<String> ids = new ArrayList<>(limit);
+                    try (ResultSet rs = statement.executeQuery()) {
+                        while (rs.next()) {
+                            ids.add(rs.getString(1));
+                        }
+                    }
+                    return ids;
+                }
+            });
+        } catch (IOException e) {
+            e.printStackTrace();
+            return new ArrayList<>();
+        }
+    }
+
+    @Override
+    public boolean updateStatus(String trackingId, Order.OrderStatus status, long changedAt) throws IOException {
+        return database.query(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(UPDATE_STATUS)) {
+                statement.setString(1, status.name());
+                statement.setLong(2, changedAt);
+                statement.setLong(3, changedAt);
+                statement.setString(4, trackingId);
+                return statement.executeUpdate() > 0;
+            }
+        });
+    }
+
+    // One conditional UPDATE, so the check holds against other processes sharing the database too
+    @Override
+    public boolean updateStatusIfVersion(String trackingId, long expectedVersion, Order.OrderStatus status,
+                                         long changedAt) throws IOException {
+        return database.query(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(UPDATE_STATUS + " AND version = ?")) {
+                statement.setString(1, status.name());
+                statement.setLong(2, changedAt);
+                statement.setLong(3, changedAt);
+                statement.setString(4, trackingId);
+                statement.setLong(5, expectedVersion);
+                return statement.executeUpdate() > 0;
+            }
+        });
+    }
+
+    @Override
+    public List<String> findTrackingIdsPlacedBetween(long fromMillis, long toMillis) throws IOException {
+        return queryIdsBetween("SELECT tracking_id FROM orders WHERE created_at >= ? AND created_at < ? "
+            + "ORDER BY created_at", null, fromMillis, toMillis);
+    }
+
+    @Override
+    public List<String> findTrackingIdsStatusChangedBetween(Order.OrderStatus status, long fromMillis, long toMillis)
+            throws IOException {
+        return queryIdsBetween("SELECT tracking_id FROM orders WHERE status = ? AND status_changed_at >= ? "
+            + "AND status_changed_at < ? ORDER BY status_changed_at", status.name(), fromMillis, toMillis);
+    }
+
+    @Override
+    public boolean delete(String trackingId) throws IOException {
+        return database.query(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(
+                    "DELETE FROM orders WHERE tracking_id = ?")) {
+                statement.setString(1, trackingId);
+                return statement.executeUpdate() > 0;
+            }
+        });
+    }
+
+    @Override
+    public boolean exists(String trackingId) {
+        return findOwner(trackingId) != null;
+    }
+
+    @Override
+    public Set<String> trackingIds() {
+        return Collections.unmodifiableSet(new HashSet<>(queryIds("SELECT tracking_id FROM orders", null)));
+    }
+
+    @Override
+    public int count() {
+        try {
+            return database.query(connection -> {
+                try (PreparedStatement statement = connection.prepareStatement("SELECT COUNT(*) FROM orders");
+                     ResultSet rs = statement.executeQuery()) {
+                    return rs.next() ? rs.getInt(1) : 0;
+                }
+            });
+        } catch (IOException e) {
+            e.printStackTrace();
+            return 0;
+        }
+    }
+
+    @Override
+    public void forEach(Consumer<? super Order> consumer) throws IOException {
+        database.query(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement("SELECT " + COLUMNS + " FROM orders")) {
+                statement.setFetchSize(JdbcDatabase.BATCH_SIZE);
+                try (ResultSet rs = statement.executeQuery()) {
+                    while (rs.next()) {
+                        consumer.accept(read(rs));
+                    }
+                }
+            }
+            return null;
+        });
+    }
+
+    private List<String> queryIds(String sql, String parameter) {
+        try {
+            return database.query(connection -> {
+                try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                    if (parameter != null) {
+                        statement.setString(1, parameter);
+                    }
+                    statement.setFetchSize(JdbcDatabase.BATCH_SIZE);
+                    List<String> ids = new ArrayList<>();
+                    try (ResultSet rs = statement.executeQuery()) {
+                        while (rs.next()) {
+                            ids.add(rs.getString(1));
+                        }
+                    }
+                    return ids;
+                }
+            });
+        } catch (IOException e) {
+            e.printStackTrace();
+            return new ArrayList<>();
+        }
+    }
+
+    private List<String> queryIdsBetween(String sql, String status, long fromMillis, long toMillis) throws IOException {
+        return database.query(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                int parameter = 1;
+                if (status != null) {
+                    statement.setString(parameter++, status);
+                }
+                statement.setLong(parameter++, fromMillis);
+                statement.setLong(parameter, toMillis);
+                List<String> ids = new ArrayList<>();
+                try (ResultSet rs = statement.executeQuery()) {
+                    while (rs.next()) {
+                        ids.add(rs.getString(1));
+                    }
+                }
+                return ids;
+            }
+        });
+    }
+
+    private static void bind(PreparedStatement statement, Order order) throws SQLException {
+        statement.setString(1, order.getTrackingId());
+        statement.setString(2, order.getUsername());
+        statement.setString(3, order.getSenderName());
+        statement.setString(4, order.getSenderContact());
+        statement.setString(5, order.getSenderCity());
+        statement.setString(6, order.getReceiverName());
+        statement.setString(7, order.getReceiverContact());
+        statement.setString(8, order.getReceiverAddress());
+        statement.setString(9, order.getReceiverCity());
+        statement.setDouble(10, order.getRate());
+        statement.setString(11, order.getStatus().name());
+        statement.setLong(12, order.getCreatedAt());
+        statement.setLong(13, order.getUpdatedAt());
+        statement.setLong(14, order.getStatusChangedAt());
+        statement.setString(15, order.getSenderProvince());
+        statement.setLong(16, order.getVersion());
+    }
+
+    private static Order read(ResultSet rs) throws SQLException {
+        Order order = new Order(rs.getString(1), rs.getString(3), rs.getString(4), rs.getString(5),
+            rs.getString(6), rs.getString(7), rs.getString(8), rs.getString(9),
+            rs.getDouble(10), Order.OrderStatus.valueOf(rs.getString(11)), rs.getString(2));
+        order.setCreatedAt(rs.getLong(12));
+        order.setUpdatedAt(rs.getLong(13));
+        order.setStatusChangedAt(rs.getLong(14));
+        order.setSenderProvince(rs.getString(15));
+        order.setVersion(rs.getLong(16));
+        return order;
+    }
+}
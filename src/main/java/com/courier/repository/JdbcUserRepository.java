@@ -0,0 +1,157 @@
+package com.courier.repository;
+
+import com.courier.model.User;
+import java.io.IOException;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+public class JdbcUserRepository implements UserRepository {
+    private static final String INSERT = "INSERT INTO users "
+        + "(username, full_name, contact_number, address, city, province, pin) VALUES (?, ?, ?, ?, ?, ?, ?)";
+
+    private final JdbcDatabase database;
+
+    public JdbcUserRepository(JdbcDatabase database) {
+        this.database = database;
+    }
+
+    @Override
+    public boolean insert(User user) throws IOException {
+        // Check and insert under the database lock so two registrations cannot both win
+        return database.query(connection -> {
+            if (find(connection, user.getUsername()) != null) {
+                return false;
+            }
+            try (PreparedStatement statement = connection.prepareStatement(INSERT)) {
+                bind(statement, user);
+                statement.executeUpdate();
+            }
+            return true;
+        });
+    }
+
+    public void insertAll(Collection<User> users) throws IOException {
+        if (users.isEmpty()) {
+            return;
+        }
+        database.inTransaction(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(INSERT)) {
+                int pending = 0;
+                for (User user : users) {
+                    bind(statement, user);
+                    statement.addBatch();
+                    if (++pending == JdbcDatabase.BATCH_SIZE) {
+                        statement.executeBatch();
+                        pending = 0;
+                    }
+                }
+                if (pending > 0) {
+                    statement.executeBatch();
+                }
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public void update(User user) throws IOException {
+        database.query(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement("UPDATE users SET full_name = ?, "
+                    + "contact_number = ?, address = ?, city = ?, province = ?, pin = ? WHERE username = ?")) {
+                statement.setString(1, user.getFullName());
+                statement.setString(2, user.getContactNumber());
+                statement.setString(3, user.getAddress());
+                statement.setString(4, user.getCity());
+                statement.setString(5, user.getProvince());
+                statement.setString(6, user.getPin());
+                statement.setString(7, user.getUsername());
+                if (statement.executeUpdate() > 0) {
+                    return null;
+                }
+            }
+            try (PreparedStatement statement = connection.prepareStatement(INSERT)) {
+                bind(statement, user);
+                statement.executeUpdate();
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public boolean delete(String username) throws IOException {
+        return database.query(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement("DELETE FROM users WHERE username = ?")) {
+                statement.setString(1, username);
+                return statement.executeUpdate() > 0;
+            }
+        });
+    }
+
+    @Override
+    public User findByUsername(String username) throws IOException {
+        return database.query(connection -> find(connection, username));
+    }
+
+    @Override
+    public List<String> usernames() throws IOException {
+        return database.query(connection -> {
+            List<String> usernames = new ArrayList<>();
+            try (PreparedStatement statement = connection.prepareStatement("SELECT username FROM users");
+                 ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    usernames.add(rs.getString(1));
+                }
+            }
+            return usernames;
+        });
+    }
+
+    @Override
+    public List<String> usernames(String after, int limit) throws IOException {
+        return database.query(connection -> {
+            List<String> usernames = new ArrayList<>(limit);
+            try (PreparedStatement statement = connection.prepareStatement("SELECT username FROM users "
+                    + (after != null ? "WHERE username > ? " : "") + "ORDER BY username LIMIT ?")) {
+                int parameter = 1;
+                if (after != null) {
+                    statement.setString(parameter++, after);
+                }
+                statement.setInt(parameter, limit);
+                try (ResultSet rs = statement.executeQuery()) {
+                    while (rs.next()) {
+                        usernames.add(rs.getString(1));
+                    }
+                }
+            }
+            return usernames;
+        });
+    }
+
+    private static User find(java.sql.Connection connection, String username) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("SELECT full_name, username, "
+                + "contact_number, address, city, province, pin FROM users WHERE username = ?")) {
+            statement.setString(1, username);
+            try (ResultSet rs = statement.executeQuery()) {
+                if (!rs.next()) {
+                    return null;
+                }
+                return new User(rs.getString(1), rs.getString(2), rs.getString(3), rs.getString(4),
+                    rs.getString(5), rs.getString(6), rs.getString(7));
+            }
+        }
+    }
+
+    private static void bind(PreparedStatement statement, User user) throws SQLException {
+        statement.setString(1, user.getUsername());
+        statement.setString(2, user.getFullName());
+        statement.setString(3, user.getContactNumber());
+        statement.setString(4, user.getAddress());
+        statement.setString(5, user.getCity());
+        statement.setString(6, user.getProvince());
+        statement.setString(7, user.getPin());
+    }
+}
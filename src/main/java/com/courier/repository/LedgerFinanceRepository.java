@@ -0,0 +1,32 @@
+package com.courier.repository;
+
+import com.courier.storage.FinanceLedger;
+import java.io.IOException;
+
+public class LedgerFinanceRepository implements FinanceRepository {
+    private final FinanceLedger ledger;
+
+    public LedgerFinanceRepository(FinanceLedger ledger) {
+        this.ledger = ledger;
+    }
+
+    @Override
+    public void append(String trackingId, double rate) throws IOException {
+        ledger.append(trackingId, rate);
+    }
+
+    @Override
+    public double getTotal() throws IOException {
+        return ledger.getTotal();
+    }
+
+    @Override
+    public long getCount() throws IOException {
+        return ledger.getCount();
+    }
+
+    @Override
+    public void forEach(RecordVisitor visitor) throws IOException {
+        ledger.forEach(entry -> visitor.visit(entry.getTrackingId(), entry.getRate()));
+    }
+}
@@ -0,0 +1,75 @@
+package com.courier.repository;
+
+import com.courier.model.Order;
+import com.courier.storage.OrderLog;
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+public class LogOrderRepository implements OrderRepository {
+    private final OrderLog log;
+
+    public LogOrderRepository(OrderLog log) {
+        this.log = log;
+    }
+
+    @Override
+    public void insert(Order order) throws IOException {
+        log.appendPlace(order);
+    }
+
+    @Override
+    public Order findByTrackingId(String trackingId) throws IOException {
+        return log.get(trackingId);
+    }
+
+    @Override
+    public String findOwner(String trackingId) {
+        return log.getIndex().getUsername(trackingId);
+    }
+
+    @Override
+    public List<String> findTrackingIdsByUsername(String username) {
+        return log.getIndex().getTrackingIds(username);
+    }
+
+    @Override
+    public boolean updateStatus(String trackingId, Order.OrderStatus status, long changedAt) throws IOException {
+        return log.appendStatus(trackingId, status, changedAt);
+    }
+
+    @Override
+    public boolean delete(String trackingId) throws IOException {
+        return log.appendCancel(trackingId);
+    }
+
+    @Override
+    public boolean exists(String trackingId) {
+        return log.getIndex().contains(trackingId);
+    }
+
+    @Override
+    public List<String> findTrackingIdsNewestFirst(String after, int limit) {
+        return log.getIndex().trackingIdsAfter(after, limit);
+    }
+
+    @Override
+    public Set<String> trackingIds() {
+        return log.getIndex().trackingIds();
+    }
+
+    @Override
+    public int count() {
+        return log.size();
+    }
+
+    @Override
+    public void forEach(Consumer<? super Order> consumer) throws IOException {
+        log.forEach(consumer);
+    }
+
+    public OrderLog getLog() {
+        return log;
+    }
+}
@@ -0,0 +1,81 @@
+package com.courier.repository;
+
+import com.courier.model.Order;
+import com.courier.storage.MappedOrderStore;
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+public class MappedOrderRepository implements OrderRepository {
+    private final MappedOrderStore store;
+
+    public MappedOrderRepository(MappedOrderStore store) {
+        this.store = store;
+    }
+
+    @Override
+    public void insert(Order order) throws IOException {
+        store.insert(order);
+    }
+
+    @Override
+    public Order findByTrackingId(String trackingId) throws IOException {
+        return store.get(trackingId);
+    }
+
+    @Override
+    public String findOwner(String trackingId) {
+        return store.getIndex().getUsername(trackingId);
+    }
+
+    @Override
+    public List<String> findTrackingIdsByUsername(String username) {
+        return store.getIndex().getTrackingIds(username);
+    }
+
+    @Override
+    public boolean updateStatus(String trackingId, Order.OrderStatus status, long changedAt) throws IOException {
+        return store.updateStatus(trackingId, status, changedAt);
+    }
+
+    @Override
+    public boolean updateStatusIfVersion(String trackingId, long expectedVersion, Order.OrderStatus status,
+                                         long changedAt) throws IOException {
+        return store.updateStatusIfVersion(trackingId, expectedVersion, status, changedAt);
+    }
+
+    @Override
+    public boolean delete(String trackingId) throws IOException {
+        return store.delete(trackingId);
+    }
+
+    @Override
+    public boolean exists(String trackingId) {
+        return store.getIndex().contains(trackingId);
+    }
+
+    @Override
+    public List<String> findTrackingIdsNewestFirst(String after, int limit) {
+        return store.getIndex().trackingIdsAfter(after, limit);
+    }
+
+    @Override
+    public Set<String> trackingIds() {
+        return store.getIndex().trackingIds();
+    }
+
+    @Override
+    public int count() {
+        return store.size();
+    }
+
+    @Override
+    public void forEach(Consumer<? super Order> consumer) throws IOException {
+        store.forEach(consumer);
+    }
+
+    public MappedOrderStore getStore() {
+        return store;
+    }
+}
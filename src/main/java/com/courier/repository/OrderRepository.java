@@ -0,0 +1,104 @@
+package com.courier.repository;
+
+import com.courier.model.Order;
+import com.courier.storage.SecondaryIndexes;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Storage for orders, keyed by tracking ID. Owner and ID lookups are expected to be
+ * served from memory; only reading an order body may touch disk.
+ */
+public interface OrderRepository {
+    void insert(Order order) throws IOException;
+
+    Order findByTrackingId(String trackingId) throws IOException;
+
+    String findOwner(String trackingId);
+
+    List<String> findTrackingIdsByUsername(String username);
+
+    // Snowflake IDs grow in length and value over time, so this is newest first
+    default List<String> findTrackingIdsNewestFirst() {
+        List<String> trackingIds = new ArrayList<>(trackingIds());
+        trackingIds.sort(Comparator.comparingInt(String::length).thenComparing(Comparator.naturalOrder()));
+        Collections.reverse(trackingIds);
+        return trackingIds;
+    }
+
+    // Up to limit tracking IDs, newest first, starting after the given ID (null for the start).
+    // The default keeps only the page it returns but looks at every ID to find it
+    default List<String> findTrackingIdsNewestFirst(String after, int limit) {
+        PriorityQueue<String> page = new PriorityQueue<>(SecondaryIndexes.NEWEST_FIRST.reversed());
+        for (String trackingId : trackingIds()) {
+            if (after != null && SecondaryIndexes.NEWEST_FIRST.compare(trackingId, after) <= 0) {
+                continue;
+            }
+            page.add(trackingId);
+            if (page.size() > limit) {
+                page.poll();
+            }
+        }
+        List<String> trackingIds = new ArrayList<>(page);
+        trackingIds.sort(SecondaryIndexes.NEWEST_FIRST);
+        return trackingIds;
+    }
+
+    // Changes the status and bumps the order's version
+    boolean updateStatus(String trackingId, Order.OrderStatus status, long changedAt) throws IOException;
+
+    // Changes the status only while the order is still at the expected version. The default
+    // reads then writes, so callers must hold the order's lock across the call
+    default boolean updateStatusIfVersion(String trackingId, long expectedVersion, Order.OrderStatus status,
+                                          long changedAt) throws IOException {
+        Order current = findByTrackingId(trackingId);
+        return current != null && current.getVersion() == expectedVersion
+            && updateStatus(trackingId, status, changedAt);
+    }
+
+    boolean delete(String trackingId) throws IOException;
+
+    boolean exists(String trackingId);
+
+    Set<String> trackingIds();
+
+    int count();
+
+    // Takes in changes other processes made to shared storage; lookups that need them already do
+    default void refresh() throws IOException {
+    }
+
+    // Every live order once; implementations may call the consumer from several threads
+    void forEach(Consumer<? super Order> consumer) throws IOException;
+
+    // Orders created in [fromMillis, toMillis); the default scans every order
+    default List<String> findTrackingIdsPlacedBetween(long fromMillis, long toMillis) throws IOException {
+        List<String> trackingIds = Collections.synchronizedList(new ArrayList<>());
+        forEach(order -> {
+            if (order.getCreatedAt() >= fromMillis && order.getCreatedAt() < toMillis) {
+                trackingIds.add(order.getTrackingId());
+            }
+        });
+        return new ArrayList<>(trackingIds);
+    }
+
+    // Orders that changed to the given status in [fromMillis, toMillis); may include
+    // orders that have since moved on, which callers filter out after loading
+    default List<String> findTrackingIdsStatusChangedBetween(Order.OrderStatus status, long fromMillis, long toMillis)
+            throws IOException {
+        List<String> trackingIds = Collections.synchronizedList(new ArrayList<>());
+        forEach(order -> {
+            if (order.getStatus() == status && order.getStatusChangedAt() >= fromMillis
+                    && order.getStatusChangedAt() < toMillis) {
+                trackingIds.add(order.getTrackingId());
+            }
+        });
+        return new ArrayList<>(trackingIds);
+    }
+}
@@ -0,0 +1,46 @@
+package com.courier.repository;
+
+import com.courier.storage.FinanceRollups;
+import com.courier.storage.SecondaryIndexes;
+import com.courier.storage.TextSearchIndex;
+
+/**
+ * One storage backend: the order, user, admin and finance repositories that are
+ * wired into the services together, plus the finance rollups, secondary order
+ * indexes and text search index kept alongside them.
+ */
+public class Repositories {
+    private final OrderRepository orders;
+    private final UserRepository users;
+    private final AdminRepository admin;
+    private final FinanceRepository finance;
+    private final FinanceRollups rollups;
+    private final SecondaryIndexes indexes;
+    private final TextSearchIndex search;
+
+    public Repositories(OrderRepository orders, UserRepository users, AdminRepository admin,
+                        FinanceRepository finance) {
+        this(orders, users, admin, finance, null, null, null);
+    }
+
+    public Repositories(OrderRepository orders, UserRepository users, AdminRepository admin,
+                        FinanceRepository finance, FinanceRollups rollups, SecondaryIndexes indexes,
+                        TextSearchIndex search) {
+        this.orders = orders;
+        this.users = users;
+        this.admin = admin;
+        this.finance = finance;
+        this.rollups = rollups;
+        this.indexes = indexes;
+        this.search = search;
+    }
+
+    public OrderRepository getOrders() { return orders; }
+    public UserRepository getUsers() { return users; }
+    public AdminRepository getAdmin() { return admin; }
+    public FinanceRepository getFinance() { return finance; }
+    // Null when the backend was opened without rollups, e.g. as an import source
+    public FinanceRollups getRollups() { return rollups; }
+    public SecondaryIndexes getIndexes() { return indexes; }
+    public TextSearchIndex getSearch() { return search; }
+}
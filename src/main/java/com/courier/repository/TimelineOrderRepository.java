@@ -0,0 +1,125 @@
+package com.courier.repository;
+
+import com.courier.model.Order;
+import com.courier.storage.OrderTimeline;
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Records placements and status changes of another order repository in a
+ * day-partitioned OrderTimeline and answers time-range queries from it, so backends
+ * without a time index only read the partitions a query covers.
+ */
+public class TimelineOrderRepository implements OrderRepository {
+    private final OrderRepository orders;
+    private final OrderTimeline timeline;
+
+    public TimelineOrderRepository(OrderRepository orders, OrderTimeline timeline) {
+        this.orders = orders;
+        this.timeline = timeline;
+    }
+
+    @Override
+    public void insert(Order order) throws IOException {
+        orders.insert(order);
+        if (order.getCreatedAt() != 0) {
+            timeline.recordPlaced(order.getTrackingId(), order.getStatus(), order.getCreatedAt());
+        }
+    }
+
+    @Override
+    public Order findByTrackingId(String trackingId) throws IOException {
+        return orders.findByTrackingId(trackingId);
+    }
+
+    @Override
+    public String findOwner(String trackingId) {
+        return orders.findOwner(trackingId);
+    }
+
+    @Override
+    public List<String> findTrackingIdsByUsername(String username) {
+        return orders.findTrackingIdsByUsername(username);
+    }
+
+    @Override
+    public List<String> findTrackingIdsNewestFirst() {
+        return orders.findTrackingIdsNewestFirst();
+    }
+
+    @Override
+    public List<String> findTrackingIdsNewestFirst(String after, int limit) {
+        return orders.findTrackingIdsNewestFirst(after, limit);
+    }
+
+    @Override
+    public boolean updateStatus(String trackingId, Order.OrderStatus status, long changedAt) throws IOException {
+        if (!orders.updateStatus(trackingId, status, changedAt)) {
+            return false;
+        }
+        timeline.recordStatusChange(trackingId, status, changedAt);
+        return true;
+    }
+
+    @Override
+    public boolean updateStatusIfVersion(String trackingId, long expectedVersion, Order.OrderStatus status,
+                                         long changedAt) throws IOException {
+        if (!orders.updateStatusIfVersion(trackingId, expectedVersion, status, changedAt)) {
+            return false;
+        }
+        timeline.recordStatusChange(trackingId, status, changedAt);
+        return true;
+    }
+
+    @Override
+    public boolean delete(String trackingId) throws IOException {
+        return orders.delete(trackingId);
+    }
+
+    @Override
+    public boolean exists(String trackingId) {
+        return orders.exists(trackingId);
+    }
+
+    @Override
+    public Set<String> trackingIds() {
+        return orders.trackingIds();
+    }
+
+    @Override
+    public int count() {
+        return orders.count();
+    }
+
+    @Override
+    public void refresh() throws IOException {
+        orders.refresh();
+    }
+
+    @Override
+    public void forEach(Consumer<? super Order> consumer) throws IOException {
+        orders.forEach(consumer);
+    }
+
+    // Cancelled orders stay in the timeline; callers skip IDs that no longer resolve
+    @Override
+    public List<String> findTrackingIdsPlacedBetween(long fromMillis, long toMillis) throws IOException {
+        return timeline.findPlaced(fromMillis, toMillis);
+    }
+
+    @Override
+    public List<String> findTrackingIdsStatusChangedBetween(Order.OrderStatus status, long fromMillis, long toMillis)
+            throws IOException {
+        return timeline.findStatusChanges(status, fromMillis, toMillis);
+    }
+
+    public OrderRepository getOrders() {
+        return orders;
+    }
+
+    public OrderTimeline getTimeline() {
+        return timeline;
+    }
+}
@@ -0,0 +1,38 @@
+package com.courier.repository;
+
+import com.courier.model.User;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+public interface UserRepository {
+    // False when the username is already taken
+    boolean insert(User user) throws IOException;
+
+    void update(User user) throws IOException;
+
+    boolean delete(String username) throws IOException;
+
+    User findByUsername(String username) throws IOException;
+
+    List<String> usernames() throws IOException;
+
+    // Up to limit usernames in alphabetical order, starting after the given one (null for the start)
+    default List<String> usernames(String after, int limit) throws IOException {
+        PriorityQueue<String> page = new PriorityQueue<>(Comparator.reverseOrder());
+        for (String username : usernames()) {
+            if (after == null || username.compareTo(after) > 0) {
+                page.add(username);
+                if (page.size() > limit) {
+                    page.poll();
+                }
+            }
+        }
+        List<String> usernames = new ArrayList<>(page);
+        Collections.sort(usernames);
+        return usernames;
+    }
+}
@@ -1,20 +1,53 @@
 package com.courier.service;
 
 import com.courier.model.Admin;
+import com.courier.model.Order;
+import com.courier.repository.AdminRepository;
+import com.courier.repository.FinanceRepository;
+import com.courier.repository.OrderRepository;
+import com.courier.storage.FinanceRollups;
+import com.courier.storage.LiveOrderColumns;
+import com.courier.storage.OrderColumns;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Arrays;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
 
 public class AdminService {
-    
+    private final AdminRepository admins;
+    private final FinanceRepository finance;
+    private final FinanceRollups rollups;
+    private final OrderRepository orders;
+    // Kept current from the rollups' change events once the first report has loaded it
+    private LiveOrderColumns liveColumns;
+
+    public AdminService(AdminRepository admins, FinanceRepository finance) {
+        this(admins, finance, null);
+    }
+
+    public AdminService(AdminRepository admins, FinanceRepository finance, FinanceRollups rollups) {
+        this(admins, finance, rollups, null);
+    }
+
+    // Orders may be null, in which case reports cover only what the ledger records
+    public AdminService(AdminRepository admins, FinanceRepository finance, FinanceRollups rollups,
+                        OrderRepository orders) {
+        this.admins = admins;
+        this.finance = finance;
+        this.rollups = rollups;
+        this.orders = orders;
+    }
+
     public Admin authenticateAdmin(String username, String pin) {
         try {
-            String filePath = FileManager.getAdminDir() + "/admin.txt";
-            if (!FileManager.fileExists(filePath)) {
-                return null;
-            }
-            String data = FileManager.readFile(filePath);
-            Admin admin = Admin.fromString(data);
+            Admin admin = admins.find();
             if (admin != null && admin.getUsername().equals(username) && admin.getPin().equals(pin)) {
                 return admin;
             }
@@ -26,13 +59,11 @@ public class AdminService {
 
     public boolean changeAdminPassword(String oldPin, String newPin) {
         try {
-            String filePath = FileManager.getAdminDir() + "/admin.txt";
-            String data = FileManager.readFile(filePath);
-            Admin admin = Admin.fromString(data);
+            Admin admin = admins.find();
             
             if (admin != null && admin.getPin().equals(oldPin)) {
                 admin.setPin(newPin);
-                FileManager.writeFile(filePath, admin.toString());
+                admins.save(admin);
                 return true;
             }
         } catch (IOException e) {
@@ -44,30 +75,201 @@ public class AdminService {
     public List<FinanceRecord> getFinanceRecords() {
         List<FinanceRecord> records = new ArrayList<>();
         try {
-            String financeFile = FileManager.getFinanceDir() + "/finance.txt";
-            if (!FileManager.fileExists(financeFile)) {
-                return records;
-            }
-            
-            String data = FileManager.readFile(financeFile);
-            if (data.trim().isEmpty()) {
-                return records;
-            }
-            
-            String[] parts = data.split(",");
-            for (int i = 0; i < parts.length - 1; i += 2) {
-                if (i + 1 < parts.length) {
-                    records.add(new FinanceRecord(parts[i], Double.parseDouble(parts[i + 1])));
-                }
-            }
-        } catch (IOException | NumberFormatException e) {
+            finance.forEach((trackingId, rate) -> records.add(new FinanceRecord(trackingId, rate)));
+        } catch (IOException e) {
             e.printStackTrace();
         }
         return records;
     }
 
     public double getTotalRevenue() {
-        return getFinanceRecords().stream().mapToDouble(FinanceRecord::getRate).sum();
+        try {
+            return finance.getTotal();
+        } catch (IOException e) {
+            e.printStackTrace();
+            return 0;
+        }
+    }
+
+    public long getFinanceRecordCount() {
+        try {
+            return finance.getCount();
+        } catch (IOException e) {
+            e.printStackTrace();
+            return 0;
+        }
+    }
+
+    public boolean hasFinanceRollups() {
+        return rollups != null;
+    }
+
+    // Count and revenue per key of one dimension, in key order; empty without rollups
+    public Map<String, FinanceRollups.Bucket> getFinanceRollup(FinanceRollups.Dimension dimension) {
+        if (rollups == null) {
+            return Collections.emptyMap();
+        }
+        refreshOrders();
+        return rollups.get(dimension);
+    }
+
+    // Totals and every rollup dimension, read from the rollups without touching the ledger
+    public FinanceSummary getFinanceSummary() {
+        Map<FinanceRollups.Dimension, Map<String, FinanceRollups.Bucket>> dimensions =
+            new EnumMap<>(FinanceRollups.Dimension.class);
+        for (FinanceRollups.Dimension dimension : FinanceRollups.Dimension.values()) {
+            dimensions.put(dimension, getFinanceRollup(dimension));
+        }
+        if (rollups != null) {
+            refreshOrders();
+            return new FinanceSummary(rollups.getTotalCount(), rollups.getTotalRevenue(), dimensions);
+        }
+        return new FinanceSummary(getFinanceRecordCount(), getTotalRevenue(), dimensions);
+    }
+
+    // Columnar snapshot of every order the ledger has billed. Live orders come from the
+    // order store; ledger records without one are cancelled orders, dated from their ID
+    public OrderColumns getOrderSnapshot() {
+        OrderColumns.Builder builder = new OrderColumns.Builder();
+        try {
+            if (orders != null) {
+                orders.forEach(order -> builder.add(OrderColumns.parseTrackingId(order.getTrackingId()),
+                    order.getRate(), placedAt(order.getTrackingId(), order.getCreatedAt()),
+                    order.getStatus().ordinal(), order.getReceiverCity(), order.getSenderProvince()));
+            }
+            long[] live = builder.sortedTrackingIds();
+            finance.forEach((trackingId, rate) -> {
+                long id = OrderColumns.parseTrackingId(trackingId);
+                if (Arrays.binarySearch(live, id) < 0) {
+                    builder.add(id, rate, placedAt(trackingId, 0), OrderColumns.CANCELLED_CODE, null, null);
+                }
+            });
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return builder.build();
+    }
+
+    // Revenue, breakdowns and rate percentiles for orders placed in [from, to). With rollups
+    // the snapshot is built once and then kept current; without, every call builds one
+    public FinanceReport getFinanceReport(Instant from, Instant to) {
+        if (rollups == null) {
+            return getFinanceReport(getOrderSnapshot(), from, to);
+        }
+        refreshOrders();
+        return getFinanceReport(getLiveColumns().between(from.toEpochMilli(), to.toEpochMilli()), from, to);
+    }
+
+    public FinanceReport getFinanceReport(OrderColumns snapshot, Instant from, Instant to) {
+        return getFinanceReport(snapshot.between(from.toEpochMilli(), to.toEpochMilli()), from, to);
+    }
+
+    private FinanceReport getFinanceReport(OrderColumns.Aggregates slice, Instant from, Instant to) {
+        double revenue = slice.sumRate();
+        int count = slice.count();
+        return new FinanceReport(from, to, count, revenue, count > 0 ? revenue / count : 0,
+            slice.groupByStatus(), slice.groupByCity(), slice.groupByProvince(),
+            slice.ratePercentiles(0.5, 0.9, 0.99));
+    }
+
+    // Streams every ledger record, joined with its order where it still exists, to a file.
+    // Returns the rows written, or -1 if the progress callback stopped the export
+    public long exportFinanceLedger(Path file, ExportWriter.Format format, boolean gzip,
+                                    ExportWriter.Progress progress) throws IOException {
+        long total = finance.getCount();
+        try (ExportWriter writer = ExportWriter.open(file, format, gzip,
+                "tracking_id", "placed_at", "status", "receiver_city", "sender_province", "rate")) {
+            finance.forEach((trackingId, rate) -> {
+                long done = writer.getRows();
+                if (done % 1024 == 0 && !progress.update(done, total)) {
+                    throw new CancellationException();
+                }
+                try {
+                    Order order = orders != null ? orders.findByTrackingId(trackingId) : null;
+                    long placed = placedAt(trackingId, order != null ? order.getCreatedAt() : 0);
+                    writer.writeRow(trackingId, placed > 0 ? Instant.ofEpochMilli(placed).toString() : null,
+                        order != null ? order.getStatus().getDisplayName() : OrderColumns.CANCELLED,
+                        order != null ? order.getReceiverCity() : null,
+                        order != null ? order.getSenderProvince() : null, rate);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            writer.finish();
+            progress.update(writer.getRows(), total);
+            return writer.getRows();
+        } catch (CancellationException e) {
+            return -1;
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    // Listens before loading, so no change falls between the snapshot and the events
+    private synchronized LiveOrderColumns getLiveColumns() {
+        if (liveColumns == null) {
+            liveColumns = new LiveOrderColumns(this::getOrderSnapshot,
+                order -> placedAt(order.getTrackingId(), order.getCreatedAt()));
+            rollups.addListener(liveColumns);
+        }
+        return liveColumns;
+    }
+
+    private static long placedAt(String trackingId, long createdAt) {
+        if (createdAt > 0) {
+            return createdAt;
+        }
+        Instant placed = SnowflakeIdGenerator.timestampOf(trackingId);
+        return placed != null ? placed.toEpochMilli() : 0;
+    }
+
+    // Orders other processes placed or changed reach the rollups as the repository catches up on them
+    private void refreshOrders() {
+        if (orders == null) {
+            return;
+        }
+        try {
+            orders.refresh();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    public static class FinanceReport {
+        private final Instant from;
+        private final Instant to;
+        private final long count;
+        private final double revenue;
+        private final double average;
+        private final List<OrderColumns.Group> byStatus;
+        private final List<OrderColumns.Group> byCity;
+        private final List<OrderColumns.Group> byProvince;
+        private final double[] percentiles;
+
+        public FinanceReport(Instant from, Instant to, long count, double revenue, double average,
+                             List<OrderColumns.Group> byStatus, List<OrderColumns.Group> byCity,
+                             List<OrderColumns.Group> byProvince, double[] percentiles) {
+            this.from = from;
+            this.to = to;
+            this.count = count;
+            this.revenue = revenue;
+            this.average = average;
+            this.byStatus = byStatus;
+            this.byCity = byCity;
+            this.byProvince = byProvince;
+            this.percentiles = percentiles;
+        }
+
+        public Instant getFrom() { return from; }
+        public Instant getTo() { return to; }
+        public long getCount() { return count; }
+        public double getRevenue() { return revenue; }
+        public double getAverage() { return average; }
+        public List<OrderColumns.Group> getByStatus() { return byStatus; }
+        public List<OrderColumns.Group> getByCity() { return byCity; }
+        public List<OrderColumns.Group> getByProvince() { return byProvince; }
+        // Median, 90th and 99th percentile order rate
+        public double[] getPercentiles() { return percentiles; }
     }
 
     public static class FinanceRecord {
@@ -82,4 +284,23 @@ public class AdminService {
         public String getTrackingId() { return trackingId; }
         public double getRate() { return rate; }
     }
+
+    public static class FinanceSummary {
+        private final long count;
+        private final double revenue;
+        private final Map<FinanceRollups.Dimension, Map<String, FinanceRollups.Bucket>> dimensions;
+
+        public FinanceSummary(long count, double revenue,
+                              Map<FinanceRollups.Dimension, Map<String, FinanceRollups.Bucket>> dimensions) {
+            this.count = count;
+            this.revenue = revenue;
+            this.dimensions = dimensions;
+        }
+
+        public long getCount() { return count; }
+        public double getRevenue() { return revenue; }
+        public Map<String, FinanceRollups.Bucket> get(FinanceRollups.Dimension dimension) {
+            return dimensions.get(dimension);
+        }
+    }
 }
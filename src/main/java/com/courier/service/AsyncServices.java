@@ -0,0 +1,128 @@
+package com.courier.service;
+
+import com.courier.model.Admin;
+import com.courier.model.Order;
+import com.courier.model.User;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
+
+/**
+ * CompletableFuture facade over the blocking services so UI code never waits on
+ * disk. Results complete on the service executor; callers hop back to the EDT.
+ */
+public class AsyncServices {
+    private final OrderService orderService;
+    private final UserService userService;
+    private final AdminService adminService;
+    private final ExecutorService executor;
+
+    public AsyncServices(OrderService orderService, UserService userService, AdminService adminService) {
+        this(orderService, userService, adminService, ServiceExecutors.newServiceExecutor("courier-service"));
+    }
+
+    public AsyncServices(OrderService orderService, UserService userService, AdminService adminService,
+                         ExecutorService executor) {
+        this.orderService = orderService;
+        this.userService = userService;
+        this.adminService = adminService;
+        this.executor = executor;
+    }
+
+    public OrderService orders() { return orderService; }
+    public UserService users() { return userService; }
+    public AdminService admin() { return adminService; }
+
+    public <T> CompletableFuture<T> supply(Supplier<T> task) {
+        try {
+            return CompletableFuture.supplyAsync(task, executor);
+        } catch (RejectedExecutionException e) {
+            CompletableFuture<T> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+    }
+
+    // Orders
+    public CompletableFuture<String> placeOrder(Order order) {
+        return supply(() -> orderService.placeOrder(order));
+    }
+
+    public CompletableFuture<Order> findOrder(String trackingId) {
+        return supply(() -> orderService.findOrder(trackingId));
+    }
+
+    public CompletableFuture<List<Order>> getUserOrders(String username) {
+        return supply(() -> orderService.getUserOrders(username));
+    }
+
+    public CompletableFuture<Integer> getOrderCount() {
+        return supply(orderService::getOrderCount);
+    }
+
+    public CompletableFuture<List<Order>> searchOrders(String query, int limit) {
+        return supply(() -> orderService.searchOrders(query, limit));
+    }
+
+    public CompletableFuture<Boolean> updateOrderStatus(String trackingId, Order.OrderStatus status) {
+        return supply(() -> orderService.updateOrderStatus(trackingId, status));
+    }
+
+    public CompletableFuture<OrderService.UpdateResult> updateOrderStatus(String trackingId, long expectedVersion,
+                                                                         Order.OrderStatus status) {
+        return supply(() -> orderService.updateOrderStatus(trackingId, expectedVersion, status));
+    }
+
+    public CompletableFuture<Boolean> cancelOrder(String trackingId) {
+        return supply(() -> orderService.cancelOrder(trackingId));
+    }
+
+    // Users
+    public CompletableFuture<User> authenticateUser(String username, String pin) {
+        return supply(() -> userService.authenticateUser(username, pin));
+    }
+
+    public CompletableFuture<Boolean> createUser(User user) {
+        return supply(() -> userService.createUser(user));
+    }
+
+    public CompletableFuture<Boolean> updateUser(User user) {
+        return supply(() -> userService.updateUser(user));
+    }
+
+    public CompletableFuture<Boolean> deleteUser(String username) {
+        return supply(() -> userService.deleteUser(username));
+    }
+
+    public CompletableFuture<User> getUserByUsername(String username) {
+        return supply(() -> userService.getUserByUsername(username));
+    }
+
+    // Admin
+    public CompletableFuture<Admin> authenticateAdmin(String username, String pin) {
+        return supply(() -> adminService.authenticateAdmin(username, pin));
+    }
+
+    public CompletableFuture<Boolean> changeAdminPassword(String oldPin, String newPin) {
+        return supply(() -> adminService.changeAdminPassword(oldPin, newPin));
+    }
+
+    public CompletableFuture<List<AdminService.FinanceRecord>> getFinanceRecords() {
+        return supply(adminService::getFinanceRecords);
+    }
+
+    public CompletableFuture<AdminService.FinanceSummary> getFinanceSummary() {
+        return supply(adminService::getFinanceSummary);
+    }
+
+    public CompletableFuture<AdminService.FinanceReport> getFinanceReport(Instant from, Instant to) {
+        return supply(() -> adminService.getFinanceReport(from, to));
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
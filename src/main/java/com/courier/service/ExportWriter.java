@@ -0,0 +1,175 @@
+package com.courier.service;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes report rows to a CSV or JSON-lines file as they are produced, through a
+ * buffered (and optionally gzipped) stream, so an export holds one row in memory at a
+ * time. Rows go to a ".part" file that only replaces the target on finish(); closing
+ * without finishing, e.g. on cancel, deletes it.
+ */
+public class ExportWriter implements Closeable {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    public enum Format {
+        CSV("csv"),
+        JSON_LINES("jsonl");
+
+        private final String extension;
+
+        Format(String extension) {
+            this.extension = extension;
+        }
+
+        public String getExtension() { return extension; }
+    }
+
+    // Told how far an export has got; returning false stops it
+    public interface Progress {
+        boolean update(long done, long total);
+    }
+
+    private final Path target;
+    private final Path partFile;
+    private final Format format;
+    private final String[] columns;
+    private final BufferedWriter out;
+    private final StringBuilder line = new StringBuilder(256);
+    private long rows;
+    private boolean finished;
+
+    private ExportWriter(Path target, Path partFile, Format format, String[] columns, BufferedWriter out) {
+        this.target = target;
+        this.partFile = partFile;
+        this.format = format;
+        this.columns = columns;
+        this.out = out;
+    }
+
+    public static ExportWriter open(Path target, Format format, boolean gzip, String... columns) throws IOException {
+        Path partFile = target.resolveSibling(target.getFileName() + ".part");
+        OutputStream stream = Files.newOutputStream(partFile);
+        try {
+            if (gzip) {
+                stream = new GZIPOutputStream(stream, BUFFER_SIZE);
+            }
+            BufferedWriter out = new BufferedWriter(
+                new OutputStreamWriter(stream, StandardCharsets.UTF_8), BUFFER_SIZE);
+            ExportWriter writer = new ExportWriter(target, partFile, format, columns, out);
+            if (format == Format.CSV) {
+                writer.writeCsv((Object[]) columns);
+            }
+            return writer;
+        } catch (IOException e) {
+            stream.close();
+            Files.deleteIfExists(partFile);
+            throw e;
+        }
+    }
+
+    // One value per column: strings are quoted as the format needs, numbers written as-is, null left empty
+    public void writeRow(Object... values) throws IOException {
+        if (format == Format.CSV) {
+            writeCsv(values);
+        } else {
+            writeJson(values);
+        }
+        rows++;
+    }
+
+    public long getRows() {
+        return rows;
+    }
+
+    // Flushes everything and moves the finished file over the target
+    public void finish() throws IOException {
+        out.close();
+        Files.move(partFile, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        finished = true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!finished) {
+            try {
+                out.close();
+            } finally {
+                Files.deleteIfExists(partFile);
+            }
+        }
+    }
+
+    private void writeCsv(Object[] values) throws IOException {
+        line.setLength(0);
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                line.append(',');
+            }
+            Object value = values[i];
+            if (value instanceof Number || value == null) {
+                line.append(value == null ? "" : value);
+                continue;
+            }
+            String text = value.toString();
+            if (text.indexOf(',') < 0 && text.indexOf('"') < 0 && text.indexOf('\n') < 0 && text.indexOf('\r') < 0) {
+                line.append(text);
+            } else {
+                line.append('"').append(text.replace("\"", "\"\"")).append('"');
+            }
+        }
+        line.append("\r\n"); // RFC 4180
+        out.append(line);
+    }
+
+    private void writeJson(Object[] values) throws IOException {
+        line.setLength(0);
+        line.append('{');
+        for (int i = 0; i < columns.length; i++) {
+            if (i > 0) {
+                line.append(',');
+            }
+            appendJsonString(columns[i]);
+            line.append(':');
+            Object value = i < values.length ? values[i] : null;
+            if (value == null) {
+                line.append("null");
+            } else if (value instanceof Number) {
+                line.append(value);
+            } else {
+                appendJsonString(value.toString());
+            }
+        }
+        line.append("}\n");
+        out.append(line);
+    }
+
+    private void appendJsonString(String text) {
+        line.append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '"': line.append("\\\""); break;
+                case '\\': line.append("\\\\"); break;
+                case '\n': line.append("\\n"); break;
+                case '\r': line.append("\\r"); break;
+                case '\t': line.append("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        line.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        line.append(c);
+                    }
+            }
+        }
+        line.append('"');
+    }
+}
@@ -1,18 +1,109 @@
 package com.courier.service;
 
+import com.courier.model.Order;
+import com.courier.repository.FileAdminRepository;
+import com.courier.repository.FileOrderRepository;
+import com.courier.repository.FileUserRepository;
+import com.courier.repository.JdbcAdminRepository;
+import com.courier.repository.JdbcDatabase;
+import com.courier.repository.JdbcFinanceRepository;
+import com.courier.repository.JdbcOrderRepository;
+import com.courier.repository.JdbcUserRepository;
+import com.courier.repository.LedgerFinanceRepository;
+import com.courier.repository.LogOrderRepository;
+import com.courier.repository.MappedOrderRepository;
+import com.courier.repository.OrderRepository;
+import com.courier.repository.Repositories;
+import com.courier.repository.TimelineOrderRepository;
+import com.courier.storage.AtomicFiles;
+import com.courier.storage.Durability;
+import com.courier.storage.FileLocks;
+import com.courier.storage.FinanceLedger;
+import com.courier.storage.FinanceRollups;
+import com.courier.storage.MappedOrderStore;
+import com.courier.storage.OrderChangeFeed;
+import com.courier.storage.OrderLog;
+import com.courier.storage.OrderTimeline;
+import com.courier.storage.SecondaryIndexes;
+import com.courier.storage.TextSearchIndex;
 import java.io.*;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 public class FileManager {
-    private static final String BASE_DIR = System.getProperty("user.home") + File.separator + "CourierMS";
+    private static final String BASE_DIR = System.getProperty("courier.home",
+            System.getProperty("user.home") + File.separator + "CourierMS");
     private static final String ACCOUNTS_DIR = BASE_DIR + File.separator + "accounts";
     private static final String ORDERS_DIR = BASE_DIR + File.separator + "orders";
     private static final String ADMIN_DIR = BASE_DIR + File.separator + "admin";
     private static final String FINANCE_DIR = BASE_DIR + File.separator + "finance";
+    private static final String ORDER_LOG_DIR = BASE_DIR + File.separator + "orderlog";
+    private static final String ORDER_STORE_DIR = BASE_DIR + File.separator + "orderstore";
+    private static final String TIMELINE_DIR = BASE_DIR + File.separator + "timeline";
+    private static final String INDEX_DIR = BASE_DIR + File.separator + "indexes";
+    private static final String LOCKS_DIR = BASE_DIR + File.separator + "locks";
+    private static final String ORDER_FEED_DIR = BASE_DIR + File.separator + "orderfeed";
+    private static final String TARIFF_FILE = System.getProperty("courier.tariff",
+            BASE_DIR + File.separator + "config" + File.separator + "tariff.txt");
+    private static final long TARIFF_RELOAD_MILLIS = Long.getLong("courier.tariffReloadMillis", 2000);
+    // Written by a process that changed orders without keeping the derived structures current
+    private static final String STALE_MARKER = "derived.stale";
+    private static final int MAX_NODE = 1023;
+    private static final String JDBC_URL = System.getProperty("courier.jdbcUrl",
+            "jdbc:sqlite:" + BASE_DIR + File.separator + "courier.db");
+    private static final StorageMode STORAGE_MODE = StorageMode.fromProperty(System.getProperty("courier.storage"));
+    private static final Durability.Mode DURABILITY_MODE =
+            Durability.Mode.fromProperty(System.getProperty("courier.durability"));
+    // 0 still groups the writers that arrive while a batch is being forced; a window only pays on slow disks
+    private static final long GROUP_COMMIT_MICROS = Long.getLong("courier.groupCommitMicros", 0);
+    // How often files mode reads the change feed even when nothing is looked up: the feed is
+    // only compacted up to what every process has read, so an idle one would hold it back
+    private static final long FEED_CATCH_UP_MILLIS = Long.getLong("courier.feedCatchUpMillis", 1000);
+
+    private static OrderLog orderLog;
+    private static MappedOrderStore orderStore;
+    private static OrderTimeline orderTimeline;
+    private static FinanceLedger financeLedger;
+    private static FinanceRollups financeRollups;
+    private static SecondaryIndexes secondaryIndexes;
+    private static TextSearchIndex searchIndex;
+    private static JdbcDatabase database;
+    private static Repositories repositories;
+    private static Durability durability;
+    private static FileLocks fileLocks;
+    private static OrderChangeFeed orderChangeFeed;
+    private static TariffEngine tariffEngine;
+    private static ScheduledExecutorService feedReader;
+    // Locks held for the life of the process
+    private static final List<FileLocks.Handle> held = new ArrayList<>();
+
+    public enum StorageMode {
+        FILES,
+        LOG,
+        MAPPED,
+        SQL;
+
+        public static StorageMode fromProperty(String value) {
+            for (StorageMode mode : values()) {
+                if (mode.name().equalsIgnoreCase(value)) {
+                    return mode;
+                }
+            }
+            return FILES;
+        }
+
+        // Whether other processes may open the same data directory alongside this one
+        public boolean isShareable() {
+            return this == FILES || this == SQL;
+        }
+    }
 
     static {
         createDirectories();
@@ -30,12 +121,7 @@ public class FileManager {
             if (!Files.exists(adminFile)) {
                 Files.write(adminFile, "admin,admin123".getBytes());
             }
-            
-            // Create default finance file if it doesn't exist
-            Path financeFile = Paths.get(FINANCE_DIR, "finance.txt");
-            if (!Files.exists(financeFile)) {
-                Files.write(financeFile, "".getBytes());
-            }
+
         } catch (IOException e) {
             e.printStackTrace();
         }
@@ -46,7 +132,7 @@ public class FileManager {
     }
 
     public static void writeFile(String filePath, String content) throws IOException {
-        Files.write(Paths.get(filePath), content.getBytes());
+        AtomicFiles.write(Paths.get(filePath), content.getBytes(), getDurability());
     }
 
     public static boolean fileExists(String filePath) {
@@ -73,8 +159,393 @@ public class FileManager {
         return files;
     }
 
+    public static StorageMode getStorageMode() {
+        return STORAGE_MODE;
+    }
+
+    public static synchronized OrderLog getOrderLog() throws IOException {
+        if (orderLog == null) {
+            claimSingleProcess("orderlog");
+            orderLog = OrderLog.open(Paths.get(ORDER_LOG_DIR), getDurability());
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    orderLog.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }));
+        }
+        return orderLog;
+    }
+
+    public static synchronized MappedOrderStore getOrderStore() throws IOException {
+        if (orderStore == null) {
+            claimSingleProcess("orderstore");
+            orderStore = MappedOrderStore.open(Paths.get(ORDER_STORE_DIR, "orders.dat"), getDurability());
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    orderStore.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }));
+        }
+        return orderStore;
+    }
+
+    public static synchronized OrderTimeline getOrderTimeline() throws IOException {
+        if (orderTimeline == null) {
+            orderTimeline = OrderTimeline.open(Paths.get(TIMELINE_DIR));
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    orderTimeline.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }));
+        }
+        return orderTimeline;
+    }
+
+    // The backend selected by courier.storage. Opening it replays the log or scans the
+    // orders tree once, so call it at startup rather than on the first lookup.
+    //
+    // Several processes may open the same directory in files or sql mode. The first one to
+    // start keeps the rollups and indexes; the others run without them and leave a marker
+    // so the next owner rebuilds what they changed behind its back
+    @SuppressWarnings("try")
+    public static synchronized Repositories getRepositories() throws IOException {
+        if (repositories == null) {
+            OrderService.setDefaultTariff(getTariffEngine());
+            FileLocks locks = getFileLocks();
+            boolean derivedOwner;
+            try (FileLocks.Handle startup = locks.exclusive("startup")) {
+                joinSession(locks);
+                leaseNode(locks);
+                FileLocks.Handle derived = locks.tryExclusive("derived");
+                derivedOwner = derived != null;
+                if (derivedOwner) {
+                    held.add(derived);
+                }
+            }
+            Repositories backend;
+            if (STORAGE_MODE == StorageMode.SQL) {
+                JdbcDatabase db = getDatabase();
+                backend = new Repositories(new JdbcOrderRepository(db), new JdbcUserRepository(db),
+                    new JdbcAdminRepository(db), new JdbcFinanceRepository(db));
+            } else {
+                backend = openFileRepositories();
+            }
+            if (!derivedOwner) {
+                markDerivedStale();
+                Runtime.getRuntime().addShutdownHook(new Thread(FileManager::markDerivedStale));
+                repositories = backend;
+                keepReadingFeed(repositories.getOrders());
+                return repositories;
+            }
+            Path staleMarker = Paths.get(LOCKS_DIR, STALE_MARKER);
+            boolean stale = Files.exists(staleMarker);
+            FinanceRollups rollups = getFinanceRollups();
+            // A crash between the ledger append and the rollup journal leaves them a record apart
+            if (rollups.isCreated() || stale || rollups.getTotalCount() != backend.getFinance().getCount()) {
+                // First start with rollups, or orders changed without them: derive them from the ledger
+                FinanceRollupRebuild.rebuild(backend.getOrders(), backend.getFinance(), rollups);
+            }
+            SecondaryIndexes indexes = getSecondaryIndexes();
+            if (indexes.isCreated() || stale) {
+                SecondaryIndexRebuild.rebuild(backend.getOrders(), indexes);
+            }
+            TextSearchIndex search = getSearchIndex();
+            if (search.isCreated() || stale) {
+                SecondaryIndexRebuild.rebuild(backend.getOrders(), search);
+            }
+            Files.deleteIfExists(staleMarker);
+            OrderService.setDerivedStaleHandler(FileManager::markDerivedStale);
+            OrderRepository orders = backend.getOrders();
+            if (orders instanceof TimelineOrderRepository
+                    && ((TimelineOrderRepository) orders).getOrders() instanceof FileOrderRepository) {
+                ((FileOrderRepository) ((TimelineOrderRepository) orders).getOrders()).setChangeListener(
+                    change -> applyChange(change, rollups, indexes, search));
+            }
+            repositories = new Repositories(orders, backend.getUsers(), backend.getAdmin(),
+                backend.getFinance(), rollups, indexes, search);
+            keepReadingFeed(orders);
+        }
+        return repositories;
+    }
+
+    private static Repositories openFileRepositories() throws IOException {
+        OrderRepository orders;
+        if (STORAGE_MODE == StorageMode.LOG) {
+            orders = new LogOrderRepository(getOrderLog());
+        } else if (STORAGE_MODE == StorageMode.MAPPED) {
+            orders = new MappedOrderRepository(getOrderStore());
+        } else if (STORAGE_MODE == StorageMode.FILES) {
+            orders = FileOrderRepository.open(Paths.get(ORDERS_DIR), getFileLocks(), getOrderChangeFeed(),
+                getDurability());
+        } else {
+            orders = FileOrderRepository.open(Paths.get(ORDERS_DIR));
+        }
+        return new Repositories(new TimelineOrderRepository(orders, getOrderTimeline()),
+            FileUserRepository.open(Paths.get(ACCOUNTS_DIR), getDurability()),
+            new FileAdminRepository(Paths.get(ADMIN_DIR, "admin.txt")),
+            new LedgerFinanceRepository(getFinanceLedger()));
+    }
+
+    // How order and ledger writes reach the disk, from courier.durability: none (the default),
+    // fsync, or group with a window of courier.groupCommitMicros. The sql mode leaves it to the database
+    public static synchronized Durability getDurability() {
+        if (durability == null) {
+            durability = Durability.open(DURABILITY_MODE, GROUP_COMMIT_MICROS);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    durability.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }));
+        }
+        return durability;
+    }
+
+    // Rates from courier.tariff (config/tariff.txt by default), written with today's rates on first
+    // use and reloaded when it changes
+    public static synchronized TariffEngine getTariffEngine() throws IOException {
+        if (tariffEngine == null) {
+            tariffEngine = TariffEngine.open(Paths.get(TARIFF_FILE), TARIFF_RELOAD_MILLIS);
+            Runtime.getRuntime().addShutdownHook(new Thread(tariffEngine::close));
+        }
+        return tariffEngine;
+    }
+
+    public static synchronized FileLocks getFileLocks() throws IOException {
+        if (fileLocks == null) {
+            fileLocks = FileLocks.open(Paths.get(LOCKS_DIR));
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    fileLocks.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }));
+        }
+        return fileLocks;
+    }
+
+    public static synchronized OrderChangeFeed getOrderChangeFeed() throws IOException {
+        if (orderChangeFeed == null) {
+            orderChangeFeed = OrderChangeFeed.open(Paths.get(ORDER_FEED_DIR, "changes.dat"));
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    orderChangeFeed.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }));
+        }
+        return orderChangeFeed;
+    }
+
+    // Once the change listener is in place: what the catch-up reads goes to the derived structures too
+    private static void keepReadingFeed(OrderRepository orders) {
+        if (STORAGE_MODE != StorageMode.FILES || FEED_CATCH_UP_MILLIS <= 0) {
+            return;
+        }
+        feedReader = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "orderfeed-catch-up");
+            thread.setDaemon(true);
+            return thread;
+        });
+        feedReader.scheduleWithFixedDelay(() -> {
+            try {
+                orders.refresh();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }, FEED_CATCH_UP_MILLIS, FEED_CATCH_UP_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    // Every running process holds "sessions" shared; one that gets it exclusively is alone,
+    // so nobody still needs the change feed and it starts over empty
+    private static void joinSession(FileLocks locks) throws IOException {
+        FileLocks.Handle alone = locks.tryExclusive("sessions");
+        if (alone != null) {
+            try {
+                if (STORAGE_MODE == StorageMode.FILES) {
+                    getOrderChangeFeed().reset();
+                }
+            } finally {
+                alone.close();
+            }
+        }
+        held.add(locks.shared("sessions"));
+    }
+
+    // Two processes on one Snowflake node could hand out the same tracking ID, so each takes
+    // the lowest node nobody holds unless courier.nodeId pins one
+    private static void leaseNode(FileLocks locks) throws IOException {
+        if (System.getProperty("courier.nodeId") != null) {
+            return;
+        }
+        for (int node = 0; node <= MAX_NODE; node++) {
+            FileLocks.Handle lease = locks.tryExclusive("node-" + node);
+            if (lease != null) {
+                held.add(lease);
+                OrderService.setDefaultNode(node);
+                return;
+            }
+        }
+        throw new IOException("Every Snowflake node ID is in use under " + LOCKS_DIR);
+    }
+
+    // The log and the mapped store keep their index in one process's memory
+    private static void claimSingleProcess(String name) throws IOException {
+        FileLocks.Handle handle = getFileLocks().tryExclusive(name);
+        if (handle == null) {
+            throw new IOException("The " + name + " under " + BASE_DIR + " is open in another process; "
+                + "only files and sql storage can be shared");
+        }
+        held.add(handle);
+    }
+
+    private static void markDerivedStale() {
+        try {
+            Files.write(Paths.get(LOCKS_DIR, STALE_MARKER), new byte[0]);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // What OrderService records for its own changes, for a change another process made
+    private static void applyChange(OrderChangeFeed.Change change, FinanceRollups rollups,
+                                    SecondaryIndexes indexes, TextSearchIndex search) throws IOException {
+        Order order = change.getOrder();
+        if (change.getType() == OrderChangeFeed.PLACED) {
+            rollups.recordPlaced(order);
+            indexes.recordPlaced(order);
+            search.recordPlaced(order);
+        } else if (change.getType() == OrderChangeFeed.STATUS_CHANGED) {
+            rollups.recordStatusChange(order, change.getPreviousStatus(), order.getStatus());
+            indexes.recordStatusChange(order.getTrackingId(), change.getPreviousStatus(), order.getStatus());
+        } else if (change.getType() == OrderChangeFeed.CANCELLED) {
+            rollups.recordCancelled(order);
+            indexes.recordCancelled(order);
+            search.recordCancelled(order.getTrackingId());
+        }
+    }
+
+    public static synchronized JdbcDatabase getDatabase() throws IOException {
+        if (database == null) {
+            database = JdbcDatabase.open(JDBC_URL);
+            if (database.isCreated()) {
+                // First start on SQL: carry the existing text files over in batches
+                database.importFrom(openFileRepositories());
+            }
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    database.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }));
+        }
+        return database;
+    }
+
+    public static synchronized FinanceLedger getFinanceLedger() throws IOException {
+        if (financeLedger == null) {
+            Path ledgerFile = Paths.get(FINANCE_DIR, "ledger.dat");
+            boolean created = !Files.exists(ledgerFile);
+            financeLedger = FinanceLedger.open(ledgerFile, getDurability());
+            if (created) {
+                importLegacyFinance(financeLedger);
+            }
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    financeLedger.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }));
+        }
+        return financeLedger;
+    }
+
+    public static synchronized FinanceRollups getFinanceRollups() throws IOException {
+        if (financeRollups == null) {
+            financeRollups = FinanceRollups.open(Paths.get(FINANCE_DIR));
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    financeRollups.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }));
+        }
+        return financeRollups;
+    }
+
+    // One index set per storage mode, since each mode keeps its own orders
+    public static synchronized SecondaryIndexes getSecondaryIndexes() throws IOException {
+        if (secondaryIndexes == null) {
+            secondaryIndexes = SecondaryIndexes.open(
+                Paths.get(INDEX_DIR, STORAGE_MODE.name().toLowerCase(Locale.ROOT)));
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    secondaryIndexes.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }));
+        }
+        return secondaryIndexes;
+    }
+
+    // Kept next to the secondary indexes of the same storage mode
+    public static synchronized TextSearchIndex getSearchIndex() throws IOException {
+        if (searchIndex == null) {
+            searchIndex = TextSearchIndex.open(Paths.get(INDEX_DIR, STORAGE_MODE.name().toLowerCase(Locale.ROOT)));
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    searchIndex.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }));
+        }
+        return searchIndex;
+    }
+
+    // Carries the old comma-joined finance.txt over into the binary ledger once
+    private static void importLegacyFinance(FinanceLedger ledger) throws IOException {
+        Path legacyFile = Paths.get(FINANCE_DIR, "finance.txt");
+        if (!Files.exists(legacyFile)) {
+            return;
+        }
+        String data = new String(Files.readAllBytes(legacyFile)).trim();
+        if (!data.isEmpty()) {
+            String[] parts = data.split(",");
+            for (int i = 0; i + 1 < parts.length; i += 2) {
+                try {
+                    ledger.append(parts[i], Double.parseDouble(parts[i + 1]));
+                } catch (NumberFormatException e) {
+                    System.err.println("Skipping malformed finance record: " + parts[i]);
+                }
+            }
+        }
+        Files.move(legacyFile, Paths.get(FINANCE_DIR, "finance.txt.migrated"));
+    }
+
+    public static String getBaseDir() { return BASE_DIR; }
     public static String getAccountsDir() { return ACCOUNTS_DIR; }
     public static String getOrdersDir() { return ORDERS_DIR; }
     public static String getAdminDir() { return ADMIN_DIR; }
     public static String getFinanceDir() { return FINANCE_DIR; }
+    public static String getOrderLogDir() { return ORDER_LOG_DIR; }
+    public static String getOrderStoreDir() { return ORDER_STORE_DIR; }
+    public static String getTimelineDir() { return TIMELINE_DIR; }
+    public static String getIndexDir() { return INDEX_DIR; }
+    public static String getLocksDir() { return LOCKS_DIR; }
+    public static String getTariffFile() { return TARIFF_FILE; }
+    public static String getJdbcUrl() { return JDBC_URL; }
 }
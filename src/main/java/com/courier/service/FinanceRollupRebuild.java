@@ -0,0 +1,69 @@
+package com.courier.service;
+
+import com.courier.model.Order;
+import com.courier.repository.FinanceRepository;
+import com.courier.repository.OrderRepository;
+import com.courier.repository.Repositories;
+import com.courier.storage.FinanceRollups;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+
+/**
+ * Recomputes the finance rollups from the ledger, for when they were lost or have
+ * drifted. Every ledger record counts once by day and status; a record whose order has
+ * been cancelled is dated from its tracking ID and filed under "Cancelled". Run it
+ * while the application is closed:
+ *
+ *   java -cp bin com.courier.service.FinanceRollupRebuild
+ */
+public class FinanceRollupRebuild {
+    public static void main(String[] args) throws IOException {
+        Repositories repositories = FileManager.getRepositories();
+        FinanceRollups rollups = repositories.getRollups();
+        if (rollups == null) {
+            System.err.println("Another process is running on " + FileManager.getBaseDir() + "; close it first");
+            System.exit(1);
+        }
+        long start = System.nanoTime();
+        rebuild(repositories.getOrders(), repositories.getFinance(), rollups);
+        System.out.printf("Rolled up %d ledger records, Rs. %.2f, in %.1f s%n",
+            rollups.getTotalCount(), rollups.getTotalRevenue(), (System.nanoTime() - start) / 1e9);
+    }
+
+    public static void rebuild(OrderRepository orders, FinanceRepository finance, FinanceRollups rollups)
+            throws IOException {
+        try {
+            rollups.rebuild(tally -> {
+                try {
+                    finance.forEach((trackingId, rate) -> {
+                        Order order;
+                        try {
+                            order = orders.findByTrackingId(trackingId);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                        if (order == null) {
+                            tally.addCancelled(dayOf(trackingId, 0), rate);
+                        } else {
+                            tally.addLive(order, dayOf(trackingId, order.getCreatedAt()));
+                        }
+                    });
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    // Orders from before timestamps were recorded still carry the time in a Snowflake ID
+    private static String dayOf(String trackingId, long createdAt) {
+        if (createdAt > 0) {
+            return FinanceRollups.dayKey(createdAt);
+        }
+        Instant placed = SnowflakeIdGenerator.timestampOf(trackingId);
+        return placed != null ? FinanceRollups.dayKey(placed.toEpochMilli()) : FinanceRollups.UNKNOWN;
+    }
+}
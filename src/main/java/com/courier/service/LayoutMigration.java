@@ -0,0 +1,85 @@
+package com.courier.service;
+
+import com.courier.storage.DirectoryLayout;
+import java.io.IOException;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Converts flat accounts/ and orders/ trees to the sharded layout by renaming files,
+ * so nothing is copied. Orders are moved into a sibling orders.sharding tree first,
+ * since a username can collide with a two-character bucket name, and swapped in at the
+ * end. Rerunning after an interruption picks up where it stopped. Run it while the
+ * application is closed:
+ *
+ *   java -cp bin com.courier.service.LayoutMigration
+ */
+public class LayoutMigration {
+    public static void main(String[] args) throws IOException {
+        Path accountsDir = Paths.get(FileManager.getAccountsDir());
+        Path ordersDir = Paths.get(FileManager.getOrdersDir());
+        System.out.println("Accounts: " + migrateAccounts(accountsDir) + " files moved");
+        System.out.println("Orders: " + migrateOrders(ordersDir) + " files moved");
+    }
+
+    public static int migrateAccounts(Path accountsDir) throws IOException {
+        if (Files.isDirectory(accountsDir) && DirectoryLayout.detect(accountsDir) == DirectoryLayout.SHARDED) {
+            return 0;
+        }
+        int moved = 0;
+        for (Path file : DirectoryLayout.FLAT.accountFiles(accountsDir)) {
+            move(file, DirectoryLayout.SHARDED.accountFile(accountsDir, DirectoryLayout.keyOf(file)));
+            moved++;
+        }
+        DirectoryLayout.SHARDED.mark(accountsDir);
+        return moved;
+    }
+
+    public static int migrateOrders(Path ordersDir) throws IOException {
+        Path staging = ordersDir.resolveSibling(ordersDir.getFileName() + ".sharding");
+        if (!Files.exists(staging)) {
+            if (!Files.isDirectory(ordersDir) || DirectoryLayout.detect(ordersDir) == DirectoryLayout.SHARDED) {
+                return 0;
+            }
+            Files.createDirectories(staging);
+        }
+
+        int moved = 0;
+        if (Files.isDirectory(ordersDir)) {
+            for (Path userDir : DirectoryLayout.FLAT.userOrderDirs(ordersDir)) {
+                String username = userDir.getFileName().toString();
+                for (Path file : DirectoryLayout.FLAT.orderFiles(userDir)) {
+                    move(file, DirectoryLayout.SHARDED.orderFile(staging, username, DirectoryLayout.keyOf(file)));
+                    moved++;
+                }
+                deleteIfEmpty(userDir);
+            }
+            Files.deleteIfExists(ordersDir.resolve(DirectoryLayout.MARKER));
+            if (!deleteIfEmpty(ordersDir)) {
+                Path leftovers = ordersDir.resolveSibling(ordersDir.getFileName() + ".unmigrated");
+                System.err.println("Unrecognised entries left in " + ordersDir + ", kept as " + leftovers);
+                Files.move(ordersDir, leftovers);
+            }
+        }
+        DirectoryLayout.SHARDED.mark(staging);
+        Files.move(staging, ordersDir, StandardCopyOption.ATOMIC_MOVE);
+        return moved;
+    }
+
+    private static void move(Path source, Path target) throws IOException {
+        Files.createDirectories(target.getParent());
+        Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static boolean deleteIfEmpty(Path dir) throws IOException {
+        try {
+            Files.delete(dir);
+            return true;
+        } catch (DirectoryNotEmptyException e) {
+            return false;
+        }
+    }
+}
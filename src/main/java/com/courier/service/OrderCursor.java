@@ -0,0 +1,83 @@
+package com.courier.service;
+
+import com.courier.model.Order;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Walks the orders matching a query, newest first, fetching tracking IDs a batch at a
+ * time and loading each order only when it is reached. An order that was cancelled or
+ * no longer matches by the time it is loaded is skipped, and one that started matching
+ * after the cursor passed its place is not seen.
+ */
+public class OrderCursor implements Iterator<Order> {
+    private static final int BATCH_SIZE = 256;
+
+    private final IdSource source;
+    private final Function<String, Order> loader;
+    private final Predicate<Order> filter;
+    private List<String> batch = new ArrayList<>();
+    private int position;
+    private String last;
+    private boolean exhausted;
+    private Order next;
+
+    OrderCursor(IdSource source, Function<String, Order> loader, Predicate<Order> filter) {
+        this.source = source;
+        this.loader = loader;
+        this.filter = filter;
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (next == null && fill()) {
+            last = batch.get(position++);
+            Order order = loader.apply(last);
+            if (order != null && filter.test(order)) {
+                next = order;
+            }
+        }
+        return next != null;
+    }
+
+    @Override
+    public Order next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        Order order = next;
+        next = null;
+        return order;
+    }
+
+    // Up to size more orders; an empty page means the cursor is exhausted
+    public List<Order> nextPage(int size) {
+        List<Order> page = new ArrayList<>(Math.min(size, BATCH_SIZE));
+        while (page.size() < size && hasNext()) {
+            page.add(next());
+        }
+        return page;
+    }
+
+    private boolean fill() {
+        if (position < batch.size()) {
+            return true;
+        }
+        if (exhausted) {
+            return false;
+        }
+        batch = source.next(last, BATCH_SIZE);
+        position = 0;
+        exhausted = batch.size() < BATCH_SIZE;
+        return !batch.isEmpty();
+    }
+
+    // Tracking IDs in cursor order, up to limit of them after the given one (null for the first batch)
+    interface IdSource {
+        List<String> next(String after, int limit);
+    }
+}
@@ -1,29 +1,115 @@
 package com.courier.service;
 
 import com.courier.model.Order;
+import com.courier.repository.FinanceRepository;
+import com.courier.repository.OrderRepository;
+import com.courier.repository.Repositories;
+import com.courier.storage.FinanceRollups;
+import com.courier.storage.SecondaryIndexes;
+import com.courier.storage.TextSearchIndex;
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Paths;
+import java.nio.file.Path;
+import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.Random;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 
 public class OrderService {
-    private Random random = new Random();
+    private static SnowflakeIdGenerator defaultGenerator;
+    private static long defaultNode = -1;
+    private static TariffEngine defaultTariff;
+    private static Runnable derivedStaleHandler;
+    // Held across an order's read and write so two updates cannot both move the same old status.
+    // Shared by every service in the process, so services opened over one backend serialize too
+    private static final StripedLocks ORDER_LOCKS = new StripedLocks(256);
+
+    private interface DerivedUpdate {
+        void run() throws IOException;
+    }
+
+    public enum UpdateResult {
+        UPDATED,
+        // The order changed since the caller read it; reload and decide again
+        CONFLICT,
+        NOT_FOUND,
+        FAILED
+    }
+
+    private final OrderRepository orders;
+    private final FinanceRepository finance;
+    private final TrackingIdGenerator idGenerator;
+    private final FinanceRollups rollups;
+    private final SecondaryIndexes indexes;
+    private final TextSearchIndex search;
+    private final TariffEngine tariff;
+
+    public OrderService(OrderRepository orders, FinanceRepository finance) {
+        this(orders, finance, (FinanceRollups) null);
+    }
+
+    public OrderService(Repositories repositories) {
+        this(repositories.getOrders(), repositories.getFinance(), getDefaultGenerator(repositories.getOrders()),
+            repositories.getRollups(), repositories.getIndexes(), repositories.getSearch());
+    }
+
+    // Rollups may be null, in which case nothing keeps them current
+    public OrderService(OrderRepository orders, FinanceRepository finance, FinanceRollups rollups) {
+        this(orders, finance, getDefaultGenerator(orders), rollups);
+    }
+
+    public OrderService(OrderRepository orders, FinanceRepository finance, TrackingIdGenerator idGenerator) {
+        this(orders, finance, idGenerator, null);
+    }
+
+    public OrderService(OrderRepository orders, FinanceRepository finance, TrackingIdGenerator idGenerator,
+                        FinanceRollups rollups) {
+        this(orders, finance, idGenerator, rollups, null, null);
+    }
+
+    // Rollups and indexes may each be null; queries then fall back to scanning the orders
+    public OrderService(OrderRepository orders, FinanceRepository finance, TrackingIdGenerator idGenerator,
+                        FinanceRollups rollups, SecondaryIndexes indexes, TextSearchIndex search) {
+        this(orders, finance, idGenerator, rollups, indexes, search, getDefaultTariff());
+    }
+
+    public OrderService(OrderRepository orders, FinanceRepository finance, TrackingIdGenerator idGenerator,
+                        FinanceRollups rollups, SecondaryIndexes indexes, TextSearchIndex search,
+                        TariffEngine tariff) {
+        this.orders = orders;
+        this.finance = finance;
+        this.idGenerator = idGenerator;
+        this.rollups = rollups;
+        this.indexes = indexes;
+        this.search = search;
+        this.tariff = tariff;
+    }
 
     public String placeOrder(Order order) {
         try {
             String trackingId = generateTrackingId();
+            long now = System.currentTimeMillis();
             order.setTrackingId(trackingId);
-            
-            String userOrderDir = FileManager.getOrdersDir() + "/" + order.getUsername();
-            Files.createDirectories(Paths.get(userOrderDir));
-            
-            String filePath = userOrderDir + "/" + trackingId + ".txt";
-            FileManager.writeFile(filePath, order.toString());
+            order.setCreatedAt(now);
+            order.setUpdatedAt(now);
+            order.setStatusChangedAt(now);
+            orders.insert(order);
             
             // Update finance
             updateFinance(trackingId, order.getRate());
+            recordDerived(() -> {
+                if (rollups != null) {
+                    rollups.recordPlaced(order);
+                }
+                if (indexes != null) {
+                    indexes.recordPlaced(order);
+                }
+                if (search != null) {
+                    search.recordPlaced(order);
+                }
+            });
             
             return trackingId;
         } catch (IOException e) {
@@ -33,103 +119,390 @@ public class OrderService {
     }
 
     public Order getOrder(String username, String trackingId) {
+        String owner = getOrderOwner(trackingId);
+        return username.equals(owner) ? findOrder(trackingId) : null;
+    }
+
+    public Order findOrder(String trackingId) {
         try {
-            String filePath = FileManager.getOrdersDir() + "/" + username + "/" + trackingId + ".txt";
-            if (!FileManager.fileExists(filePath)) {
-                return null;
-            }
-            String data = FileManager.readFile(filePath);
-            return Order.fromString(data, username);
+            return orders.findByTrackingId(trackingId);
         } catch (IOException e) {
             e.printStackTrace();
             return null;
         }
     }
 
+    public String getOrderOwner(String trackingId) {
+        return orders.findOwner(trackingId);
+    }
+
     public boolean updateOrderStatus(String username, String trackingId, Order.OrderStatus newStatus) {
+        return username.equals(getOrderOwner(trackingId)) && updateOrderStatus(trackingId, newStatus);
+    }
+
+    public boolean updateOrderStatus(String trackingId, Order.OrderStatus newStatus) {
+        return changeStatus(trackingId, -1, newStatus) == UpdateResult.UPDATED;
+    }
+
+    // Changes the status only if the order is still at the version the caller read it at
+    public UpdateResult updateOrderStatus(String trackingId, long expectedVersion, Order.OrderStatus newStatus) {
+        return changeStatus(trackingId, expectedVersion, newStatus);
+    }
+
+    public boolean cancelOrder(String username, String trackingId) {
+        return username.equals(getOrderOwner(trackingId)) && cancelOrder(trackingId);
+    }
+
+    public boolean cancelOrder(String trackingId) {
+        ReentrantLock lock = ORDER_LOCKS.get(trackingId);
+        lock.lock();
         try {
-            Order order = getOrder(username, trackingId);
-            if (order == null) {
+            if (rollups == null && indexes == null && search == null) {
+                return orders.delete(trackingId);
+            }
+            Order before = orders.findByTrackingId(trackingId);
+            if (before == null || !orders.delete(trackingId)) {
                 return false;
             }
-            order.setStatus(newStatus);
-            String filePath = FileManager.getOrdersDir() + "/" + username + "/" + trackingId + ".txt";
-            FileManager.writeFile(filePath, order.toString());
+            recordDerived(() -> {
+                if (rollups != null) {
+                    rollups.recordCancelled(before);
+                }
+                if (indexes != null) {
+                    indexes.recordCancelled(before);
+                }
+                if (search != null) {
+                    search.recordCancelled(trackingId);
+                }
+            });
             return true;
         } catch (IOException e) {
             e.printStackTrace();
             return false;
+        } finally {
+            lock.unlock();
         }
     }
 
-    public boolean cancelOrder(String username, String trackingId) {
-        String filePath = FileManager.getOrdersDir() + "/" + username + "/" + trackingId + ".txt";
-        return FileManager.deleteFile(filePath);
+    public List<Order> getUserOrders(String username) {
+        List<Order> userOrders = new ArrayList<>();
+        for (String trackingId : getUserTrackingIds(username)) {
+            Order order = findOrder(trackingId);
+            if (order != null) {
+                userOrders.add(order);
+            }
+        }
+        return userOrders;
     }
 
-    public List<Order> getUserOrders(String username) {
-        List<Order> orders = new ArrayList<>();
-        String userOrderDir = FileManager.getOrdersDir() + "/" + username;
-        List<String> files = FileManager.listFiles(userOrderDir);
-        
-        for (String file : files) {
-            if (file.endsWith(".txt")) {
-                String trackingId = file.replace(".txt", "");
-                Order order = getOrder(username, trackingId);
+    // Every order in one pass. The repository may read in parallel, so the consumer must be thread-safe
+    public void forEachOrder(Consumer<? super Order> consumer) {
+        try {
+            orders.forEach(consumer);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // Orders placed in [from, to), oldest first. Orders from before timestamps were recorded never match
+    public List<Order> getOrdersPlacedBetween(Instant from, Instant to) {
+        try {
+            return loadOrders(orders.findTrackingIdsPlacedBetween(from.toEpochMilli(), to.toEpochMilli()), null, 0, 0);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return new ArrayList<>();
+        }
+    }
+
+    // Orders whose current status was set in [from, to), e.g. shipped in the last hour
+    public List<Order> getOrdersByStatusChangedBetween(Order.OrderStatus status, Instant from, Instant to) {
+        long fromMillis = from.toEpochMilli();
+        long toMillis = to.toEpochMilli();
+        try {
+            return loadOrders(orders.findTrackingIdsStatusChangedBetween(status, fromMillis, toMillis),
+                status, fromMillis, toMillis);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return new ArrayList<>();
+        }
+    }
+
+    private List<Order> loadOrders(List<String> trackingIds, Order.OrderStatus status, long fromMillis, long toMillis) {
+        List<Order> result = new ArrayList<>(trackingIds.size());
+        for (String trackingId : trackingIds) {
+            Order order = findOrder(trackingId);
+            if (order == null) {
+                continue; // cancelled since
+            }
+            if (status != null && (order.getStatus() != status || order.getStatusChangedAt() < fromMillis
+                    || order.getStatusChangedAt() >= toMillis)) {
+                continue; // moved on to another status since
+            }
+            result.add(order);
+        }
+        return result;
+    }
+
+    // Orders currently in a status, newest first
+    public OrderCursor findByStatus(Order.OrderStatus status) {
+        return query(SecondaryIndexes.Field.STATUS, status.getDisplayName(), order -> order.getStatus() == status);
+    }
+
+    // Orders bound for a city, newest first; the city matches regardless of case and surrounding spaces
+    public OrderCursor findByReceiverCity(String city) {
+        String key = SecondaryIndexes.normalize(SecondaryIndexes.Field.RECEIVER_CITY, city);
+        return query(SecondaryIndexes.Field.RECEIVER_CITY, city, order ->
+            key.equals(SecondaryIndexes.normalize(SecondaryIndexes.Field.RECEIVER_CITY, order.getReceiverCity())));
+    }
+
+    // Orders where the number is the sender's or receiver's contact, compared on digits only
+    public OrderCursor findByContact(String contact) {
+        String key = SecondaryIndexes.normalize(SecondaryIndexes.Field.CONTACT, contact);
+        return query(SecondaryIndexes.Field.CONTACT, contact, order -> !key.isEmpty()
+            && (key.equals(SecondaryIndexes.normalize(SecondaryIndexes.Field.CONTACT, order.getSenderContact()))
+                || key.equals(SecondaryIndexes.normalize(SecondaryIndexes.Field.CONTACT, order.getReceiverContact()))));
+    }
+
+    // Up to limit orders whose names, address or cities contain every word of the query, best match first
+    public List<Order> searchOrders(String query, int limit) {
+        if (search != null) {
+            refreshOrders();
+            List<Order> result = new ArrayList<>();
+            for (String trackingId : search.search(query, limit)) {
+                Order order = findOrder(trackingId);
                 if (order != null) {
-                    orders.add(order);
+                    result.add(order);
                 }
             }
+            return result;
         }
-        return orders;
+        List<Order> matches = new ArrayList<>();
+        forEachOrder(order -> {
+            if (TextSearchIndex.score(order, query) > 0) {
+                synchronized (matches) {
+                    matches.add(order);
+                }
+            }
+        });
+        matches.sort((a, b) -> {
+            int byScore = Integer.compare(TextSearchIndex.score(b, query), TextSearchIndex.score(a, query));
+            return byScore != 0 ? byScore : SecondaryIndexes.NEWEST_FIRST.compare(a.getTrackingId(), b.getTrackingId());
+        });
+        return matches.subList(0, Math.min(limit, matches.size()));
     }
 
-    public List<String> getUserTrackingIds(String username) {
-        List<String> trackingIds = new ArrayList<>();
-        String userOrderDir = FileManager.getOrdersDir() + "/" + username;
-        List<String> files = FileManager.listFiles(userOrderDir);
-        
-        for (String file : files) {
-            if (file.endsWith(".txt")) {
-                trackingIds.add(file.replace(".txt", ""));
+    // Streams a customer's orders, newest first, to a file, loading one order at a time.
+    // Returns the rows written, or -1 if the progress callback stopped the export
+    public long exportUserOrders(String username, Path file, ExportWriter.Format format, boolean gzip,
+                                 ExportWriter.Progress progress) throws IOException {
+        List<String> trackingIds = new ArrayList<>(getUserTrackingIds(username));
+        trackingIds.sort(SecondaryIndexes.NEWEST_FIRST);
+        try (ExportWriter writer = ExportWriter.open(file, format, gzip, "tracking_id", "placed_at", "status",
+                "sender_name", "sender_contact", "sender_city", "receiver_name", "receiver_contact",
+                "receiver_address", "receiver_city", "rate")) {
+            for (int i = 0; i < trackingIds.size(); i++) {
+                if (i % 256 == 0 && !progress.update(i, trackingIds.size())) {
+                    return -1;
+                }
+                Order order = orders.findByTrackingId(trackingIds.get(i));
+                if (order == null) {
+                    continue; // cancelled since the IDs were read
+                }
+                writer.writeRow(order.getTrackingId(),
+                    order.getCreatedAt() > 0 ? Instant.ofEpochMilli(order.getCreatedAt()).toString() : null,
+                    order.getStatus().getDisplayName(), order.getSenderName(), order.getSenderContact(),
+                    order.getSenderCity(), order.getReceiverName(), order.getReceiverContact(),
+                    order.getReceiverAddress(), order.getReceiverCity(), order.getRate());
             }
+            writer.finish();
+            progress.update(trackingIds.size(), trackingIds.size());
+            return writer.getRows();
         }
-        return trackingIds;
     }
 
-    public double calculateRate(double weight, boolean sameProvince) {
-        double rate = 0;
-        
-        if (sameProvince) {
-            if (weight > 0.0 && weight <= 1.0) rate = 300;
-            else if (weight > 1.0 && weight <= 3.0) rate = 700;
-            else if (weight > 3.0 && weight <= 6.0) rate = 1200;
-            else if (weight > 6.0 && weight <= 10.0) rate = 1800;
-            else if (weight > 10.0 && weight <= 20.0) rate = 2800;
+    // An expected version of -1 updates whatever version the order is at
+    private UpdateResult changeStatus(String trackingId, long expectedVersion, Order.OrderStatus newStatus) {
+        ReentrantLock lock = ORDER_LOCKS.get(trackingId);
+        lock.lock();
+        try {
+            long now = System.currentTimeMillis();
+            if (expectedVersion < 0 && rollups == null && indexes == null) {
+                return orders.updateStatus(trackingId, newStatus, now) ? UpdateResult.UPDATED : UpdateResult.NOT_FOUND;
+            }
+            while (true) {
+                Order before = orders.findByTrackingId(trackingId);
+                if (before == null) {
+                    return UpdateResult.NOT_FOUND;
+                }
+                if (expectedVersion >= 0 && before.getVersion() != expectedVersion) {
+                    return UpdateResult.CONFLICT;
+                }
+                // The repository checks the version again, which is what catches other processes.
+                // Rollups and indexes move from the status read here, so it must still be current
+                if (!orders.updateStatusIfVersion(trackingId, before.getVersion(), newStatus, now)) {
+                    if (!orders.exists(trackingId)) {
+                        return UpdateResult.NOT_FOUND;
+                    }
+                    if (expectedVersion >= 0) {
+                        return UpdateResult.CONFLICT;
+                    }
+                    continue; // another process changed it in between; move on from its status
+                }
+                recordDerived(() -> {
+                    if (rollups != null) {
+                        rollups.recordStatusChange(before, before.getStatus(), newStatus);
+                    }
+                    if (indexes != null) {
+                        indexes.recordStatusChange(trackingId, before.getStatus(), newStatus);
+                    }
+                });
+                return UpdateResult.UPDATED;
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            return UpdateResult.FAILED;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // The order change is stored (and billed) by the time this runs, so a rollup or index
+    // that fails to take it in does not fail the change: it is reported and marked for a
+    // rebuild, rather than inviting a retry that would place the order twice
+    private static void recordDerived(DerivedUpdate update) {
+        try {
+            update.run();
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+            Runnable handler = getDerivedStaleHandler();
+            if (handler != null) {
+                handler.run();
+            }
+        }
+    }
+
+    private OrderCursor query(SecondaryIndexes.Field field, String value, Predicate<Order> filter) {
+        OrderCursor.IdSource source;
+        if (indexes != null) {
+            refreshOrders();
+            source = (after, limit) -> indexes.find(field, value, after, limit);
         } else {
-            if (weight > 0.0 && weight <= 1.0) rate = 400;
-            else if (weight > 1.0 && weight <= 3.0) rate = 900;
-            else if (weight > 3.0 && weight <= 6.0) rate = 1400;
-            else if (weight > 6.0 && weight <= 10.0) rate = 2000;
-            else if (weight > 10.0 && weight <= 20.0) rate = 3000;
+            List<String> matches = new ArrayList<>();
+            forEachOrder(order -> {
+                if (filter.test(order)) {
+                    synchronized (matches) {
+                        matches.add(order.getTrackingId());
+                    }
+                }
+            });
+            matches.sort(SecondaryIndexes.NEWEST_FIRST);
+            source = (after, limit) -> {
+                int from = after == null ? 0
+                    : Collections.binarySearch(matches, after, SecondaryIndexes.NEWEST_FIRST) + 1;
+                return matches.subList(from, Math.min(matches.size(), from + limit));
+            };
         }
-        
-        return rate;
+        // The filter drops orders that changed between the index read and the load
+        return new OrderCursor(source, this::findOrder, filter);
+    }
+
+    // Snapshot of every tracking ID, newest first (IDs are time-ordered, legacy short IDs last)
+    public List<String> getAllTrackingIds() {
+        return orders.findTrackingIdsNewestFirst();
+    }
+
+    // Up to limit tracking IDs, newest first, after the given one (null for the first page)
+    public List<String> getTrackingIds(String after, int limit) {
+        return orders.findTrackingIdsNewestFirst(after, limit);
+    }
+
+    public int getOrderCount() {
+        return orders.count();
+    }
+
+    public List<String> getUserTrackingIds(String username) {
+        return orders.findTrackingIdsByUsername(username);
+    }
+
+    // Rate for a parcel between two places, 0 when the tariff has none for its weight
+    public double calculateRate(String fromProvince, String fromCity, String toProvince, String toCity,
+                                double weight) {
+        return tariff.quote(fromProvince, fromCity, toProvince, toCity, weight);
+    }
+
+    // For callers that only know whether both ends share a province: the tariff's default zones
+    public double calculateRate(double weight, boolean sameProvince) {
+        return tariff.getTariff().quoteDefault(sameProvince, weight);
+    }
+
+    // Bulk shippers' parcels, all priced from the same tariff version
+    public double[] quote(List<TariffEngine.Parcel> parcels) {
+        return tariff.quote(parcels);
+    }
+
+    public TariffEngine getTariff() {
+        return tariff;
     }
 
     private String generateTrackingId() {
-        return String.valueOf(10000 + random.nextInt(90000));
+        String trackingId = idGenerator.nextId();
+        while (orders.exists(trackingId)) {
+            trackingId = idGenerator.nextId();
+        }
+        return trackingId;
+    }
+
+    // Node for the process-wide generator, leased by FileManager when courier.nodeId is not set.
+    // Must be set before the first service is created
+    static synchronized void setDefaultNode(long node) {
+        defaultNode = node;
+    }
+
+    // The tariff file FileManager opens, once it has; until then the standard rates
+    static synchronized void setDefaultTariff(TariffEngine tariff) {
+        defaultTariff = tariff;
+    }
+
+    // Run when rollups or indexes missed a change; FileManager marks them for a rebuild on the next start
+    static synchronized void setDerivedStaleHandler(Runnable handler) {
+        derivedStaleHandler = handler;
+    }
+
+    private static synchronized Runnable getDerivedStaleHandler() {
+        return derivedStaleHandler;
+    }
+
+    private static synchronized TariffEngine getDefaultTariff() {
+        if (defaultTariff == null) {
+            defaultTariff = TariffEngine.standard();
+        }
+        return defaultTariff;
+    }
+
+    // One generator per process: separate instances on the same node could repeat IDs
+    private static synchronized SnowflakeIdGenerator getDefaultGenerator(OrderRepository orders) {
+        if (defaultGenerator == null) {
+            defaultGenerator = new SnowflakeIdGenerator(
+                defaultNode >= 0 ? defaultNode : SnowflakeIdGenerator.nodeFromProperty());
+        }
+        for (String trackingId : orders.trackingIds()) {
+            defaultGenerator.advancePast(trackingId);
+        }
+        return defaultGenerator;
+    }
+
+    // Indexes take in other processes' changes as the repository catches up on them
+    private void refreshOrders() {
+        try {
+            orders.refresh();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
     }
 
     private void updateFinance(String trackingId, double rate) {
         try {
-            String financeFile = FileManager.getFinanceDir() + "/finance.txt";
-            String currentData = "";
-            if (FileManager.fileExists(financeFile)) {
-                currentData = FileManager.readFile(financeFile);
-            }
-            String newData = currentData + (currentData.isEmpty() ? "" : ",") + trackingId + "," + rate;
-            FileManager.writeFile(financeFile, newData);
+            finance.append(trackingId, rate);
         } catch (IOException e) {
             e.printStackTrace();
         }
@@ -0,0 +1,58 @@
+package com.courier.service;
+
+import com.courier.repository.OrderRepository;
+import com.courier.repository.Repositories;
+import com.courier.storage.SecondaryIndexes;
+import com.courier.storage.TextSearchIndex;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Rebuilds the status, receiver city and contact indexes and the text search index
+ * from the orders of the configured backend, for when they were lost or have drifted.
+ * Run it while the application is closed:
+ *
+ *   java -cp bin com.courier.service.SecondaryIndexRebuild
+ */
+public class SecondaryIndexRebuild {
+    public static void main(String[] args) throws IOException {
+        Repositories repositories = FileManager.getRepositories();
+        if (repositories.getIndexes() == null) {
+            System.err.println("Another process is running on " + FileManager.getBaseDir() + "; close it first");
+            System.exit(1);
+        }
+        long start = System.nanoTime();
+        rebuild(repositories.getOrders(), repositories.getIndexes());
+        rebuild(repositories.getOrders(), repositories.getSearch());
+        System.out.printf("Indexed %d orders in %.1f s%n",
+            repositories.getOrders().count(), (System.nanoTime() - start) / 1e9);
+    }
+
+    public static void rebuild(OrderRepository orders, SecondaryIndexes indexes) throws IOException {
+        try {
+            indexes.rebuild(consumer -> {
+                try {
+                    orders.forEach(consumer);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    public static void rebuild(OrderRepository orders, TextSearchIndex search) throws IOException {
+        try {
+            search.rebuild(consumer -> {
+                try {
+                    orders.forEach(consumer);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.courier.service;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public final class ServiceExecutors {
+    private static final int QUEUE_CAPACITY = 256;
+
+    private ServiceExecutors() {}
+
+    // Virtual threads where the JDK has them (21+), otherwise a small bounded pool
+    public static ExecutorService newServiceExecutor(String name) {
+        return newServiceExecutor(name, Math.max(2, Runtime.getRuntime().availableProcessors()));
+    }
+
+    // For callers that block on I/O for most of a task and want more pool threads than cores
+    public static ExecutorService newServiceExecutor(String name, int fallbackThreads) {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return newBoundedExecutor(name, fallbackThreads);
+        }
+    }
+
+    public static boolean hasVirtualThreads() {
+        try {
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    public static ExecutorService newBoundedExecutor(String name, int threads) {
+        AtomicInteger counter = new AtomicInteger();
+        ThreadFactory factory = runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        // Excess work is rejected rather than run on the caller, which may be the EDT
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(QUEUE_CAPACITY), factory, new ThreadPoolExecutor.AbortPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+}
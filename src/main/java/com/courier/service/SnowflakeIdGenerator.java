@@ -0,0 +1,80 @@
+package com.courier.service;
+
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Time-ordered 63-bit tracking IDs: 41 bits of milliseconds since 2024-01-01,
+ * 10 bits of node ID and a 12-bit per-millisecond sequence. IDs are unique per
+ * node, strictly increasing, and sort by creation time.
+ */
+public class SnowflakeIdGenerator implements TrackingIdGenerator {
+    private static final long EPOCH = Instant.parse("2024-01-01T00:00:00Z").toEpochMilli();
+    private static final int NODE_BITS = 10;
+    private static final int SEQUENCE_BITS = 12;
+    private static final long MAX_NODE = (1L << NODE_BITS) - 1;
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+
+    private final long node;
+    // Last issued (timestamp << SEQUENCE_BITS | sequence); advanced with CAS only
+    private final AtomicLong state = new AtomicLong();
+
+    public SnowflakeIdGenerator(long node) {
+        if (node < 0 || node > MAX_NODE) {
+            throw new IllegalArgumentException("Node ID must be between 0 and " + MAX_NODE);
+        }
+        this.node = node;
+    }
+
+    @Override
+    public String nextId() {
+        return Long.toString(nextLong());
+    }
+
+    public long nextLong() {
+        while (true) {
+            long now = System.currentTimeMillis() - EPOCH;
+            long previous = state.get();
+            // Same millisecond, a sequence overflow or a clock step back all continue from
+            // the last value, borrowing the next millisecond rather than repeating an ID
+            long next = (now << SEQUENCE_BITS) > previous ? now << SEQUENCE_BITS : previous + 1;
+            if (state.compareAndSet(previous, next)) {
+                long timestamp = next >>> SEQUENCE_BITS;
+                return (timestamp << (NODE_BITS + SEQUENCE_BITS)) | (node << SEQUENCE_BITS) | (next & SEQUENCE_MASK);
+            }
+        }
+    }
+
+    // Never issue anything at or below an ID that already exists, e.g. after a restart with a skewed clock
+    public void advancePast(String trackingId) {
+        long id;
+        try {
+            id = Long.parseLong(trackingId);
+        } catch (NumberFormatException e) {
+            return;
+        }
+        // Resume in the following millisecond so node bits cannot make the next ID sort lower
+        long floor = (((id >>> (NODE_BITS + SEQUENCE_BITS)) + 1) << SEQUENCE_BITS) - 1;
+        state.accumulateAndGet(floor, Math::max);
+    }
+
+    public static Instant timestampOf(String trackingId) {
+        try {
+            long id = Long.parseLong(trackingId);
+            if (id >>> (NODE_BITS + SEQUENCE_BITS) == 0) {
+                return null; // Legacy five-digit IDs carry no time
+            }
+            return Instant.ofEpochMilli((id >>> (NODE_BITS + SEQUENCE_BITS)) + EPOCH);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    public static long nodeFromProperty() {
+        try {
+            return Long.parseLong(System.getProperty("courier.nodeId", "0"));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
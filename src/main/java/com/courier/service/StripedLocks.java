@@ -0,0 +1,31 @@
+package com.courier.service;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A fixed set of locks that keys hash onto, so writes to the same order serialize while
+ * writes to different orders almost always proceed in parallel. Two keys may share a
+ * stripe; that only costs an occasional wait, never correctness.
+ */
+public class StripedLocks {
+    private final ReentrantLock[] stripes;
+
+    // Rounded up to a power of two so a stripe is picked with a mask
+    public StripedLocks(int stripes) {
+        int size = stripes <= 1 ? 1 : Integer.highestOneBit(stripes - 1) << 1;
+        this.stripes = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) {
+            this.stripes[i] = new ReentrantLock();
+        }
+    }
+
+    public ReentrantLock get(String key) {
+        int h = key.hashCode();
+        h ^= h >>> 16; // fold the high bits into the ones the mask keeps
+        return stripes[h & (stripes.length - 1)];
+    }
+
+    public int size() {
+        return stripes.length;
+    }
+}
@@ -0,0 +1,472 @@
+package com.courier.service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.TreeMap;
+
+/**
+ * One version of the rate table, parsed from a tariff file and never changed after.
+ * Weights fall into brackets by binary search over the brackets' upper bounds; the
+ * zone for a route comes from a city-pair table, then a province-pair matrix filled
+ * for every pair of named provinces at parse time, then the same-province or other
+ * default. Quoting allocates nothing, so a form can quote on every keystroke.
+ */
+public final class Tariff {
+    private static final int ANY = 0;
+    private static final int TO_PROVINCE = 1;
+    private static final int TO_CITY = 2;
+    private static final int OVER_KG = 3;
+    private static final int NONE = -1;
+
+    // Today's rates: two zones, five brackets up to 20 kg
+    static final String[] STANDARD = {
+        "# CourierMS tariff. Rates are in rupees, weights in kilograms. Changes are picked up",
+        "# within a few seconds while the application runs; a file with a mistake in it is",
+        "# reported and the previous tariff kept.",
+        "",
+        "[weights]",
+        "# Upper bound of each weight bracket, inclusive, in ascending order",
+        "1, 3, 6, 10, 20",
+        "",
+        "[zones]",
+        "# zone, one rate per weight bracket[, rate per started kilogram above the last bracket]",
+        "# Without the last column a zone has no rate above the last bracket",
+        "local, 300, 700, 1200, 1800, 2800",
+        "national, 400, 900, 1400, 2000, 3000",
+        "",
+        "[defaults]",
+        "# Zones for routes no line below names",
+        "same-province = local",
+        "other = national",
+        "",
+        "[province routes]",
+        "# from, to, zone; also used from \"to\" to \"from\" unless that direction has its own line",
+        "# Punjab, Islamabad, local",
+        "",
+        "[city routes]",
+        "# from, to, zone; beats the provinces' route",
+        "# Rawalpindi, Islamabad, local",
+        "",
+        "[surcharges]",
+        "# name, percent or flat, amount[, to-province or to-city or over-kg, value]",
+        "# fuel, percent, 5",
+        "# remote area, flat, 150, to-city, Gwadar",
+    };
+
+    private final double[] breakpoints;
+    private final String[] zones;
+    // [zone][bracket]
+    private final double[][] rates;
+    // [zone]; 0 where the zone has no rate above the last bracket
+    private final double[] overPerKg;
+    private final int sameProvinceZone;
+    private final int otherZone;
+    private final TreeMap<String, Integer> provinces;
+    // [from][to]; every pair of named provinces, defaults included
+    private final int[][] provinceZones;
+    private final TreeMap<String, Integer> cities;
+    // [from][to]; NONE where no city route is given
+    private final int[][] cityZones;
+    private final Surcharge[] surcharges;
+
+    private Tariff(double[] breakpoints, String[] zones, double[][] rates, double[] overPerKg, int sameProvinceZone,
+                   int otherZone, TreeMap<String, Integer> provinces, int[][] provinceZones,
+                   TreeMap<String, Integer> cities, int[][] cityZones, Surcharge[] surcharges) {
+        this.breakpoints = breakpoints;
+        this.zones = zones;
+        this.rates = rates;
+        this.overPerKg = overPerKg;
+        this.sameProvinceZone = sameProvinceZone;
+        this.otherZone = otherZone;
+        this.provinces = provinces;
+        this.provinceZones = provinceZones;
+        this.cities = cities;
+        this.cityZones = cityZones;
+        this.surcharges = surcharges;
+    }
+
+    public static Tariff standard() {
+        try {
+            return parse(Arrays.asList(STANDARD), "standard tariff");
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Rate for a parcel, or 0 when the tariff has none for its weight. Names match in any
+    // case; a city or province the tariff does not name falls back to the defaults
+    public double quote(String fromProvince, String fromCity, String toProvince, String toCity, double weight) {
+        int toProvinceId = id(provinces, toProvince);
+        int toCityId = id(cities, toCity);
+        int zone = zone(fromProvince, id(provinces, fromProvince), id(cities, fromCity), toProvince, toProvinceId,
+            toCityId);
+        return price(zone, weight, toProvinceId, toCityId);
+    }
+
+    // For callers that only know whether both ends share a province
+    public double quoteDefault(boolean sameProvince, double weight) {
+        return price(sameProvince ? sameProvinceZone : otherZone, weight, NONE, NONE);
+    }
+
+    // The heaviest parcel any zone has a rate for
+    public double getMaxWeight() {
+        for (double perKg : overPerKg) {
+            if (perKg > 0) {
+                return Double.POSITIVE_INFINITY;
+            }
+        }
+        return breakpoints[breakpoints.length - 1];
+    }
+
+    public String getZone(String fromProvince, String fromCity, String toProvince, String toCity) {
+        return zones[zone(fromProvince, id(provinces, fromProvince), id(cities, fromCity), toProvince,
+            id(provinces, toProvince), id(cities, toCity))];
+    }
+
+    private int zone(String fromProvince, int fromProvinceId, int fromCityId, String toProvince, int toProvinceId,
+                     int toCityId) {
+        if (fromCityId != NONE && toCityId != NONE && cityZones[fromCityId][toCityId] != NONE) {
+            return cityZones[fromCityId][toCityId];
+        }
+        if (fromProvinceId != NONE && toProvinceId != NONE) {
+            return provinceZones[fromProvinceId][toProvinceId];
+        }
+        boolean same = fromProvince != null && fromProvince.equalsIgnoreCase(toProvince);
+        return same ? sameProvinceZone : otherZone;
+    }
+
+    private double price(int zone, double weight, int toProvinceId, int toCityId) {
+        if (!(weight > 0)) {
+            return 0;
+        }
+        int last = breakpoints.length - 1;
+        int bracket = Arrays.binarySearch(breakpoints, weight);
+        if (bracket < 0) {
+            bracket = -bracket - 1; // the first bracket whose bound is above the weight
+        }
+        double base;
+        if (bracket <= last) {
+            base = rates[zone][bracket];
+        } else if (overPerKg[zone] > 0) {
+            base = rates[zone][last] + Math.ceil(weight - breakpoints[last]) * overPerKg[zone];
+        } else {
+            return 0;
+        }
+
+        double percent = 0;
+        double flat = 0;
+        for (Surcharge surcharge : surcharges) {
+            if (surcharge.applies(weight, toProvinceId, toCityId)) {
+                if (surcharge.percent) {
+                    percent += surcharge.amount;
+                } else {
+                    flat += surcharge.amount;
+                }
+            }
+        }
+        return Math.round(base * (1 + percent / 100) + flat);
+    }
+
+    private static int id(TreeMap<String, Integer> names, String name) {
+        if (name == null) {
+            return NONE;
+        }
+        Integer id = names.get(name);
+        return id != null ? id : NONE;
+    }
+
+    // Source names the file in error messages
+    public static Tariff parse(List<String> lines, String source) throws IOException {
+        Parser parser = new Parser(source);
+        String section = null;
+        for (int i = 0; i < lines.size(); i++) {
+            parser.line = i + 1;
+            String line = lines.get(i);
+            int comment = line.indexOf('#');
+            line = (comment >= 0 ? line.substring(0, comment) : line).trim();
+            if (line.isEmpty()) {
+                continue;
+            }
+            if (line.startsWith("[") && line.endsWith("]")) {
+                section = line.substring(1, line.length() - 1).trim().toLowerCase(Locale.ROOT);
+                continue;
+            }
+            if (section == null) {
+                throw parser.error("Line outside any section");
+            }
+            parser.parseLine(section, line);
+        }
+        return parser.build();
+    }
+
+    private static class Surcharge {
+        private final boolean percent;
+        private final double amount;
+        private final int condition;
+        private final int target;
+        private final double overKg;
+
+        Surcharge(boolean percent, double amount, int condition, int target, double overKg) {
+            this.percent = percent;
+            this.amount = amount;
+            this.condition = condition;
+            this.target = target;
+            this.overKg = overKg;
+        }
+
+        boolean applies(double weight, int toProvince, int toCity) {
+            switch (condition) {
+                case TO_PROVINCE: return toProvince == target;
+                case TO_CITY: return toCity == target;
+                case OVER_KG: return weight > overKg;
+                default: return true;
+            }
+        }
+    }
+
+    private static class Route {
+        private final int from;
+        private final int to;
+        private final String zone;
+        private final int line;
+
+        Route(int from, int to, String zone, int line) {
+            this.from = from;
+            this.to = to;
+            this.zone = zone;
+            this.line = line;
+        }
+    }
+
+    // Collects a file's lines, then checks and packs them into a tariff
+    private static class Parser {
+        private final String source;
+        private int line;
+        private double[] breakpoints;
+        private final List<String> zones = new ArrayList<>();
+        private final List<double[]> rates = new ArrayList<>();
+        private final List<Double> overPerKg = new ArrayList<>();
+        private String sameProvinceZone;
+        private String otherZone;
+        private final TreeMap<String, Integer> provinces = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        private final TreeMap<String, Integer> cities = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        private final List<Route> provinceRoutes = new ArrayList<>();
+        private final List<Route> cityRoutes = new ArrayList<>();
+        private final List<Surcharge> surcharges = new ArrayList<>();
+
+        Parser(String source) {
+            this.source = source;
+        }
+
+        void parseLine(String section, String text) throws IOException {
+            switch (section) {
+                case "weights": {
+                    if (breakpoints != null) {
+                        throw error("Weights given twice");
+                    }
+                    String[] fields = split(text);
+                    breakpoints = new double[fields.length];
+                    for (int i = 0; i < fields.length; i++) {
+                        breakpoints[i] = number(fields[i]);
+                        if (!(breakpoints[i] > (i > 0 ? breakpoints[i - 1] : 0))) {
+                            throw error("Weights must be positive and ascending");
+                        }
+                    }
+                    break;
+                }
+                case "zones": {
+                    if (breakpoints == null) {
+                        throw error("[weights] must come before [zones]");
+                    }
+                    String[] fields = split(text);
+                    int count = fields.length - 1;
+                    if (count != breakpoints.length && count != breakpoints.length + 1) {
+                        throw error("Zone " + fields[0] + " needs " + breakpoints.length + " rates, or "
+                            + (breakpoints.length + 1) + " with a rate per kilogram above the last bracket");
+                    }
+                    if (zoneIndex(fields[0]) != NONE) {
+                        throw error("Zone " + fields[0] + " given twice");
+                    }
+                    double[] zoneRates = new double[breakpoints.length];
+                    for (int i = 0; i < zoneRates.length; i++) {
+                        zoneRates[i] = number(fields[i + 1]);
+                    }
+                    zones.add(fields[0]);
+                    rates.add(zoneRates);
+                    overPerKg.add(count > breakpoints.length ? number(fields[count]) : 0);
+                    break;
+                }
+                case "defaults": {
+                    int eq = text.indexOf('=');
+                    if (eq < 0) {
+                        throw error("Expected key = zone");
+                    }
+                    String key = text.substring(0, eq).trim().toLowerCase(Locale.ROOT);
+                    String zone = text.substring(eq + 1).trim();
+                    if (key.equals("same-province")) {
+                        sameProvinceZone = zone;
+                    } else if (key.equals("other")) {
+                        otherZone = zone;
+                    } else {
+                        throw error("Unknown default " + key + "; expected same-province or other");
+                    }
+                    break;
+                }
+                case "province routes":
+                case "city routes": {
+                    String[] fields = split(text);
+                    if (fields.length != 3) {
+                        throw error("Expected from, to, zone");
+                    }
+                    boolean province = section.equals("province routes");
+                    TreeMap<String, Integer> names = province ? provinces : cities;
+                    (province ? provinceRoutes : cityRoutes).add(
+                        new Route(intern(names, fields[0]), intern(names, fields[1]), fields[2], line));
+                    break;
+                }
+                case "surcharges": {
+                    String[] fields = split(text);
+                    if (fields.length != 3 && fields.length != 5) {
+                        throw error("Expected name, percent or flat, amount[, condition, value]");
+                    }
+                    String kind = fields[1].toLowerCase(Locale.ROOT);
+                    if (!kind.equals("percent") && !kind.equals("flat")) {
+                        throw error("Surcharge kind must be percent or flat");
+                    }
+                    double amount = number(fields[2]);
+                    int condition = ANY;
+                    int target = NONE;
+                    double overKg = 0;
+                    if (fields.length == 5) {
+                        switch (fields[3].toLowerCase(Locale.ROOT)) {
+                            case "to-province":
+                                condition = TO_PROVINCE;
+                                target = intern(provinces, fields[4]);
+                                break;
+                            case "to-city":
+                                condition = TO_CITY;
+                                target = intern(cities, fields[4]);
+                                break;
+                            case "over-kg":
+                                condition = OVER_KG;
+                                overKg = number(fields[4]);
+                                break;
+                            default:
+                                throw error("Surcharge condition must be to-province, to-city or over-kg");
+                        }
+                    }
+                    surcharges.add(new Surcharge(kind.equals("percent"), amount, condition, target, overKg));
+                    break;
+                }
+                default:
+                    throw error("Unknown section [" + section + "]");
+            }
+        }
+
+        Tariff build() throws IOException {
+            line = 0;
+            if (breakpoints == null || zones.isEmpty()) {
+                throw error("A tariff needs [weights] and at least one zone");
+            }
+            if (sameProvinceZone == null || otherZone == null) {
+                throw error("[defaults] must give same-province and other");
+            }
+            int same = zone(sameProvinceZone);
+            int other = zone(otherZone);
+
+            int[][] provinceZones = matrix(provinces.size(), provinceRoutes);
+            for (int from = 0; from < provinceZones.length; from++) {
+                for (int to = 0; to < provinceZones.length; to++) {
+                    if (provinceZones[from][to] == NONE) {
+                        provinceZones[from][to] = from == to ? same : other;
+                    }
+                }
+            }
+            int[][] cityZones = matrix(cities.size(), cityRoutes);
+
+            double[] over = new double[overPerKg.size()];
+            for (int i = 0; i < over.length; i++) {
+                over[i] = overPerKg.get(i);
+            }
+            return new Tariff(breakpoints, zones.toArray(new String[0]), rates.toArray(new double[0][]), over, same,
+                other, provinces, provinceZones, cities, cityZones, surcharges.toArray(new Surcharge[0]));
+        }
+
+        // Given directions first, then the reverse of each where that was not given
+        private int[][] matrix(int size, List<Route> routes) throws IOException {
+            int[][] matrix = new int[size][size];
+            for (int[] row : matrix) {
+                Arrays.fill(row, NONE);
+            }
+            for (Route route : routes) {
+                line = route.line;
+                if (matrix[route.from][route.to] != NONE) {
+                    throw error("Route given twice");
+                }
+                matrix[route.from][route.to] = zone(route.zone);
+            }
+            for (Route route : routes) {
+                if (matrix[route.to][route.from] == NONE) {
+                    matrix[route.to][route.from] = matrix[route.from][route.to];
+                }
+            }
+            return matrix;
+        }
+
+        private int zone(String name) throws IOException {
+            int zone = zoneIndex(name);
+            if (zone == NONE) {
+                throw error("Unknown zone " + name);
+            }
+            return zone;
+        }
+
+        private int zoneIndex(String name) {
+            for (int i = 0; i < zones.size(); i++) {
+                if (zones.get(i).equalsIgnoreCase(name)) {
+                    return i;
+                }
+            }
+            return NONE;
+        }
+
+        private static int intern(TreeMap<String, Integer> names, String name) {
+            Integer id = names.get(name);
+            if (id == null) {
+                id = names.size();
+                names.put(name, id);
+            }
+            return id;
+        }
+
+        private double number(String text) throws IOException {
+            try {
+                double value = Double.parseDouble(text);
+                if (!(value >= 0) || Double.isInfinite(value)) {
+                    throw error("Expected a number of 0 or more, not " + text);
+                }
+                return value;
+            } catch (NumberFormatException e) {
+                throw error("Expected a number, not " + text);
+            }
+        }
+
+        private String[] split(String text) throws IOException {
+            String[] fields = text.split(",");
+            for (int i = 0; i < fields.length; i++) {
+                fields[i] = fields[i].trim();
+                if (fields[i].isEmpty()) {
+                    throw error("Empty field");
+                }
+            }
+            return fields;
+        }
+
+        private IOException error(String message) {
+            return new IOException(source + (line > 0 ? " line " + line : "") + ": " + message);
+        }
+    }
+}
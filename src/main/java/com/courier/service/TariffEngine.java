@@ -0,0 +1,131 @@
+package com.courier.service;
+
+import com.courier.storage.AtomicFiles;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The current tariff, read from a text file and swapped for a new version when the file
+ * changes, without a restart. A file that fails to parse is reported and ignored, so a
+ * half-saved edit never leaves the application without rates. Quotes read whichever
+ * version is current; a batch is priced entirely from one version.
+ */
+public class TariffEngine implements Closeable {
+    private final Path file;
+    private volatile Tariff tariff;
+    // The file's content when it was last read, valid or not, so a bad edit is reported once
+    private byte[] lastRead;
+    private ScheduledExecutorService poller;
+
+    private TariffEngine(Path file, Tariff tariff) {
+        this.file = file;
+        this.tariff = tariff;
+    }
+
+    // Today's rates, with no file behind them
+    public static TariffEngine standard() {
+        return new TariffEngine(null, Tariff.standard());
+    }
+
+    // Writes the standard tariff to the file if there is none yet, then checks it for
+    // changes every pollMillis; 0 turns polling off, leaving reload to the caller
+    public static TariffEngine open(Path file, long pollMillis) throws IOException {
+        Files.createDirectories(file.getParent());
+        String standard = String.join(System.lineSeparator(), Tariff.STANDARD) + System.lineSeparator();
+        AtomicFiles.create(file, standard.getBytes(StandardCharsets.UTF_8));
+
+        TariffEngine engine = new TariffEngine(file, null);
+        if (!engine.reload()) {
+            engine.tariff = Tariff.standard(); // reported by reload; the standard rates until the file is fixed
+        }
+        if (pollMillis > 0) {
+            engine.poller = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "tariff-reload");
+                thread.setDaemon(true);
+                return thread;
+            });
+            engine.poller.scheduleWithFixedDelay(engine::reload, pollMillis, pollMillis, TimeUnit.MILLISECONDS);
+        }
+        return engine;
+    }
+
+    public Tariff getTariff() {
+        return tariff;
+    }
+
+    public double quote(String fromProvince, String fromCity, String toProvince, String toCity, double weight) {
+        return tariff.quote(fromProvince, fromCity, toProvince, toCity, weight);
+    }
+
+    // One rate per parcel, in order; 0 for a parcel the tariff has no rate for
+    public double[] quote(List<Parcel> parcels) {
+        Tariff current = tariff;
+        double[] rates = new double[parcels.size()];
+        for (int i = 0; i < rates.length; i++) {
+            Parcel parcel = parcels.get(i);
+            rates[i] = current.quote(parcel.fromProvince, parcel.fromCity, parcel.toProvince, parcel.toCity,
+                parcel.weight);
+        }
+        return rates;
+    }
+
+    // True when the file changed and its new content is now the tariff
+    public synchronized boolean reload() {
+        if (file == null) {
+            return false;
+        }
+        try {
+            byte[] content = Files.readAllBytes(file);
+            if (Arrays.equals(content, lastRead)) {
+                return false;
+            }
+            lastRead = content;
+            List<String> lines = Arrays.asList(new String(content, StandardCharsets.UTF_8).split("\r?\n"));
+            tariff = Tariff.parse(lines, file.toString());
+            return true;
+        } catch (NoSuchFileException e) {
+            return false; // removed, or being replaced; the last tariff stands
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    @Override
+    public void close() {
+        if (poller != null) {
+            poller.shutdownNow();
+        }
+    }
+
+    public static class Parcel {
+        private final String fromProvince;
+        private final String fromCity;
+        private final String toProvince;
+        private final String toCity;
+        private final double weight;
+
+        public Parcel(String fromProvince, String fromCity, String toProvince, String toCity, double weight) {
+            this.fromProvince = fromProvince;
+            this.fromCity = fromCity;
+            this.toProvince = toProvince;
+            this.toCity = toCity;
+            this.weight = weight;
+        }
+
+        public String getFromProvince() { return fromProvince; }
+        public String getFromCity() { return fromCity; }
+        public String getToProvince() { return toProvince; }
+        public String getToCity() { return toCity; }
+        public double getWeight() { return weight; }
+    }
+}
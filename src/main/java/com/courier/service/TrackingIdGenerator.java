@@ -0,0 +1,5 @@
+package com.courier.service;
+
+public interface TrackingIdGenerator {
+    String nextId();
+}
@@ -0,0 +1,149 @@
+package com.courier.service;
+
+import com.courier.model.User;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded LRU cache of parsed accounts with a time-to-live. Entries are copied on the
+ * way in and out so callers editing a User never change what the cache holds. Every
+ * write or invalidation moves a generation on; an account read before one of those
+ * is only cached with putIfCurrent, so a stale read never lands after a newer change.
+ */
+public class UserCache {
+    private static final int DEFAULT_MAX_SIZE = 1024;
+    private static final long DEFAULT_TTL_SECONDS = 300;
+    // Another process's account changes never reach this cache, so on shared storage an
+    // entry only saves the reads of a burst of requests
+    private static final long SHARED_TTL_SECONDS = 1;
+
+    private final int maxSize;
+    private final long ttlNanos;
+    private final Map<String, CachedUser> entries;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    // Guarded by entries
+    private long generation;
+
+    public UserCache(int maxSize, long ttl, TimeUnit unit) {
+        this.maxSize = maxSize;
+        this.ttlNanos = unit.toNanos(ttl);
+        this.entries = new LinkedHashMap<String, CachedUser>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedUser> eldest) {
+                if (size() > UserCache.this.maxSize) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    // Sized from courier.userCache.size / courier.userCache.ttlSeconds; shared is whether
+    // other processes may change the same accounts
+    public static UserCache fromProperties(boolean shared) {
+        int size = Integer.getInteger("courier.userCache.size", DEFAULT_MAX_SIZE);
+        long ttl = Long.getLong("courier.userCache.ttlSeconds", shared ? SHARED_TTL_SECONDS : DEFAULT_TTL_SECONDS);
+        return new UserCache(size, ttl, TimeUnit.SECONDS);
+    }
+
+    public User get(String username) {
+        CachedUser cached;
+        synchronized (entries) {
+            cached = entries.get(username);
+            if (cached != null && System.nanoTime() - cached.loadedAt > ttlNanos) {
+                entries.remove(username);
+                evictions.incrementAndGet();
+                cached = null;
+            }
+        }
+        if (cached == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return copy(cached.user);
+    }
+
+    // Take before reading an account from storage, to hand to putIfCurrent afterwards
+    public long getGeneration() {
+        synchronized (entries) {
+            return generation;
+        }
+    }
+
+    // For an account just written to storage
+    public void put(User user) {
+        if (maxSize <= 0 || user == null || user.getUsername() == null) {
+            return;
+        }
+        CachedUser cached = new CachedUser(copy(user), System.nanoTime());
+        synchronized (entries) {
+            generation++;
+            entries.put(user.getUsername(), cached);
+        }
+    }
+
+    // For an account read from storage: skipped when anything was written or invalidated
+    // since the generation was taken, as the read may predate that change
+    public void putIfCurrent(User user, long readGeneration) {
+        if (maxSize <= 0 || user == null || user.getUsername() == null) {
+            return;
+        }
+        CachedUser cached = new CachedUser(copy(user), System.nanoTime());
+        synchronized (entries) {
+            if (generation == readGeneration) {
+                entries.put(user.getUsername(), cached);
+            }
+        }
+    }
+
+    public void invalidate(String username) {
+        synchronized (entries) {
+            generation++;
+            entries.remove(username);
+        }
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            generation++;
+            entries.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public long getHits() { return hits.get(); }
+    public long getMisses() { return misses.get(); }
+    public long getEvictions() { return evictions.get(); }
+
+    public double getHitRate() {
+        long h = hits.get();
+        long total = h + misses.get();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    private static User copy(User user) {
+        return new User(user.getFullName(), user.getUsername(), user.getContactNumber(),
+                user.getAddress(), user.getCity(), user.getProvince(), user.getPin());
+    }
+
+    private static class CachedUser {
+        private final User user;
+        private final long loadedAt;
+
+        CachedUser(User user, long loadedAt) {
+            this.user = user;
+            this.loadedAt = loadedAt;
+        }
+    }
+}
@@ -1,19 +1,30 @@
 package com.courier.service;
 
 import com.courier.model.User;
+import com.courier.repository.UserRepository;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
 public class UserService {
-    
+    private final UserRepository users;
+    private final UserCache cache;
+
+    public UserService(UserRepository users) {
+        this(users, UserCache.fromProperties(FileManager.getStorageMode().isShareable()));
+    }
+
+    public UserService(UserRepository users, UserCache cache) {
+        this.users = users;
+        this.cache = cache;
+    }
+
     public boolean createUser(User user) {
         try {
-            String filePath = FileManager.getAccountsDir() + "/" + user.getUsername() + ".txt";
-            if (FileManager.fileExists(filePath)) {
+            if (!users.insert(user)) {
                 return false; // User already exists
             }
-            FileManager.writeFile(filePath, user.toString());
+            cache.put(user);
             return true;
         } catch (IOException e) {
             e.printStackTrace();
@@ -22,46 +33,49 @@ public class UserService {
     }
 
     public User authenticateUser(String username, String pin) {
-        try {
-            String filePath = FileManager.getAccountsDir() + "/" + username + ".txt";
-            if (!FileManager.fileExists(filePath)) {
-                return null;
-            }
-            String data = FileManager.readFile(filePath);
-            User user = User.fromString(data);
-            if (user != null && user.getPin().equals(pin)) {
-                return user;
-            }
-        } catch (IOException e) {
-            e.printStackTrace();
+        User user = getUserByUsername(username);
+        if (user != null && user.getPin().equals(pin)) {
+            return user;
         }
         return null;
     }
 
     public boolean updateUser(User user) {
         try {
-            String filePath = FileManager.getAccountsDir() + "/" + user.getUsername() + ".txt";
-            FileManager.writeFile(filePath, user.toString());
+            users.update(user);
             return true;
         } catch (IOException e) {
             e.printStackTrace();
             return false;
+        } finally {
+            // Not put: two updates racing could cache them in the opposite order to storage
+            cache.invalidate(user.getUsername());
         }
     }
 
+    // Invalidates after the delete: a lookup that read the account before it cannot cache
+    // it again, as its putIfCurrent sees the invalidation
     public boolean deleteUser(String username) {
-        String filePath = FileManager.getAccountsDir() + "/" + username + ".txt";
-        return FileManager.deleteFile(filePath);
+        try {
+            return users.delete(username);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        } finally {
+            cache.invalidate(username);
+        }
     }
 
     public User getUserByUsername(String username) {
+        User cached = cache.get(username);
+        if (cached != null) {
+            return cached;
+        }
+        long generation = cache.getGeneration();
         try {
-            String filePath = FileManager.getAccountsDir() + "/" + username + ".txt";
-            if (!FileManager.fileExists(filePath)) {
-                return null;
-            }
-            String data = FileManager.readFile(filePath);
-            return User.fromString(data);
+            User user = users.findByUsername(username);
+            cache.putIfCurrent(user, generation);
+            return user;
         } catch (IOException e) {
             e.printStackTrace();
             return null;
@@ -69,13 +83,25 @@ public class UserService {
     }
 
     public List<String> getAllUsernames() {
-        List<String> usernames = new ArrayList<>();
-        List<String> files = FileManager.listFiles(FileManager.getAccountsDir());
-        for (String file : files) {
-            if (file.endsWith(".txt")) {
-                usernames.add(file.replace(".txt", ""));
-            }
+        try {
+            return users.usernames();
+        } catch (IOException e) {
+            e.printStackTrace();
+            return new ArrayList<>();
+        }
+    }
+
+    // Up to limit usernames in alphabetical order after the given one (null for the first page)
+    public List<String> getUsernames(String after, int limit) {
+        try {
+            return users.usernames(after, limit);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return new ArrayList<>();
         }
-        return usernames;
+    }
+
+    public UserCache getCache() {
+        return cache;
     }
 }
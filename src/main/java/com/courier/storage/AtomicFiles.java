@@ -0,0 +1,87 @@
+package com.courier.storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Replaces a file in one step: the content goes to a temporary file beside the target
+ * and is renamed over it, so a reader in any process sees the old content or the new,
+ * never a partial write. Temporary names end in ".tmp", which no directory scan treats
+ * as a record; one left behind by a crash is harmless.
+ */
+public final class AtomicFiles {
+    private AtomicFiles() {}
+
+    public static void write(Path target, byte[] content) throws IOException {
+        write(target, content, Durability.NONE);
+    }
+
+    // The content is forced before the rename and the directory after it, as far as the
+    // durability mode asks; a crash then leaves the old file or the complete new one
+    public static void write(Path target, byte[] content, Durability durability) throws IOException {
+        Path temp = tempFor(target);
+        try {
+            writeNew(temp, content, durability);
+            try {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+            durability.forceDirectory(target.getParent());
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    public static boolean create(Path target, byte[] content) throws IOException {
+        return create(target, content, Durability.NONE);
+    }
+
+    // Like write, but only if the target does not exist yet; false when another writer got
+    // there first. A hard link never replaces an existing name, so exactly one creator wins
+    public static boolean create(Path target, byte[] content, Durability durability) throws IOException {
+        Path temp = tempFor(target);
+        try {
+            writeNew(temp, content, durability);
+            Files.createLink(target, temp);
+        } catch (FileAlreadyExistsException e) {
+            return false;
+        } catch (UnsupportedOperationException | FileSystemException e) {
+            // No hard links on this file system: exclusive create, briefly visible while empty
+            try {
+                writeNew(target, content, durability);
+            } catch (FileAlreadyExistsException ex) {
+                return false;
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        durability.forceDirectory(target.getParent());
+        return true;
+    }
+
+    private static void writeNew(Path file, byte[] content, Durability durability) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.wrap(content);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            durability.forcePrivate(channel);
+        }
+    }
+
+    // Random, so writers in other processes or on other hosts never pick the same name
+    private static Path tempFor(Path target) {
+        return target.resolveSibling("." + target.getFileName() + "."
+            + Long.toHexString(ThreadLocalRandom.current().nextLong()) + ".tmp");
+    }
+}
@@ -0,0 +1,212 @@
+package com.courier.storage;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * Persistence for in-memory state that changes in small steps: each step is appended
+ * to <name>.journal as a checksummed record, and a checkpoint writes the whole state to
+ * <name>.snapshot and starts the journal over. Both files carry a generation number, so
+ * a journal left behind by a crash mid-checkpoint is recognised as already folded into
+ * the snapshot. The owner encodes its own state and changes; this class only frames them.
+ */
+public class CheckpointedJournal implements Closeable {
+    private static final int HEADER_SIZE = 12;
+    // Record frame: payload length, CRC32 of the payload, payload
+    private static final int FRAME_HEADER_SIZE = 8;
+    private static final int MAX_RECORD_SIZE = 1024 * 1024;
+
+    private final Path snapshotFile;
+    private final Path journalFile;
+    private final int snapshotMagic;
+    private final int journalMagic;
+    private final boolean created;
+    private FileChannel journal;
+    private long generation;
+    private long records;
+    private byte[] snapshot;
+
+    private CheckpointedJournal(Path directory, String name, int snapshotMagic, int journalMagic) {
+        this.snapshotFile = directory.resolve(name + ".snapshot");
+        this.journalFile = directory.resolve(name + ".journal");
+        this.snapshotMagic = snapshotMagic;
+        this.journalMagic = journalMagic;
+        this.created = !Files.exists(snapshotFile) && !Files.exists(journalFile);
+    }
+
+    public static CheckpointedJournal open(Path directory, String name, int snapshotMagic, int journalMagic)
+            throws IOException {
+        Files.createDirectories(directory);
+        CheckpointedJournal journal = new CheckpointedJournal(directory, name, snapshotMagic, journalMagic);
+        journal.readSnapshot();
+        journal.journal = FileChannel.open(journal.journalFile, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        return journal;
+    }
+
+    // True when neither file existed, i.e. the owner's state still has to be built
+    public boolean isCreated() {
+        return created;
+    }
+
+    // The last checkpoint's state, or null when there has been none; read once, at open
+    public byte[] takeSnapshot() {
+        byte[] taken = snapshot;
+        snapshot = null;
+        return taken;
+    }
+
+    // Hands every journal record written since the last checkpoint to the handler, in order
+    public synchronized void replay(RecordHandler handler) throws IOException {
+        if (journal.size() < HEADER_SIZE) {
+            reset();
+            return;
+        }
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        readFully(header, 0);
+        header.flip();
+        if (header.getInt() != journalMagic) {
+            throw new IOException("Not a journal: " + journalFile);
+        }
+        if (header.getLong() != generation) {
+            // The checkpoint moved its snapshot in but stopped before resetting the journal
+            reset();
+            return;
+        }
+        long size = journal.size();
+        long position = HEADER_SIZE;
+        ByteBuffer frameHeader = ByteBuffer.allocate(FRAME_HEADER_SIZE);
+        while (position + FRAME_HEADER_SIZE <= size) {
+            frameHeader.clear();
+            readFully(frameHeader, position);
+            frameHeader.flip();
+            int length = frameHeader.getInt();
+            long crc = frameHeader.getInt() & 0xFFFFFFFFL;
+            if (length < 0 || length > MAX_RECORD_SIZE || position + FRAME_HEADER_SIZE + length > size) {
+                break;
+            }
+            ByteBuffer payload = ByteBuffer.allocate(length);
+            readFully(payload, position + FRAME_HEADER_SIZE);
+            if (checksum(payload.array(), 0, length) != crc) {
+                break;
+            }
+            handler.handle(payload.array());
+            records++;
+            position += FRAME_HEADER_SIZE + length;
+        }
+        if (position < size) {
+            System.err.println(journalFile.getFileName() + ": discarding " + (size - position) + " torn bytes");
+            journal.truncate(position);
+        }
+    }
+
+    public synchronized void append(byte[] payload) throws IOException {
+        ByteBuffer record = ByteBuffer.allocate(FRAME_HEADER_SIZE + payload.length);
+        record.putInt(payload.length);
+        record.putInt((int) checksum(payload, 0, payload.length));
+        record.put(payload);
+        record.flip();
+        long position = journal.size();
+        while (record.hasRemaining()) {
+            position += journal.write(record, position);
+        }
+        records++;
+    }
+
+    // Journal records since the last checkpoint
+    public synchronized long getRecords() {
+        return records;
+    }
+
+    // The state as of now under the next generation, swapped in atomically, then an empty journal
+    public synchronized void checkpoint(byte[] state) throws IOException {
+        long next = generation + 1;
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + state.length + 4);
+        buffer.putInt(snapshotMagic);
+        buffer.putLong(next);
+        buffer.put(state);
+        buffer.putInt((int) checksum(buffer.array(), 0, buffer.position()));
+        buffer.flip();
+
+        Path temp = snapshotFile.resolveSibling(snapshotFile.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        Files.move(temp, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        generation = next;
+        reset();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (journal.isOpen()) {
+            journal.force(true);
+            journal.close();
+        }
+    }
+
+    private void readSnapshot() throws IOException {
+        if (!Files.exists(snapshotFile)) {
+            return;
+        }
+        byte[] bytes = Files.readAllBytes(snapshotFile);
+        if (bytes.length < HEADER_SIZE + 4) {
+            throw new IOException("Truncated snapshot: " + snapshotFile);
+        }
+        long crc = ByteBuffer.wrap(bytes, bytes.length - 4, 4).getInt() & 0xFFFFFFFFL;
+        if (checksum(bytes, 0, bytes.length - 4) != crc) {
+            throw new IOException("Corrupt snapshot, delete it and its journal to rebuild: " + snapshotFile);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, bytes.length - 4);
+        if (buffer.getInt() != snapshotMagic) {
+            throw new IOException("Not a snapshot: " + snapshotFile);
+        }
+        generation = buffer.getLong();
+        snapshot = Arrays.copyOfRange(bytes, HEADER_SIZE, bytes.length - 4);
+    }
+
+    private void reset() throws IOException {
+        journal.truncate(0);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(journalMagic);
+        header.putLong(generation);
+        header.flip();
+        long position = 0;
+        while (header.hasRemaining()) {
+            position += journal.write(header, position);
+        }
+        journal.force(true);
+        records = 0;
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = journal.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new IOException("Unexpected end of " + journalFile);
+            }
+        }
+    }
+
+    private static long checksum(byte[] bytes, int offset, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, offset, length);
+        return crc.getValue();
+    }
+
+    public interface RecordHandler {
+        void handle(byte[] payload) throws IOException;
+    }
+}
@@ -0,0 +1,125 @@
+package com.courier.storage;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Where account and order files live under their root directories. FLAT is the
+ * original accounts/<username>.txt and orders/<username>/<trackingId>.txt; SHARDED adds
+ * two levels of hash-prefix directories above each account and user, and one above
+ * each order, so no directory grows past a few hundred entries. The choice is recorded
+ * in a .layout marker in each root.
+ */
+public enum DirectoryLayout {
+    FLAT,
+    SHARDED;
+
+    public static final String MARKER = ".layout";
+    private static final String SUFFIX = ".txt";
+
+    public Path accountFile(Path accountsDir, String username) {
+        return bucket(accountsDir, username).resolve(username + SUFFIX);
+    }
+
+    public Path userOrdersDir(Path ordersDir, String username) {
+        return bucket(ordersDir, username).resolve(username);
+    }
+
+    public Path orderFile(Path ordersDir, String username, String trackingId) {
+        Path userDir = userOrdersDir(ordersDir, username);
+        if (this == SHARDED) {
+            userDir = userDir.resolve(hex(hash(trackingId)));
+        }
+        return userDir.resolve(trackingId + SUFFIX);
+    }
+
+    public List<Path> accountFiles(Path accountsDir) throws IOException {
+        return find(accountsDir, this == SHARDED ? 3 : 1, true);
+    }
+
+    // Like accountFiles, without holding the whole listing
+    public void forEachAccountFile(Path accountsDir, Consumer<Path> consumer) throws IOException {
+        walk(accountsDir, this == SHARDED ? 3 : 1, true, consumer);
+    }
+
+    public List<Path> userOrderDirs(Path ordersDir) throws IOException {
+        return find(ordersDir, this == SHARDED ? 3 : 1, false);
+    }
+
+    public List<Path> orderFiles(Path userOrdersDir) throws IOException {
+        return find(userOrdersDir, this == SHARDED ? 2 : 1, true);
+    }
+
+    // The name an account or order file was stored under, without the .txt suffix
+    public static String keyOf(Path file) {
+        String name = file.getFileName().toString();
+        return name.substring(0, name.length() - SUFFIX.length());
+    }
+
+    // Reads the marker; an unmarked empty root is a new install and becomes SHARDED
+    public static DirectoryLayout detect(Path root) throws IOException {
+        Files.createDirectories(root);
+        Path marker = root.resolve(MARKER);
+        if (Files.exists(marker)) {
+            String value = new String(Files.readAllBytes(marker), StandardCharsets.UTF_8).trim();
+            return valueOf(value.toUpperCase(Locale.ROOT));
+        }
+        boolean empty;
+        try (Stream<Path> entries = Files.list(root)) {
+            empty = !entries.findAny().isPresent();
+        }
+        if (!empty) {
+            return FLAT;
+        }
+        SHARDED.mark(root);
+        return SHARDED;
+    }
+
+    public void mark(Path root) throws IOException {
+        Files.write(root.resolve(MARKER), name().toLowerCase(Locale.ROOT).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private Path bucket(Path root, String key) {
+        if (this == FLAT) {
+            return root;
+        }
+        int hash = hash(key);
+        return root.resolve(hex(hash)).resolve(hex(hash >>> 8));
+    }
+
+    private static List<Path> find(Path root, int depth, boolean files) throws IOException {
+        List<Path> found = new ArrayList<>();
+        walk(root, depth, files, found::add);
+        return found;
+    }
+
+    private static void walk(Path root, int depth, boolean files, Consumer<Path> consumer) throws IOException {
+        if (!Files.isDirectory(root)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.find(root, depth, (path, attributes) ->
+                root.relativize(path).getNameCount() == depth && !path.equals(root)
+                    && (files ? attributes.isRegularFile() && path.toString().endsWith(SUFFIX)
+                              : attributes.isDirectory()))) {
+            paths.forEach(consumer);
+        }
+    }
+
+    // String.hashCode is specified, so bucket names are stable across JVMs
+    private static int hash(String key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    private static String hex(int value) {
+        String digits = Integer.toHexString((value & 0xFF) | 0x100);
+        return digits.substring(1);
+    }
+}
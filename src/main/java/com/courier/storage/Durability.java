@@ -0,0 +1,257 @@
+package com.courier.storage;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * How far an acknowledged write has to get before the call that made it returns.
+ * NONE leaves it in the operating system's cache, where a crash can lose it. FSYNC
+ * forces every write on its own. GROUP_COMMIT hands forces to one committer thread,
+ * which collects them for up to a latency window, then forces each file of the batch
+ * once and releases every writer in it, so concurrent writers share the cost.
+ *
+ * <p>Writers must not hold a lock another writer needs while they wait here, or the
+ * batch never grows past one. A channel closed before its batch is forced must have
+ * been forced, or made obsolete, by whoever closed it.
+ */
+public class Durability implements Closeable {
+    public static final Durability NONE = new Durability(Mode.NONE, 0);
+
+    public enum Mode {
+        NONE,
+        FSYNC,
+        GROUP_COMMIT;
+
+        // Accepts "none", "fsync" and "group" or "group_commit", in any case
+        public static Mode fromProperty(String value) {
+            if (value == null) {
+                return NONE;
+            }
+            String name = value.trim().toUpperCase(Locale.ROOT);
+            return name.equals("GROUP") ? GROUP_COMMIT : valueOf(name);
+        }
+    }
+
+    private interface Target {
+        void force() throws IOException;
+    }
+
+    private final Mode mode;
+    private final long windowNanos;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition work = lock.newCondition();
+    private final Condition committed = lock.newCondition();
+    private Batch pending;
+    // Writers in the last batch; with one, nobody else is writing and waiting only adds latency
+    private int lastWriters;
+    private boolean closed;
+    private Thread committer;
+
+    private Durability(Mode mode, long windowNanos) {
+        this.mode = mode;
+        this.windowNanos = windowNanos;
+    }
+
+    // The window is how long a batch waits for more writers after its first, and is only
+    // waited when the previous batch had more than one writer. With 0, a batch holds the
+    // writers that arrived while the previous one was being forced
+    public static Durability open(Mode mode, long windowMicros) {
+        Durability durability = new Durability(mode, TimeUnit.MICROSECONDS.toNanos(windowMicros));
+        if (mode == Mode.GROUP_COMMIT) {
+            durability.committer = new Thread(durability::commitLoop, "group-commit");
+            durability.committer.setDaemon(true);
+            durability.committer.start();
+        }
+        return durability;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    // For a file other writers append to or update as well, such as the ledger or a log
+    // segment; content only, plus what the file system needs to find it again
+    public void force(FileChannel channel) throws IOException {
+        sync(channel, () -> channel.force(false));
+    }
+
+    public void force(MappedByteBuffer region) throws IOException {
+        sync(new Identity(region), region::force); // buffers compare by content, not identity
+    }
+
+    // For a file only this writer has written, such as a new temporary file. No other write
+    // can share its force, so every mode but NONE forces it right away in the caller
+    public void forcePrivate(FileChannel channel) throws IOException {
+        if (mode != Mode.NONE) {
+            channel.force(false);
+        }
+    }
+
+    // Makes a rename into or a delete from the directory survive a crash. Forced in the
+    // caller like a private file: writers rarely share a directory in a sharded tree
+    public void forceDirectory(Path directory) throws IOException {
+        if (mode == Mode.NONE) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (AccessDeniedException e) {
+            // Windows cannot open a directory; its entries are as durable as NTFS makes them
+        }
+    }
+
+    // Commits what is pending, then stops the committer; later writes force on their own
+    @Override
+    public void close() throws IOException {
+        if (committer == null) {
+            return;
+        }
+        lock.lock();
+        try {
+            closed = true;
+            work.signal();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            committer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void sync(Object key, Target target) throws IOException {
+        if (mode == Mode.NONE) {
+            return;
+        }
+        if (mode == Mode.FSYNC) {
+            forceUnlessClosed(target);
+            return;
+        }
+        Batch batch;
+        lock.lock();
+        try {
+            if (closed) {
+                batch = null;
+            } else {
+                if (pending == null) {
+                    pending = new Batch(System.nanoTime());
+                    work.signal();
+                }
+                batch = pending;
+                batch.writers++;
+                batch.targets.putIfAbsent(key, target);
+                while (!batch.done) {
+                    committed.await();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for group commit");
+        } finally {
+            lock.unlock();
+        }
+        if (batch == null) {
+            forceUnlessClosed(target);
+        } else if (batch.failure != null) {
+            throw new IOException("Group commit failed", batch.failure);
+        }
+    }
+
+    private void commitLoop() {
+        while (true) {
+            Batch batch;
+            lock.lock();
+            try {
+                while (pending == null && !closed) {
+                    work.awaitUninterruptibly();
+                }
+                if (pending == null) {
+                    return;
+                }
+                long wait = lastWriters > 1 ? pending.openedAt + windowNanos - System.nanoTime() : 0;
+                while (wait > 0 && !closed) {
+                    wait = work.awaitNanos(wait);
+                }
+                batch = pending;
+                pending = null;
+                lastWriters = batch.writers;
+            } catch (InterruptedException e) {
+                return; // only close() stops the committer, and it does not interrupt
+            } finally {
+                lock.unlock();
+            }
+
+            IOException failure = null;
+            for (Target target : batch.targets.values()) {
+                try {
+                    forceUnlessClosed(target);
+                } catch (IOException e) {
+                    failure = failure != null ? failure : e;
+                }
+            }
+            lock.lock();
+            try {
+                batch.failure = failure;
+                batch.done = true;
+                committed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    // A writer forces after giving up its own lock, by when the owner may have closed the
+    // channel; owners force or supersede a file before closing it, so that is already durable
+    private static void forceUnlessClosed(Target target) throws IOException {
+        try {
+            target.force();
+        } catch (ClosedChannelException e) {
+            // Forced or superseded by its owner before closing
+        }
+    }
+
+    private static class Identity {
+        private final Object target;
+
+        Identity(Object target) {
+            this.target = target;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Identity && ((Identity) other).target == target;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(target);
+        }
+    }
+
+    private static class Batch {
+        private final long openedAt;
+        // One force per file, however many writes the batch holds
+        private final Map<Object, Target> targets = new LinkedHashMap<>();
+        private int writers;
+        private boolean done;
+        private IOException failure;
+
+        Batch(long openedAt) {
+            this.openedAt = openedAt;
+        }
+    }
+}
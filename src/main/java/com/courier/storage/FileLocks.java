@@ -0,0 +1,217 @@
+package com.courier.storage;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.FileLockInterruptionException;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Advisory locks shared by every process using one data directory: one lock file per
+ * name, locked with NIO FileLocks. A JVM may hold only one FileLock on a file, so each
+ * name also has a read-write lock that orders this process's own threads, and the
+ * first shared holder takes the shared FileLock for all of them. The operating system
+ * drops a dead process's locks, so a crash never leaves a name locked. Locks are not
+ * reentrant: a thread must release a name before locking it again.
+ */
+public class FileLocks implements Closeable {
+    private static final String SUFFIX = ".lock";
+    private static final int SHARDS = 64;
+    private static final long POLL_MIN_NANOS = 20_000;
+    private static final long POLL_MAX_NANOS = 2_000_000;
+
+    private final Path directory;
+    private final Map<String, Slot> slots = new ConcurrentHashMap<>();
+
+    // Held until closed; close() releases the lock and must be called exactly once
+    public interface Handle extends Closeable {
+        @Override
+        void close() throws IOException;
+    }
+
+    private FileLocks(Path directory) {
+        this.directory = directory;
+    }
+
+    public static FileLocks open(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        return new FileLocks(directory);
+    }
+
+    // One of a fixed set of names per prefix, so unrelated keys rarely wait on each other
+    public static String shard(String prefix, String key) {
+        int h = key.hashCode();
+        h ^= h >>> 16;
+        return prefix + "-" + Integer.toHexString((h & (SHARDS - 1)) | 0x100).substring(1);
+    }
+
+    // Blocks like FileChannel.lock. The kernel's deadlock check treats a whole process as one
+    // holder, so a thread waiting here while another thread of the process holds a different
+    // lock can be refused as a deadlock that does not exist; that case falls back to polling
+    public static FileLock lock(FileChannel channel, long position, long size, boolean shared) throws IOException {
+        try {
+            return channel.lock(position, size, shared);
+        } catch (ClosedChannelException e) {
+            throw e;
+        } catch (IOException e) {
+            long waitNanos = POLL_MIN_NANOS;
+            while (true) {
+                FileLock lock = channel.tryLock(position, size, shared);
+                if (lock != null) {
+                    return lock;
+                }
+                LockSupport.parkNanos(waitNanos);
+                if (Thread.interrupted()) {
+                    throw new FileLockInterruptionException();
+                }
+                waitNanos = Math.min(waitNanos * 2, POLL_MAX_NANOS);
+            }
+        }
+    }
+
+    // Waits while another thread or process holds the name exclusively
+    public Handle shared(String name) throws IOException {
+        Slot slot = slot(name);
+        slot.local.readLock().lock();
+        try {
+            synchronized (slot) {
+                if (slot.readers == 0) {
+                    slot.sharedLock = lock(slot.channel, 0, Long.MAX_VALUE, true);
+                }
+                slot.readers++;
+            }
+        } catch (IOException | RuntimeException e) {
+            slot.local.readLock().unlock();
+            throw e;
+        }
+        return sharedHandle(slot);
+    }
+
+    // Waits while any other thread or process holds the name
+    public Handle exclusive(String name) throws IOException {
+        Slot slot = slot(name);
+        slot.local.writeLock().lock();
+        try {
+            return exclusiveHandle(slot, lock(slot.channel, 0, Long.MAX_VALUE, false));
+        } catch (IOException | RuntimeException e) {
+            slot.local.writeLock().unlock();
+            throw e;
+        }
+    }
+
+    // Claims the name without waiting; null when anyone else holds it. Meant to be held for
+    // as long as the process owns whatever the name stands for
+    public Handle tryExclusive(String name) throws IOException {
+        return tryLock(name, false);
+    }
+
+    // Like tryExclusive, but other shared holders are welcome
+    public Handle tryShared(String name) throws IOException {
+        return tryLock(name, true);
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (Slot slot : slots.values()) {
+            slot.channel.close();
+        }
+        slots.clear();
+    }
+
+    private Handle tryLock(String name, boolean shared) throws IOException {
+        Slot slot = slot(name);
+        if (shared ? !slot.local.readLock().tryLock() : !slot.local.writeLock().tryLock()) {
+            return null;
+        }
+        FileLock lock = null;
+        try {
+            synchronized (slot) {
+                if (!shared) {
+                    lock = slot.channel.tryLock();
+                } else if (slot.readers > 0) {
+                    lock = slot.sharedLock;
+                    slot.readers++;
+                } else {
+                    lock = slot.channel.tryLock(0, Long.MAX_VALUE, true);
+                    if (lock != null) {
+                        slot.sharedLock = lock;
+                        slot.readers++;
+                    }
+                }
+            }
+        } catch (OverlappingFileLockException e) {
+            lock = null;
+        } finally {
+            if (lock == null) {
+                (shared ? slot.local.readLock() : slot.local.writeLock()).unlock();
+            }
+        }
+        if (lock == null) {
+            return null;
+        }
+        return shared ? sharedHandle(slot) : exclusiveHandle(slot, lock);
+    }
+
+    // The last shared holder in this process gives up the shared FileLock
+    private static Handle sharedHandle(Slot slot) {
+        return () -> {
+            try {
+                synchronized (slot) {
+                    if (--slot.readers == 0) {
+                        FileLock lock = slot.sharedLock;
+                        slot.sharedLock = null;
+                        lock.release();
+                    }
+                }
+            } finally {
+                slot.local.readLock().unlock();
+            }
+        };
+    }
+
+    private static Handle exclusiveHandle(Slot slot, FileLock lock) {
+        return () -> {
+            try {
+                lock.release();
+            } finally {
+                slot.local.writeLock().unlock();
+            }
+        };
+    }
+
+    private Slot slot(String name) throws IOException {
+        Slot slot = slots.get(name);
+        if (slot != null) {
+            return slot;
+        }
+        synchronized (slots) {
+            slot = slots.get(name);
+            if (slot == null) {
+                slot = new Slot(FileChannel.open(directory.resolve(name + SUFFIX), StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE));
+                slots.put(name, slot);
+            }
+            return slot;
+        }
+    }
+
+    private static class Slot {
+        private final FileChannel channel;
+        private final ReentrantReadWriteLock local = new ReentrantReadWriteLock();
+        private int readers;
+        private FileLock sharedLock;
+
+        Slot(FileChannel channel) {
+            this.channel = channel;
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package com.courier.storage;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Fixed-width binary finance ledger. The header carries the record count and the
+ * running revenue total, so appending is a single positional write plus a header
+ * rewrite and the total never requires a scan. Processes sharing the file append
+ * under an exclusive lock on the header and read it under a shared one, so each
+ * append lands after every other process's and no count or total is lost.
+ */
+public class FinanceLedger implements Closeable {
+    private static final int MAGIC = 0x46494E31; // "FIN1"
+    private static final int HEADER_SIZE = 24;
+    private static final int TRACKING_ID_SIZE = 24;
+    private static final int RECORD_SIZE = TRACKING_ID_SIZE + 8;
+    private static final int READ_BATCH = 4096;
+
+    private final FileChannel channel;
+    private final Durability durability;
+    private long count;
+    private double total;
+
+    private FinanceLedger(FileChannel channel, Durability durability) {
+        this.channel = channel;
+        this.durability = durability;
+    }
+
+    public static FinanceLedger open(Path path) throws IOException {
+        return open(path, Durability.NONE);
+    }
+
+    @SuppressWarnings("try")
+    public static FinanceLedger open(Path path, Durability durability) throws IOException {
+        Files.createDirectories(path.getParent());
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        FinanceLedger ledger = new FinanceLedger(channel, durability);
+        try (FileLock lock = FileLocks.lock(channel, 0, HEADER_SIZE, false)) {
+            ledger.recover();
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return ledger;
+    }
+
+    @SuppressWarnings("try")
+    public void append(String trackingId, double rate) throws IOException {
+        ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+        record.put(encodeTrackingId(trackingId));
+        record.putDouble(rate);
+        record.flip();
+        synchronized (this) {
+            try (FileLock lock = FileLocks.lock(channel, 0, HEADER_SIZE, false)) {
+                readHeader(); // other processes may have appended since
+                writeFully(record, HEADER_SIZE + count * RECORD_SIZE);
+                count++;
+                total += rate;
+                writeHeader();
+            }
+        }
+        // Outside the lock, so appends from other threads join the same group commit
+        durability.force(channel);
+    }
+
+    public synchronized long getCount() throws IOException {
+        refresh();
+        return count;
+    }
+
+    public synchronized double getTotal() throws IOException {
+        refresh();
+        return total;
+    }
+
+    public List<Entry> readAll() throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        forEach(entries::add);
+        return entries;
+    }
+
+    // Records as of the call, in order. The lock is only held while a batch is read, so
+    // appends carry on while the consumer works; records below the count never change
+    public void forEach(Consumer<Entry> consumer) throws IOException {
+        long end;
+        synchronized (this) {
+            refresh();
+            end = HEADER_SIZE + count * RECORD_SIZE;
+        }
+        scan(end, consumer);
+    }
+
+    // The records before end, read in batches without the file lock
+    private void scan(long end, Consumer<Entry> consumer) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(READ_BATCH * RECORD_SIZE);
+        byte[] idBytes = new byte[TRACKING_ID_SIZE];
+        long position = HEADER_SIZE;
+        while (position < end) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), end - position));
+            synchronized (this) {
+                readFully(buffer, position);
+            }
+            buffer.flip();
+            while (buffer.remaining() >= RECORD_SIZE) {
+                buffer.get(idBytes);
+                consumer.accept(new Entry(decodeTrackingId(idBytes), buffer.getDouble()));
+            }
+            position += buffer.limit();
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        channel.force(true);
+        channel.close();
+    }
+
+    // Another process's append changes the header; records up to its count never change again
+    @SuppressWarnings("try")
+    private void refresh() throws IOException {
+        try (FileLock lock = FileLocks.lock(channel, 0, HEADER_SIZE, true)) {
+            readHeader();
+        }
+    }
+
+    private void readHeader() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        readFully(header, 0);
+        header.flip();
+        header.position(8);
+        count = header.getLong();
+        total = header.getDouble();
+    }
+
+    private void recover() throws IOException {
+        long size = channel.size();
+        if (size < HEADER_SIZE) {
+            count = 0;
+            total = 0;
+            channel.truncate(0);
+            writeHeader();
+            return;
+        }
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        readFully(header, 0);
+        header.flip();
+        if (header.getInt() != MAGIC) {
+            throw new IOException("Not a finance ledger: bad header");
+        }
+        header.getInt();
+        long headerCount = header.getLong();
+        double headerTotal = header.getDouble();
+
+        // Records past the header count were written but the header update was lost. The
+        // caller holds the header lock, and the header's count is the stale one, so the
+        // records are summed straight from the file rather than through forEach
+        long physicalCount = (size - HEADER_SIZE) / RECORD_SIZE;
+        if (physicalCount == headerCount) {
+            count = headerCount;
+            total = headerTotal;
+            return;
+        }
+        count = physicalCount;
+        double[] sum = new double[1];
+        scan(HEADER_SIZE + count * RECORD_SIZE, entry -> sum[0] += entry.getRate());
+        total = sum[0];
+        channel.truncate(HEADER_SIZE + count * RECORD_SIZE);
+        writeHeader();
+    }
+
+    private void writeHeader() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC);
+        header.putInt(RECORD_SIZE);
+        header.putLong(count);
+        header.putDouble(total);
+        header.flip();
+        writeFully(header, 0);
+    }
+
+    private void writeFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Unexpected end of finance ledger");
+            }
+            position += read;
+        }
+    }
+
+    private static byte[] encodeTrackingId(String trackingId) {
+        byte[] raw = trackingId.getBytes(StandardCharsets.UTF_8);
+        if (raw.length > TRACKING_ID_SIZE) {
+            throw new IllegalArgumentException("Tracking ID too long for ledger: " + trackingId);
+        }
+        byte[] padded = new byte[TRACKING_ID_SIZE];
+        System.arraycopy(raw, 0, padded, 0, raw.length);
+        return padded;
+    }
+
+    private static String decodeTrackingId(byte[] bytes) {
+        int length = 0;
+        while (length < bytes.length && bytes[length] != 0) {
+            length++;
+        }
+        return new String(bytes, 0, length, StandardCharsets.UTF_8);
+    }
+
+    public static class Entry {
+        private final String trackingId;
+        private final double rate;
+
+        public Entry(String trackingId, double rate) {
+            this.trackingId = trackingId;
+            this.rate = rate;
+        }
+
+        public String getTrackingId() { return trackingId; }
+        public double getRate() { return rate; }
+    }
+}
@@ -0,0 +1,317 @@
+package com.courier.storage;
+
+import com.courier.model.Order;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Order count and revenue per UTC day, receiver city, sender province and status,
+ * kept current as orders are placed, cancelled and moved between statuses so the
+ * finance dashboard reads totals instead of scanning the ledger. Cancelled orders keep
+ * their revenue, as they do in the ledger, so the day and status dimensions always sum
+ * to the ledger total, the latter with a "Cancelled" bucket. City and province cover
+ * live orders only, since a cancelled order's record is gone and a rebuild could not
+ * place it.
+ *
+ * Each change is one journal record; every few thousand records the full state is
+ * checkpointed to a snapshot and the journal starts over.
+ */
+public class FinanceRollups implements Closeable {
+    public static final String CANCELLED = "Cancelled";
+    public static final String UNKNOWN = "Unknown";
+
+    private static final int SNAPSHOT_MAGIC = 0x524F4C31; // "ROL1"
+    private static final int JOURNAL_MAGIC = 0x524F4A31; // "ROJ1"
+    private static final int COMPACT_AFTER_RECORDS = 4096;
+
+    public enum Dimension {
+        DAY,
+        RECEIVER_CITY,
+        SENDER_PROVINCE,
+        STATUS
+    }
+
+    private final CheckpointedJournal journal;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final Map<Dimension, TreeMap<String, Bucket>> buckets = new EnumMap<>(Dimension.class);
+    private long totalCount;
+    private double totalRevenue;
+
+    private FinanceRollups(CheckpointedJournal journal) {
+        this.journal = journal;
+        clear();
+    }
+
+    public static FinanceRollups open(Path directory) throws IOException {
+        FinanceRollups rollups = new FinanceRollups(
+            CheckpointedJournal.open(directory, "rollups", SNAPSHOT_MAGIC, JOURNAL_MAGIC));
+        rollups.recover();
+        return rollups;
+    }
+
+    // True when no rollup files existed, i.e. they still need a rebuild from the ledger
+    public boolean isCreated() {
+        return journal.isCreated();
+    }
+
+    public void recordPlaced(Order order) throws IOException {
+        Change change = new Change(1, order.getRate());
+        change.add(Dimension.DAY, dayKey(order.getCreatedAt()), 1, order.getRate());
+        change.add(Dimension.RECEIVER_CITY, key(order.getReceiverCity()), 1, order.getRate());
+        change.add(Dimension.SENDER_PROVINCE, key(order.getSenderProvince()), 1, order.getRate());
+        change.add(Dimension.STATUS, order.getStatus().getDisplayName(), 1, order.getRate());
+        commit(change);
+        for (Listener listener : listeners) {
+            listener.placed(order);
+        }
+    }
+
+    public void recordCancelled(Order order) throws IOException {
+        Change change = new Change(0, 0);
+        change.add(Dimension.RECEIVER_CITY, key(order.getReceiverCity()), -1, -order.getRate());
+        change.add(Dimension.SENDER_PROVINCE, key(order.getSenderProvince()), -1, -order.getRate());
+        change.add(Dimension.STATUS, order.getStatus().getDisplayName(), -1, -order.getRate());
+        change.add(Dimension.STATUS, CANCELLED, 1, order.getRate());
+        commit(change);
+        for (Listener listener : listeners) {
+            listener.cancelled(order);
+        }
+    }
+
+    // The order as it was before or after the change; only its status is not read
+    public void recordStatusChange(Order order, Order.OrderStatus from, Order.OrderStatus to) throws IOException {
+        if (from != to) {
+            Change change = new Change(0, 0);
+            change.add(Dimension.STATUS, from.getDisplayName(), -1, -order.getRate());
+            change.add(Dimension.STATUS, to.getDisplayName(), 1, order.getRate());
+            commit(change);
+            for (Listener listener : listeners) {
+                listener.statusChanged(order, to);
+            }
+        }
+    }
+
+    // Told of each change once it is recorded, outside the rollups' lock
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    // Buckets of one dimension in key order, as copies
+    public synchronized Map<String, Bucket> get(Dimension dimension) {
+        Map<String, Bucket> copy = new LinkedHashMap<>();
+        for (Map.Entry<String, Bucket> entry : buckets.get(dimension).entrySet()) {
+            copy.put(entry.getKey(), new Bucket(entry.getValue().count, entry.getValue().revenue));
+        }
+        return copy;
+    }
+
+    public synchronized long getTotalCount() {
+        return totalCount;
+    }
+
+    public synchronized double getTotalRevenue() {
+        return totalRevenue;
+    }
+
+    // Replaces every bucket with what the filler reports, then snapshots the result
+    public synchronized void rebuild(Consumer<Tally> filler) throws IOException {
+        clear();
+        filler.accept(new Tally());
+        compact();
+    }
+
+    public static String dayKey(long millis) {
+        return millis > 0 ? Instant.ofEpochMilli(millis).atZone(ZoneOffset.UTC).toLocalDate().toString() : UNKNOWN;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        journal.close();
+    }
+
+    private synchronized void commit(Change change) throws IOException {
+        journal.append(change.encode());
+        apply(change);
+        if (journal.getRecords() >= COMPACT_AFTER_RECORDS) {
+            compact();
+        }
+    }
+
+    private void apply(Change change) {
+        totalCount += change.countDelta;
+        totalRevenue += change.revenueDelta;
+        for (int i = 0; i < change.dimensions.size(); i++) {
+            add(change.dimensions.get(i), change.keys.get(i), change.counts.get(i), change.revenues.get(i));
+        }
+    }
+
+    private void add(Dimension dimension, String key, long count, double revenue) {
+        TreeMap<String, Bucket> map = buckets.get(dimension);
+        Bucket bucket = map.computeIfAbsent(key, k -> new Bucket(0, 0));
+        bucket.count += count;
+        bucket.revenue += revenue;
+        if (bucket.count <= 0) {
+            map.remove(key);
+        }
+    }
+
+    private void clear() {
+        for (Dimension dimension : Dimension.values()) {
+            // Cities and provinces are typed by users, so "lahore" and "Lahore" share a bucket
+            buckets.put(dimension, dimension == Dimension.DAY || dimension == Dimension.STATUS
+                ? new TreeMap<>() : new TreeMap<>(String.CASE_INSENSITIVE_ORDER));
+        }
+        totalCount = 0;
+        totalRevenue = 0;
+    }
+
+    private void recover() throws IOException {
+        byte[] snapshot = journal.takeSnapshot();
+        if (snapshot != null) {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(snapshot));
+            totalCount = in.readLong();
+            totalRevenue = in.readDouble();
+            for (Dimension dimension : Dimension.values()) {
+                int size = in.readInt();
+                for (int i = 0; i < size; i++) {
+                    String key = in.readUTF();
+                    buckets.get(dimension).put(key, new Bucket(in.readLong(), in.readDouble()));
+                }
+            }
+        }
+        journal.replay(payload -> apply(Change.decode(payload)));
+    }
+
+    private void compact() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeLong(totalCount);
+        out.writeDouble(totalRevenue);
+        for (Dimension dimension : Dimension.values()) {
+            Map<String, Bucket> map = buckets.get(dimension);
+            out.writeInt(map.size());
+            for (Map.Entry<String, Bucket> entry : map.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeLong(entry.getValue().count);
+                out.writeDouble(entry.getValue().revenue);
+            }
+        }
+        journal.checkpoint(bytes.toByteArray());
+    }
+
+    private static String key(String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return UNKNOWN;
+        }
+        return value.trim();
+    }
+
+    public interface Listener {
+        void placed(Order order);
+
+        void statusChanged(Order order, Order.OrderStatus to);
+
+        void cancelled(Order order);
+    }
+
+    public static class Bucket {
+        private long count;
+        private double revenue;
+
+        Bucket(long count, double revenue) {
+            this.count = count;
+            this.revenue = revenue;
+        }
+
+        public long getCount() { return count; }
+        public double getRevenue() { return revenue; }
+    }
+
+    // Accumulates buckets during a rebuild; one call per ledger record
+    public class Tally {
+        private Tally() {}
+
+        public void addLive(Order order, String day) {
+            add(day, order.getStatus().getDisplayName(), order.getRate());
+            FinanceRollups.this.add(Dimension.RECEIVER_CITY, key(order.getReceiverCity()), 1, order.getRate());
+            FinanceRollups.this.add(Dimension.SENDER_PROVINCE, key(order.getSenderProvince()), 1, order.getRate());
+        }
+
+        public void addCancelled(String day, double rate) {
+            add(day, CANCELLED, rate);
+        }
+
+        private void add(String day, String status, double rate) {
+            totalCount++;
+            totalRevenue += rate;
+            FinanceRollups.this.add(Dimension.DAY, day, 1, rate);
+            FinanceRollups.this.add(Dimension.STATUS, status, 1, rate);
+        }
+    }
+
+    // One journal record: the total delta and the bucket deltas it applies together
+    private static class Change {
+        private final long countDelta;
+        private final double revenueDelta;
+        private final List<Dimension> dimensions = new ArrayList<>(4);
+        private final List<String> keys = new ArrayList<>(4);
+        private final List<Long> counts = new ArrayList<>(4);
+        private final List<Double> revenues = new ArrayList<>(4);
+
+        Change(long countDelta, double revenueDelta) {
+            this.countDelta = countDelta;
+            this.revenueDelta = revenueDelta;
+        }
+
+        void add(Dimension dimension, String key, long count, double revenue) {
+            dimensions.add(dimension);
+            keys.add(key);
+            counts.add(count);
+            revenues.add(revenue);
+        }
+
+        byte[] encode() throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeLong(countDelta);
+            out.writeDouble(revenueDelta);
+            out.writeByte(dimensions.size());
+            for (int i = 0; i < dimensions.size(); i++) {
+                out.writeByte(dimensions.get(i).ordinal());
+                out.writeUTF(keys.get(i));
+                out.writeLong(counts.get(i));
+                out.writeDouble(revenues.get(i));
+            }
+            return bytes.toByteArray();
+        }
+
+        static Change decode(byte[] payload) throws IOException {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+            Change change = new Change(in.readLong(), in.readDouble());
+            int size = in.readUnsignedByte();
+            for (int i = 0; i < size; i++) {
+                change.add(Dimension.values()[in.readUnsignedByte()], in.readUTF(), in.readLong(), in.readDouble());
+            }
+            return change;
+        }
+    }
+}
@@ -0,0 +1,268 @@
+package com.courier.storage;
+
+import com.courier.model.Order;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+
+/**
+ * An OrderColumns snapshot kept current from the rollups' change events, so a report
+ * does not scan every order again. The snapshot is loaded from storage once; orders
+ * changed since then are held apart as their latest state, and a report subtracts the
+ * snapshot rows they replace and adds the new ones. Once a few thousand orders have
+ * changed they are folded into a new snapshot, in memory.
+ *
+ * Each event carries the order's whole state rather than a delta, so one that reaches
+ * the snapshot both ways while it loads still counts once.
+ */
+public class LiveOrderColumns implements FinanceRollups.Listener {
+    private static final int FOLD_AFTER = 1 << 14;
+
+    private final Supplier<OrderColumns> loader;
+    private final ToLongFunction<Order> placedAt;
+    private final Object loadLock = new Object();
+    private OrderColumns base;
+    // Latest state of each order changed since base was built, by tracking ID
+    private final Map<String, Row> changed = new HashMap<>();
+    // Columns for the current changes, built on the first report after they change
+    private Overlay overlay;
+
+    // The loader builds a full snapshot from storage; placedAt dates an order for its row
+    public LiveOrderColumns(Supplier<OrderColumns> loader, ToLongFunction<Order> placedAt) {
+        this.loader = loader;
+        this.placedAt = placedAt;
+    }
+
+    @Override
+    public void placed(Order order) {
+        put(order, order.getStatus().ordinal(), order.getReceiverCity(), order.getSenderProvince());
+    }
+
+    @Override
+    public void statusChanged(Order order, Order.OrderStatus to) {
+        put(order, to.ordinal(), order.getReceiverCity(), order.getSenderProvince());
+    }
+
+    // A cancelled order keeps its ledger revenue but, like one read from the ledger, no place
+    @Override
+    public void cancelled(Order order) {
+        put(order, OrderColumns.CANCELLED_CODE, null, null);
+    }
+
+    // Orders placed in [fromMillis, toMillis); the first call loads the snapshot
+    public OrderColumns.Aggregates between(long fromMillis, long toMillis) {
+        synchronized (loadLock) {
+            if (getBase() == null) {
+                OrderColumns loaded = loader.get(); // events keep arriving meanwhile
+                loaded.rowOf(-1); // builds the ID index here rather than under this object's lock
+                synchronized (this) {
+                    base = loaded;
+                    overlay = null;
+                }
+            } else {
+                foldIfLarge();
+            }
+        }
+        OrderColumns current;
+        Overlay changes;
+        synchronized (this) {
+            current = base;
+            if (overlay == null) {
+                overlay = buildOverlay();
+            }
+            changes = overlay;
+        }
+        return new Combined(current.between(fromMillis, toMillis), changes.replaced.between(fromMillis, toMillis),
+            changes.added.between(fromMillis, toMillis));
+    }
+
+    private synchronized OrderColumns getBase() {
+        return base;
+    }
+
+    private void put(Order order, int status, String city, String province) {
+        Row row = new Row(OrderColumns.parseTrackingId(order.getTrackingId()), order.getRate(),
+            placedAt.applyAsLong(order), status, city, province);
+        synchronized (this) {
+            changed.put(order.getTrackingId(), row);
+            overlay = null;
+        }
+    }
+
+    // Caller holds this and base is loaded
+    private Overlay buildOverlay() {
+        OrderColumns.Builder added = new OrderColumns.Builder();
+        OrderColumns.Builder replaced = new OrderColumns.Builder();
+        for (Row row : changed.values()) {
+            added.add(row.trackingId, row.rate, row.placedAt, row.status, row.city, row.province);
+            int baseRow = row.trackingId >= 0 ? base.rowOf(row.trackingId) : -1;
+            if (baseRow >= 0) {
+                base.copyRow(baseRow, replaced);
+            }
+        }
+        return new Overlay(added.build(), replaced.build());
+    }
+
+    // Caller holds loadLock. The copy is built outside this object's lock, so order
+    // intake is not held up; changes that arrive meanwhile stay for the next fold
+    private void foldIfLarge() {
+        OrderColumns old;
+        Map<String, Row> folded;
+        synchronized (this) {
+            if (changed.size() < FOLD_AFTER) {
+                return;
+            }
+            old = base;
+            folded = new HashMap<>(changed);
+        }
+        boolean[] replaced = new boolean[old.size()];
+        for (Row row : folded.values()) {
+            int baseRow = row.trackingId >= 0 ? old.rowOf(row.trackingId) : -1;
+            if (baseRow >= 0) {
+                replaced[baseRow] = true;
+            }
+        }
+        OrderColumns.Builder builder = new OrderColumns.Builder();
+        for (int i = 0; i < replaced.length; i++) {
+            if (!replaced[i]) {
+                old.copyRow(i, builder);
+            }
+        }
+        for (Row row : folded.values()) {
+            builder.add(row.trackingId, row.rate, row.placedAt, row.status, row.city, row.province);
+        }
+        OrderColumns next = builder.build();
+        next.rowOf(-1);
+        synchronized (this) {
+            base = next;
+            changed.entrySet().removeIf(entry -> folded.get(entry.getKey()) == entry.getValue());
+            overlay = null;
+        }
+    }
+
+    private static class Row {
+        private final long trackingId;
+        private final double rate;
+        private final long placedAt;
+        private final int status;
+        private final String city;
+        private final String province;
+
+        Row(long trackingId, double rate, long placedAt, int status, String city, String province) {
+            this.trackingId = trackingId;
+            this.rate = rate;
+            this.placedAt = placedAt;
+            this.status = status;
+            this.city = city;
+            this.province = province;
+        }
+    }
+
+    private static class Overlay {
+        private final OrderColumns added;
+        private final OrderColumns replaced;
+
+        Overlay(OrderColumns added, OrderColumns replaced) {
+            this.added = added;
+            this.replaced = replaced;
+        }
+    }
+
+    // Snapshot rows, minus the ones changed orders replace, plus the changed orders
+    private static class Combined implements OrderColumns.Aggregates {
+        private final OrderColumns.Slice base;
+        private final OrderColumns.Slice replaced;
+        private final OrderColumns.Slice added;
+
+        Combined(OrderColumns.Slice base, OrderColumns.Slice replaced, OrderColumns.Slice added) {
+            this.base = base;
+            this.replaced = replaced;
+            this.added = added;
+        }
+
+        @Override
+        public int count() {
+            return base.count() - replaced.count() + added.count();
+        }
+
+        @Override
+        public double sumRate() {
+            return base.sumRate() - replaced.sumRate() + added.sumRate();
+        }
+
+        @Override
+        public List<OrderColumns.Group> groupByStatus() {
+            return merge(base.groupByStatus(), replaced.groupByStatus(), added.groupByStatus());
+        }
+
+        @Override
+        public List<OrderColumns.Group> groupByCity() {
+            return merge(base.groupByCity(), replaced.groupByCity(), added.groupByCity());
+        }
+
+        @Override
+        public List<OrderColumns.Group> groupByProvince() {
+            return merge(base.groupByProvince(), replaced.groupByProvince(), added.groupByProvince());
+        }
+
+        @Override
+        public double[] ratePercentiles(double... fractions) {
+            double[] kept = base.sortedRates();
+            double[] removed = replaced.sortedRates();
+            double[] extra = added.sortedRates();
+            double[] rates = new double[kept.length - removed.length + extra.length];
+            int size = 0;
+            int r = 0;
+            for (double rate : kept) {
+                while (r < removed.length && removed[r] < rate) {
+                    r++;
+                }
+                if (r < removed.length && removed[r] == rate) {
+                    r++; // one replaced row's rate, dropped once
+                } else {
+                    rates[size++] = rate;
+                }
+            }
+            System.arraycopy(extra, 0, rates, size, extra.length);
+            Arrays.sort(rates, 0, size + extra.length);
+            return OrderColumns.percentiles(Arrays.copyOf(rates, size + extra.length), fractions);
+        }
+
+        // Groups match by name regardless of case, as the snapshot's dictionaries do
+        private static List<OrderColumns.Group> merge(List<OrderColumns.Group> groups,
+                                                      List<OrderColumns.Group> minus,
+                                                      List<OrderColumns.Group> plus) {
+            Map<String, OrderColumns.Group> byKey = new LinkedHashMap<>();
+            for (OrderColumns.Group group : groups) {
+                byKey.put(group.getKey().toLowerCase(Locale.ROOT), group);
+            }
+            for (OrderColumns.Group group : minus) {
+                add(byKey, group, -1);
+            }
+            for (OrderColumns.Group group : plus) {
+                add(byKey, group, 1);
+            }
+            List<OrderColumns.Group> merged = new ArrayList<>();
+            for (OrderColumns.Group group : byKey.values()) {
+                if (group.getCount() > 0) {
+                    merged.add(group);
+                }
+            }
+            merged.sort((a, b) -> Double.compare(b.getRevenue(), a.getRevenue()));
+            return merged;
+        }
+
+        private static void add(Map<String, OrderColumns.Group> byKey, OrderColumns.Group group, int sign) {
+            byKey.merge(group.getKey().toLowerCase(Locale.ROOT),
+                new OrderColumns.Group(group.getKey(), sign * group.getCount(), sign * group.getRevenue()),
+                (a, b) -> new OrderColumns.Group(a.getKey(), a.getCount() + b.getCount(),
+                    a.getRevenue() + b.getRevenue()));
+        }
+    }
+}
@@ -0,0 +1,491 @@
+package com.courier.storage;
+
+import com.courier.model.Order;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.function.Consumer;
+
+/**
+ * Orders in fixed-width slots of a memory-mapped file. A slot is addressed by its
+ * number, so reads decode straight from the mapping and a status change is written
+ * in place (the status byte, two timestamps and the version). Region 0 doubles in place up to REGION_SLOTS; after that the file grows
+ * one mapped region at a time. Orders with a field wider than its slot column keep
+ * the slot for ID, owner, status and rate and store the full record in an overflow file.
+ * Stores written with an older, smaller slot are rewritten to the current layout on
+ * open; columns they lacked read as empty or 0.
+ */
+public class MappedOrderStore implements Closeable {
+    private static final int MAGIC = 0x4F524431; // "ORD1"
+    private static final int HEADER_SIZE = 64;
+    private static final int SLOT_SIZE = 640;
+    // Earlier layouts: 576 before timestamps, 608 before the sender province column
+    private static final int[] OLDER_SLOT_SIZES = {576, 608};
+    private static final int INITIAL_SLOTS = 256;
+    private static final int REGION_SLOTS = 1 << 16; // 40 MB per mapping
+
+    private static final byte FREE = 0;
+    private static final byte LIVE = 1;
+    private static final byte OVERFLOW = 2;
+
+    // Slot layout: state, status, padding, rate, then each field as a length byte plus its column
+    private static final int STATE = 0;
+    private static final int STATUS = 1;
+    private static final int RATE = 8;
+    private static final int CREATED_AT = 576;
+    private static final int UPDATED_AT = 584;
+    private static final int STATUS_CHANGED_AT = 592;
+    // The last bytes behind the province column; zero in slots written before versions
+    private static final int VERSION = 632;
+    private static final int TRACKING_ID = 0;
+    private static final int USERNAME = 1;
+    private static final int SENDER_NAME = 2;
+    private static final int SENDER_CONTACT = 3;
+    private static final int SENDER_CITY = 4;
+    private static final int RECEIVER_NAME = 5;
+    private static final int RECEIVER_CONTACT = 6;
+    private static final int RECEIVER_ADDRESS = 7;
+    private static final int RECEIVER_CITY = 8;
+    private static final int SENDER_PROVINCE = 9;
+    private static final int[] WIDTHS = {24, 48, 64, 24, 48, 64, 24, 200, 48, 31};
+    private static final int[] OFFSETS = new int[WIDTHS.length];
+
+    static {
+        int offset = 16;
+        for (int i = 0; i < SENDER_PROVINCE; i++) {
+            OFFSETS[i] = offset;
+            offset += 1 + WIDTHS[i];
+        }
+        if (offset > CREATED_AT) {
+            throw new ExceptionInInitializerError("Slot fields overlap the timestamps at " + CREATED_AT);
+        }
+        // Added after the timestamps, so it sits behind them
+        OFFSETS[SENDER_PROVINCE] = STATUS_CHANGED_AT + 8;
+        if (OFFSETS[SENDER_PROVINCE] + 1 + WIDTHS[SENDER_PROVINCE] > VERSION) {
+            throw new ExceptionInInitializerError("Province column overlaps the version at " + VERSION);
+        }
+    }
+
+    private final Path file;
+    private final Path overflowDir;
+    private final FileChannel channel;
+    private final Durability durability;
+    private final OrderIndex index = new OrderIndex();
+    private final Deque<Integer> freeSlots = new ArrayDeque<>();
+    private volatile MappedByteBuffer[] regions = new MappedByteBuffer[0];
+    private int capacity;
+    private int highWater;
+
+    private MappedOrderStore(Path file, FileChannel channel, Durability durability) {
+        this.file = file;
+        this.overflowDir = file.resolveSibling("overflow");
+        this.channel = channel;
+        this.durability = durability;
+    }
+
+    public static MappedOrderStore open(Path file) throws IOException {
+        return open(file, Durability.NONE);
+    }
+
+    public static MappedOrderStore open(Path file, Durability durability) throws IOException {
+        Files.createDirectories(file.getParent());
+        upgradeLayout(file);
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        MappedOrderStore store = new MappedOrderStore(file, channel, durability);
+        try {
+            store.recover();
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return store;
+    }
+
+    // Durability is waited for after the store's lock is released, so concurrent writers share a commit
+    public void insert(Order order) throws IOException {
+        byte[][] fields = encodeFields(order);
+        if (fields[TRACKING_ID].length > WIDTHS[TRACKING_ID] || fields[USERNAME].length > WIDTHS[USERNAME]) {
+            throw new IOException("Tracking ID or username too long for order store: " + order.getTrackingId());
+        }
+        boolean fits = true;
+        for (int i = 0; i < fields.length; i++) {
+            fits &= fields[i].length <= WIDTHS[i];
+        }
+        if (!fits) {
+            Files.createDirectories(overflowDir);
+            AtomicFiles.write(overflowPath(order.getTrackingId()), order.toString().getBytes(StandardCharsets.UTF_8),
+                durability);
+        }
+
+        MappedByteBuffer region;
+        boolean grew;
+        synchronized (this) {
+            Integer free = freeSlots.poll();
+            int slot = free != null ? free : highWater++;
+            grew = slot >= capacity;
+            ensureCapacity(slot + 1);
+            region = region(slot);
+            int base = base(slot);
+            region.put(base + STATUS, (byte) order.getStatus().ordinal());
+            region.putDouble(base + RATE, order.getRate());
+            region.putLong(base + CREATED_AT, order.getCreatedAt());
+            region.putLong(base + UPDATED_AT, order.getUpdatedAt());
+            region.putLong(base + STATUS_CHANGED_AT, order.getStatusChangedAt());
+            region.putLong(base + VERSION, order.getVersion());
+            for (int i = 0; i < fields.length; i++) {
+                boolean inline = fits || i == TRACKING_ID || i == USERNAME;
+                writeField(region, base, i, inline ? fields[i] : new byte[0]);
+            }
+            // State goes last so a torn insert never looks live on recovery
+            region.put(base + STATE, fits ? LIVE : OVERFLOW);
+            index.put(order.getTrackingId(), order.getUsername(), file, slot, order.getStatus());
+        }
+        if (grew) {
+            durability.force(channel); // the file's new length
+        }
+        durability.force(region);
+    }
+
+    public Order get(String trackingId) throws IOException {
+        OrderIndex.Entry entry = index.get(trackingId);
+        if (entry == null) {
+            return null;
+        }
+        Order order = read((int) entry.getOffset(), entry.getUsername());
+        // The slot may have been freed and reused since the index lookup
+        return order != null && trackingId.equals(order.getTrackingId()) ? order : null;
+    }
+
+    public boolean updateStatus(String trackingId, Order.OrderStatus status, long changedAt) throws IOException {
+        return updateStatusIfVersion(trackingId, -1, status, changedAt);
+    }
+
+    // Checks and bumps the version under the store's lock; an expected version of -1 matches any
+    public boolean updateStatusIfVersion(String trackingId, long expectedVersion, Order.OrderStatus status,
+                                         long changedAt) throws IOException {
+        MappedByteBuffer region;
+        synchronized (this) {
+            OrderIndex.Entry entry = index.get(trackingId);
+            if (entry == null) {
+                return false;
+            }
+            int slot = (int) entry.getOffset();
+            region = region(slot);
+            int base = base(slot);
+            if (expectedVersion >= 0 && region.getLong(base + VERSION) != expectedVersion) {
+                return false;
+            }
+            region.put(base + STATUS, (byte) status.ordinal());
+            region.putLong(base + UPDATED_AT, changedAt);
+            region.putLong(base + STATUS_CHANGED_AT, changedAt);
+            region.putLong(base + VERSION, region.getLong(base + VERSION) + 1);
+            index.updateStatus(trackingId, status, changedAt);
+        }
+        durability.force(region);
+        return true;
+    }
+
+    public boolean delete(String trackingId) throws IOException {
+        MappedByteBuffer region;
+        synchronized (this) {
+            OrderIndex.Entry entry = index.remove(trackingId);
+            if (entry == null) {
+                return false;
+            }
+            int slot = (int) entry.getOffset();
+            region = region(slot);
+            if (region.get(base(slot) + STATE) == OVERFLOW) {
+                Files.deleteIfExists(overflowPath(trackingId));
+            }
+            region.put(base(slot) + STATE, FREE);
+            freeSlots.push(slot);
+        }
+        durability.force(region);
+        return true;
+    }
+
+    public OrderIndex getIndex() {
+        return index;
+    }
+
+    public int size() {
+        return index.size();
+    }
+
+    public synchronized int getCapacity() {
+        return capacity;
+    }
+
+    // Slot order, which is close to insertion order and reads the mapping sequentially
+    public void forEach(Consumer<? super Order> consumer) throws IOException {
+        int end;
+        synchronized (this) {
+            end = highWater;
+        }
+        for (int slot = 0; slot < end; slot++) {
+            ByteBuffer region = region(slot);
+            if (region.get(base(slot) + STATE) == FREE) {
+                continue;
+            }
+            String trackingId = readField(region, base(slot), TRACKING_ID);
+            OrderIndex.Entry entry = index.get(trackingId);
+            if (entry == null || entry.getOffset() != slot) {
+                continue;
+            }
+            Order order = read(slot, entry.getUsername());
+            if (order != null) {
+                consumer.accept(order);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        for (MappedByteBuffer region : regions) {
+            region.force();
+        }
+        channel.close();
+    }
+
+    private void recover() throws IOException {
+        long size = channel.size();
+        if (size < HEADER_SIZE) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC);
+            header.putInt(SLOT_SIZE);
+            header.position(HEADER_SIZE);
+            header.flip();
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+            ensureCapacity(INITIAL_SLOTS);
+            return;
+        }
+        ByteBuffer header = ByteBuffer.allocate(8);
+        channel.read(header, 0);
+        header.flip();
+        if (header.getInt() != MAGIC || header.getInt() != SLOT_SIZE) {
+            throw new IOException("Not an order store or unknown slot layout: " + file);
+        }
+        long slots = (size - HEADER_SIZE) / SLOT_SIZE;
+        if (slots > Integer.MAX_VALUE) {
+            throw new IOException("Order store too large: " + file);
+        }
+        map((int) Math.max(INITIAL_SLOTS, slots));
+
+        for (int slot = 0; slot < capacity; slot++) {
+            ByteBuffer region = region(slot);
+            int base = base(slot);
+            byte state = region.get(base + STATE);
+            if (state == FREE) {
+                continue;
+            }
+            String trackingId = readField(region, base, TRACKING_ID);
+            Order.OrderStatus status = statusAt(region, base);
+            if (state == OVERFLOW && !Files.exists(overflowPath(trackingId))) {
+                System.err.println("Order store: dropping " + trackingId + ", overflow record is missing");
+                region.put(base + STATE, FREE);
+                continue;
+            }
+            String username = readField(region, base, USERNAME);
+            index.put(trackingId, username, file, slot, status);
+            highWater = slot + 1;
+        }
+        for (int slot = highWater - 1; slot >= 0; slot--) {
+            if (region(slot).get(base(slot) + STATE) == FREE) {
+                freeSlots.push(slot);
+            }
+        }
+    }
+
+    private void ensureCapacity(int slots) throws IOException {
+        if (slots <= capacity) {
+            return;
+        }
+        int target = capacity == 0 ? INITIAL_SLOTS : capacity;
+        while (target < slots) {
+            target = target < REGION_SLOTS ? Math.min(target * 2, REGION_SLOTS) : target + REGION_SLOTS;
+        }
+        map(target);
+    }
+
+    // Region 0 is remapped while it grows; full regions are never remapped
+    private void map(int slots) throws IOException {
+        int regionCount = (slots + REGION_SLOTS - 1) / REGION_SLOTS;
+        MappedByteBuffer[] mapped = new MappedByteBuffer[regionCount];
+        System.arraycopy(regions, 0, mapped, 0, Math.min(regions.length, regionCount));
+        for (int i = 0; i < regionCount; i++) {
+            int regionSlots = Math.min(REGION_SLOTS, slots - i * REGION_SLOTS);
+            if (mapped[i] == null || mapped[i].capacity() < regionSlots * SLOT_SIZE) {
+                long position = HEADER_SIZE + (long) i * REGION_SLOTS * SLOT_SIZE;
+                mapped[i] = channel.map(FileChannel.MapMode.READ_WRITE, position, (long) regionSlots * SLOT_SIZE);
+            }
+        }
+        regions = mapped;
+        capacity = slots;
+    }
+
+    private Order read(int slot, String username) throws IOException {
+        ByteBuffer region = region(slot);
+        int base = base(slot);
+        byte state = region.get(base + STATE);
+        if (state == FREE) {
+            return null;
+        }
+        if (state == OVERFLOW) {
+            Order order = readOverflow(readField(region, base, TRACKING_ID), username);
+            if (order != null) {
+                order.setStatus(statusAt(region, base));
+                readTimesAndVersion(region, base, order);
+            }
+            return order;
+        }
+        // One copy of the slot out of the mapping, then each string decoded in place
+        byte[] bytes = new byte[SLOT_SIZE];
+        region.get(base, bytes);
+        Order order = new Order(decode(bytes, TRACKING_ID), decode(bytes, SENDER_NAME), decode(bytes, SENDER_CONTACT),
+            decode(bytes, SENDER_CITY), decode(bytes, RECEIVER_NAME), decode(bytes, RECEIVER_CONTACT),
+            decode(bytes, RECEIVER_ADDRESS), decode(bytes, RECEIVER_CITY),
+            region.getDouble(base + RATE), statusAt(region, base), username);
+        readTimesAndVersion(region, base, order);
+        String province = decode(bytes, SENDER_PROVINCE);
+        order.setSenderProvince(province.isEmpty() ? null : province);
+        return order;
+    }
+
+    private static void readTimesAndVersion(ByteBuffer region, int base, Order order) {
+        order.setCreatedAt(region.getLong(base + CREATED_AT));
+        order.setUpdatedAt(region.getLong(base + UPDATED_AT));
+        order.setStatusChangedAt(region.getLong(base + STATUS_CHANGED_AT));
+        order.setVersion(region.getLong(base + VERSION));
+    }
+
+    // Copies every slot of an older layout into a new file and swaps it in; slots only
+    // ever grew at the end, so each old slot is a prefix of the new one
+    private static void upgradeLayout(Path file) throws IOException {
+        if (!Files.exists(file) || Files.size(file) < HEADER_SIZE) {
+            return;
+        }
+        int oldSlotSize;
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(8);
+            in.read(header, 0);
+            header.flip();
+            if (header.getInt() != MAGIC) {
+                return; // recover() reports it
+            }
+            oldSlotSize = header.getInt();
+            boolean older = false;
+            for (int size : OLDER_SLOT_SIZES) {
+                older |= size == oldSlotSize;
+            }
+            if (!older) {
+                return;
+            }
+            Path upgraded = file.resolveSibling(file.getFileName() + ".upgrading");
+            try (FileChannel out = FileChannel.open(upgraded, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                ByteBuffer newHeader = ByteBuffer.allocate(HEADER_SIZE);
+                newHeader.putInt(MAGIC);
+                newHeader.putInt(SLOT_SIZE);
+                newHeader.clear();
+                out.write(newHeader, 0);
+                long slots = (in.size() - HEADER_SIZE) / oldSlotSize;
+                ByteBuffer slot = ByteBuffer.allocate(SLOT_SIZE);
+                for (long i = 0; i < slots; i++) {
+                    slot.clear();
+                    slot.limit(oldSlotSize);
+                    readFully(in, slot, HEADER_SIZE + i * oldSlotSize);
+                    slot.clear();
+                    if (oldSlotSize <= CREATED_AT) {
+                        slot.putLong(CREATED_AT, 0).putLong(UPDATED_AT, 0).putLong(STATUS_CHANGED_AT, 0);
+                    }
+                    for (int j = oldSlotSize; j < SLOT_SIZE; j++) {
+                        slot.put(j, (byte) 0);
+                    }
+                    while (slot.hasRemaining()) {
+                        out.write(slot, HEADER_SIZE + i * SLOT_SIZE + slot.position());
+                    }
+                }
+                out.force(true);
+            }
+            Files.move(upgraded, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new IOException("Unexpected end of order store");
+            }
+        }
+    }
+
+    private Order readOverflow(String trackingId, String username) throws IOException {
+        try {
+            String data = new String(Files.readAllBytes(overflowPath(trackingId)), StandardCharsets.UTF_8);
+            return Order.fromString(data, username);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    private Path overflowPath(String trackingId) {
+        return overflowDir.resolve(trackingId + ".txt");
+    }
+
+    private MappedByteBuffer region(int slot) {
+        return regions[slot / REGION_SLOTS];
+    }
+
+    private static int base(int slot) {
+        return (slot % REGION_SLOTS) * SLOT_SIZE;
+    }
+
+    private static Order.OrderStatus statusAt(ByteBuffer region, int base) {
+        Order.OrderStatus[] statuses = Order.OrderStatus.values();
+        int ordinal = region.get(base + STATUS);
+        return ordinal >= 0 && ordinal < statuses.length ? statuses[ordinal] : Order.OrderStatus.IN_PROCESS;
+    }
+
+    private static byte[][] encodeFields(Order order) {
+        String[] values = {order.getTrackingId(), order.getUsername(), order.getSenderName(),
+            order.getSenderContact(), order.getSenderCity(), order.getReceiverName(),
+            order.getReceiverContact(), order.getReceiverAddress(), order.getReceiverCity(),
+            order.getSenderProvince()};
+        byte[][] fields = new byte[values.length][];
+        for (int i = 0; i < values.length; i++) {
+            fields[i] = values[i] != null ? values[i].getBytes(StandardCharsets.UTF_8) : new byte[0];
+        }
+        return fields;
+    }
+
+    private static void writeField(ByteBuffer region, int base, int field, byte[] value) {
+        region.put(base + OFFSETS[field], (byte) value.length);
+        region.put(base + OFFSETS[field] + 1, value);
+    }
+
+    private static String readField(ByteBuffer region, int base, int field) {
+        int length = region.get(base + OFFSETS[field]) & 0xFF;
+        byte[] bytes = new byte[Math.min(length, WIDTHS[field])];
+        region.get(base + OFFSETS[field] + 1, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static String decode(byte[] slot, int field) {
+        int length = Math.min(slot[OFFSETS[field]] & 0xFF, WIDTHS[field]);
+        return new String(slot, OFFSETS[field] + 1, length, StandardCharsets.UTF_8);
+    }
+}
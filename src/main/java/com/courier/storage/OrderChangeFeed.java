@@ -0,0 +1,380 @@
+package com.courier.storage;
+
+import com.courier.model.Order;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.zip.CRC32;
+
+/**
+ * Order changes appended by every process sharing one files-mode data directory, so
+ * each process can bring its in-memory index up to date with what the others placed,
+ * changed and cancelled. The header holds the end of the last complete record and is
+ * only written under an exclusive lock and read under a shared one; records before that
+ * end never change while anyone reads them, so they are read without the header lock.
+ * A process skips its own records.
+ *
+ * <p>Each open feed keeps the position it has read up to in a slot file of its own, and
+ * holds a lock on that file for as long as it is open, so a slot whose lock can be taken
+ * belongs to a process that is gone. Once the feed has grown a few megabytes an append
+ * moves the records every open reader still needs to the front, cuts the rest off and
+ * moves each slot with them; the header's compaction count tells a reader to take its
+ * position from its slot again. Records are only moved while nobody is reading them.
+ */
+public class OrderChangeFeed implements Closeable {
+    private static final int MAGIC = 0x4F434631; // "OCF1"
+    private static final int HEADER_SIZE = 16;
+    // Record frame: payload length, CRC32 of the payload, payload
+    private static final int FRAME_HEADER_SIZE = 8;
+    // Held shared while records are read, exclusively while they are moved; past any data
+    private static final long READING_LOCK = Long.MAX_VALUE - 1;
+    // A slot holds its reader's compaction count and position; the byte after it is locked
+    // while the reader is open
+    private static final int SLOT_SIZE = 12;
+    private static final long COMPACT_AFTER = 4L << 20;
+    // How much later an append tries again when a reader stood in the way
+    private static final long COMPACT_RETRY = 256L << 10;
+    private static final int COPY_BUFFER_SIZE = 1 << 16;
+
+    public static final byte PLACED = 1;
+    public static final byte STATUS_CHANGED = 2;
+    public static final byte CANCELLED = 3;
+
+    public interface Handler {
+        void handle(Change change) throws IOException;
+    }
+
+    private final Path file;
+    private final FileChannel channel;
+    private final Path readers;
+    // Tells this process's records from everyone else's
+    private final long session = ThreadLocalRandom.current().nextLong();
+    private final Path slotFile;
+    private FileChannel slot;
+    private volatile long position;
+    // The file size when catchUp last looked; a compaction changes it even when it leaves
+    // the file longer than this reader's stale position
+    private volatile long seenSize = -1;
+    // Guarded by this: the compaction count position belongs to
+    private int compactions;
+    private long nextCompactAt = HEADER_SIZE + COMPACT_AFTER;
+
+    private OrderChangeFeed(Path file, FileChannel channel) {
+        this.file = file;
+        this.channel = channel;
+        this.readers = file.resolveSibling(file.getFileName() + ".readers");
+        this.slotFile = readers.resolve(Long.toHexString(session));
+    }
+
+    // Starts at the current end: whatever came before is already on disk for a scan to find.
+    // The slot is taken under the header lock, so a compaction either sees it or came before
+    @SuppressWarnings("try")
+    public static OrderChangeFeed open(Path file) throws IOException {
+        Files.createDirectories(file.getParent());
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        OrderChangeFeed feed = new OrderChangeFeed(file, channel);
+        try (FileLock lock = FileLocks.lock(channel, 0, HEADER_SIZE, false)) {
+            if (channel.size() < HEADER_SIZE) {
+                feed.writeHeader(0, HEADER_SIZE);
+            }
+            ByteBuffer header = feed.readHeader();
+            feed.compactions = header.getInt(4);
+            feed.position = header.getLong(8);
+            Files.createDirectories(feed.readers);
+            feed.slot = FileChannel.open(feed.slotFile, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+            feed.slot.lock(SLOT_SIZE, 1, false); // held until close
+            writeSlot(feed.slot, feed.compactions, feed.position);
+        } catch (IOException e) {
+            if (feed.slot != null) {
+                feed.slot.close();
+                Files.deleteIfExists(feed.slotFile);
+            }
+            channel.close();
+            throw e;
+        }
+        return feed;
+    }
+
+    // Empties the feed; only safe while no other process has it open
+    @SuppressWarnings("try")
+    public synchronized void reset() throws IOException {
+        try (FileLock lock = FileLocks.lock(channel, 0, HEADER_SIZE, false)) {
+            channel.truncate(HEADER_SIZE);
+            writeHeader(compactions, HEADER_SIZE);
+            position = HEADER_SIZE;
+            writeSlot(slot, compactions, position);
+        }
+    }
+
+    // The order as it is after the change; a cancelled order as it was. From is the status
+    // before a status change and null otherwise
+    @SuppressWarnings("try")
+    public synchronized void append(byte type, Order order, Order.OrderStatus from) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeLong(session);
+        out.writeByte(type);
+        out.writeUTF(order.getUsername());
+        out.writeUTF(order.toString());
+        out.writeByte(from != null ? from.ordinal() : -1);
+        byte[] payload = bytes.toByteArray();
+
+        ByteBuffer record = ByteBuffer.allocate(FRAME_HEADER_SIZE + payload.length);
+        record.putInt(payload.length);
+        record.putInt((int) checksum(payload));
+        record.put(payload);
+        record.flip();
+        try (FileLock lock = FileLocks.lock(channel, 0, HEADER_SIZE, false)) {
+            // A crash between the record and the header leaves bytes past the end; they are overwritten here
+            ByteBuffer header = readHeader();
+            long end = header.getLong(8);
+            writeFully(record, end);
+            end += record.limit();
+            writeHeader(header.getInt(4), end);
+            if (end >= nextCompactAt) {
+                long compacted = compact(header.getInt(4), end);
+                nextCompactAt = compacted < end ? compacted + COMPACT_AFTER : end + COMPACT_RETRY;
+            }
+        }
+    }
+
+    // Hands every other process's record since the last call to the handler, in order. Cheap
+    // when nothing was appended: one size check, no lock
+    @SuppressWarnings("try")
+    public void catchUp(Handler handler) throws IOException {
+        long size = channel.size();
+        if (size <= position && size == seenSize) {
+            return;
+        }
+        synchronized (this) {
+            seenSize = size;
+            FileLock reading = FileLocks.lock(channel, READING_LOCK, 1, true);
+            try {
+                long end;
+                try (FileLock lock = FileLocks.lock(channel, 0, HEADER_SIZE, true)) {
+                    ByteBuffer header = readHeader();
+                    if (header.getInt(4) != compactions) {
+                        // Records moved since the last call, and this reader's slot with them
+                        compactions = header.getInt(4);
+                        position = readSlot(slot, compactions);
+                    }
+                    end = header.getLong(8);
+                }
+                ByteBuffer frameHeader = ByteBuffer.allocate(FRAME_HEADER_SIZE);
+                long at = position;
+                while (at + FRAME_HEADER_SIZE <= end) {
+                    frameHeader.clear();
+                    readFully(frameHeader, at);
+                    frameHeader.flip();
+                    int length = frameHeader.getInt();
+                    long crc = frameHeader.getInt() & 0xFFFFFFFFL;
+                    ByteBuffer payload = ByteBuffer.allocate(length);
+                    readFully(payload, at + FRAME_HEADER_SIZE);
+                    if (checksum(payload.array()) != crc) {
+                        throw new IOException("Corrupt order change feed at " + at + ": " + file);
+                    }
+                    at += FRAME_HEADER_SIZE + length;
+                    position = at;
+                    Change change = decode(payload.array());
+                    if (change != null) {
+                        handler.handle(change);
+                    }
+                }
+            } finally {
+                // Before the reading lock goes: a compaction trusts the slot to match position
+                writeSlot(slot, compactions, position);
+                reading.release();
+            }
+        }
+    }
+
+    // Gives up this reader's slot, so compactions stop keeping records for it
+    @Override
+    @SuppressWarnings("try")
+    public synchronized void close() throws IOException {
+        try (FileLock lock = FileLocks.lock(channel, 0, HEADER_SIZE, false)) {
+            slot.close();
+            Files.deleteIfExists(slotFile);
+        } finally {
+            channel.close();
+        }
+    }
+
+    // Caller holds this and the header exclusively, so no reader comes or goes meanwhile.
+    // Moves the records some open reader has not read yet to the front and returns the new
+    // end. Nothing moves while a reader is partway through a catch-up, nor while the records
+    // still needed overlap where they would go, so a crash partway leaves the old ones intact.
+    // Slots are moved before the header; a slot left a count ahead by such a crash holds the
+    // next compaction back until its reader writes it again
+    private long compact(int count, long end) throws IOException {
+        FileLock reading = channel.tryLock(READING_LOCK, 1, false);
+        if (reading == null) {
+            return end;
+        }
+        List<FileChannel> others = new ArrayList<>();
+        try {
+            long needed = readSlot(slot, count);
+            try (DirectoryStream<Path> slots = Files.newDirectoryStream(readers)) {
+                for (Path path : slots) {
+                    if (path.equals(slotFile)) {
+                        continue;
+                    }
+                    FileChannel other;
+                    try {
+                        other = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                    } catch (NoSuchFileException e) {
+                        continue;
+                    }
+                    if (isAbandoned(other)) {
+                        // Its process is gone; closing the channel drops the lock just taken
+                        other.close();
+                        Files.deleteIfExists(path);
+                        continue;
+                    }
+                    others.add(other);
+                    needed = Math.min(needed, readSlot(other, count));
+                }
+            }
+            long shift = needed - HEADER_SIZE;
+            if (shift <= 0 || end - needed > shift) {
+                return end;
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(COPY_BUFFER_SIZE);
+            for (long from = needed; from < end; from += buffer.limit()) {
+                buffer.clear();
+                buffer.limit((int) Math.min(buffer.capacity(), end - from));
+                readFully(buffer, from);
+                buffer.flip();
+                writeFully(buffer, from - shift);
+            }
+            for (FileChannel other : others) {
+                writeSlot(other, count + 1, readSlot(other, count) - shift);
+            }
+            writeSlot(slot, count + 1, readSlot(slot, count) - shift);
+            writeHeader(count + 1, end - shift);
+            channel.truncate(end - shift);
+            return end - shift;
+        } finally {
+            for (FileChannel other : others) {
+                other.close();
+            }
+            reading.release();
+        }
+    }
+
+    private Change decode(byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        if (in.readLong() == session) {
+            return null;
+        }
+        byte type = in.readByte();
+        String username = in.readUTF();
+        Order order = Order.fromString(in.readUTF(), username);
+        int from = in.readByte();
+        return order != null ? new Change(type, order, from >= 0 ? Order.OrderStatus.values()[from] : null) : null;
+    }
+
+    // Magic, compaction count, end of the last complete record
+    private ByteBuffer readHeader() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        readFully(header, 0);
+        if (header.getInt(0) != MAGIC) {
+            throw new IOException("Not an order change feed: " + file);
+        }
+        return header;
+    }
+
+    private void writeHeader(int compactions, long end) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC);
+        header.putInt(compactions);
+        header.putLong(end);
+        header.flip();
+        writeFully(header, 0);
+    }
+
+    private void writeFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new IOException("Unexpected end of " + file);
+            }
+        }
+    }
+
+    // True when the slot's lock could be taken, so the process that held it is gone
+    private static boolean isAbandoned(FileChannel slot) throws IOException {
+        try {
+            return slot.tryLock(SLOT_SIZE, 1, false) != null;
+        } catch (OverlappingFileLockException e) {
+            return false; // another feed in this JVM
+        }
+    }
+
+    // The slot's position as of the given compaction count; the start of the feed, which keeps
+    // everything, when it was never written or is as of another count
+    private static long readSlot(FileChannel slot, int count) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(SLOT_SIZE);
+        while (buffer.hasRemaining()) {
+            if (slot.read(buffer, buffer.position()) < 0) {
+                return HEADER_SIZE;
+            }
+        }
+        return buffer.getInt(0) == count ? buffer.getLong(4) : HEADER_SIZE;
+    }
+
+    private static void writeSlot(FileChannel slot, int count, long position) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(SLOT_SIZE);
+        buffer.putInt(0, count);
+        buffer.putLong(4, position);
+        while (buffer.hasRemaining()) {
+            slot.write(buffer, buffer.position());
+        }
+    }
+
+    private static long checksum(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        return crc.getValue();
+    }
+
+    public static class Change {
+        private final byte type;
+        private final Order order;
+        private final Order.OrderStatus previousStatus;
+
+        Change(byte type, Order order, Order.OrderStatus previousStatus) {
+            this.type = type;
+            this.order = order;
+            this.previousStatus = previousStatus;
+        }
+
+        public byte getType() { return type; }
+        public Order getOrder() { return order; }
+        // Set on STATUS_CHANGED only
+        public Order.OrderStatus getPreviousStatus() { return previousStatus; }
+    }
+}
@@ -0,0 +1,450 @@
+package com.courier.storage;
+
+import com.courier.model.Order;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Read-only columnar snapshot of orders for reports: primitive rate, time and
+ * tracking ID columns and dictionary-coded status, city and province columns, with
+ * rows sorted by placement time so any time range is one contiguous slice. Sums,
+ * group-bys and percentiles over a slice are plain loops over arrays, split across
+ * the common fork-join pool once a slice is large enough to pay for it.
+ */
+public class OrderColumns {
+    public static final String CANCELLED = "Cancelled";
+    public static final String UNKNOWN = "Unknown";
+    // Status codes are the OrderStatus ordinals, then one for cancelled orders
+    public static final int CANCELLED_CODE = Order.OrderStatus.values().length;
+
+    private static final int PARALLEL_THRESHOLD = 1 << 15;
+    private static final String[] STATUS_NAMES = new String[CANCELLED_CODE + 1];
+
+    static {
+        for (Order.OrderStatus status : Order.OrderStatus.values()) {
+            STATUS_NAMES[status.ordinal()] = status.getDisplayName();
+        }
+        STATUS_NAMES[CANCELLED_CODE] = CANCELLED;
+    }
+
+    private final int size;
+    private final long[] trackingIds;
+    private final double[] rates;
+    private final long[] createdAt;
+    private final byte[] statuses;
+    private final int[] cities;
+    private final int[] provinces;
+    private final String[] cityNames;
+    private final String[] provinceNames;
+    // Tracking IDs in ascending order and the row each is at, built on the first lookup
+    private long[] idIndex;
+    private int[] idRows;
+
+    private OrderColumns(int size, long[] trackingIds, double[] rates, long[] createdAt, byte[] statuses,
+                         int[] cities, int[] provinces, String[] cityNames, String[] provinceNames) {
+        this.size = size;
+        this.trackingIds = trackingIds;
+        this.rates = rates;
+        this.createdAt = createdAt;
+        this.statuses = statuses;
+        this.cities = cities;
+        this.provinces = provinces;
+        this.cityNames = cityNames;
+        this.provinceNames = provinceNames;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public Slice all() {
+        return new Slice(0, size);
+    }
+
+    // Rows placed in [fromMillis, toMillis); rows without a placement time sort first at 0
+    public Slice between(long fromMillis, long toMillis) {
+        return new Slice(lowerBound(fromMillis), Math.max(lowerBound(fromMillis), lowerBound(toMillis)));
+    }
+
+    public long trackingIdAt(int row) {
+        return trackingIds[row];
+    }
+
+    // Row holding a tracking ID, or -1
+    synchronized int rowOf(long trackingId) {
+        if (idIndex == null) {
+            int[] rows = new int[size];
+            for (int i = 0; i < size; i++) {
+                rows[i] = i;
+            }
+            sortByKey(rows, new int[size], trackingIds, 0, size);
+            long[] ids = new long[size];
+            for (int i = 0; i < size; i++) {
+                ids[i] = trackingIds[rows[i]];
+            }
+            idIndex = ids;
+            idRows = rows;
+        }
+        int found = Arrays.binarySearch(idIndex, trackingId);
+        return found >= 0 ? idRows[found] : -1;
+    }
+
+    // Copies one row into a builder, e.g. to carry it over into a new snapshot
+    void copyRow(int row, Builder builder) {
+        builder.add(trackingIds[row], rates[row], createdAt[row], statuses[row], cityNames[cities[row]],
+            provinceNames[provinces[row]]);
+    }
+
+    // Numeric tracking IDs as longs; anything else maps to -1
+    public static long parseTrackingId(String trackingId) {
+        if (trackingId == null || trackingId.isEmpty() || trackingId.length() > 18) {
+            return -1;
+        }
+        long value = 0;
+        for (int i = 0; i < trackingId.length(); i++) {
+            char c = trackingId.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private int lowerBound(long millis) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (createdAt[mid] < millis) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /** Counts, sums, group-bys and percentiles over some set of rows. */
+    public interface Aggregates {
+        int count();
+
+        double sumRate();
+
+        List<Group> groupByStatus();
+
+        List<Group> groupByCity();
+
+        List<Group> groupByProvince();
+
+        // Nearest-rank percentiles of the rate column, one per requested fraction in [0, 1]
+        double[] ratePercentiles(double... fractions);
+    }
+
+    /** A contiguous run of rows and the aggregations over it. */
+    public class Slice implements Aggregates {
+        private final int from;
+        private final int to;
+
+        private Slice(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public int count() {
+            return to - from;
+        }
+
+        @Override
+        public double sumRate() {
+            return count() == 0 ? 0 : ForkJoinPool.commonPool().invoke(new SumTask(from, to));
+        }
+
+        public double averageRate() {
+            return count() == 0 ? 0 : sumRate() / count();
+        }
+
+        @Override
+        public List<Group> groupByStatus() {
+            return group(null, statuses, STATUS_NAMES);
+        }
+
+        @Override
+        public List<Group> groupByCity() {
+            return group(cities, null, cityNames);
+        }
+
+        @Override
+        public List<Group> groupByProvince() {
+            return group(provinces, null, provinceNames);
+        }
+
+        @Override
+        public double[] ratePercentiles(double... fractions) {
+            return percentiles(sortedRates(), fractions);
+        }
+
+        double[] sortedRates() {
+            double[] sorted = Arrays.copyOfRange(rates, from, to);
+            Arrays.parallelSort(sorted);
+            return sorted;
+        }
+
+        private List<Group> group(int[] codes, byte[] byteCodes, String[] names) {
+            List<Group> groups = new ArrayList<>();
+            if (count() == 0) {
+                return groups;
+            }
+            Tally tally = ForkJoinPool.commonPool().invoke(new GroupTask(codes, byteCodes, names.length, from, to));
+            for (int code = 0; code < names.length; code++) {
+                if (tally.counts[code] > 0) {
+                    groups.add(new Group(names[code], tally.counts[code], tally.sums[code]));
+                }
+            }
+            groups.sort((a, b) -> Double.compare(b.getRevenue(), a.getRevenue()));
+            return groups;
+        }
+    }
+
+    static double[] percentiles(double[] sorted, double... fractions) {
+        double[] result = new double[fractions.length];
+        if (sorted.length == 0) {
+            return result;
+        }
+        for (int i = 0; i < fractions.length; i++) {
+            int rank = (int) Math.ceil(fractions[i] * sorted.length);
+            result[i] = sorted[Math.min(sorted.length - 1, Math.max(0, rank - 1))];
+        }
+        return result;
+    }
+
+    private class SumTask extends RecursiveTask<Double> {
+        private static final long serialVersionUID = 1L;
+
+        private final int from;
+        private final int to;
+
+        SumTask(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Double compute() {
+            if (to - from <= PARALLEL_THRESHOLD) {
+                double sum = 0;
+                for (int i = from; i < to; i++) {
+                    sum += rates[i];
+                }
+                return sum;
+            }
+            int mid = (from + to) >>> 1;
+            SumTask left = new SumTask(from, mid);
+            left.fork();
+            double right = new SumTask(mid, to).compute();
+            return left.join() + right;
+        }
+    }
+
+    // Exactly one of codes and byteCodes is set, so each leaf runs one monomorphic loop
+    private class GroupTask extends RecursiveTask<Tally> {
+        private static final long serialVersionUID = 1L;
+
+        private final int[] codes;
+        private final byte[] byteCodes;
+        private final int groups;
+        private final int from;
+        private final int to;
+
+        GroupTask(int[] codes, byte[] byteCodes, int groups, int from, int to) {
+            this.codes = codes;
+            this.byteCodes = byteCodes;
+            this.groups = groups;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Tally compute() {
+            if (to - from <= PARALLEL_THRESHOLD) {
+                Tally tally = new Tally(groups);
+                long[] counts = tally.counts;
+                double[] sums = tally.sums;
+                if (codes != null) {
+                    for (int i = from; i < to; i++) {
+                        int code = codes[i];
+                        counts[code]++;
+                        sums[code] += rates[i];
+                    }
+                } else {
+                    for (int i = from; i < to; i++) {
+                        int code = byteCodes[i];
+                        counts[code]++;
+                        sums[code] += rates[i];
+                    }
+                }
+                return tally;
+            }
+            int mid = (from + to) >>> 1;
+            GroupTask left = new GroupTask(codes, byteCodes, groups, from, mid);
+            left.fork();
+            Tally right = new GroupTask(codes, byteCodes, groups, mid, to).compute();
+            Tally merged = left.join();
+            for (int code = 0; code < groups; code++) {
+                merged.counts[code] += right.counts[code];
+                merged.sums[code] += right.sums[code];
+            }
+            return merged;
+        }
+    }
+
+    private static class Tally {
+        private final long[] counts;
+        private final double[] sums;
+
+        Tally(int groups) {
+            counts = new long[groups];
+            sums = new double[groups];
+        }
+    }
+
+    public static class Group {
+        private final String key;
+        private final long count;
+        private final double revenue;
+
+        Group(String key, long count, double revenue) {
+            this.key = key;
+            this.count = count;
+            this.revenue = revenue;
+        }
+
+        public String getKey() { return key; }
+        public long getCount() { return count; }
+        public double getRevenue() { return revenue; }
+    }
+
+    /** Collects rows in any order, from any thread, then sorts them into columns once. */
+    public static class Builder {
+        private int size;
+        private long[] trackingIds = new long[1024];
+        private double[] rates = new double[1024];
+        private long[] createdAt = new long[1024];
+        private byte[] statuses = new byte[1024];
+        private int[] cities = new int[1024];
+        private int[] provinces = new int[1024];
+        private final Dictionary cityDictionary = new Dictionary();
+        private final Dictionary provinceDictionary = new Dictionary();
+
+        public synchronized void add(long trackingId, double rate, long placedAt, int status,
+                                     String city, String province) {
+            if (size == rates.length) {
+                int capacity = size * 2;
+                trackingIds = Arrays.copyOf(trackingIds, capacity);
+                rates = Arrays.copyOf(rates, capacity);
+                createdAt = Arrays.copyOf(createdAt, capacity);
+                statuses = Arrays.copyOf(statuses, capacity);
+                cities = Arrays.copyOf(cities, capacity);
+                provinces = Arrays.copyOf(provinces, capacity);
+            }
+            trackingIds[size] = trackingId;
+            rates[size] = rate;
+            createdAt[size] = Math.max(0, placedAt);
+            statuses[size] = (byte) status;
+            cities[size] = cityDictionary.code(city);
+            provinces[size] = provinceDictionary.code(province);
+            size++;
+        }
+
+        // Tracking IDs added so far, sorted, for joining the ledger against live orders
+        public synchronized long[] sortedTrackingIds() {
+            long[] sorted = Arrays.copyOf(trackingIds, size);
+            Arrays.parallelSort(sorted);
+            return sorted;
+        }
+
+        public synchronized OrderColumns build() {
+            // Sort a row permutation by placement time, then gather every column through it
+            int[] order = new int[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = i;
+            }
+            sortByKey(order, new int[size], createdAt, 0, size);
+
+            long[] sortedIds = new long[size];
+            double[] sortedRates = new double[size];
+            long[] sortedCreatedAt = new long[size];
+            byte[] sortedStatuses = new byte[size];
+            int[] sortedCities = new int[size];
+            int[] sortedProvinces = new int[size];
+            for (int i = 0; i < size; i++) {
+                int row = order[i];
+                sortedIds[i] = trackingIds[row];
+                sortedRates[i] = rates[row];
+                sortedCreatedAt[i] = createdAt[row];
+                sortedStatuses[i] = statuses[row];
+                sortedCities[i] = cities[row];
+                sortedProvinces[i] = provinces[row];
+            }
+            return new OrderColumns(size, sortedIds, sortedRates, sortedCreatedAt, sortedStatuses,
+                sortedCities, sortedProvinces, cityDictionary.names(), provinceDictionary.names());
+        }
+    }
+
+    // Stable merge sort of row numbers by a long key, without boxing the rows
+    private static void sortByKey(int[] rows, int[] scratch, long[] keys, int from, int to) {
+        if (to - from <= 32) {
+            for (int i = from + 1; i < to; i++) {
+                int row = rows[i];
+                int j = i - 1;
+                while (j >= from && keys[rows[j]] > keys[row]) {
+                    rows[j + 1] = rows[j];
+                    j--;
+                }
+                rows[j + 1] = row;
+            }
+            return;
+        }
+        int mid = (from + to) >>> 1;
+        sortByKey(rows, scratch, keys, from, mid);
+        sortByKey(rows, scratch, keys, mid, to);
+        if (keys[rows[mid - 1]] <= keys[rows[mid]]) {
+            return; // already in order, common when rows arrive roughly by time
+        }
+        System.arraycopy(rows, from, scratch, from, to - from);
+        int left = from;
+        int right = mid;
+        for (int i = from; i < to; i++) {
+            if (right >= to || (left < mid && keys[scratch[left]] <= keys[scratch[right]])) {
+                rows[i] = scratch[left++];
+            } else {
+                rows[i] = scratch[right++];
+            }
+        }
+    }
+
+    // Case-insensitive string-to-code map that keeps the first spelling it saw
+    private static class Dictionary {
+        private final Map<String, Integer> codes = new HashMap<>();
+        private final List<String> names = new ArrayList<>();
+
+        int code(String value) {
+            String name = value == null || value.trim().isEmpty() ? UNKNOWN : value.trim();
+            return codes.computeIfAbsent(name.toLowerCase(Locale.ROOT), key -> {
+                names.add(name);
+                return names.size() - 1;
+            });
+        }
+
+        String[] names() {
+            return names.toArray(new String[0]);
+        }
+    }
+}
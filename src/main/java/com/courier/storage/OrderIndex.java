@@ -0,0 +1,167 @@
+package com.courier.storage;
+
+import com.courier.model.Order;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Tracking ID to owner, location and status. Lets callers resolve an order from its
+ * tracking ID alone and list a customer's orders without touching the filesystem.
+ */
+public class OrderIndex {
+    private final Map<String, Entry> byTrackingId = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>> byUsername = new ConcurrentHashMap<>();
+    // Lets a list page through every order from a cursor instead of sorting all of them first
+    private final NavigableSet<String> newestFirst = new ConcurrentSkipListSet<>(SecondaryIndexes.NEWEST_FIRST);
+
+    public void put(String trackingId, String username, Path file, long offset, Order.OrderStatus status) {
+        Entry previous = byTrackingId.put(trackingId, new Entry(username, file, offset, status));
+        newestFirst.add(trackingId);
+        if (previous != null && !previous.username.equals(username)) {
+            removeFromUser(previous.username, trackingId);
+        }
+        byUsername.compute(username, (k, ids) -> {
+            Set<String> target = ids != null ? ids : ConcurrentHashMap.newKeySet();
+            target.add(trackingId);
+            return target;
+        });
+    }
+
+    public boolean updateStatus(String trackingId, Order.OrderStatus status, long changedAt) {
+        Entry entry = byTrackingId.get(trackingId);
+        if (entry == null) {
+            return false;
+        }
+        entry.status = status;
+        entry.statusChangedAt = changedAt;
+        entry.statusChanges++;
+        return true;
+    }
+
+    public Entry remove(String trackingId) {
+        Entry entry = byTrackingId.remove(trackingId);
+        if (entry != null) {
+            newestFirst.remove(trackingId);
+            removeFromUser(entry.username, trackingId);
+        }
+        return entry;
+    }
+
+    public Entry get(String trackingId) {
+        return byTrackingId.get(trackingId);
+    }
+
+    public boolean contains(String trackingId) {
+        return byTrackingId.containsKey(trackingId);
+    }
+
+    public String getUsername(String trackingId) {
+        Entry entry = byTrackingId.get(trackingId);
+        return entry != null ? entry.username : null;
+    }
+
+    public List<String> getTrackingIds(String username) {
+        Set<String> ids = byUsername.get(username);
+        return ids != null ? new ArrayList<>(ids) : new ArrayList<>();
+    }
+
+    public Set<String> trackingIds() {
+        return Collections.unmodifiableSet(byTrackingId.keySet());
+    }
+
+    // Up to limit tracking IDs, newest first, starting after the given ID (null for the start)
+    public List<String> trackingIdsAfter(String after, int limit) {
+        List<String> ids = new ArrayList<>(Math.min(limit, 256));
+        for (String id : after == null ? newestFirst : newestFirst.tailSet(after, false)) {
+            if (ids.size() == limit) {
+                break;
+            }
+            ids.add(id);
+        }
+        return ids;
+    }
+
+    public Set<Map.Entry<String, Entry>> entries() {
+        return Collections.unmodifiableSet(byTrackingId.entrySet());
+    }
+
+    public int size() {
+        return byTrackingId.size();
+    }
+
+    public void clear() {
+        byTrackingId.clear();
+        byUsername.clear();
+        newestFirst.clear();
+    }
+
+    // Scans the per-user order directories once; status comes from each file
+    public static OrderIndex buildFromDirectory(Path ordersDir, DirectoryLayout layout) throws IOException {
+        OrderIndex index = new OrderIndex();
+        if (!Files.isDirectory(ordersDir)) {
+            return index;
+        }
+        layout.userOrderDirs(ordersDir).parallelStream().forEach(userDir -> {
+            String username = userDir.getFileName().toString();
+            List<Path> files;
+            try {
+                files = layout.orderFiles(userDir);
+            } catch (IOException e) {
+                e.printStackTrace();
+                return;
+            }
+            for (Path file : files) {
+                try {
+                    Order order = Order.fromString(new String(Files.readAllBytes(file)), username);
+                    if (order != null) {
+                        index.put(DirectoryLayout.keyOf(file), username, file, 0, order.getStatus());
+                    }
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        });
+        return index;
+    }
+
+    private void removeFromUser(String username, String trackingId) {
+        byUsername.computeIfPresent(username, (k, ids) -> {
+            ids.remove(trackingId);
+            return ids.isEmpty() ? null : ids;
+        });
+    }
+
+    public static class Entry {
+        private final String username;
+        private final Path file;
+        private final long offset;
+        private volatile Order.OrderStatus status;
+        private volatile long statusChangedAt;
+        private volatile int statusChanges;
+
+        Entry(String username, Path file, long offset, Order.OrderStatus status) {
+            this.username = username;
+            this.file = file;
+            this.offset = offset;
+            this.status = status;
+        }
+
+        public String getUsername() { return username; }
+        public Path getFile() { return file; }
+        public long getOffset() { return offset; }
+        public Order.OrderStatus getStatus() { return status; }
+        // 0 until a status change is recorded after the order was placed
+        public long getStatusChangedAt() { return statusChangedAt; }
+        // Status changes recorded since the entry was put
+        public int getStatusChanges() { return statusChanges; }
+    }
+}
@@ -0,0 +1,446 @@
+package com.courier.storage;
+
+import com.courier.model.Order;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only order store. Every place, status-change and cancel is written as a
+ * framed record to the active segment; the in-memory entry table is rebuilt by
+ * replaying all segments on open and is folded back into a single segment by
+ * compaction once most records are superseded.
+ */
+public class OrderLog implements Closeable {
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String COMPACTING_SUFFIX = ".compacting";
+    private static final long DEFAULT_SEGMENT_SIZE = 16L * 1024 * 1024;
+    private static final long MIN_DEAD_RECORDS_FOR_COMPACTION = 1024;
+
+    // Record frame: payload length, CRC32 of type + payload, type, payload
+    private static final int HEADER_SIZE = 9;
+    private static final int MAX_RECORD_SIZE = 1024 * 1024;
+    private static final byte PLACE = 1;
+    private static final byte STATUS = 2;
+    private static final byte CANCEL = 3;
+
+    private final Path directory;
+    private final long maxSegmentSize;
+    private final Durability durability;
+    private final OrderIndex index = new OrderIndex();
+    private final Map<Path, FileChannel> readers = new HashMap<>();
+    private FileChannel active;
+    private long activeSegmentId;
+    private long deadRecords;
+
+    private OrderLog(Path directory, long maxSegmentSize, Durability durability) {
+        this.directory = directory;
+        this.maxSegmentSize = maxSegmentSize;
+        this.durability = durability;
+    }
+
+    public static OrderLog open(Path directory) throws IOException {
+        return open(directory, DEFAULT_SEGMENT_SIZE, Durability.NONE);
+    }
+
+    public static OrderLog open(Path directory, Durability durability) throws IOException {
+        return open(directory, DEFAULT_SEGMENT_SIZE, durability);
+    }
+
+    public static OrderLog open(Path directory, long maxSegmentSize, Durability durability) throws IOException {
+        Files.createDirectories(directory);
+        OrderLog log = new OrderLog(directory, maxSegmentSize, durability);
+        log.recover();
+        return log;
+    }
+
+    // Each append waits for durability after giving up the log's lock, so concurrent
+    // appends can share one group commit. A segment is forced when it rolls over, so a
+    // force that finds it closed by then has nothing to do
+    public void appendPlace(Order order) throws IOException {
+        byte[] payload = encode(order.getUsername(), order.toString());
+        FileChannel written;
+        synchronized (this) {
+            long offset = append(PLACE, payload);
+            if (index.contains(order.getTrackingId())) {
+                deadRecords++;
+            }
+            index.put(order.getTrackingId(), order.getUsername(), segmentPath(activeSegmentId), offset,
+                order.getStatus());
+            written = active;
+        }
+        durability.force(written);
+    }
+
+    public boolean appendStatus(String trackingId, Order.OrderStatus status, long changedAt) throws IOException {
+        FileChannel written;
+        synchronized (this) {
+            if (!index.contains(trackingId)) {
+                return false;
+            }
+            append(STATUS, encode(trackingId, status.getDisplayName(), Long.toString(changedAt)));
+            index.updateStatus(trackingId, status, changedAt);
+            deadRecords++;
+            written = active;
+        }
+        durability.force(written);
+        return true;
+    }
+
+    public boolean appendCancel(String trackingId) throws IOException {
+        FileChannel written;
+        synchronized (this) {
+            if (!index.contains(trackingId)) {
+                return false;
+            }
+            append(CANCEL, encode(trackingId));
+            index.remove(trackingId);
+            deadRecords += 2;
+            written = active;
+        }
+        durability.force(written);
+        return true;
+    }
+
+    public synchronized Order get(String trackingId) throws IOException {
+        OrderIndex.Entry entry = index.get(trackingId);
+        if (entry == null) {
+            return null;
+        }
+        return readOrder(entry);
+    }
+
+    public OrderIndex getIndex() {
+        return index;
+    }
+
+    public int size() {
+        return index.size();
+    }
+
+    // One sequential pass over the segments; superseded and cancelled records are skipped
+    public synchronized void forEach(Consumer<? super Order> consumer) throws IOException {
+        for (long segmentId : listSegmentIds()) {
+            Path path = segmentPath(segmentId);
+            readSegment(path, (type, payload, offset) -> {
+                if (type != PLACE) {
+                    return;
+                }
+                DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+                String username = in.readUTF();
+                String data = in.readUTF();
+                String trackingId = data.substring(0, Math.max(0, data.indexOf(',')));
+                OrderIndex.Entry entry = index.get(trackingId);
+                if (entry == null || entry.getOffset() != offset || !entry.getFile().equals(path)) {
+                    return;
+                }
+                Order order = Order.fromString(data, username);
+                if (order != null) {
+                    applyStatus(order, entry);
+                    consumer.accept(order);
+                }
+            });
+        }
+    }
+
+    public synchronized void compact() throws IOException {
+        long compactedId = activeSegmentId + 1;
+        Path target = segmentPath(compactedId);
+        Path temp = directory.resolve(target.getFileName() + COMPACTING_SUFFIX);
+        Map<String, Long> rewritten = new HashMap<>();
+
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            for (Map.Entry<String, OrderIndex.Entry> e : index.entries()) {
+                Order order = readOrder(e.getValue());
+                rewritten.put(e.getKey(), out.position());
+                out.write(frame(PLACE, encode(order.getUsername(), order.toString())));
+            }
+            out.force(true);
+        }
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+
+        // The compacted segment now holds every live order; older segments can go
+        closeChannels();
+        for (long id : listSegmentIds()) {
+            if (id < compactedId) {
+                Files.deleteIfExists(segmentPath(id));
+            }
+        }
+        for (Map.Entry<String, Long> e : rewritten.entrySet()) {
+            OrderIndex.Entry entry = index.get(e.getKey());
+            index.put(e.getKey(), entry.getUsername(), target, e.getValue(), entry.getStatus());
+        }
+        deadRecords = 0;
+        openActive(compactedId);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (active != null) {
+            active.force(true);
+        }
+        closeChannels();
+    }
+
+    private void recover() throws IOException {
+        for (Path stale : listFiles(COMPACTING_SUFFIX)) {
+            Files.deleteIfExists(stale);
+        }
+        List<Long> segmentIds = listSegmentIds();
+        for (int i = 0; i < segmentIds.size(); i++) {
+            boolean last = i == segmentIds.size() - 1;
+            replaySegment(segmentIds.get(i), last);
+        }
+        openActive(segmentIds.isEmpty() ? 1 : segmentIds.get(segmentIds.size() - 1));
+    }
+
+    private void replaySegment(long segmentId, boolean last) throws IOException {
+        Path path = segmentPath(segmentId);
+        long offset = readSegment(path, (type, payload, recordOffset) -> apply(type, payload, segmentId, recordOffset));
+
+        long size = Files.size(path);
+        if (offset == size) {
+            return;
+        }
+        // Only the active segment can end in an interrupted append. A bad record in a closed
+        // segment hides the orders after it, and compacting would delete them for good
+        if (!last) {
+            throw new IOException("Order log: corrupt record at offset " + offset + " of "
+                    + path.getFileName() + ", " + (size - offset) + " bytes unreadable");
+        }
+        System.err.println("Order log: discarding " + (size - offset) + " trailing bytes in " + path.getFileName());
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.truncate(offset);
+        }
+    }
+
+    // Streams valid records in file order and returns the offset just past the last one
+    private long readSegment(Path path, RecordHandler handler) throws IOException {
+        long offset = 0;
+        try (InputStream raw = Files.newInputStream(path);
+             DataInputStream in = new DataInputStream(new BufferedInputStream(raw, 64 * 1024))) {
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                long crc;
+                byte type;
+                byte[] payload;
+                try {
+                    crc = in.readInt() & 0xFFFFFFFFL;
+                    type = in.readByte();
+                    if (length < 0 || length > MAX_RECORD_SIZE) {
+                        break;
+                    }
+                    payload = new byte[length];
+                    in.readFully(payload);
+                } catch (EOFException e) {
+                    break;
+                }
+                if (checksum(type, payload) != crc) {
+                    break;
+                }
+                handler.handle(type, payload, offset);
+                offset += HEADER_SIZE + length;
+            }
+        }
+        return offset;
+    }
+
+    private void apply(byte type, byte[] payload, long segmentId, long offset) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        switch (type) {
+            case PLACE: {
+                String username = in.readUTF();
+                Order order = Order.fromString(in.readUTF(), username);
+                if (order == null) {
+                    return;
+                }
+                if (index.contains(order.getTrackingId())) {
+                    deadRecords++;
+                }
+                index.put(order.getTrackingId(), username, segmentPath(segmentId), offset, order.getStatus());
+                break;
+            }
+            case STATUS: {
+                String trackingId = in.readUTF();
+                Order.OrderStatus status = Order.OrderStatus.fromString(in.readUTF());
+                // Status records from before timestamps carry no change time
+                long changedAt = in.available() > 0 ? Long.parseLong(in.readUTF()) : 0;
+                index.updateStatus(trackingId, status, changedAt);
+                deadRecords++;
+                break;
+            }
+            case CANCEL: {
+                index.remove(in.readUTF());
+                deadRecords += 2;
+                break;
+            }
+            default:
+                break;
+        }
+    }
+
+    private long append(byte type, byte[] payload) throws IOException {
+        if (active.position() > 0 && active.position() + HEADER_SIZE + payload.length > maxSegmentSize) {
+            rollSegment();
+        }
+        long offset = active.position();
+        ByteBuffer buffer = frame(type, payload);
+        while (buffer.hasRemaining()) {
+            active.write(buffer);
+        }
+        return offset;
+    }
+
+    private void rollSegment() throws IOException {
+        active.force(true);
+        if (deadRecords >= MIN_DEAD_RECORDS_FOR_COMPACTION && deadRecords > index.size()) {
+            compact();
+        } else {
+            openActive(activeSegmentId + 1);
+        }
+    }
+
+    private void openActive(long segmentId) throws IOException {
+        activeSegmentId = segmentId;
+        active = FileChannel.open(segmentPath(segmentId), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        active.position(active.size());
+        readers.put(segmentPath(segmentId), active);
+    }
+
+    private Order readOrder(OrderIndex.Entry entry) throws IOException {
+        FileChannel channel = readers.get(entry.getFile());
+        if (channel == null) {
+            channel = FileChannel.open(entry.getFile(), StandardOpenOption.READ);
+            readers.put(entry.getFile(), channel);
+        }
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        readFully(channel, header, entry.getOffset());
+        header.flip();
+        int length = header.getInt();
+        ByteBuffer payload = ByteBuffer.allocate(length);
+        readFully(channel, payload, entry.getOffset() + HEADER_SIZE);
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload.array()));
+        String username = in.readUTF();
+        Order order = Order.fromString(in.readUTF(), username);
+        if (order != null) {
+            applyStatus(order, entry);
+        }
+        return order;
+    }
+
+    // PLACE records keep the original status; later STATUS records live only in the index,
+    // and each one is a version step past the PLACE record's
+    private static void applyStatus(Order order, OrderIndex.Entry entry) {
+        order.setStatus(entry.getStatus());
+        if (entry.getStatusChangedAt() != 0) {
+            order.setStatusChangedAt(entry.getStatusChangedAt());
+            order.setUpdatedAt(entry.getStatusChangedAt());
+        }
+        order.setVersion(order.getVersion() + entry.getStatusChanges());
+    }
+
+    private void closeChannels() throws IOException {
+        for (FileChannel channel : readers.values()) {
+            channel.close();
+        }
+        readers.clear();
+        active = null;
+    }
+
+    private List<Long> listSegmentIds() throws IOException {
+        List<Long> ids = new ArrayList<>();
+        for (Path path : listFiles(SEGMENT_SUFFIX)) {
+            String name = path.getFileName().toString();
+            if (name.startsWith(SEGMENT_PREFIX)) {
+                try {
+                    ids.add(Long.parseLong(name.substring(SEGMENT_PREFIX.length(),
+                            name.length() - SEGMENT_SUFFIX.length())));
+                } catch (NumberFormatException e) {
+                    // Not one of ours
+                }
+            }
+        }
+        Collections.sort(ids);
+        return ids;
+    }
+
+    private List<Path> listFiles(String suffix) throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (Stream<Path> stream = Files.list(directory)) {
+            stream.filter(p -> p.getFileName().toString().endsWith(suffix)).forEach(files::add);
+        }
+        return files;
+    }
+
+    private Path segmentPath(long segmentId) {
+        return directory.resolve(String.format("%s%010d%s", SEGMENT_PREFIX, segmentId, SEGMENT_SUFFIX));
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new EOFException("Truncated order log record at " + position);
+            }
+        }
+    }
+
+    private static ByteBuffer frame(byte type, byte[] payload) {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + payload.length);
+        buffer.putInt(payload.length);
+        buffer.putInt((int) checksum(type, payload));
+        buffer.put(type);
+        buffer.put(payload);
+        buffer.flip();
+        return buffer;
+    }
+
+    private static long checksum(byte type, byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(type);
+        crc.update(payload);
+        return crc.getValue();
+    }
+
+    private static byte[] encode(String... fields) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        for (String field : fields) {
+            out.writeUTF(field);
+        }
+        return bytes.toByteArray();
+    }
+
+    private interface RecordHandler {
+        void handle(byte type, byte[] payload, long offset) throws IOException;
+    }
+}
@@ -0,0 +1,223 @@
+package com.courier.storage;
+
+import com.courier.model.Order;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Order placement and status-change events, one append-only file per UTC day. A
+ * time-range query opens only the partitions its range overlaps, and retention drops
+ * whole partition files without touching the rest.
+ */
+public class OrderTimeline implements Closeable {
+    private static final String SUFFIX = ".events";
+    private static final int TRACKING_ID_SIZE = 24;
+    // Record: event time, event type, status ordinal, zero-padded tracking ID
+    private static final int RECORD_SIZE = 8 + 1 + 1 + TRACKING_ID_SIZE;
+    private static final byte PLACED = 1;
+    private static final byte STATUS_CHANGED = 2;
+
+    private final Path directory;
+    private LocalDate activeDay;
+    private FileChannel active;
+
+    private OrderTimeline(Path directory) {
+        this.directory = directory;
+    }
+
+    public static OrderTimeline open(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        return new OrderTimeline(directory);
+    }
+
+    public void recordPlaced(String trackingId, Order.OrderStatus status, long at) throws IOException {
+        append(PLACED, trackingId, status, at);
+    }
+
+    public void recordStatusChange(String trackingId, Order.OrderStatus status, long at) throws IOException {
+        append(STATUS_CHANGED, trackingId, status, at);
+    }
+
+    // Tracking IDs placed in [fromMillis, toMillis), oldest first
+    public List<String> findPlaced(long fromMillis, long toMillis) throws IOException {
+        return find(PLACED, null, fromMillis, toMillis);
+    }
+
+    // Tracking IDs that changed to the status in [fromMillis, toMillis), placement included
+    public List<String> findStatusChanges(Order.OrderStatus status, long fromMillis, long toMillis) throws IOException {
+        return find((byte) 0, status, fromMillis, toMillis);
+    }
+
+    public synchronized List<LocalDate> partitions() throws IOException {
+        List<LocalDate> days = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.forEach(path -> {
+                LocalDate day = dayOf(path);
+                if (day != null) {
+                    days.add(day);
+                }
+            });
+        }
+        days.sort(null);
+        return days;
+    }
+
+    // Retention: deletes every partition for a day before the given one
+    public synchronized int dropPartitionsBefore(LocalDate day) throws IOException {
+        int dropped = 0;
+        for (LocalDate partition : partitions()) {
+            if (partition.isBefore(day)) {
+                if (partition.equals(activeDay)) {
+                    closeActive();
+                }
+                Files.deleteIfExists(partitionPath(partition));
+                dropped++;
+            }
+        }
+        return dropped;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        closeActive();
+    }
+
+    @SuppressWarnings("try")
+    private synchronized void append(byte type, String trackingId, Order.OrderStatus status, long at)
+            throws IOException {
+        byte[] raw = trackingId.getBytes(StandardCharsets.UTF_8);
+        if (raw.length > TRACKING_ID_SIZE) {
+            throw new IOException("Tracking ID too long for the order timeline: " + trackingId);
+        }
+        byte[] id = new byte[TRACKING_ID_SIZE];
+        System.arraycopy(raw, 0, id, 0, raw.length);
+        LocalDate day = dayOf(at);
+        if (!day.equals(activeDay)) {
+            closeActive();
+            active = FileChannel.open(partitionPath(day), StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            activeDay = day;
+        }
+        ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+        record.putLong(at);
+        record.put(type);
+        record.put((byte) status.ordinal());
+        record.put(id);
+        record.flip();
+        // Other processes append to the same partition, so the end is found under their lock.
+        // A torn record from a crash is overwritten by the next append
+        try (FileLock lock = FileLocks.lock(active, 0, Long.MAX_VALUE, false)) {
+            long size = active.size();
+            long position = size - size % RECORD_SIZE;
+            while (record.hasRemaining()) {
+                position += active.write(record, position);
+            }
+        }
+    }
+
+    private List<String> find(byte type, Order.OrderStatus status, long fromMillis, long toMillis) throws IOException {
+        Set<String> trackingIds = new LinkedHashSet<>();
+        if (fromMillis >= toMillis) {
+            return new ArrayList<>();
+        }
+        LocalDate first = dayOf(fromMillis);
+        LocalDate last = dayOf(toMillis - 1);
+        // Only the days that have a partition, so a wide range costs one directory listing
+        for (LocalDate day : partitions()) {
+            if (day.isBefore(first)) {
+                continue;
+            }
+            if (day.isAfter(last)) {
+                break;
+            }
+            ByteBuffer records;
+            try {
+                records = readPartition(partitionPath(day));
+            } catch (NoSuchFileException e) {
+                continue; // dropped by retention since the listing
+            }
+            byte[] id = new byte[TRACKING_ID_SIZE];
+            while (records.remaining() >= RECORD_SIZE) {
+                long at = records.getLong();
+                byte recordType = records.get();
+                int ordinal = records.get();
+                records.get(id);
+                if (at < fromMillis || at >= toMillis) {
+                    continue;
+                }
+                if (type != 0 ? recordType == type : ordinal == status.ordinal()) {
+                    trackingIds.add(decodeTrackingId(id));
+                }
+            }
+        }
+        return new ArrayList<>(trackingIds);
+    }
+
+    // Whole records only, so a concurrent append is either seen complete or not at all
+    private static ByteBuffer readPartition(Path partition) throws IOException {
+        try (FileChannel channel = FileChannel.open(partition, StandardOpenOption.READ)) {
+            long size = channel.size();
+            ByteBuffer buffer = ByteBuffer.allocate((int) (size - size % RECORD_SIZE));
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, buffer.position()) < 0) {
+                    break;
+                }
+            }
+            buffer.flip();
+            return buffer;
+        }
+    }
+
+    private void closeActive() throws IOException {
+        if (active != null) {
+            active.close();
+            active = null;
+            activeDay = null;
+        }
+    }
+
+    private Path partitionPath(LocalDate day) {
+        return directory.resolve(day + SUFFIX);
+    }
+
+    private static LocalDate dayOf(long millis) {
+        return Instant.ofEpochMilli(millis).atZone(ZoneOffset.UTC).toLocalDate();
+    }
+
+    private static LocalDate dayOf(Path partition) {
+        String name = partition.getFileName().toString();
+        if (!name.endsWith(SUFFIX)) {
+            return null;
+        }
+        try {
+            return LocalDate.parse(name.substring(0, name.length() - SUFFIX.length()));
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    private static String decodeTrackingId(byte[] bytes) {
+        int length = 0;
+        while (length < bytes.length && bytes[length] != 0) {
+            length++;
+        }
+        return new String(bytes, 0, length, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,276 @@
+package com.courier.storage;
+
+import com.courier.model.Order;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+
+/**
+ * Tracking IDs by order status, receiver city and contact number (sender and receiver
+ * alike), kept in memory and persisted through a checkpointed journal so a restart
+ * loads them instead of scanning every order. Cities match case-insensitively and
+ * contact numbers on their digits alone. Each key's IDs are held newest first.
+ */
+public class SecondaryIndexes implements Closeable {
+    private static final int SNAPSHOT_MAGIC = 0x49445831; // "IDX1"
+    private static final int JOURNAL_MAGIC = 0x49444A31; // "IDJ1"
+    // Checkpoint once the journal holds about as many postings as the snapshot (a record
+    // carries about four), so a write costs O(1) amortised and the journal stays snapshot-sized
+    private static final int MIN_CHECKPOINT_RECORDS = 4096;
+    private static final byte ADD = 1;
+    private static final byte REMOVE = 2;
+    // Time-ordered IDs compare by length, then value; legacy short IDs sort oldest
+    public static final Comparator<String> NEWEST_FIRST =
+        Comparator.comparingInt(String::length).thenComparing(Comparator.naturalOrder()).reversed();
+
+    public enum Field {
+        STATUS,
+        RECEIVER_CITY,
+        CONTACT
+    }
+
+    private final CheckpointedJournal journal;
+    private final Map<Field, Map<String, NavigableSet<String>>> postings = new EnumMap<>(Field.class);
+    private long size;
+
+    private SecondaryIndexes(CheckpointedJournal journal) {
+        this.journal = journal;
+        clear();
+    }
+
+    public static SecondaryIndexes open(Path directory) throws IOException {
+        SecondaryIndexes indexes = new SecondaryIndexes(
+            CheckpointedJournal.open(directory, "orders", SNAPSHOT_MAGIC, JOURNAL_MAGIC));
+        indexes.recover();
+        return indexes;
+    }
+
+    // True when no index files existed, i.e. they still need a rebuild from the orders
+    public boolean isCreated() {
+        return journal.isCreated();
+    }
+
+    public void recordPlaced(Order order) throws IOException {
+        Change change = new Change();
+        addPostings(change, ADD, order, order.getStatus());
+        commit(change);
+    }
+
+    public void recordStatusChange(String trackingId, Order.OrderStatus from, Order.OrderStatus to)
+            throws IOException {
+        if (from != to) {
+            Change change = new Change();
+            change.add(REMOVE, Field.STATUS, normalize(Field.STATUS, from.getDisplayName()), trackingId);
+            change.add(ADD, Field.STATUS, normalize(Field.STATUS, to.getDisplayName()), trackingId);
+            commit(change);
+        }
+    }
+
+    public void recordCancelled(Order order) throws IOException {
+        Change change = new Change();
+        addPostings(change, REMOVE, order, order.getStatus());
+        commit(change);
+    }
+
+    // Up to limit tracking IDs under a key, newest first, starting after the given ID (null for the start)
+    public synchronized List<String> find(Field field, String value, String after, int limit) {
+        List<String> page = new ArrayList<>(Math.min(limit, 1024));
+        NavigableSet<String> ids = postings.get(field).get(normalize(field, value));
+        if (ids != null) {
+            for (String id : after == null ? ids : ids.tailSet(after, false)) {
+                if (page.size() == limit) {
+                    break;
+                }
+                page.add(id);
+            }
+        }
+        return page;
+    }
+
+    // Replaces every posting with the orders the source reports, then checkpoints. The source
+    // may call back from several threads, so the lock is taken per order rather than held
+    public void rebuild(Consumer<Consumer<Order>> source) throws IOException {
+        synchronized (this) {
+            clear();
+        }
+        source.accept(order -> {
+            Change change = new Change();
+            addPostings(change, ADD, order, order.getStatus());
+            synchronized (this) {
+                apply(change);
+            }
+        });
+        synchronized (this) {
+            checkpoint();
+        }
+    }
+
+    // The form a value is indexed under: status names as-is, cities lower-cased, contacts as digits
+    public static String normalize(Field field, String value) {
+        if (value == null) {
+            return "";
+        }
+        switch (field) {
+            case RECEIVER_CITY:
+                return value.trim().toLowerCase(Locale.ROOT);
+            case CONTACT: {
+                StringBuilder digits = new StringBuilder(value.length());
+                for (int i = 0; i < value.length(); i++) {
+                    char c = value.charAt(i);
+                    if (c >= '0' && c <= '9') {
+                        digits.append(c);
+                    }
+                }
+                return digits.toString();
+            }
+            default:
+                return value;
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        journal.close();
+    }
+
+    private static void addPostings(Change change, byte op, Order order, Order.OrderStatus status) {
+        String id = order.getTrackingId();
+        change.add(op, Field.STATUS, normalize(Field.STATUS, status.getDisplayName()), id);
+        change.add(op, Field.RECEIVER_CITY, normalize(Field.RECEIVER_CITY, order.getReceiverCity()), id);
+        change.add(op, Field.CONTACT, normalize(Field.CONTACT, order.getSenderContact()), id);
+        String receiverContact = normalize(Field.CONTACT, order.getReceiverContact());
+        if (!receiverContact.equals(normalize(Field.CONTACT, order.getSenderContact()))) {
+            change.add(op, Field.CONTACT, receiverContact, id);
+        }
+    }
+
+    private synchronized void commit(Change change) throws IOException {
+        journal.append(change.encode());
+        apply(change);
+        if (journal.getRecords() >= Math.max(MIN_CHECKPOINT_RECORDS, size / 4)) {
+            checkpoint();
+        }
+    }
+
+    private void apply(Change change) {
+        for (int i = 0; i < change.ops.size(); i++) {
+            Map<String, NavigableSet<String>> map = postings.get(change.fields.get(i));
+            String key = change.keys.get(i);
+            String id = change.ids.get(i);
+            if (key.isEmpty()) {
+                continue;
+            }
+            if (change.ops.get(i) == ADD) {
+                if (map.computeIfAbsent(key, k -> new TreeSet<>(NEWEST_FIRST)).add(id)) {
+                    size++;
+                }
+            } else {
+                NavigableSet<String> ids = map.get(key);
+                if (ids != null && ids.remove(id)) {
+                    size--;
+                    if (ids.isEmpty()) {
+                        map.remove(key);
+                    }
+                }
+            }
+        }
+    }
+
+    private void clear() {
+        for (Field field : Field.values()) {
+            postings.put(field, new HashMap<>());
+        }
+        size = 0;
+    }
+
+    private void recover() throws IOException {
+        byte[] snapshot = journal.takeSnapshot();
+        if (snapshot != null) {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(snapshot));
+            for (Field field : Field.values()) {
+                Map<String, NavigableSet<String>> map = postings.get(field);
+                int keys = in.readInt();
+                for (int k = 0; k < keys; k++) {
+                    String key = in.readUTF();
+                    int count = in.readInt();
+                    NavigableSet<String> ids = new TreeSet<>(NEWEST_FIRST);
+                    for (int i = 0; i < count; i++) {
+                        ids.add(in.readUTF());
+                    }
+                    map.put(key, ids);
+                    size += count;
+                }
+            }
+        }
+        journal.replay(payload -> apply(Change.decode(payload)));
+    }
+
+    private void checkpoint() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        for (Field field : Field.values()) {
+            Map<String, NavigableSet<String>> map = postings.get(field);
+            out.writeInt(map.size());
+            for (Map.Entry<String, NavigableSet<String>> entry : map.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeInt(entry.getValue().size());
+                for (String id : entry.getValue()) {
+                    out.writeUTF(id);
+                }
+            }
+        }
+        journal.checkpoint(bytes.toByteArray());
+    }
+
+    // One journal record: the postings one order write adds and removes together
+    private static class Change {
+        private final List<Byte> ops = new ArrayList<>(4);
+        private final List<Field> fields = new ArrayList<>(4);
+        private final List<String> keys = new ArrayList<>(4);
+        private final List<String> ids = new ArrayList<>(4);
+
+        void add(byte op, Field field, String key, String id) {
+            ops.add(op);
+            fields.add(field);
+            keys.add(key);
+            ids.add(id);
+        }
+
+        byte[] encode() throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(ops.size());
+            for (int i = 0; i < ops.size(); i++) {
+                out.writeByte(ops.get(i));
+                out.writeByte(fields.get(i).ordinal());
+                out.writeUTF(keys.get(i));
+                out.writeUTF(ids.get(i));
+            }
+            return bytes.toByteArray();
+        }
+
+        static Change decode(byte[] payload) throws IOException {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+            Change change = new Change();
+            int size = in.readUnsignedByte();
+            for (int i = 0; i < size; i++) {
+                change.add(in.readByte(), Field.values()[in.readUnsignedByte()], in.readUTF(), in.readUTF());
+            }
+            return change;
+        }
+    }
+}
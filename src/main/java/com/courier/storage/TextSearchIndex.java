@@ -0,0 +1,405 @@
+package com.courier.storage;
+
+import com.courier.model.Order;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Substring search over receiver name, receiver address, sender name and both cities.
+ * Every indexed text is split into overlapping three-character grams, each mapping to
+ * the documents that contain it; a query term narrows the candidates to documents
+ * holding all of its grams, and the survivors are checked and ranked on their stored
+ * text. Only the documents are persisted, through a checkpointed journal; the gram
+ * postings are rebuilt from them in memory on open.
+ */
+public class TextSearchIndex implements Closeable {
+    private static final int SNAPSHOT_MAGIC = 0x54535831; // "TSX1"
+    private static final int JOURNAL_MAGIC = 0x54534A31; // "TSJ1"
+    private static final int MIN_CHECKPOINT_RECORDS = 4096;
+    private static final byte ADD = 1;
+    private static final byte REMOVE = 2;
+
+    public enum Field {
+        RECEIVER_NAME(4),
+        SENDER_NAME(3),
+        RECEIVER_ADDRESS(2),
+        RECEIVER_CITY(1),
+        SENDER_CITY(1);
+
+        private final int weight;
+
+        Field(int weight) {
+            this.weight = weight;
+        }
+
+        static String[] texts(Order order) {
+            return new String[]{
+                normalize(order.getReceiverName()),
+                normalize(order.getSenderName()),
+                normalize(order.getReceiverAddress()),
+                normalize(order.getReceiverCity()),
+                normalize(order.getSenderCity())
+            };
+        }
+    }
+
+    private final CheckpointedJournal journal;
+    private final Map<String, Integer> documentIds = new HashMap<>();
+    private final Map<Long, IntList> postings = new HashMap<>();
+    private final BitSet removed = new BitSet();
+    private String[] trackingIds = new String[1024];
+    private String[][] texts = new String[1024][];
+    private int documents;
+
+    private TextSearchIndex(CheckpointedJournal journal) {
+        this.journal = journal;
+    }
+
+    public static TextSearchIndex open(Path directory) throws IOException {
+        TextSearchIndex index = new TextSearchIndex(
+            CheckpointedJournal.open(directory, "search", SNAPSHOT_MAGIC, JOURNAL_MAGIC));
+        index.recover();
+        return index;
+    }
+
+    // True when no index files existed, i.e. it still needs a rebuild from the orders
+    public boolean isCreated() {
+        return journal.isCreated();
+    }
+
+    public synchronized void recordPlaced(Order order) throws IOException {
+        String[] fields = Field.texts(order);
+        journal.append(encode(ADD, order.getTrackingId(), fields));
+        add(order.getTrackingId(), fields);
+        checkpointIfDue();
+    }
+
+    public synchronized void recordCancelled(String trackingId) throws IOException {
+        if (documentIds.containsKey(trackingId)) {
+            journal.append(encode(REMOVE, trackingId, null));
+            remove(trackingId);
+            checkpointIfDue();
+        }
+    }
+
+    public synchronized int size() {
+        return documentIds.size();
+    }
+
+    /**
+     * Tracking IDs of up to limit orders containing every term of the query, best first.
+     * Terms are matched as substrings after lower-casing and dropping punctuation; a hit
+     * in a name outranks one in an address or city, a whole-word hit outranks one that
+     * starts a word, which outranks one inside a word, and ties go to the newer order.
+     */
+    public synchronized List<String> search(String query, int limit) {
+        String[] terms = normalize(query).split(" ");
+        if (terms.length == 0 || terms[0].isEmpty() || limit <= 0) {
+            return new ArrayList<>();
+        }
+        int[] candidates = candidates(terms);
+        List<Hit> hits = new ArrayList<>();
+        for (int i = 0, n = candidates == null ? documents : candidates.length; i < n; i++) {
+            int doc = candidates == null ? i : candidates[i];
+            if (removed.get(doc)) {
+                continue;
+            }
+            int score = score(texts[doc], terms);
+            if (score > 0) {
+                hits.add(new Hit(trackingIds[doc], score));
+            }
+        }
+        hits.sort((a, b) -> a.score != b.score ? Integer.compare(b.score, a.score)
+            : SecondaryIndexes.NEWEST_FIRST.compare(a.trackingId, b.trackingId));
+        List<String> result = new ArrayList<>(Math.min(limit, hits.size()));
+        for (int i = 0; i < hits.size() && i < limit; i++) {
+            result.add(hits.get(i).trackingId);
+        }
+        return result;
+    }
+
+    // Replaces every document with the orders the source reports, then checkpoints. The source
+    // may call back from several threads, so the lock is taken per order rather than held
+    public void rebuild(Consumer<Consumer<Order>> source) throws IOException {
+        synchronized (this) {
+            clear();
+        }
+        source.accept(order -> {
+            String[] fields = Field.texts(order);
+            synchronized (this) {
+                add(order.getTrackingId(), fields);
+            }
+        });
+        synchronized (this) {
+            checkpoint();
+        }
+    }
+
+    // Lower case, letters and digits only, single spaces between words
+    public static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        StringBuilder normalized = new StringBuilder(text.length());
+        boolean space = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                if (space && normalized.length() > 0) {
+                    normalized.append(' ');
+                }
+                normalized.append(Character.toLowerCase(c));
+                space = false;
+            } else {
+                space = true;
+            }
+        }
+        return normalized.toString();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        journal.close();
+    }
+
+    // Documents holding every gram of every term of three or more characters, or null when
+    // all terms are shorter and only a check of every document can answer. The rarest gram
+    // goes first, so common words like "street" only ever filter an already short list
+    private int[] candidates(String[] terms) {
+        List<IntList> lists = new ArrayList<>();
+        for (String term : terms) {
+            for (int i = 0; i + 3 <= term.length(); i++) {
+                IntList list = postings.get(gram(term, i));
+                if (list == null) {
+                    return new int[0];
+                }
+                lists.add(list);
+            }
+        }
+        if (lists.isEmpty()) {
+            return null;
+        }
+        lists.sort((a, b) -> Integer.compare(a.size, b.size));
+        int[] result = lists.get(0).toArray();
+        for (int i = 1; i < lists.size() && result.length > 0; i++) {
+            result = intersect(result, lists.get(i));
+        }
+        return result;
+    }
+
+    // The rank search would give the order for the query, 0 when it does not match; for scans
+    public static int score(Order order, String query) {
+        String[] terms = normalize(query).split(" ");
+        return terms[0].isEmpty() ? 0 : score(Field.texts(order), terms);
+    }
+
+    private static int score(String[] fields, String[] terms) {
+        int total = 0;
+        for (String term : terms) {
+            int best = 0;
+            for (Field field : Field.values()) {
+                String text = fields[field.ordinal()];
+                int at = text.indexOf(term);
+                if (at < 0) {
+                    continue;
+                }
+                int match = 1;
+                while (at >= 0 && match < 3) {
+                    boolean start = at == 0 || text.charAt(at - 1) == ' ';
+                    boolean end = at + term.length() == text.length() || text.charAt(at + term.length()) == ' ';
+                    match = Math.max(match, start ? (end ? 3 : 2) : 1);
+                    at = text.indexOf(term, at + 1);
+                }
+                best = Math.max(best, field.weight * match);
+            }
+            if (best == 0) {
+                return 0; // every term has to match somewhere
+            }
+            total += best;
+        }
+        return total;
+    }
+
+    private void add(String trackingId, String[] fields) {
+        Integer existing = documentIds.get(trackingId);
+        if (existing != null) {
+            removed.set(existing);
+        }
+        if (documents == trackingIds.length) {
+            trackingIds = Arrays.copyOf(trackingIds, documents * 2);
+            texts = Arrays.copyOf(texts, documents * 2);
+        }
+        int doc = documents++;
+        trackingIds[doc] = trackingId;
+        texts[doc] = fields;
+        documentIds.put(trackingId, doc);
+        for (String text : fields) {
+            for (int i = 0; i + 3 <= text.length(); i++) {
+                // Document numbers only grow, so appending keeps each list sorted
+                postings.computeIfAbsent(gram(text, i), g -> new IntList()).addIfLast(doc);
+            }
+        }
+    }
+
+    private void remove(String trackingId) {
+        Integer doc = documentIds.remove(trackingId);
+        if (doc != null) {
+            removed.set(doc);
+            texts[doc] = null;
+        }
+    }
+
+    private void clear() {
+        documentIds.clear();
+        postings.clear();
+        removed.clear();
+        trackingIds = new String[1024];
+        texts = new String[1024][];
+        documents = 0;
+    }
+
+    private void recover() throws IOException {
+        byte[] snapshot = journal.takeSnapshot();
+        if (snapshot != null) {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(snapshot));
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String trackingId = in.readUTF();
+                add(trackingId, readFields(in));
+            }
+        }
+        journal.replay(payload -> {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+            byte op = in.readByte();
+            String trackingId = in.readUTF();
+            if (op == ADD) {
+                add(trackingId, readFields(in));
+            } else {
+                remove(trackingId);
+            }
+        });
+    }
+
+    private void checkpointIfDue() throws IOException {
+        if (journal.getRecords() >= Math.max(MIN_CHECKPOINT_RECORDS, documentIds.size())) {
+            checkpoint();
+        }
+    }
+
+    // Writes the live documents and, once removals have piled up, renumbers them without the gaps
+    private void checkpoint() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(documentIds.size());
+        for (int doc = 0; doc < documents; doc++) {
+            if (!removed.get(doc)) {
+                out.writeUTF(trackingIds[doc]);
+                for (String text : texts[doc]) {
+                    out.writeUTF(text);
+                }
+            }
+        }
+        journal.checkpoint(bytes.toByteArray());
+        if (removed.cardinality() > documentIds.size() / 4) {
+            String[] liveIds = new String[documentIds.size()];
+            String[][] liveTexts = new String[documentIds.size()][];
+            int live = 0;
+            for (int doc = 0; doc < documents; doc++) {
+                if (!removed.get(doc)) {
+                    liveIds[live] = trackingIds[doc];
+                    liveTexts[live++] = texts[doc];
+                }
+            }
+            clear();
+            for (int i = 0; i < live; i++) {
+                add(liveIds[i], liveTexts[i]);
+            }
+        }
+    }
+
+    private static byte[] encode(byte op, String trackingId, String[] fields) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(160);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(op);
+        out.writeUTF(trackingId);
+        if (fields != null) {
+            for (String text : fields) {
+                out.writeUTF(text);
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private static String[] readFields(DataInputStream in) throws IOException {
+        String[] fields = new String[Field.values().length];
+        for (int i = 0; i < fields.length; i++) {
+            fields[i] = in.readUTF();
+        }
+        return fields;
+    }
+
+    private static long gram(String text, int at) {
+        return ((long) text.charAt(at) << 32) | ((long) text.charAt(at + 1) << 16) | text.charAt(at + 2);
+    }
+
+    private static int[] intersect(int[] sorted, IntList list) {
+        int[] result = new int[Math.min(sorted.length, list.size)];
+        int count = 0;
+        int i = 0;
+        int j = 0;
+        while (i < sorted.length && j < list.size) {
+            if (sorted[i] < list.values[j]) {
+                i++;
+            } else if (sorted[i] > list.values[j]) {
+                j++;
+            } else {
+                result[count++] = sorted[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    private static class Hit {
+        private final String trackingId;
+        private final int score;
+
+        Hit(String trackingId, int score) {
+            this.trackingId = trackingId;
+            this.score = score;
+        }
+    }
+
+    // Sorted document numbers without boxing
+    private static class IntList {
+        private int[] values = new int[4];
+        private int size;
+
+        void addIfLast(int value) {
+            if (size > 0 && values[size - 1] == value) {
+                return; // the gram occurs twice in one document
+            }
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
@@ -1,23 +1,36 @@
 package com.courier.ui;
 
-import com.courier.model.Admin;
 import com.courier.model.Order;
 import com.courier.model.User;
+import com.courier.repository.Repositories;
 import com.courier.service.AdminService;
+import com.courier.service.AsyncServices;
+import com.courier.service.FileManager;
 import com.courier.service.OrderService;
 import com.courier.service.UserService;
+import com.courier.storage.FinanceRollups;
+import com.courier.storage.OrderColumns;
 import java.awt.*;
+import java.io.IOException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
 import javax.swing.*;
 import javax.swing.border.EmptyBorder;
 import javax.swing.table.DefaultTableCellRenderer;
-import javax.swing.table.DefaultTableModel;
 
 public class CourierManagementApp extends JFrame {
     private final AdminService adminService;
     private final UserService userService;
     private final OrderService orderService;
+    private final AsyncServices services;
+    private final UiTasks tasks;
     private User currentUser;
+    private PagedTableModel<?> activeTableModel;
     
     // Color scheme
     private static final Color PRIMARY_COLOR = new Color(52, 73, 94);
@@ -26,11 +39,14 @@ public class CourierManagementApp extends JFrame {
     private static final Color DANGER_COLOR = new Color(231, 76, 60);
     private static final Color WARNING_COLOR = new Color(243, 156, 18);
     private static final Color LIGHT_GRAY = new Color(236, 240, 241);
+    private static final int SEARCH_LIMIT = 200;
 
-    public CourierManagementApp() {
-        adminService = new AdminService();
-        userService = new UserService();
-        orderService = new OrderService();
+    public CourierManagementApp(OrderService orderService, UserService userService, AdminService adminService) {
+        this.adminService = adminService;
+        this.userService = userService;
+        this.orderService = orderService;
+        services = new AsyncServices(orderService, userService, adminService);
+        tasks = new UiTasks(this);
         
         initializeUI();
         showMainMenu();
@@ -53,6 +69,7 @@ public class CourierManagementApp extends JFrame {
     }
 
     private void showMainMenu() {
+        tasks.cancelAll();
         getContentPane().removeAll();
         
         JPanel mainPanel = new JPanel(new BorderLayout());
@@ -144,6 +161,7 @@ public class CourierManagementApp extends JFrame {
     }
 
     private void showAdminLogin() {
+        tasks.cancelAll();
         getContentPane().removeAll();
         
         JPanel mainPanel = new JPanel(new BorderLayout());
@@ -210,12 +228,15 @@ public class CourierManagementApp extends JFrame {
                 return;
             }
             
-            Admin admin = adminService.authenticateAdmin(username, pin);
-            if (admin != null) {
-                showAdminDashboard();
-            } else {
-                showErrorMessage("Invalid username or PIN.");
-            }
+            loginButton.setEnabled(false);
+            tasks.run(services.authenticateAdmin(username, pin), admin -> {
+                loginButton.setEnabled(true);
+                if (admin != null) {
+                    showAdminDashboard();
+                } else {
+                    showErrorMessage("Invalid username or PIN.");
+                }
+            });
         });
         
         backButton.addActionListener(e -> showMainMenu());
@@ -239,6 +260,7 @@ public class CourierManagementApp extends JFrame {
     }
 
     private void showAdminDashboard() {
+        tasks.cancelAll();
         getContentPane().removeAll();
         
         JPanel mainPanel = new JPanel(new BorderLayout());
@@ -343,6 +365,7 @@ public class CourierManagementApp extends JFrame {
     }
 
     private void showUserManagement() {
+        tasks.cancelAll();
         getContentPane().removeAll();
         
         JPanel mainPanel = new JPanel(new BorderLayout());
@@ -364,24 +387,19 @@ public class CourierManagementApp extends JFrame {
         contentPanel.setBackground(Color.WHITE);
         contentPanel.setBorder(new EmptyBorder(20, 20, 20, 20));
         
-        // User list
-        List<String> usernames = userService.getAllUsernames();
+        // User list, read from storage a page at a time as it scrolls into view
+        disposeActiveTable();
         String[] columnNames = {"Username", "Full Name", "City", "Contact"};
-        DefaultTableModel tableModel = new DefaultTableModel(columnNames, 0);
-        
-        for (String username : usernames) {
-            User user = userService.getUserByUsername(username);
-            if (user != null) {
-                tableModel.addRow(new Object[]{
-                    user.getUsername(),
-                    user.getFullName(),
-                    user.getCity(),
-                    user.getContactNumber()
-                });
-            }
-        }
-        
-        JTable userTable = new JTable(tableModel);
+        PagedTableModel<User> userModel = new PagedTableModel<>(columnNames, userService::getUsernames,
+            userService::getUserByUsername,
+            user -> new Object[]{
+                user.getUsername(),
+                user.getFullName(),
+                user.getCity(),
+                user.getContactNumber()
+            });
+        activeTableModel = userModel;
+        JTable userTable = new JTable(userModel);
         userTable.setFont(new Font("Arial", Font.PLAIN, 14));
         userTable.setRowHeight(25);
         userTable.getTableHeader().setFont(new Font("Arial", Font.BOLD, 14));
@@ -398,9 +416,7 @@ public class CourierManagementApp extends JFrame {
         // Center align table cells
         DefaultTableCellRenderer centerRenderer = new DefaultTableCellRenderer();
         centerRenderer.setHorizontalAlignment(JLabel.CENTER);
-        for (int i = 0; i < userTable.getColumnCount(); i++) {
-            userTable.getColumnModel().getColumn(i).setCellRenderer(centerRenderer);
-        }
+        userTable.setDefaultRenderer(Object.class, centerRenderer);
         
         JScrollPane scrollPane = new JScrollPane(userTable);
         scrollPane.setPreferredSize(new Dimension(800, 400));
@@ -417,9 +433,8 @@ public class CourierManagementApp extends JFrame {
         JButton backButton = createStyledButton("Back", new Color(149, 165, 166), 130, 40);
         
         viewButton.addActionListener(e -> {
-            int selectedRow = userTable.getSelectedRow();
-            if (selectedRow >= 0) {
-                String username = (String) tableModel.getValueAt(selectedRow, 0);
+            String username = selectedKey(userTable);
+            if (username != null) {
                 showUserDetails(username);
             } else {
                 showErrorMessage("Please select a user to view details.");
@@ -427,28 +442,32 @@ public class CourierManagementApp extends JFrame {
         });
         
         deleteButton.addActionListener(e -> {
-            int selectedRow = userTable.getSelectedRow();
-            if (selectedRow >= 0) {
-                String username = (String) tableModel.getValueAt(selectedRow, 0);
+            String username = selectedKey(userTable);
+            if (username != null) {
                 int result = JOptionPane.showConfirmDialog(this,
                     "Are you sure you want to delete user: " + username + "?",
                     "Confirm Delete",
                     JOptionPane.YES_NO_OPTION);
                 
                 if (result == JOptionPane.YES_OPTION) {
-                    if (userService.deleteUser(username)) {
-                        showSuccessMessage("User deleted successfully!");
-                        showUserManagement(); // Refresh the view
-                    } else {
-                        showErrorMessage("Failed to delete user.");
-                    }
+                    tasks.run(services.deleteUser(username), deleted -> {
+                        if (deleted) {
+                            showSuccessMessage("User deleted successfully!");
+                            showUserManagement(); // Refresh the view
+                        } else {
+                            showErrorMessage("Failed to delete user.");
+                        }
+                    });
                 }
             } else {
                 showErrorMessage("Please select a user to delete.");
             }
         });
         
-        backButton.addActionListener(e -> showAdminDashboard());
+        backButton.addActionListener(e -> {
+            disposeActiveTable();
+            showAdminDashboard();
+        });
         
         buttonPanel.add(viewButton);
         buttonPanel.add(Box.createHorizontalStrut(10));
@@ -466,7 +485,10 @@ public class CourierManagementApp extends JFrame {
     }
 
     private void showUserDetails(String username) {
-        User user = userService.getUserByUsername(username);
+        tasks.run(services.getUserByUsername(username), this::showUserDetails);
+    }
+
+    private void showUserDetails(User user) {
         if (user == null) {
             showErrorMessage("User not found.");
             return;
@@ -494,6 +516,7 @@ public class CourierManagementApp extends JFrame {
     }
 
     private void showOrderManagement() {
+        tasks.cancelAll();
         getContentPane().removeAll();
         
         JPanel mainPanel = new JPanel(new BorderLayout());
@@ -515,26 +538,79 @@ public class CourierManagementApp extends JFrame {
         contentPanel.setBackground(Color.WHITE);
         contentPanel.setBorder(new EmptyBorder(20, 20, 20, 20));
         
-        // Order list
+        // Order list, newest first, read from storage a page at a time as it scrolls into view
+        disposeActiveTable();
         String[] columnNames = {"Tracking ID", "Customer", "Receiver", "City", "Status", "Amount"};
-        DefaultTableModel tableModel = new DefaultTableModel(columnNames, 0);
-        
-        List<String> usernames = userService.getAllUsernames();
-        for (String username : usernames) {
-            List<Order> orders = orderService.getUserOrders(username);
-            for (Order order : orders) {
-                tableModel.addRow(new Object[]{
+        JTable orderTable = new JTable(new Object[][]{{PagedTableModel.LOADING, "", "", "", "", ""}}, columnNames);
+        
+        JLabel countLabel = new JLabel("Total Orders: ...", JLabel.LEFT);
+        countLabel.setFont(new Font("Arial", Font.ITALIC, 13));
+        countLabel.setForeground(Color.GRAY);
+        countLabel.setBorder(new EmptyBorder(8, 0, 8, 0));
+        
+        // Search by receiver or sender name, address or city; results replace the list until cleared
+        JPanel searchPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 8, 0));
+        searchPanel.setBackground(Color.WHITE);
+        JTextField searchField = createFormField(25);
+        JButton searchButton = createStyledButton("Search", SECONDARY_COLOR, 110, 30);
+        JButton showAllButton = createStyledButton("Show All", new Color(149, 165, 166), 110, 30);
+        searchPanel.add(searchField);
+        searchPanel.add(searchButton);
+        searchPanel.add(showAllButton);
+        
+        JPanel topPanel = new JPanel(new BorderLayout());
+        topPanel.setBackground(Color.WHITE);
+        topPanel.add(searchPanel, BorderLayout.NORTH);
+        topPanel.add(countLabel, BorderLayout.SOUTH);
+        contentPanel.add(topPanel, BorderLayout.NORTH);
+        
+        BiConsumer<PagedTableModel.PageSource, String> showOrders = (keys, countText) -> {
+            disposeActiveTable();
+            PagedTableModel<Order> tableModel = new PagedTableModel<>(columnNames, keys, orderService::findOrder,
+                order -> new Object[]{
                     order.getTrackingId(),
-                    username,
+                    order.getUsername(),
                     order.getReceiverName(),
                     order.getReceiverCity(),
                     order.getStatus().getDisplayName(),
                     "Rs. " + order.getRate()
                 });
+            activeTableModel = tableModel;
+            orderTable.setModel(tableModel);
+            countLabel.setText(countText);
+        };
+        Runnable showAll = () -> {
+            showOrders.accept(orderService::getTrackingIds, "Total Orders: ...");
+            tasks.run(services.getOrderCount(), count -> {
+                if (countLabel.getText().equals("Total Orders: ...")) { // not replaced by a search since
+                    countLabel.setText("Total Orders: " + count);
+                }
+            });
+        };
+        showAll.run();
+        
+        java.awt.event.ActionListener search = e -> {
+            String query = searchField.getText().trim();
+            if (query.isEmpty()) {
+                showAll.run();
+                return;
             }
-        }
-        
-        JTable orderTable = new JTable(tableModel);
+            countLabel.setText("Searching...");
+            tasks.run(services.searchOrders(query, SEARCH_LIMIT), found -> {
+                List<String> keys = new ArrayList<>(found.size());
+                for (Order order : found) {
+                    keys.add(order.getTrackingId());
+                }
+                showOrders.accept(PagedTableModel.PageSource.ofKeys(keys),
+                    (keys.size() == SEARCH_LIMIT ? "Top " : "") + keys.size() + " matches for \"" + query + "\"");
+            });
+        };
+        searchField.addActionListener(search);
+        searchButton.addActionListener(search);
+        showAllButton.addActionListener(e -> {
+            searchField.setText("");
+            showAll.run();
+        });
         orderTable.setFont(new Font("Arial", Font.PLAIN, 14));
         orderTable.setRowHeight(25);
         orderTable.getTableHeader().setFont(new Font("Arial", Font.BOLD, 14));
@@ -551,9 +627,7 @@ public class CourierManagementApp extends JFrame {
         // Center align table cells
         DefaultTableCellRenderer centerRenderer = new DefaultTableCellRenderer();
         centerRenderer.setHorizontalAlignment(JLabel.CENTER);
-        for (int i = 0; i < orderTable.getColumnCount(); i++) {
-            orderTable.getColumnModel().getColumn(i).setCellRenderer(centerRenderer);
-        }
+        orderTable.setDefaultRenderer(Object.class, centerRenderer);
         
         JScrollPane scrollPane = new JScrollPane(orderTable);
         scrollPane.setPreferredSize(new Dimension(800, 400));
@@ -570,41 +644,41 @@ public class CourierManagementApp extends JFrame {
         JButton backButton = createStyledButton("Back", new Color(149, 165, 166), 140, 40);
         
         updateStatusButton.addActionListener(e -> {
-            int selectedRow = orderTable.getSelectedRow();
-            if (selectedRow >= 0) {
-                String trackingId = (String) tableModel.getValueAt(selectedRow, 0);
-                String username = (String) tableModel.getValueAt(selectedRow, 1);
-                updateOrderStatus(username, trackingId);
+            String trackingId = selectedKey(orderTable);
+            if (trackingId != null) {
+                updateOrderStatus(trackingId);
             } else {
                 showErrorMessage("Please select an order to update status.");
             }
         });
         
         cancelOrderButton.addActionListener(e -> {
-            int selectedRow = orderTable.getSelectedRow();
-            if (selectedRow >= 0) {
-                String trackingId = (String) tableModel.getValueAt(selectedRow, 0);
-                String username = (String) tableModel.getValueAt(selectedRow, 1);
-                
+            String trackingId = selectedKey(orderTable);
+            if (trackingId != null) {
                 int result = JOptionPane.showConfirmDialog(this,
                     "Are you sure you want to cancel order: " + trackingId + "?",
                     "Confirm Cancel",
                     JOptionPane.YES_NO_OPTION);
                 
                 if (result == JOptionPane.YES_OPTION) {
-                    if (orderService.cancelOrder(username, trackingId)) {
-                        showSuccessMessage("Order cancelled successfully!");
-                        showOrderManagement(); // Refresh the view
-                    } else {
-                        showErrorMessage("Failed to cancel order.");
-                    }
+                    tasks.run(services.cancelOrder(trackingId), cancelled -> {
+                        if (cancelled) {
+                            showSuccessMessage("Order cancelled successfully!");
+                            showOrderManagement(); // Refresh the view
+                        } else {
+                            showErrorMessage("Failed to cancel order.");
+                        }
+                    });
                 }
             } else {
                 showErrorMessage("Please select an order to cancel.");
             }
         });
         
-        backButton.addActionListener(e -> showAdminDashboard());
+        backButton.addActionListener(e -> {
+            disposeActiveTable();
+            showAdminDashboard();
+        });
         
         buttonPanel.add(updateStatusButton);
         buttonPanel.add(Box.createHorizontalStrut(10));
@@ -621,8 +695,25 @@ public class CourierManagementApp extends JFrame {
         repaint();
     }
 
-    private void updateOrderStatus(String username, String trackingId) {
-        Order order = orderService.getOrder(username, trackingId);
+    // The key behind the table's selected row, or null when none is selected or it is still loading
+    private static String selectedKey(JTable table) {
+        int selectedRow = table.getSelectedRow();
+        return selectedRow >= 0 && table.getModel() instanceof PagedTableModel
+            ? ((PagedTableModel<?>) table.getModel()).getKey(selectedRow) : null;
+    }
+
+    private void disposeActiveTable() {
+        if (activeTableModel != null) {
+            activeTableModel.dispose();
+            activeTableModel = null;
+        }
+    }
+
+    private void updateOrderStatus(String trackingId) {
+        tasks.run(services.findOrder(trackingId), this::updateOrderStatus);
+    }
+
+    private void updateOrderStatus(Order order) {
         if (order == null) {
             showErrorMessage("Order not found.");
             return;
@@ -650,51 +741,107 @@ public class CourierManagementApp extends JFrame {
             JOptionPane.YES_NO_OPTION);
         
         if (result == JOptionPane.YES_OPTION) {
-            if (orderService.updateOrderStatus(username, trackingId, newStatus)) {
-                showSuccessMessage("Order status updated successfully!");
-                showOrderManagement(); // Refresh the view
-            } else {
-                showErrorMessage("Failed to update order status.");
-            }
+            // Only applies if nobody changed the order while the dialog was open
+            tasks.run(services.updateOrderStatus(order.getTrackingId(), order.getVersion(), newStatus), updated -> {
+                if (updated == OrderService.UpdateResult.UPDATED) {
+                    showSuccessMessage("Order status updated successfully!");
+                    showOrderManagement(); // Refresh the view
+                } else if (updated == OrderService.UpdateResult.CONFLICT) {
+                    showErrorMessage("The order was changed by someone else. Please review it and try again.");
+                    showOrderManagement();
+                } else if (updated == OrderService.UpdateResult.NOT_FOUND) {
+                    showErrorMessage("Order not found. It may have been cancelled.");
+                    showOrderManagement();
+                } else {
+                    showErrorMessage("Failed to update order status.");
+                }
+            });
         }
     }
 
     private void showFinanceReports() {
+        Instant end = Instant.now().plusMillis(1);
+        Instant monthStart = LocalDate.now(ZoneOffset.UTC).withDayOfMonth(1).atStartOfDay(ZoneOffset.UTC).toInstant();
+        tasks.run(services.getFinanceSummary(), summary ->
+            tasks.run(services.getFinanceReport(monthStart, end), month -> showFinanceReports(summary, month)));
+    }
+
+    private void showFinanceReports(AdminService.FinanceSummary summary, AdminService.FinanceReport month) {
         StringBuilder report = new StringBuilder();
         report.append("Finance Report\n");
         report.append("=".repeat(50)).append("\n\n");
-        
-        List<AdminService.FinanceRecord> records = adminService.getFinanceRecords();
-        double total = 0;
-        
-        if (records.isEmpty()) {
+
+        if (summary.getCount() == 0) {
             report.append("No financial records found.\n");
         } else {
-            report.append("Order ID        Amount\n");
-            report.append("-".repeat(30)).append("\n");
-            
-            for (AdminService.FinanceRecord record : records) {
-                report.append(String.format("%-15s Rs. %.2f\n", 
-                    record.getTrackingId(), record.getRate()));
-                total += record.getRate();
-            }
-            
-            report.append("-".repeat(30)).append("\n");
-            report.append(String.format("Total Revenue:  Rs. %.2f\n", total));
-            report.append(String.format("Total Orders:   %d\n", records.size()));
-            report.append(String.format("Average Order:  Rs. %.2f\n", 
-                !records.isEmpty() ? total / records.size() : 0));
+            report.append(String.format("Total Revenue:  Rs. %.2f\n", summary.getRevenue()));
+            report.append(String.format("Total Orders:   %d\n", summary.getCount()));
+            report.append(String.format("Average Order:  Rs. %.2f\n", summary.getRevenue() / summary.getCount()));
+
+            appendRollup(report, "By Status", summary.get(FinanceRollups.Dimension.STATUS), 0);
+            appendRollup(report, "By Receiver City (live orders)",
+                summary.get(FinanceRollups.Dimension.RECEIVER_CITY), 0);
+            appendRollup(report, "By Sender Province (live orders)",
+                summary.get(FinanceRollups.Dimension.SENDER_PROVINCE), 0);
+            appendRollup(report, "Last 14 Days (UTC)", summary.get(FinanceRollups.Dimension.DAY), 14);
+
+            report.append("\n").append("=".repeat(50)).append("\n");
+            report.append("This Month (UTC, from ").append(month.getFrom().toString(), 0, 10).append(")\n");
+            report.append(String.format("Revenue:        Rs. %.2f\n", month.getRevenue()));
+            report.append(String.format("Orders:         %d\n", month.getCount()));
+            report.append(String.format("Average Order:  Rs. %.2f\n", month.getAverage()));
+            double[] percentiles = month.getPercentiles();
+            report.append(String.format("Median / p90 / p99 Rate:  Rs. %.0f / %.0f / %.0f\n",
+                percentiles[0], percentiles[1], percentiles[2]));
+            appendGroups(report, "This Month by Status", month.getByStatus());
+            appendGroups(report, "This Month by Receiver City", month.getByCity());
+            appendGroups(report, "This Month by Sender Province", month.getByProvince());
         }
-        
+
         JTextArea textArea = new JTextArea(report.toString());
         textArea.setEditable(false);
         textArea.setFont(new Font("Monospaced", Font.PLAIN, 14));
         textArea.setBorder(new EmptyBorder(15, 15, 15, 15));
-        
+        textArea.setCaretPosition(0);
+
         JScrollPane scrollPane = new JScrollPane(textArea);
-        scrollPane.setPreferredSize(new Dimension(500, 400));
-        
-        JOptionPane.showMessageDialog(this, scrollPane, "Finance Report", JOptionPane.INFORMATION_MESSAGE);
+        scrollPane.setPreferredSize(new Dimension(560, 450));
+
+        String[] options = {"Export Ledger...", "Close"};
+        int choice = JOptionPane.showOptionDialog(this, scrollPane, "Finance Report", JOptionPane.DEFAULT_OPTION,
+            JOptionPane.INFORMATION_MESSAGE, null, options, options[1]);
+        if (choice == 0) {
+            ExportDialog.show(this, "Export Finance Ledger", "finance-ledger", adminService::exportFinanceLedger);
+        }
+    }
+
+    // Appends one rollup table; a positive limit keeps only the last entries
+    private static void appendRollup(StringBuilder report, String title,
+                                     Map<String, FinanceRollups.Bucket> buckets, int limit) {
+        if (buckets.isEmpty()) {
+            return;
+        }
+        report.append("\n").append(title).append("\n");
+        report.append("-".repeat(50)).append("\n");
+        int skip = limit > 0 ? Math.max(0, buckets.size() - limit) : 0;
+        for (Map.Entry<String, FinanceRollups.Bucket> entry : buckets.entrySet()) {
+            if (skip-- > 0) {
+                continue;
+            }
+            report.append(String.format("%-20s %8d  Rs. %,.2f\n",
+                entry.getKey(), entry.getValue().getCount(), entry.getValue().getRevenue()));
+        }
+    }
+
+    private static void appendGroups(StringBuilder report, String title, List<OrderColumns.Group> groups) {
+        if (groups.isEmpty()) {
+            return;
+        }
+        report.append("\n").append(title).append("\n");
+        report.append("-".repeat(50)).append("\n");
+        for (OrderColumns.Group group : groups) {
+            report.append(String.format("%-20s %8d  Rs. %,.2f\n", group.getKey(), group.getCount(), group.getRevenue()));
+        }
     }
 
     private void showAdminSettings() {
@@ -714,14 +861,17 @@ public class CourierManagementApp extends JFrame {
             return;
         }
         
-        if (adminService.changeAdminPassword(oldPin.trim(), newPin.trim())) {
-            showSuccessMessage("Admin password changed successfully!");
-        } else {
-            showErrorMessage("Failed to change password. Please check your current PIN.");
-        }
+        tasks.run(services.changeAdminPassword(oldPin.trim(), newPin.trim()), changed -> {
+            if (changed) {
+                showSuccessMessage("Admin password changed successfully!");
+            } else {
+                showErrorMessage("Failed to change password. Please check your current PIN.");
+            }
+        });
     }
 
     private void showCustomerOptions() {
+        tasks.cancelAll();
         getContentPane().removeAll();
         
         JPanel mainPanel = new JPanel(new BorderLayout());
@@ -780,6 +930,7 @@ public class CourierManagementApp extends JFrame {
     }
 
     private void showCustomerRegistration() {
+        tasks.cancelAll();
         getContentPane().removeAll();
         
         JPanel mainPanel = new JPanel(new BorderLayout());
@@ -851,12 +1002,16 @@ public class CourierManagementApp extends JFrame {
                     new String(pinField.getPassword()).trim()
                 );
                 
-                if (userService.createUser(user)) {
-                    showSuccessMessage("Account created successfully!");
-                    showCustomerOptions();
-                } else {
-                    showErrorMessage("Username already exists. Please choose a different username.");
-                }
+                createButton.setEnabled(false);
+                tasks.run(services.createUser(user), created -> {
+                    createButton.setEnabled(true);
+                    if (created) {
+                        showSuccessMessage("Account created successfully!");
+                        showCustomerOptions();
+                    } else {
+                        showErrorMessage("Username already exists. Please choose a different username.");
+                    }
+                });
             }
         });
         
@@ -932,6 +1087,7 @@ public class CourierManagementApp extends JFrame {
     }
 
     private void showCustomerLogin() {
+        tasks.cancelAll();
         getContentPane().removeAll();
         
         JPanel mainPanel = new JPanel(new BorderLayout());
@@ -998,13 +1154,16 @@ public class CourierManagementApp extends JFrame {
                 return;
             }
             
-            User user = userService.authenticateUser(username, pin);
-            if (user != null) {
-                currentUser = user;
-                showCustomerDashboard();
-            } else {
-                showErrorMessage("Invalid username or PIN.");
-            }
+            loginButton.setEnabled(false);
+            tasks.run(services.authenticateUser(username, pin), user -> {
+                loginButton.setEnabled(true);
+                if (user != null) {
+                    currentUser = user;
+                    showCustomerDashboard();
+                } else {
+                    showErrorMessage("Invalid username or PIN.");
+                }
+            });
         });
         
         backButton.addActionListener(e -> showCustomerOptions());
@@ -1028,6 +1187,7 @@ public class CourierManagementApp extends JFrame {
     }
 
     private void showCustomerDashboard() {
+        tasks.cancelAll();
         getContentPane().removeAll();
         
         JPanel mainPanel = new JPanel(new BorderLayout());
@@ -1095,22 +1255,22 @@ public class CourierManagementApp extends JFrame {
     }
 
     private void showPlaceOrder() {
-        PlaceOrderController placeOrderController = new PlaceOrderController(this, currentUser);
+        PlaceOrderController placeOrderController = new PlaceOrderController(this, currentUser, services);
         placeOrderController.setVisible(true);
     }
 
     private void showTrackOrder() {
-        TrackOrderController trackOrderController = new TrackOrderController(this, currentUser);
+        TrackOrderController trackOrderController = new TrackOrderController(this, currentUser, services);
         trackOrderController.setVisible(true);
     }
 
     private void showOrderHistory() {
-        OrderHistoryController orderHistoryController = new OrderHistoryController(this, currentUser);
+        OrderHistoryController orderHistoryController = new OrderHistoryController(this, currentUser, services);
         orderHistoryController.setVisible(true);
     }
 
     private void showUpdateProfile() {
-        UpdateProfileController updateProfileController = new UpdateProfileController(this, currentUser, userService);
+        UpdateProfileController updateProfileController = new UpdateProfileController(this, currentUser, services);
         updateProfileController.setVisible(true);
     }
 
@@ -1124,6 +1284,21 @@ public class CourierManagementApp extends JFrame {
     }
 
     public static void main(String[] args) {
+        // Open the storage backend before the first window so the index build is not on the EDT
+        Repositories repositories;
+        try {
+            repositories = FileManager.getRepositories();
+        } catch (IOException e) {
+            e.printStackTrace();
+            JOptionPane.showMessageDialog(null, "Could not open data directory: " + e.getMessage(),
+                "Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        OrderService orderService = new OrderService(repositories);
+        UserService userService = new UserService(repositories.getUsers());
+        AdminService adminService = new AdminService(repositories.getAdmin(), repositories.getFinance(),
+            repositories.getRollups(), repositories.getOrders());
+
         SwingUtilities.invokeLater(() -> {
             try {
                 UIManager.setLookAndFeel(UIManager.getCrossPlatformLookAndFeelClassName());
@@ -1131,7 +1306,7 @@ public class CourierManagementApp extends JFrame {
                 // If cross-platform look and feel fails, use default
                 System.err.println("Could not set look and feel: " + e.getMessage());
             }
-            new CourierManagementApp().setVisible(true);
+            new CourierManagementApp(orderService, userService, adminService).setVisible(true);
         });
     }
 }
@@ -0,0 +1,155 @@
+package com.courier.ui;
+
+import com.courier.service.ExportWriter;
+import java.awt.BorderLayout;
+import java.awt.Color;
+import java.awt.Component;
+import java.awt.FlowLayout;
+import java.awt.Font;
+import java.awt.GridLayout;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import javax.swing.BorderFactory;
+import javax.swing.JButton;
+import javax.swing.JCheckBox;
+import javax.swing.JComboBox;
+import javax.swing.JDialog;
+import javax.swing.JFileChooser;
+import javax.swing.JLabel;
+import javax.swing.JOptionPane;
+import javax.swing.JPanel;
+import javax.swing.JProgressBar;
+import javax.swing.SwingUtilities;
+import javax.swing.SwingWorker;
+import javax.swing.border.EmptyBorder;
+
+/**
+ * Asks where and how to export, then runs the export on a background thread behind
+ * a progress bar with a Cancel button. Cancelling stops the export at its next
+ * progress report and leaves no partial file behind.
+ */
+public class ExportDialog extends JDialog {
+    private static final long serialVersionUID = 1L;
+
+    private final JProgressBar progressBar = new JProgressBar(0, 1000);
+    private final JLabel statusLabel = new JLabel("Starting...");
+    private SwingWorker<Long, long[]> worker;
+
+    // Writes to the chosen file with the chosen format; returns rows written or -1 if stopped
+    public interface ExportTask {
+        long export(Path file, ExportWriter.Format format, boolean gzip, ExportWriter.Progress progress)
+            throws IOException;
+    }
+
+    private ExportDialog(Component parent, String title) {
+        super(SwingUtilities.getWindowAncestor(parent), title, ModalityType.MODELESS);
+        setDefaultCloseOperation(JDialog.DO_NOTHING_ON_CLOSE);
+
+        JPanel content = new JPanel(new BorderLayout(0, 10));
+        content.setBorder(new EmptyBorder(20, 20, 15, 20));
+        content.setBackground(Color.WHITE);
+        statusLabel.setFont(new Font("Arial", Font.PLAIN, 14));
+        progressBar.setStringPainted(true);
+        content.add(statusLabel, BorderLayout.NORTH);
+        content.add(progressBar, BorderLayout.CENTER);
+
+        JButton cancelButton = new JButton("Cancel");
+        cancelButton.addActionListener(e -> {
+            statusLabel.setText("Cancelling...");
+            worker.cancel(false);
+        });
+        JPanel buttons = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+        buttons.setBackground(Color.WHITE);
+        buttons.add(cancelButton);
+        content.add(buttons, BorderLayout.SOUTH);
+
+        add(content);
+        setSize(420, 160);
+        setLocationRelativeTo(parent);
+    }
+
+    // Shows a save dialog with format and gzip options; does nothing if the user backs out
+    public static void show(Component parent, String title, String baseName, ExportTask task) {
+        JComboBox<String> formatBox = new JComboBox<>(new String[]{"CSV", "JSON lines"});
+        JCheckBox gzipBox = new JCheckBox("Compress (gzip)");
+        JPanel options = new JPanel(new GridLayout(0, 1, 0, 4));
+        options.setBorder(BorderFactory.createTitledBorder("Format"));
+        options.add(formatBox);
+        options.add(gzipBox);
+
+        JFileChooser chooser = new JFileChooser();
+        chooser.setDialogTitle(title);
+        chooser.setAccessory(options);
+        chooser.setSelectedFile(new File(baseName + ".csv"));
+        formatBox.addActionListener(e -> chooser.setSelectedFile(new File(fileName(baseName,
+            format(formatBox), gzipBox.isSelected()))));
+        gzipBox.addActionListener(e -> chooser.setSelectedFile(new File(fileName(baseName,
+            format(formatBox), gzipBox.isSelected()))));
+        if (chooser.showSaveDialog(parent) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        Path file = chooser.getSelectedFile().toPath();
+        if (file.toFile().exists() && JOptionPane.showConfirmDialog(parent, file.getFileName()
+                + " exists. Replace it?", title, JOptionPane.YES_NO_OPTION) != JOptionPane.YES_OPTION) {
+            return;
+        }
+        new ExportDialog(parent, title).start(file, format(formatBox), gzipBox.isSelected(), task);
+    }
+
+    private void start(Path file, ExportWriter.Format format, boolean gzip, ExportTask task) {
+        worker = new SwingWorker<Long, long[]>() {
+            @Override
+            protected Long doInBackground() throws IOException {
+                return task.export(file, format, gzip, (done, total) -> {
+                    publish(new long[]{done, total});
+                    return !isCancelled();
+                });
+            }
+
+            @Override
+            protected void process(List<long[]> chunks) {
+                long[] latest = chunks.get(chunks.size() - 1);
+                if (latest[1] > 0) {
+                    progressBar.setValue((int) (latest[0] * 1000 / latest[1]));
+                    progressBar.setString(String.format("%,d / %,d", latest[0], latest[1]));
+                }
+                statusLabel.setText("Writing " + file.getFileName() + "...");
+            }
+
+            @Override
+            protected void done() {
+                dispose();
+                Component parent = getOwner();
+                try {
+                    long rows = get();
+                    if (rows >= 0) {
+                        JOptionPane.showMessageDialog(parent, String.format("Exported %,d rows to %s", rows, file),
+                            "Export", JOptionPane.INFORMATION_MESSAGE);
+                    }
+                } catch (CancellationException e) {
+                    // Cancelled: the export removes its partial file when it sees the flag
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException e) {
+                    e.getCause().printStackTrace();
+                    JOptionPane.showMessageDialog(parent, "Export failed: " + e.getCause().getMessage(),
+                        "Error", JOptionPane.ERROR_MESSAGE);
+                }
+            }
+        };
+        setVisible(true);
+        worker.execute();
+    }
+
+    private static ExportWriter.Format format(JComboBox<String> formatBox) {
+        return formatBox.getSelectedIndex() == 1 ? ExportWriter.Format.JSON_LINES : ExportWriter.Format.CSV;
+    }
+
+    private static String fileName(String baseName, ExportWriter.Format format, boolean gzip) {
+        return baseName + "." + format.getExtension() + (gzip ? ".gz" : "");
+    }
+}
@@ -2,7 +2,7 @@ package com.courier.ui;
 
 import com.courier.model.User;
 import com.courier.model.Order;
-import com.courier.service.OrderService;
+import com.courier.service.AsyncServices;
 
 import javax.swing.*;
 import javax.swing.border.EmptyBorder;
@@ -13,7 +13,8 @@ import java.util.List;
 
 public class OrderHistoryController extends JFrame {
     private User currentUser;
-    private OrderService orderService;
+    private AsyncServices services;
+    private UiTasks tasks;
     private JFrame parentFrame;
     
     // Color scheme
@@ -24,10 +25,12 @@ public class OrderHistoryController extends JFrame {
     private static final Color WARNING_COLOR = new Color(243, 156, 18);
     private static final Color LIGHT_GRAY = new Color(236, 240, 241);
 
-    public OrderHistoryController(JFrame parentFrame, User currentUser) {
+    public OrderHistoryController(JFrame parentFrame, User currentUser, AsyncServices services) {
         this.parentFrame = parentFrame;
         this.currentUser = currentUser;
-        this.orderService = new OrderService();
+        this.services = services;
+        this.tasks = new UiTasks(this);
+        tasks.cancelOnClose(this);
         
         initializeUI();
         setupOrderHistoryView();
@@ -61,8 +64,51 @@ public class OrderHistoryController extends JFrame {
         contentPanel.setBackground(Color.WHITE);
         contentPanel.setBorder(new EmptyBorder(20, 20, 20, 20));
         
-        List<Order> orders = orderService.getUserOrders(currentUser.getUsername());
+        JLabel loadingLabel = new JLabel("Loading order history...", JLabel.CENTER);
+        loadingLabel.setFont(new Font("Arial", Font.PLAIN, 18));
+        loadingLabel.setForeground(Color.GRAY);
+        contentPanel.add(loadingLabel, BorderLayout.CENTER);
         
+        tasks.run(services.getUserOrders(currentUser.getUsername()), orders -> {
+            contentPanel.removeAll();
+            showOrders(contentPanel, orders);
+            contentPanel.revalidate();
+            contentPanel.repaint();
+        });
+        
+        // Button panel
+        JPanel buttonPanel = new JPanel(new FlowLayout());
+        buttonPanel.setBackground(PRIMARY_COLOR);
+        buttonPanel.setBorder(new EmptyBorder(15, 0, 20, 0));
+        
+        JButton refreshButton = createStyledButton("Refresh", SECONDARY_COLOR, 120, 40);
+        JButton exportButton = createStyledButton("Export", SUCCESS_COLOR, 120, 40);
+        JButton closeButton = createStyledButton("Close", DANGER_COLOR, 120, 40);
+        
+        refreshButton.addActionListener(e -> {
+            dispose();
+            new OrderHistoryController(parentFrame, currentUser, services).setVisible(true);
+        });
+        
+        exportButton.addActionListener(e -> ExportDialog.show(this, "Export Order History",
+            "orders-" + currentUser.getUsername(), (file, format, gzip, progress) ->
+                services.orders().exportUserOrders(currentUser.getUsername(), file, format, gzip, progress)));
+        closeButton.addActionListener(e -> dispose());
+        
+        buttonPanel.add(refreshButton);
+        buttonPanel.add(Box.createHorizontalStrut(10));
+        buttonPanel.add(exportButton);
+        buttonPanel.add(Box.createHorizontalStrut(10));
+        buttonPanel.add(closeButton);
+        
+        mainPanel.add(headerPanel, BorderLayout.NORTH);
+        mainPanel.add(contentPanel, BorderLayout.CENTER);
+        mainPanel.add(buttonPanel, BorderLayout.SOUTH);
+        
+        add(mainPanel);
+    }
+
+    private void showOrders(JPanel contentPanel, List<Order> orders) {
         if (orders.isEmpty()) {
             JLabel noOrdersLabel = new JLabel("No orders found.", JLabel.CENTER);
             noOrdersLabel.setFont(new Font("Arial", Font.PLAIN, 18));
@@ -137,8 +183,7 @@ public class OrderHistoryController extends JFrame {
                     int col = orderTable.columnAtPoint(evt.getPoint());
                     
                     if (row >= 0) {
-                        String trackingId = (String) tableModel.getValueAt(row, 0);
-                        Order order = orderService.getOrder(currentUser.getUsername(), trackingId);
+                        Order order = orders.get(orderTable.convertRowIndexToModel(row));
                         
                         if (col == 5 || evt.getClickCount() == 2) { // Actions column or double click
                             showOrderDetails(order);
@@ -164,35 +209,6 @@ public class OrderHistoryController extends JFrame {
             
             contentPanel.add(summaryPanel, BorderLayout.SOUTH);
         }
-        
-        // Button panel
-        JPanel buttonPanel = new JPanel(new FlowLayout());
-        buttonPanel.setBackground(PRIMARY_COLOR);
-        buttonPanel.setBorder(new EmptyBorder(15, 0, 20, 0));
-        
-        JButton refreshButton = createStyledButton("Refresh", SECONDARY_COLOR, 120, 40);
-        JButton exportButton = createStyledButton("Export", SUCCESS_COLOR, 120, 40);
-        JButton closeButton = createStyledButton("Close", DANGER_COLOR, 120, 40);
-        
-        refreshButton.addActionListener(e -> {
-            dispose();
-            new OrderHistoryController(parentFrame, currentUser).setVisible(true);
-        });
-        
-        exportButton.addActionListener(e -> exportOrderHistory(orders));
-        closeButton.addActionListener(e -> dispose());
-        
-        buttonPanel.add(refreshButton);
-        buttonPanel.add(Box.createHorizontalStrut(10));
-        buttonPanel.add(exportButton);
-        buttonPanel.add(Box.createHorizontalStrut(10));
-        buttonPanel.add(closeButton);
-        
-        mainPanel.add(headerPanel, BorderLayout.NORTH);
-        mainPanel.add(contentPanel, BorderLayout.CENTER);
-        mainPanel.add(buttonPanel, BorderLayout.SOUTH);
-        
-        add(mainPanel);
     }
 
     private void showOrderDetails(Order order) {
@@ -263,43 +279,6 @@ public class OrderHistoryController extends JFrame {
         detailDialog.setVisible(true);
     }
 
-    private void exportOrderHistory(List<Order> orders) {
-        if (orders.isEmpty()) {
-            JOptionPane.showMessageDialog(this, "No orders to export.", "Export", JOptionPane.INFORMATION_MESSAGE);
-            return;
-        }
-        
-        StringBuilder export = new StringBuilder();
-        export.append("ORDER HISTORY REPORT\n");
-        export.append("Customer: ").append(currentUser.getFullName()).append("\n");
-        export.append("Generated: ").append(new java.util.Date()).append("\n");
-        export.append("=".repeat(80)).append("\n\n");
-        
-        double totalAmount = 0;
-        for (Order order : orders) {
-            export.append("Tracking ID: ").append(order.getTrackingId()).append("\n");
-            export.append("Receiver: ").append(order.getReceiverName()).append("\n");
-            export.append("City: ").append(order.getReceiverCity()).append("\n");
-            export.append("Status: ").append(order.getStatus().getDisplayName()).append("\n");
-            export.append("Amount: Rs. ").append(order.getRate()).append("\n");
-            export.append("-".repeat(50)).append("\n");
-            totalAmount += order.getRate();
-        }
-        
-        export.append("\nSUMMARY\n");
-        export.append("Total Orders: ").append(orders.size()).append("\n");
-        export.append("Total Amount: Rs. ").append(totalAmount).append("\n");
-        
-        JTextArea exportArea = new JTextArea(export.toString());
-        exportArea.setEditable(false);
-        exportArea.setFont(new Font("Monospaced", Font.PLAIN, 12));
-        
-        JScrollPane scrollPane = new JScrollPane(exportArea);
-        scrollPane.setPreferredSize(new Dimension(600, 400));
-        
-        JOptionPane.showMessageDialog(this, scrollPane, "Order History Export", JOptionPane.INFORMATION_MESSAGE);
-    }
-
     private JButton createStyledButton(String text, Color backgroundColor, int width, int height) {
         JButton button = new JButton(text);
         button.setPreferredSize(new Dimension(width, height));
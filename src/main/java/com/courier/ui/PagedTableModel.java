@@ -0,0 +1,227 @@
+package com.courier.ui;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import javax.swing.SwingWorker;
+import javax.swing.table.AbstractTableModel;
+
+/**
+ * Table model that only holds the pages the table has actually asked for. Pages are read
+ * from storage by key cursor, so the first page shows without listing every key: the
+ * table grows a page at a time as its last (placeholder) row scrolls into view. Missing
+ * rows render as a placeholder while their page (and the next one) loads in the
+ * background; a small LRU keeps recently viewed pages around, and an evicted page is
+ * read again from the key it started after.
+ */
+public class PagedTableModel<T> extends AbstractTableModel {
+    private static final long serialVersionUID = 1L;
+
+    public static final String LOADING = "Loading...";
+
+    private final String[] columnNames;
+    private final PageSource source;
+    private final Function<String, T> loader;
+    private final Function<T, Object[]> rowMapper;
+    private final int pageSize;
+    private final int prefetchPages;
+    private final Map<Integer, Page> pages;
+    private final Map<Integer, PageLoader> inFlight = new HashMap<>();
+    // The key each known page starts after; page 0 starts at the beginning (null)
+    private final List<String> pageStarts = new ArrayList<>();
+    private int rowCount = 1; // the placeholder row until the first page arrives
+    private boolean exhausted;
+    private boolean disposed;
+
+    public PagedTableModel(String[] columnNames, PageSource source, Function<String, T> loader,
+                           Function<T, Object[]> rowMapper) {
+        this(columnNames, source, loader, rowMapper, 100, 1, 20);
+    }
+
+    public PagedTableModel(String[] columnNames, PageSource source, Function<String, T> loader,
+                           Function<T, Object[]> rowMapper, int pageSize, int prefetchPages, int maxCachedPages) {
+        this.columnNames = columnNames;
+        this.source = source;
+        this.loader = loader;
+        this.rowMapper = rowMapper;
+        this.pageSize = pageSize;
+        this.prefetchPages = prefetchPages;
+        this.pageStarts.add(null);
+        this.pages = new LinkedHashMap<Integer, Page>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Page> eldest) {
+                return size() > maxCachedPages;
+            }
+        };
+    }
+
+    @Override
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return columnNames.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return columnNames[column];
+    }
+
+    @Override
+    public boolean isCellEditable(int row, int column) {
+        return false;
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        Object[] values = getLoadedRow(row);
+        if (values == null) {
+            return column == 0 ? LOADING : "";
+        }
+        return column < values.length ? values[column] : null;
+    }
+
+    public boolean isRowLoaded(int row) {
+        return getLoadedRow(row) != null;
+    }
+
+    // The key behind a row, or null while its page is still loading
+    public String getKey(int row) {
+        Page page = pages.get(row / pageSize);
+        int index = row % pageSize;
+        return page != null && index < page.keys.size() ? page.keys.get(index) : null;
+    }
+
+    // Drops cached pages so the visible rows are re-read, e.g. after an edit
+    public void refresh() {
+        pages.clear();
+        fireTableRowsUpdated(0, Math.max(0, rowCount - 1));
+    }
+
+    // Loaders already running finish their current item and are then ignored. They are not
+    // interrupted: an interrupt during a channel read closes the channel for every reader
+    public void dispose() {
+        disposed = true;
+        for (PageLoader worker : inFlight.values()) {
+            worker.cancel(false);
+        }
+        inFlight.clear();
+        pages.clear();
+    }
+
+    private Object[] getLoadedRow(int row) {
+        int page = row / pageSize;
+        Page loaded = pages.get(page);
+        if (loaded == null) {
+            for (int p = page; p <= page + prefetchPages && p < pageStarts.size(); p++) {
+                requestPage(p);
+            }
+            return null;
+        }
+        int index = row - page * pageSize;
+        // A re-read page can come back shorter when orders were removed in the meantime
+        return index < loaded.rows.size() ? loaded.rows.get(index) : new Object[0];
+    }
+
+    private void requestPage(int page) {
+        if (disposed || pages.containsKey(page) || inFlight.containsKey(page)) {
+            return;
+        }
+        PageLoader worker = new PageLoader(page, pageStarts.get(page));
+        inFlight.put(page, worker);
+        worker.execute();
+    }
+
+    // Called on the EDT with a page that was just read
+    private void pageLoaded(int page, Page loaded) {
+        pages.put(page, loaded);
+        int first = page * pageSize;
+        if (page == pageStarts.size() - 1 && !exhausted) {
+            // The last known page: it decides whether there is another after it
+            int oldCount = rowCount;
+            if (loaded.keys.size() < pageSize) {
+                exhausted = true;
+                rowCount = first + loaded.keys.size();
+            } else {
+                pageStarts.add(loaded.keys.get(pageSize - 1));
+                rowCount = first + pageSize + 1;
+            }
+            if (rowCount > oldCount) {
+                fireTableRowsUpdated(first, oldCount - 1);
+                fireTableRowsInserted(oldCount, rowCount - 1);
+            } else {
+                fireTableDataChanged();
+            }
+        } else {
+            fireTableRowsUpdated(first, Math.min(rowCount, first + pageSize) - 1);
+        }
+    }
+
+    private static class Page {
+        private final List<String> keys;
+        private final List<Object[]> rows;
+
+        private Page(List<String> keys, List<Object[]> rows) {
+            this.keys = keys;
+            this.rows = rows;
+        }
+    }
+
+    private class PageLoader extends SwingWorker<Page, Void> {
+        private final int page;
+        private final String after;
+
+        private PageLoader(int page, String after) {
+            this.page = page;
+            this.after = after;
+        }
+
+        @Override
+        protected Page doInBackground() {
+            List<String> keys = source.next(after, pageSize);
+            List<Object[]> rows = new ArrayList<>(keys.size());
+            for (String key : keys) {
+                if (isCancelled()) {
+                    return null;
+                }
+                T item = loader.apply(key);
+                rows.add(item != null ? rowMapper.apply(item) : new Object[0]);
+            }
+            return new Page(keys, rows);
+        }
+
+        @Override
+        protected void done() {
+            if (inFlight.get(page) != this || isCancelled()) {
+                return;
+            }
+            inFlight.remove(page);
+            try {
+                pageLoaded(page, get());
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    // Keys in table order, up to limit of them after the given one (null for the first page)
+    public interface PageSource {
+        List<String> next(String after, int limit);
+
+        // Pages over a short fixed list, such as search results
+        static PageSource ofKeys(List<String> keys) {
+            return (after, limit) -> {
+                int from = after == null ? 0 : keys.indexOf(after) + 1;
+                return new ArrayList<>(keys.subList(from, Math.min(keys.size(), from + limit)));
+            };
+        }
+    }
+}
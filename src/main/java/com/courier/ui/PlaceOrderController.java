@@ -2,17 +2,20 @@ package com.courier.ui;
 
 import com.courier.model.User;
 import com.courier.model.Order;
+import com.courier.service.AsyncServices;
 import com.courier.service.OrderService;
 
 import javax.swing.*;
 import javax.swing.border.EmptyBorder;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 import java.awt.*;
-import java.awt.event.ActionEvent;
-import java.awt.event.ActionListener;
 
 public class PlaceOrderController extends JFrame {
     private User currentUser;
     private OrderService orderService;
+    private AsyncServices services;
+    private UiTasks tasks;
     private JFrame parentFrame;
     
     // Color scheme
@@ -22,10 +25,13 @@ public class PlaceOrderController extends JFrame {
     private static final Color DANGER_COLOR = new Color(231, 76, 60);
     private static final Color WARNING_COLOR = new Color(243, 156, 18);
 
-    public PlaceOrderController(JFrame parentFrame, User currentUser) {
+    public PlaceOrderController(JFrame parentFrame, User currentUser, AsyncServices services) {
         this.parentFrame = parentFrame;
         this.currentUser = currentUser;
-        this.orderService = new OrderService();
+        this.services = services;
+        this.orderService = services.orders();
+        this.tasks = new UiTasks(this);
+        tasks.cancelOnClose(this);
         
         initializeUI();
         setupPlaceOrderForm();
@@ -121,46 +127,22 @@ public class PlaceOrderController extends JFrame {
         JTextField weightField = createFormField();
         addFormField(formPanel, gbc, 13, "Package Weight (kg):", weightField);
         
-        // Rate display
-        JLabel rateLabel = new JLabel("Estimated Rate: Rs. 0");
+        // Rate display, quoted again as the weight or destination changes
+        JLabel rateLabel = new JLabel();
         rateLabel.setFont(new Font("Arial", Font.BOLD, 16));
-        rateLabel.setForeground(SUCCESS_COLOR);
         gbc.gridx = 0; gbc.gridy = 14; gbc.gridwidth = 2;
         formPanel.add(rateLabel, gbc);
         
-        // Calculate rate button
-        JButton calculateButton = createStyledButton("Calculate Rate", SECONDARY_COLOR, 150, 35);
-        calculateButton.addActionListener(e -> {
-            try {
-                double weight = Double.parseDouble(weightField.getText().trim());
-                if (weight <= 0 || weight > 20) {
-                    showErrorMessage("Weight must be between 0.1 and 20 kg.");
-                    return;
-                }
-                
-                String receiverProvince = receiverProvinceField.getText().trim();
-                if (receiverProvince.isEmpty()) {
-                    showErrorMessage("Please enter receiver province first.");
-                    return;
-                }
-                
-                boolean sameProvince = receiverProvince.equalsIgnoreCase(currentUser.getProvince());
-                double rate = orderService.calculateRate(weight, sameProvince);
-                
-                if (rate > 0) {
-                    rateLabel.setText("Estimated Rate: Rs. " + rate);
-                    rateLabel.setForeground(SUCCESS_COLOR);
-                } else {
-                    rateLabel.setText("Cannot calculate rate for this weight");
-                    rateLabel.setForeground(DANGER_COLOR);
-                }
-            } catch (NumberFormatException ex) {
-                showErrorMessage("Please enter a valid weight.");
-            }
-        });
-        
-        gbc.gridx = 0; gbc.gridy = 15; gbc.gridwidth = 2;
-        formPanel.add(calculateButton, gbc);
+        Runnable requote = () -> showQuote(rateLabel, weightField, receiverCityField, receiverProvinceField);
+        DocumentListener quoteListener = new DocumentListener() {
+            public void insertUpdate(DocumentEvent e) { requote.run(); }
+            public void removeUpdate(DocumentEvent e) { requote.run(); }
+            public void changedUpdate(DocumentEvent e) { requote.run(); }
+        };
+        weightField.getDocument().addDocumentListener(quoteListener);
+        receiverCityField.getDocument().addDocumentListener(quoteListener);
+        receiverProvinceField.getDocument().addDocumentListener(quoteListener);
+        requote.run();
         
         JScrollPane scrollPane = new JScrollPane(formPanel);
         scrollPane.setVerticalScrollBarPolicy(JScrollPane.VERTICAL_SCROLLBAR_AS_NEEDED);
@@ -180,12 +162,10 @@ public class PlaceOrderController extends JFrame {
                 
                 try {
                     double weight = Double.parseDouble(weightField.getText().trim());
-                    String receiverProvince = receiverProvinceField.getText().trim();
-                    boolean sameProvince = receiverProvince.equalsIgnoreCase(currentUser.getProvince());
-                    double rate = orderService.calculateRate(weight, sameProvince);
+                    double rate = quote(weight, receiverCityField, receiverProvinceField);
                     
                     if (rate <= 0) {
-                        showErrorMessage("Invalid weight for shipping.");
+                        showErrorMessage(noRateMessage(weight) + ".");
                         return;
                     }
                     
@@ -202,6 +182,7 @@ public class PlaceOrderController extends JFrame {
                         order.setSenderName(currentUser.getFullName());
                         order.setSenderContact(currentUser.getContactNumber());
                         order.setSenderCity(currentUser.getCity());
+                        order.setSenderProvince(currentUser.getProvince());
                         order.setReceiverName(receiverNameField.getText().trim());
                         order.setReceiverContact(receiverContactField.getText().trim());
                         order.setReceiverAddress(receiverAddressField.getText().trim());
@@ -210,18 +191,27 @@ public class PlaceOrderController extends JFrame {
                         order.setStatus(Order.OrderStatus.IN_PROCESS);
                         order.setUsername(currentUser.getUsername());
                         
-                        String trackingId = orderService.placeOrder(order);
-                        if (trackingId != null) {
-                            JOptionPane.showMessageDialog(this,
-                                "Order placed successfully!\n\nTracking ID: " + trackingId +
-                                "\nAmount: Rs. " + rate +
-                                "\n\nPlease save your tracking ID for future reference.",
-                                "Order Placed",
-                                JOptionPane.INFORMATION_MESSAGE);
-                            dispose();
-                        } else {
-                            showErrorMessage("Failed to place order. Please try again.");
-                        }
+                        placeButton.setEnabled(false);
+                        placeButton.setText("Placing...");
+                        tasks.run(services.placeOrder(order), trackingId -> {
+                            if (trackingId != null) {
+                                JOptionPane.showMessageDialog(this,
+                                    "Order placed successfully!\n\nTracking ID: " + trackingId +
+                                    "\nAmount: Rs. " + rate +
+                                    "\n\nPlease save your tracking ID for future reference.",
+                                    "Order Placed",
+                                    JOptionPane.INFORMATION_MESSAGE);
+                                dispose();
+                            } else {
+                                placeButton.setEnabled(true);
+                                placeButton.setText("Place Order");
+                                showErrorMessage("Failed to place order. Please try again.");
+                            }
+                        }, error -> {
+                            placeButton.setEnabled(true);
+                            placeButton.setText("Place Order");
+                            showErrorMessage("Failed to place order: " + error.getMessage());
+                        });
                     }
                 } catch (NumberFormatException ex) {
                     showErrorMessage("Please enter a valid weight.");
@@ -242,6 +232,41 @@ public class PlaceOrderController extends JFrame {
         add(mainPanel);
     }
 
+    // Runs on every keystroke; a quote is a table lookup, so it stays on the EDT
+    private void showQuote(JLabel rateLabel, JTextField weightField, JTextField receiverCityField,
+                           JTextField receiverProvinceField) {
+        double weight;
+        try {
+            weight = Double.parseDouble(weightField.getText().trim());
+        } catch (NumberFormatException e) {
+            weight = 0;
+        }
+        if (weight <= 0 || receiverProvinceField.getText().trim().isEmpty()) {
+            rateLabel.setText("Estimated Rate: enter the weight and receiver province");
+            rateLabel.setForeground(Color.GRAY);
+            return;
+        }
+        double rate = quote(weight, receiverCityField, receiverProvinceField);
+        if (rate > 0) {
+            rateLabel.setText("Estimated Rate: Rs. " + rate);
+            rateLabel.setForeground(SUCCESS_COLOR);
+        } else {
+            rateLabel.setText(noRateMessage(weight));
+            rateLabel.setForeground(DANGER_COLOR);
+        }
+    }
+
+    private double quote(double weight, JTextField receiverCityField, JTextField receiverProvinceField) {
+        return orderService.calculateRate(currentUser.getProvince(), currentUser.getCity(),
+            receiverProvinceField.getText().trim(), receiverCityField.getText().trim(), weight);
+    }
+
+    private String noRateMessage(double weight) {
+        double maxWeight = orderService.getTariff().getTariff().getMaxWeight();
+        return "No rate for " + weight + " kg" + (Double.isInfinite(maxWeight) ? ""
+            : "; parcels up to " + maxWeight + " kg");
+    }
+
     private JTextField createFormField() {
         JTextField field = new JTextField(25);
         field.setFont(new Font("Arial", Font.PLAIN, 14));
@@ -301,8 +326,8 @@ public class PlaceOrderController extends JFrame {
         // Validate weight
         try {
             double weight = Double.parseDouble(fields[fields.length - 1].getText().trim());
-            if (weight <= 0 || weight > 20) {
-                showErrorMessage("Weight must be between 0.1 and 20 kg.");
+            if (weight <= 0) {
+                showErrorMessage("Weight must be more than 0 kg.");
                 return false;
             }
         } catch (NumberFormatException e) {
@@ -2,7 +2,7 @@ package com.courier.ui;
 
 import com.courier.model.User;
 import com.courier.model.Order;
-import com.courier.service.OrderService;
+import com.courier.service.AsyncServices;
 
 import javax.swing.*;
 import javax.swing.border.EmptyBorder;
@@ -11,7 +11,8 @@ import java.util.List;
 
 public class TrackOrderController extends JFrame {
     private User currentUser;
-    private OrderService orderService;
+    private AsyncServices services;
+    private UiTasks tasks;
     private JFrame parentFrame;
     
     // Color scheme
@@ -22,10 +23,12 @@ public class TrackOrderController extends JFrame {
     private static final Color WARNING_COLOR = new Color(243, 156, 18);
     private static final Color LIGHT_GRAY = new Color(236, 240, 241);
 
-    public TrackOrderController(JFrame parentFrame, User currentUser) {
+    public TrackOrderController(JFrame parentFrame, User currentUser, AsyncServices services) {
         this.parentFrame = parentFrame;
         this.currentUser = currentUser;
-        this.orderService = new OrderService();
+        this.services = services;
+        this.tasks = new UiTasks(this);
+        tasks.cancelOnClose(this);
         
         initializeUI();
         setupTrackOrderForm();
@@ -59,38 +62,17 @@ public class TrackOrderController extends JFrame {
         contentPanel.setBackground(Color.WHITE);
         contentPanel.setBorder(new EmptyBorder(30, 30, 30, 30));
         
-        List<String> trackingIds = orderService.getUserTrackingIds(currentUser.getUsername());
+        JLabel loadingLabel = new JLabel("Loading your orders...", JLabel.CENTER);
+        loadingLabel.setFont(new Font("Arial", Font.PLAIN, 18));
+        loadingLabel.setForeground(Color.GRAY);
+        contentPanel.add(loadingLabel, BorderLayout.CENTER);
         
-        if (trackingIds.isEmpty()) {
-            JLabel noOrdersLabel = new JLabel("No orders found to track.", JLabel.CENTER);
-            noOrdersLabel.setFont(new Font("Arial", Font.PLAIN, 18));
-            noOrdersLabel.setForeground(Color.GRAY);
-            contentPanel.add(noOrdersLabel, BorderLayout.CENTER);
-        } else {
-            // Instructions
-            JLabel instructionLabel = new JLabel("Select a tracking ID to view order details:");
-            instructionLabel.setFont(new Font("Arial", Font.BOLD, 16));
-            instructionLabel.setBorder(new EmptyBorder(0, 0, 20, 0));
-            contentPanel.add(instructionLabel, BorderLayout.NORTH);
-            
-            // Tracking ID list
-            JPanel listPanel = new JPanel(new GridLayout(0, 1, 0, 10));
-            listPanel.setBackground(Color.WHITE);
-            
-            for (String trackingId : trackingIds) {
-                Order order = orderService.getOrder(currentUser.getUsername(), trackingId);
-                if (order != null) {
-                    JButton orderButton = createOrderButton(order);
-                    orderButton.addActionListener(e -> showOrderDetails(order));
-                    listPanel.add(orderButton);
-                }
-            }
-            
-            JScrollPane scrollPane = new JScrollPane(listPanel);
-            scrollPane.setVerticalScrollBarPolicy(JScrollPane.VERTICAL_SCROLLBAR_AS_NEEDED);
-            scrollPane.setBorder(BorderFactory.createTitledBorder("Your Orders"));
-            contentPanel.add(scrollPane, BorderLayout.CENTER);
-        }
+        tasks.run(services.getUserOrders(currentUser.getUsername()), orders -> {
+            contentPanel.removeAll();
+            showOrders(contentPanel, orders);
+            contentPanel.revalidate();
+            contentPanel.repaint();
+        });
         
         // Button panel
         JPanel buttonPanel = new JPanel(new FlowLayout());
@@ -102,7 +84,7 @@ public class TrackOrderController extends JFrame {
         
         refreshButton.addActionListener(e -> {
             dispose();
-            new TrackOrderController(parentFrame, currentUser).setVisible(true);
+            new TrackOrderController(parentFrame, currentUser, services).setVisible(true);
         });
         
         closeButton.addActionListener(e -> dispose());
@@ -118,6 +100,36 @@ public class TrackOrderController extends JFrame {
         add(mainPanel);
     }
 
+    private void showOrders(JPanel contentPanel, List<Order> orders) {
+        if (orders.isEmpty()) {
+            JLabel noOrdersLabel = new JLabel("No orders found to track.", JLabel.CENTER);
+            noOrdersLabel.setFont(new Font("Arial", Font.PLAIN, 18));
+            noOrdersLabel.setForeground(Color.GRAY);
+            contentPanel.add(noOrdersLabel, BorderLayout.CENTER);
+        } else {
+            // Instructions
+            JLabel instructionLabel = new JLabel("Select a tracking ID to view order details:");
+            instructionLabel.setFont(new Font("Arial", Font.BOLD, 16));
+            instructionLabel.setBorder(new EmptyBorder(0, 0, 20, 0));
+            contentPanel.add(instructionLabel, BorderLayout.NORTH);
+            
+            // Tracking ID list
+            JPanel listPanel = new JPanel(new GridLayout(0, 1, 0, 10));
+            listPanel.setBackground(Color.WHITE);
+            
+            for (Order order : orders) {
+                JButton orderButton = createOrderButton(order);
+                orderButton.addActionListener(e -> showOrderDetails(order));
+                listPanel.add(orderButton);
+            }
+            
+            JScrollPane scrollPane = new JScrollPane(listPanel);
+            scrollPane.setVerticalScrollBarPolicy(JScrollPane.VERTICAL_SCROLLBAR_AS_NEEDED);
+            scrollPane.setBorder(BorderFactory.createTitledBorder("Your Orders"));
+            contentPanel.add(scrollPane, BorderLayout.CENTER);
+        }
+    }
+
     private JButton createOrderButton(Order order) {
         JButton button = new JButton();
         button.setLayout(new BorderLayout());
@@ -322,9 +334,9 @@ public class TrackOrderController extends JFrame {
         }
         
         panel.add(processLabel);
-        panel.add(new JLabel(" → "));
+        panel.add(new JLabel(" \u2192 "));
         panel.add(shippedLabel);
-        panel.add(new JLabel(" → "));
+        panel.add(new JLabel(" \u2192 "));
         panel.add(deliveredLabel);
         
         return panel;
@@ -0,0 +1,70 @@
+package com.courier.ui;
+
+import java.awt.Component;
+import java.awt.Window;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
+import javax.swing.JOptionPane;
+import javax.swing.SwingUtilities;
+
+/**
+ * Runs service futures for one window and delivers their results on the EDT.
+ * Cancelling (or closing the window) drops every result still in flight.
+ */
+public class UiTasks {
+    private final Component parent;
+    private final List<CompletableFuture<?>> pending = new ArrayList<>();
+    private int generation;
+
+    public UiTasks(Component parent) {
+        this.parent = parent;
+    }
+
+    public <T> void run(CompletableFuture<T> future, Consumer<T> onSuccess) {
+        run(future, onSuccess, error -> {
+            error.printStackTrace();
+            JOptionPane.showMessageDialog(parent, "Operation failed: " + error.getMessage(),
+                "Error", JOptionPane.ERROR_MESSAGE);
+        });
+    }
+
+    public <T> void run(CompletableFuture<T> future, Consumer<T> onSuccess, Consumer<Throwable> onFailure) {
+        int started = generation;
+        pending.add(future);
+        future.whenComplete((result, error) -> SwingUtilities.invokeLater(() -> {
+            pending.remove(future);
+            if (started != generation || future.isCancelled()) {
+                return;
+            }
+            if (error != null) {
+                onFailure.accept(error instanceof CompletionException && error.getCause() != null
+                    ? error.getCause() : error);
+            } else {
+                onSuccess.accept(result);
+            }
+        }));
+    }
+
+    // Call on the EDT when the user navigates away from the view that started the tasks
+    public void cancelAll() {
+        generation++;
+        for (CompletableFuture<?> future : new ArrayList<>(pending)) {
+            future.cancel(true);
+        }
+        pending.clear();
+    }
+
+    public void cancelOnClose(Window window) {
+        window.addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosed(WindowEvent e) {
+                cancelAll();
+            }
+        });
+    }
+}
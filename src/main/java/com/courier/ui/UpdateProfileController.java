@@ -1,7 +1,7 @@
 package com.courier.ui;
 
 import com.courier.model.User;
-import com.courier.service.UserService;
+import com.courier.service.AsyncServices;
 
 import javax.swing.*;
 import javax.swing.border.EmptyBorder;
@@ -9,7 +9,8 @@ import java.awt.*;
 
 public class UpdateProfileController extends JFrame {
     private User currentUser;
-    private UserService userService;
+    private AsyncServices services;
+    private UiTasks tasks;
     private JFrame parentFrame;
     
     // Color scheme
@@ -18,10 +19,12 @@ public class UpdateProfileController extends JFrame {
     private static final Color SUCCESS_COLOR = new Color(39, 174, 96);
     private static final Color DANGER_COLOR = new Color(231, 76, 60);
 
-    public UpdateProfileController(JFrame parentFrame, User currentUser, UserService userService) {
+    public UpdateProfileController(JFrame parentFrame, User currentUser, AsyncServices services) {
         this.parentFrame = parentFrame;
         this.currentUser = currentUser;
-        this.userService = userService;
+        this.services = services;
+        this.tasks = new UiTasks(this);
+        tasks.cancelOnClose(this);
         
         initializeUI();
         setupUpdateProfileForm();
@@ -140,15 +143,21 @@ public class UpdateProfileController extends JFrame {
                 currentUser.setCity(cityField.getText().trim());
                 currentUser.setProvince(provinceField.getText().trim());
                 
-                if (userService.updateUser(currentUser)) {
-                    JOptionPane.showMessageDialog(this,
-                        "Profile updated successfully!",
-                        "Success",
-                        JOptionPane.INFORMATION_MESSAGE);
-                    dispose();
-                } else {
-                    showErrorMessage("Failed to update profile. Please try again.");
-                }
+                updateButton.setEnabled(false);
+                updateButton.setText("Saving...");
+                tasks.run(services.updateUser(currentUser), updated -> {
+                    if (updated) {
+                        JOptionPane.showMessageDialog(this,
+                            "Profile updated successfully!",
+                            "Success",
+                            JOptionPane.INFORMATION_MESSAGE);
+                        dispose();
+                    } else {
+                        updateButton.setEnabled(true);
+                        updateButton.setText("Update Profile");
+                        showErrorMessage("Failed to update profile. Please try again.");
+                    }
+                });
             }
         });
         